@@ -295,7 +295,7 @@ public abstract class AbstractBugReporter implements BugReporter {
     /**
      * @param message
      */
-    private void logMissingClass(String message) {
+    private synchronized void logMissingClass(String message) {
         if (!isValidMissingClassMessage(message)) {
             return;
         }
@@ -313,7 +313,7 @@ public abstract class AbstractBugReporter implements BugReporter {
     }
 
     @Override
-    public void logError(String message) {
+    public synchronized void logError(String message) {
         if (verbosityLevel == SILENT) {
             return;
         }
@@ -365,9 +365,11 @@ public abstract class AbstractBugReporter implements BugReporter {
             return;
         }
 
-        Error error = new Error(errorCount++, message, e);
-        if (!errorSet.contains(error)) {
-            errorSet.add(error);
+        synchronized (this) {
+            Error error = new Error(errorCount++, message, e);
+            if (!errorSet.contains(error)) {
+                errorSet.add(error);
+            }
         }
     }
 
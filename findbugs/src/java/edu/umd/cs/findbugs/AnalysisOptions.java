@@ -61,6 +61,11 @@ public class AnalysisOptions {
      */
     public boolean scanNestedArchives;
 
+    /**
+     * Resolve the classes of auxiliary codebases only on demand.
+     */
+    public boolean lazyAuxClasspath;
+
     /**
      *
      */
@@ -76,6 +81,47 @@ public class AnalysisOptions {
      */
     public boolean noClassOk;
 
+    /**
+     * Number of threads analyzing the classes.
+     */
+    public int numberOfThreads = 1;
+
+    /**
+     * Memory budget (in megabytes) for evictable analysis results, or 0 to
+     * bound them by entry count.
+     */
+    public int analysisCacheMB;
+
+    /**
+     * CPU time budget (in milliseconds) of a detector for each method, or 0
+     * for no budget.
+     */
+    public int detectorCpuBudgetMillis;
+
+    /**
+     * Allocated memory budget (in megabytes) of a detector for each method, or
+     * 0 for no budget.
+     */
+    public int detectorAllocationBudgetMB;
+
+    /**
+     * Directory caching the interprocedural databases of referenced classes,
+     * or null.
+     */
+    public String databaseCacheDir;
+
+    /**
+     * File (.json or .csv) the detailed profile of the analysis is written to,
+     * or null.
+     */
+    public String profileReportFile;
+
+    /**
+     * File holding the state of the previous incremental analysis, or null
+     * to analyze all application classes.
+     */
+    public String incrementalStateFile;
+
     String releaseName;
 
     String projectName;
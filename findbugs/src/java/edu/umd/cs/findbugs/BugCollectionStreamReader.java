@@ -0,0 +1,352 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.dom4j.DocumentException;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import edu.umd.cs.findbugs.log.Profiler;
+import edu.umd.cs.findbugs.util.Util;
+import edu.umd.cs.findbugs.xml.BinaryXMLInput;
+
+/**
+ * Read the bugs of a saved BugCollection one at a time, so that bug databases
+ * too large to be kept in memory can be processed. The bugs are not added to
+ * the BugCollection of the reader, which only holds the metadata (project,
+ * statistics, errors, history and class features); the bug counts of the
+ * statistics are updated as the bugs are read.
+ * <p>
+ * The metadata written before the bugs (such as the project) is available as
+ * soon as the reader is created; the metadata written after them is available
+ * once all bugs have been read. Parts of the BugCollection that are not
+ * needed can be skipped, which makes reading faster.
+ * <p>
+ * Since an Iterator can't throw checked exceptions, errors found while
+ * reading the bugs are thrown as an IllegalStateException whose cause is the
+ * DocumentException.
+ */
+public class BugCollectionStreamReader implements Iterator<BugInstance>, Closeable {
+
+    /**
+     * Parts of a BugCollection that can be skipped.
+     */
+    public enum Skip {
+        /**
+         * All bug annotations except the primary class: the bugs only have a
+         * type, a priority, a history, properties and user annotations
+         */
+        ANNOTATIONS,
+        /** The class features */
+        CLASS_FEATURES,
+        /** The application versions of the history */
+        HISTORY
+    }
+
+    private final SortedBugCollection bugCollection;
+
+    private final SAXBugCollectionHandler handler;
+
+    private final @CheckForNull Reader reader;
+
+    private final @CheckForNull XMLStreamReader xmlReader;
+
+    private final @CheckForNull BinaryXMLInput binaryInput;
+
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    private final @CheckForNull File base;
+
+    private BugInstance next;
+
+    private boolean done;
+
+    /**
+     * Open a saved BugCollection. Files whose name ends in ".gz" are
+     * decompressed; files whose name ends in
+     * {@link SortedBugCollection#BINARY_EXTENSION} are read in the binary
+     * format.
+     *
+     * @param file
+     *            the file
+     * @param skipped
+     *            the parts of the BugCollection that are not read
+     */
+    public static BugCollectionStreamReader open(File file, Set<Skip> skipped) throws IOException, DocumentException {
+        BugCollectionStreamReader reader;
+        if (SortedBugCollection.isBinaryFile(file.getName())) {
+            reader = new BugCollectionStreamReader(BinaryXMLInput.map(file), file, skipped);
+        } else {
+            InputStream in = new FileInputStream(file);
+            try {
+                if (file.getName().endsWith(".gz")) {
+                    in = new GZIPInputStream(in);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            reader = new BugCollectionStreamReader(in, file, skipped);
+        }
+        // As in SortedBugCollection.readXML(File)
+        reader.bugCollection.getProject().setCurrentWorkingDirectory(file.getParentFile());
+        reader.bugCollection.dataSource = file.getAbsolutePath();
+        return reader;
+    }
+
+    /**
+     * Open a saved BugCollection, reading all of it.
+     *
+     * @param fileName
+     *            the name of the file
+     */
+    public static BugCollectionStreamReader open(String fileName) throws IOException, DocumentException {
+        return open(new File(fileName), EnumSet.noneOf(Skip.class));
+    }
+
+    /**
+     * Read a saved BugCollection from a stream. The stream is closed when the
+     * reader is closed, or if an exception is thrown.
+     *
+     * @param in
+     *            the stream
+     * @param base
+     *            the file the BugCollection is read from, used to resolve the
+     *            relative paths of the project, or null
+     * @param skipped
+     *            the parts of the BugCollection that are not read
+     */
+    public BugCollectionStreamReader(@WillCloseWhenClosed InputStream in, @CheckForNull File base, Set<Skip> skipped)
+            throws IOException, DocumentException {
+        this(Util.getReader(new BufferedInputStream(in)), null, base, skipped);
+    }
+
+    /**
+     * Read a BugCollection saved in the binary format.
+     *
+     * @param input
+     *            the binary document
+     * @param base
+     *            the file the BugCollection is read from, used to resolve the
+     *            relative paths of the project, or null
+     * @param skipped
+     *            the parts of the BugCollection that are not read
+     */
+    public BugCollectionStreamReader(BinaryXMLInput input, @CheckForNull File base, Set<Skip> skipped)
+            throws IOException, DocumentException {
+        this(null, input, base, skipped);
+    }
+
+    private BugCollectionStreamReader(@CheckForNull Reader reader, @CheckForNull BinaryXMLInput binaryInput,
+            @CheckForNull File base, Set<Skip> skipped) throws IOException, DocumentException {
+        this.base = base;
+        this.bugCollection = new SortedBugCollection();
+        this.handler = new SAXBugCollectionHandler(bugCollection, base) {
+            @Override
+            void bugInstanceRead(BugInstance bugInstance) {
+                if (!bugInstance.isDead()) {
+                    BugCollectionStreamReader.this.bugCollection.getProjectStats().addBug(bugInstance);
+                }
+                next = bugInstance;
+            }
+        };
+        handler.setSkipped(skipped.isEmpty() ? EnumSet.noneOf(Skip.class) : EnumSet.copyOf(skipped));
+        this.reader = reader;
+        this.binaryInput = binaryInput;
+        try {
+            if (reader != null) {
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+                this.xmlReader = factory.createXMLStreamReader(reader);
+            } else {
+                this.xmlReader = null;
+            }
+            readToNextBug();
+        } catch (XMLStreamException e) {
+            Util.closeSilently(reader);
+            throw parseError(e);
+        } catch (DocumentException e) {
+            Util.closeSilently(reader);
+            throw e;
+        } catch (RuntimeException e) {
+            Util.closeSilently(reader);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the BugCollection holding the metadata read so far. The
+     * BugCollection contains no bugs.
+     */
+    public SortedBugCollection getBugCollection() {
+        return bugCollection;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public BugInstance next() {
+        BugInstance result = next;
+        if (result == null) {
+            throw new NoSuchElementException();
+        }
+        next = null;
+        try {
+            readToNextBug();
+        } catch (DocumentException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Read the rest of the BugCollection, skipping the bugs not read yet, so
+     * that all of its metadata is available.
+     */
+    public void readToEnd() throws DocumentException {
+        next = null;
+        while (!done) {
+            readToNextBug();
+            next = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        next = null;
+        if (xmlReader != null) {
+            try {
+                xmlReader.close();
+            } catch (XMLStreamException e) {
+                assert true;
+            }
+        }
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private void readToNextBug() throws DocumentException {
+        Profiler profiler = bugCollection.getProjectStats().getProfiler();
+        profiler.start(handler.getClass());
+        try {
+            while (next == null && !done) {
+                if (binaryInput != null) {
+                    if (!binaryInput.replayNext(handler)) {
+                        endOfDocument();
+                    }
+                    continue;
+                }
+                XMLStreamReader xmlReader = this.xmlReader;
+                assert xmlReader != null;
+                switch (xmlReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    attributes.clear();
+                    for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+                        String localName = xmlReader.getAttributeLocalName(i);
+                        attributes.addAttribute("", localName, qualifiedName(xmlReader.getAttributePrefix(i), localName),
+                                "CDATA", xmlReader.getAttributeValue(i));
+                    }
+                    String startName = qualifiedName(xmlReader.getPrefix(), xmlReader.getLocalName());
+                    handler.startElement("", xmlReader.getLocalName(), startName, attributes);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    String endName = qualifiedName(xmlReader.getPrefix(), xmlReader.getLocalName());
+                    handler.endElement("", xmlReader.getLocalName(), endName);
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    handler.characters(xmlReader.getTextCharacters(), xmlReader.getTextStart(), xmlReader.getTextLength());
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    endOfDocument();
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw parseError(e);
+        } catch (IOException e) {
+            throw new DocumentException(base != null ? e.getMessage() + " in " + base : e.getMessage(), e);
+        } catch (SAXException e) {
+            if (base != null) {
+                throw new DocumentException("Sax error while parsing " + base, e);
+            }
+            throw new DocumentException("Sax error ", e);
+        } finally {
+            profiler.end(handler.getClass());
+        }
+    }
+
+    private void endOfDocument() {
+        done = true;
+        bugCollection.bugsPopulated();
+        // As after SortedBugCollection.readXML()
+        bugCollection.getProject().setModified(false);
+    }
+
+    private DocumentException parseError(XMLStreamException e) {
+        String where = e.getLocation() == null ? "" : " at line " + e.getLocation().getLineNumber() + " : "
+                + e.getLocation().getColumnNumber();
+        if (base != null) {
+            return new DocumentException("Parse error" + where + " of " + base, e);
+        }
+        return new DocumentException("Parse error" + where, e);
+    }
+
+    private static String qualifiedName(@CheckForNull String prefix, String localName) {
+        if (prefix == null || prefix.length() == 0) {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+}
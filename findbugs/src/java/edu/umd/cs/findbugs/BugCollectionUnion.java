@@ -0,0 +1,370 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+
+import org.dom4j.DocumentException;
+
+import edu.umd.cs.findbugs.BugCollectionStreamReader.Skip;
+
+/**
+ * The union of saved BugCollections, such as the results of the modules of a
+ * project analyzed separately. The shards are read in parallel; the bugs of
+ * each shard are kept in sorted runs on disk, and merged into one sorted
+ * stream when they are read, so the union is never held in memory.
+ * <p>
+ * The result is the same as adding the shards one after the other: of the
+ * bugs with the same instance hash, only the one of the first shard is kept,
+ * and a bug equal to a bug of an earlier shard is dropped.
+ * <p>
+ * The temporary files are deleted by {@link #close()}.
+ */
+public class BugCollectionUnion implements Closeable {
+
+    private final Comparator<BugInstance> comparator = SortedBugCollection.MultiversionBugInstanceComparator.instance;
+
+    private final List<Shard> shards = new ArrayList<Shard>();
+
+    private final Set<Skip> skipped;
+
+    private final int numberOfThreads;
+
+    /** The first shard containing each instance hash */
+    private final ConcurrentHashMap<String, Integer> owners = new ConcurrentHashMap<String, Integer>();
+
+    /** Sorters created while merging the shards, if there are many */
+    private final List<ExternalBugSorter> mergeSorters = new ArrayList<ExternalBugSorter>();
+
+    private final List<File> unreadFiles = new ArrayList<File>();
+
+    private @CheckForNull SortedBugCollection bugCollection;
+
+    private @CheckForNull Iterable<BugInstance> bugs;
+
+    /**
+     * @param files
+     *            the saved BugCollections, in order
+     * @param skipped
+     *            the parts of the BugCollections that are not read
+     * @param numberOfThreads
+     *            number of shards read at once
+     */
+    public BugCollectionUnion(List<File> files, Set<Skip> skipped, int numberOfThreads) {
+        for (File file : files) {
+            shards.add(new Shard(shards.size(), file));
+        }
+        this.skipped = skipped;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Read the shards. A shard that can't be read or parsed is left out of
+     * the union, and is reported by {@link #getUnreadFiles()}; other errors
+     * are thrown.
+     */
+    public void read() {
+        if (numberOfThreads <= 1 || shards.size() <= 1) {
+            for (Shard shard : shards) {
+                shard.call();
+            }
+        } else {
+            readInParallel();
+        }
+
+        for (Shard shard : shards) {
+            SortedBugCollection more = shard.collection;
+            if (more == null) {
+                unreadFiles.add(shard.file);
+                continue;
+            }
+            if (bugCollection == null) {
+                bugCollection = more.createEmptyCollectionWithMetadata();
+            } else {
+                mergeMetadata(bugCollection, more);
+            }
+            // Only the bugs are needed from now on
+            shard.collection = null;
+        }
+        if (bugCollection != null) {
+            bugCollection.getProjectStats().clearBugCounts();
+        }
+    }
+
+    private void readInParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+            final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "FindBugs union-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            for (Future<Shard> future : executor.invokeAll(shards)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading bug collections", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the shards that couldn't be read, in order
+     */
+    public List<File> getUnreadFiles() {
+        return Collections.unmodifiableList(unreadFiles);
+    }
+
+    /**
+     * Get the metadata of the union: the project, the statistics, the errors
+     * and the history of the first shard read, extended with those of the
+     * other shards. The bug counts of the statistics are cleared; the
+     * collection has no bugs.
+     *
+     * @return the metadata, or null if no shard could be read
+     */
+    public @CheckForNull SortedBugCollection getBugCollection() {
+        return bugCollection;
+    }
+
+    /**
+     * Get the bugs of the union, in the order of a SortedBugCollection with
+     * the multiversion comparator. The result can be iterated several times;
+     * each iteration reads the bugs from temporary files, and can throw an
+     * IllegalStateException wrapping an IOException.
+     *
+     * @return the sorted bugs
+     * @throws IOException
+     *             if the bugs of the shards can't be merged
+     */
+    public Iterable<BugInstance> getBugs() throws IOException {
+        if (bugs != null) {
+            return bugs;
+        }
+        List<Iterable<BugInstance>> sources = new ArrayList<Iterable<BugInstance>>();
+        for (Shard shard : shards) {
+            if (shard.sorter != null) {
+                sources.add(shard.getOwnedBugs());
+            }
+        }
+        // Don't open too many files at once
+        while (sources.size() > ExternalBugSorter.MAX_MERGE_WIDTH) {
+            List<Iterable<BugInstance>> merged = new ArrayList<Iterable<BugInstance>>();
+            for (int i = 0; i < sources.size(); i += ExternalBugSorter.MAX_MERGE_WIDTH) {
+                List<Iterable<BugInstance>> group = sources.subList(i,
+                        Math.min(i + ExternalBugSorter.MAX_MERGE_WIDTH, sources.size()));
+                ExternalBugSorter sorter = new ExternalBugSorter(comparator, ExternalBugSorter.DEFAULT_RUN_SIZE);
+                mergeSorters.add(sorter);
+                for (BugInstance bugInstance : ExternalBugSorter.merge(comparator, group)) {
+                    sorter.add(bugInstance);
+                }
+                sorter.spill();
+                merged.add(sorter.getSortedBugs());
+            }
+            sources = merged;
+        }
+        bugs = ExternalBugSorter.merge(comparator, sources);
+        return bugs;
+    }
+
+    /**
+     * Delete the temporary files.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            if (shard.sorter != null) {
+                shard.sorter.close();
+            }
+        }
+        for (ExternalBugSorter sorter : mergeSorters) {
+            sorter.close();
+        }
+        mergeSorters.clear();
+    }
+
+    /**
+     * Add the project, the statistics and the errors of a BugCollection to
+     * those of another one.
+     *
+     * @param into
+     *            the BugCollection extended
+     * @param from
+     *            the BugCollection added
+     */
+    public static void mergeMetadata(SortedBugCollection into, SortedBugCollection from) {
+        into.getProjectStats().addStats(from.getProjectStats());
+        into.getProject().add(from.getProject());
+        for (AnalysisError error : from.getErrors()) {
+            into.addError(error);
+        }
+    }
+
+    private class Shard implements Callable<Shard> {
+        final int index;
+
+        final File file;
+
+        @CheckForNull SortedBugCollection collection;
+
+        @CheckForNull ExternalBugSorter sorter;
+
+        Shard(int index, File file) {
+            this.index = index;
+            this.file = file;
+        }
+
+        @Override
+        public Shard call() {
+            ExternalBugSorter bugSorter = new ExternalBugSorter(comparator, ExternalBugSorter.DEFAULT_RUN_SIZE);
+            Set<String> hashes = new HashSet<String>();
+            try {
+                BugCollectionStreamReader reader = BugCollectionStreamReader.open(file, skipped);
+                try {
+                    while (reader.hasNext()) {
+                        BugInstance bugInstance = reader.next();
+                        if (hashes.add(bugInstance.getInstanceHash())) {
+                            bugSorter.add(bugInstance);
+                        }
+                    }
+                    reader.readToEnd();
+                } finally {
+                    reader.close();
+                }
+                bugSorter.spill();
+                collection = reader.getBugCollection();
+            } catch (IOException e) {
+                bugSorter.close();
+                return this;
+            } catch (DocumentException e) {
+                bugSorter.close();
+                return this;
+            } catch (IllegalStateException e) {
+                bugSorter.close();
+                if (!(e.getCause() instanceof DocumentException)) {
+                    throw e;
+                }
+                // A DocumentException found while reading a bug
+                return this;
+            }
+            sorter = bugSorter;
+            // The hashes are only claimed once the whole shard has been read,
+            // so that a shard that can't be read doesn't hide any bug
+            for (String hash : hashes) {
+                Integer owner = owners.putIfAbsent(hash, index);
+                while (owner != null && owner.intValue() > index) {
+                    if (owners.replace(hash, owner, index)) {
+                        break;
+                    }
+                    owner = owners.get(hash);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return the sorted bugs of the shard whose hash isn't in an earlier
+         *         shard; the bugs without a history are given the version
+         *         of the union
+         */
+        Iterable<BugInstance> getOwnedBugs() throws IOException {
+            final Iterable<BugInstance> sortedBugs = sorter.getSortedBugs();
+            final long sequence = bugCollection.getSequenceNumber();
+            return new Iterable<BugInstance>() {
+                @Override
+                public Iterator<BugInstance> iterator() {
+                    final Iterator<BugInstance> i = sortedBugs.iterator();
+                    return new Iterator<BugInstance>() {
+                        @CheckForNull BugInstance next = advance();
+
+                        private @CheckForNull BugInstance advance() {
+                            while (i.hasNext()) {
+                                BugInstance bugInstance = i.next();
+                                if (owners.get(bugInstance.getInstanceHash()).intValue() == index) {
+                                    // As in SortedBugCollection.add()
+                                    if (bugInstance.getFirstVersion() == 0L && bugInstance.getLastVersion() == 0L) {
+                                        bugInstance.setFirstVersion(sequence);
+                                    }
+                                    return bugInstance;
+                                }
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public BugInstance next() {
+                            BugInstance result = next;
+                            if (result == null) {
+                                throw new NoSuchElementException();
+                            }
+                            next = advance();
+                            return result;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
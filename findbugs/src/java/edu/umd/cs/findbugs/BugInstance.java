@@ -22,6 +22,8 @@ package edu.umd.cs.findbugs;
 import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
@@ -140,8 +142,9 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
 
     private int instanceOccurrenceMax;
 
+    /** serialized as the name of the detector class */
     @CheckForNull
-    private DetectorFactory detectorFactory;
+    private transient DetectorFactory detectorFactory;
 
     private final AtomicReference<XmlProps> xmlProps;
 
@@ -2789,6 +2792,19 @@ public class BugInstance implements Comparable<BugInstance>, XMLWriteable, Seria
         return detectorFactory;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(detectorFactory != null ? detectorFactory.getFullName() : null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        String detectorName = (String) in.readObject();
+        if (detectorName != null) {
+            detectorFactory = DetectorFactoryCollection.instance().getFactoryByClassName(detectorName);
+        }
+    }
+
     private void optionalAdd(Collection<BugAnnotation> c, BugAnnotation a) {
         if (a != null) {
             c.add(a);
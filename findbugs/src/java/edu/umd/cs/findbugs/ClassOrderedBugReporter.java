@@ -0,0 +1,149 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * A BugReporter used when the classes of an analysis pass are analyzed by
+ * several threads. Bugs reported while a thread analyzes a class are buffered,
+ * and handed to the delegate strictly in class order, so the output is the
+ * same as that of a single-threaded analysis. Everything else is forwarded
+ * immediately, one call at a time.
+ *
+ * @see FindBugs2
+ */
+public class ClassOrderedBugReporter extends DelegatingBugReporter {
+
+    private final ThreadLocal<List<BugInstance>> buffer = new ThreadLocal<List<BugInstance>>();
+
+    private final Map<Integer, List<BugInstance>> finished = new HashMap<Integer, List<BugInstance>>();
+
+    private int nextToPublish;
+
+    public ClassOrderedBugReporter(BugReporter delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Start buffering the bugs reported by the current thread.
+     */
+    public void startClass() {
+        buffer.set(new ArrayList<BugInstance>());
+    }
+
+    /**
+     * Stop buffering the bugs reported by the current thread, and publish them
+     * once the bugs of all classes preceding the given class have been
+     * published.
+     *
+     * @param classIndex
+     *            index of the class in the analysis order
+     */
+    public void finishClass(int classIndex) {
+        List<BugInstance> bugs = buffer.get();
+        buffer.remove();
+        publish(classIndex, bugs == null ? new ArrayList<BugInstance>() : bugs);
+    }
+
+    /**
+     * Record that the class with the given index was not analyzed.
+     *
+     * @param classIndex
+     *            index of the class in the analysis order
+     */
+    public void skipClass(int classIndex) {
+        publish(classIndex, null);
+    }
+
+    private synchronized void publish(int classIndex, List<BugInstance> bugs) {
+        finished.put(classIndex, bugs);
+        while (finished.containsKey(nextToPublish)) {
+            List<BugInstance> next = finished.remove(nextToPublish);
+            if (next != null) {
+                for (BugInstance bug : next) {
+                    getDelegate().reportBug(bug);
+                }
+                classPublished(nextToPublish);
+            }
+            nextToPublish++;
+        }
+    }
+
+    /**
+     * Called, in class order, after the bugs of an analyzed class have been
+     * handed to the delegate. The default implementation does nothing.
+     *
+     * @param classIndex
+     *            index of the class in the analysis order
+     */
+    protected void classPublished(int classIndex) {
+    }
+
+    @Override
+    public void reportBug(@Nonnull BugInstance bugInstance) {
+        List<BugInstance> bugs = buffer.get();
+        if (bugs != null) {
+            bugs.add(bugInstance);
+            return;
+        }
+        synchronized (this) {
+            super.reportBug(bugInstance);
+        }
+    }
+
+    @Override
+    public synchronized void observeClass(ClassDescriptor classDescriptor) {
+        super.observeClass(classDescriptor);
+    }
+
+    @Override
+    public synchronized void logError(String message) {
+        super.logError(message);
+    }
+
+    @Override
+    public synchronized void logError(String message, Throwable e) {
+        super.logError(message, e);
+    }
+
+    @Override
+    public synchronized void reportMissingClass(ClassNotFoundException ex) {
+        super.reportMissingClass(ex);
+    }
+
+    @Override
+    public synchronized void reportMissingClass(ClassDescriptor classDescriptor) {
+        super.reportMissingClass(classDescriptor);
+    }
+
+    @Override
+    public synchronized void reportSkippedAnalysis(MethodDescriptor method) {
+        super.reportSkippedAnalysis(method);
+    }
+}
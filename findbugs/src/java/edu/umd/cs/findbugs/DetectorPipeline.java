@@ -0,0 +1,90 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+/**
+ * Schedules the detectors of an analysis pass when several threads analyze
+ * the classes of the pass.
+ * <p>
+ * Detectors keep state between classes, so a detector instance may only be
+ * used by one thread at a time, and should see the classes in the order
+ * chosen for the pass. Each detector therefore has a turn counter: the
+ * thread analyzing the class with index <i>i</i> waits until the detector has
+ * finished classes 0..<i>i</i>-1. Different detectors work on different
+ * classes at the same time, like the stages of a pipeline.
+ *
+ * @see FindBugs2
+ */
+public class DetectorPipeline {
+
+    private final int[] nextClass;
+
+    /**
+     * @param numDetectors
+     *            number of detectors in the pass
+     */
+    public DetectorPipeline(int numDetectors) {
+        this.nextClass = new int[numDetectors];
+    }
+
+    /**
+     * Wait until it is the given class's turn to be analyzed by the given
+     * detector.
+     *
+     * @param detector
+     *            index of the detector in the pass
+     * @param classIndex
+     *            index of the class in the analysis order
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    public synchronized void awaitTurn(int detector, int classIndex) throws InterruptedException {
+        while (nextClass[detector] != classIndex) {
+            wait();
+        }
+    }
+
+    /**
+     * Mark the current class as done by the given detector, which allows the
+     * next class to use it.
+     *
+     * @param detector
+     *            index of the detector in the pass
+     */
+    public synchronized void finishTurn(int detector) {
+        nextClass[detector]++;
+        notifyAll();
+    }
+
+    /**
+     * Pass the given class through every detector without analyzing it.
+     *
+     * @param classIndex
+     *            index of the class in the analysis order
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    public void skipClass(int classIndex) throws InterruptedException {
+        for (int detector = 0; detector < nextClass.length; detector++) {
+            awaitTurn(detector, classIndex);
+            finishTurn(detector);
+        }
+    }
+}
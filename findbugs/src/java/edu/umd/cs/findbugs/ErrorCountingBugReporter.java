@@ -20,13 +20,14 @@ package edu.umd.cs.findbugs;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A delegating bug reporter which counts reported bug instances, missing
  * classes, and serious analysis errors.
  */
 public class ErrorCountingBugReporter extends DelegatingBugReporter {
-    private int bugCount;
+    private final AtomicInteger bugCount = new AtomicInteger();
 
     private final HashSet<String> errors = new HashSet<String>();
 
@@ -34,7 +35,6 @@ public class ErrorCountingBugReporter extends DelegatingBugReporter {
 
     public ErrorCountingBugReporter(BugReporter realBugReporter) {
         super(realBugReporter);
-        this.bugCount = 0;
 
         // Add an observer to record when bugs make it through
         // all priority and filter criteria, so our bug count is
@@ -42,26 +42,30 @@ public class ErrorCountingBugReporter extends DelegatingBugReporter {
         realBugReporter.addObserver(new BugReporterObserver() {
             @Override
             public void reportBug(BugInstance bugInstance) {
-                ++bugCount;
+                bugCount.incrementAndGet();
             }
         });
     }
 
     public int getBugCount() {
-        return bugCount;
+        return bugCount.get();
     }
 
-    public int getMissingClassCount() {
+    public synchronized int getMissingClassCount() {
         return missingClassSet.size();
     }
 
-    public int getErrorCount() {
+    public synchronized int getErrorCount() {
         return errors.size();
     }
 
     @Override
     public void logError(String message) {
-        if (errors.add(message)) {
+        boolean added;
+        synchronized (this) {
+            added = errors.add(message);
+        }
+        if (added) {
             super.logError(message);
         }
     }
@@ -72,7 +76,11 @@ public class ErrorCountingBugReporter extends DelegatingBugReporter {
         if (missing == null || missing.startsWith("[") || "java.lang.Synthetic".equals(missing)) {
             return;
         }
-        if (missingClassSet.add(missing)) {
+        boolean added;
+        synchronized (this) {
+            added = missingClassSet.add(missing);
+        }
+        if (added) {
             super.reportMissingClass(ex);
         }
     }
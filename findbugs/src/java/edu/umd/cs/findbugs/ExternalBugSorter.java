@@ -0,0 +1,414 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Sort bugs without keeping them all in memory: the bugs are collected in
+ * sorted runs of bounded size, which are serialized to temporary files and
+ * merged when the bugs are read back. As in a SortedBugCollection, bugs equal
+ * to a bug added before them are dropped.
+ * <p>
+ * The temporary files are deleted by {@link #close()}.
+ */
+public class ExternalBugSorter implements Closeable {
+
+    /** Default number of bugs kept in memory */
+    public static final int DEFAULT_RUN_SIZE = 10000;
+
+    /** Maximum number of runs merged at once */
+    static final int MAX_MERGE_WIDTH = 64;
+
+    /** Number of bugs written to a run between resets of the stream */
+    private static final int RESET_INTERVAL = 1000;
+
+    private final Comparator<BugInstance> comparator;
+
+    private final int runSize;
+
+    private TreeSet<BugInstance> buffer;
+
+    /** Runs in the order their bugs were added */
+    private final List<File> runs = new ArrayList<File>();
+
+    private final List<File> tempFiles = new ArrayList<File>();
+
+    private final List<ObjectInputStream> openStreams = new ArrayList<ObjectInputStream>();
+
+    private @CheckForNull Iterable<BugInstance> sorted;
+
+    /**
+     * @param comparator
+     *            the order of the bugs
+     * @param runSize
+     *            number of bugs kept in memory before a run is written
+     */
+    public ExternalBugSorter(Comparator<BugInstance> comparator, int runSize) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be positive: " + runSize);
+        }
+        this.comparator = comparator;
+        this.runSize = runSize;
+        this.buffer = new TreeSet<BugInstance>(comparator);
+    }
+
+    /**
+     * Add a bug.
+     *
+     * @param bugInstance
+     *            the bug
+     * @throws IOException
+     *             if a run can't be written
+     */
+    public void add(BugInstance bugInstance) throws IOException {
+        if (sorted != null) {
+            throw new IllegalStateException("Bugs already sorted");
+        }
+        buffer.add(bugInstance);
+        if (buffer.size() >= runSize) {
+            runs.add(writeRun(buffer));
+            buffer = new TreeSet<BugInstance>(comparator);
+        }
+    }
+
+    /**
+     * Write the bugs kept in memory to a run, such as when many sorters are
+     * filled before their bugs are read.
+     *
+     * @throws IOException
+     *             if the run can't be written
+     */
+    public void spill() throws IOException {
+        if (sorted != null) {
+            throw new IllegalStateException("Bugs already sorted");
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(writeRun(buffer));
+            buffer = new TreeSet<BugInstance>(comparator);
+        }
+    }
+
+    /**
+     * @return number of runs written to temporary files
+     */
+    public int getNumRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Get the added bugs, sorted and without duplicates. No bug can be added
+     * afterwards. The result can be iterated several times; if the bugs didn't
+     * fit in memory, each iteration reads them from temporary files, and
+     * can throw an IllegalStateException wrapping an IOException.
+     *
+     * @return the sorted bugs
+     * @throws IOException
+     *             if the runs can't be merged
+     */
+    public Iterable<BugInstance> getSortedBugs() throws IOException {
+        if (sorted != null) {
+            return sorted;
+        }
+        if (runs.isEmpty()) {
+            sorted = Collections.unmodifiableSet(buffer);
+            return sorted;
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(writeRun(buffer));
+        }
+        buffer = null;
+        while (runs.size() > MAX_MERGE_WIDTH) {
+            // Merge consecutive runs, so that a bug is still preceded by the
+            // bugs added before it
+            List<File> merged = new ArrayList<File>();
+            for (int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH) {
+                List<File> group = runs.subList(i, Math.min(i + MAX_MERGE_WIDTH, runs.size()));
+                merged.add(group.size() == 1 ? group.get(0) : writeRun(merge(comparator, readRuns(group))));
+            }
+            for (File run : runs) {
+                if (!merged.contains(run)) {
+                    delete(run);
+                }
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+        if (runs.size() > 1) {
+            // The last runs are merged as they are read
+            sorted = merge(comparator, readRuns(runs));
+            return sorted;
+        }
+        sorted = readRun(runs.get(0));
+        return sorted;
+    }
+
+    /**
+     * Merge sequences of bugs sorted in the same order, dropping a bug equal
+     * to the previous one. Of equal bugs, the one of the first sequence is
+     * kept. The sequences are read as the result is iterated, and are
+     * iterated again by each iteration of the result.
+     *
+     * @param comparator
+     *            the order of the bugs
+     * @param sources
+     *            the sorted sequences
+     * @return the merged bugs
+     */
+    public static Iterable<BugInstance> merge(final Comparator<BugInstance> comparator,
+            final List<? extends Iterable<BugInstance>> sources) {
+        return new Iterable<BugInstance>() {
+            @Override
+            public Iterator<BugInstance> iterator() {
+                return new MergingIterator(comparator, sources);
+            }
+        };
+    }
+
+    /**
+     * Delete the temporary files.
+     */
+    @Override
+    public void close() {
+        for (ObjectInputStream in : openStreams) {
+            Util.closeSilently(in);
+        }
+        openStreams.clear();
+        for (File f : tempFiles) {
+            if (f.exists() && !f.delete()) {
+                f.deleteOnExit();
+            }
+        }
+        tempFiles.clear();
+        runs.clear();
+    }
+
+    private Iterable<BugInstance> readRun(final File run) {
+        return new Iterable<BugInstance>() {
+            @Override
+            public Iterator<BugInstance> iterator() {
+                try {
+                    return new RunIterator(run);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error reading sorted bugs", e);
+                }
+            }
+        };
+    }
+
+    private List<Iterable<BugInstance>> readRuns(List<File> group) {
+        List<Iterable<BugInstance>> result = new ArrayList<Iterable<BugInstance>>(group.size());
+        for (File run : group) {
+            result.add(readRun(run));
+        }
+        return result;
+    }
+
+    private void delete(File run) {
+        if (run.delete()) {
+            tempFiles.remove(run);
+        }
+    }
+
+    private File writeRun(Iterable<BugInstance> bugs) throws IOException {
+        File run = File.createTempFile("findbugs", ".bugs");
+        tempFiles.add(run);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        try {
+            int count = 0;
+            for (BugInstance bugInstance : bugs) {
+                out.writeObject(bugInstance);
+                // Don't keep all the written bugs in the stream's handle
+                // table, but don't write the class descriptors for each bug
+                if (++count % RESET_INTERVAL == 0) {
+                    out.reset();
+                }
+            }
+            out.writeObject(null);
+        } finally {
+            out.close();
+        }
+        return run;
+    }
+
+    /**
+     * Iterator over the bugs of a run. The stream is closed at the end of the
+     * run.
+     */
+    private class RunIterator implements Iterator<BugInstance> {
+        private @CheckForNull ObjectInputStream in;
+
+        private @CheckForNull BugInstance next;
+
+        RunIterator(File run) throws IOException {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(run)));
+            openStreams.add(in);
+            advance();
+        }
+
+        private void advance() {
+            try {
+                next = (BugInstance) in.readObject();
+            } catch (EOFException e) {
+                throw new IllegalStateException("Truncated run of sorted bugs", e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading sorted bugs", e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Error reading sorted bugs", e);
+            }
+            if (next == null) {
+                Util.closeSilently(in);
+                openStreams.remove(in);
+                in = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public BugInstance next() {
+            BugInstance result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Iterator over the merge of sorted sequences of bugs.
+     */
+    private static class MergingIterator implements Iterator<BugInstance> {
+        private final Comparator<BugInstance> comparator;
+
+        private final PriorityQueue<Head> heads;
+
+        private @CheckForNull BugInstance previous;
+
+        private @CheckForNull BugInstance next;
+
+        MergingIterator(Comparator<BugInstance> comparator, List<? extends Iterable<BugInstance>> sources) {
+            this.comparator = comparator;
+            this.heads = new PriorityQueue<Head>(Math.max(1, sources.size()));
+            for (int i = 0; i < sources.size(); i++) {
+                Iterator<BugInstance> source = sources.get(i).iterator();
+                if (source.hasNext()) {
+                    heads.add(new Head(comparator, source, i));
+                }
+            }
+            next = advance();
+        }
+
+        private @CheckForNull BugInstance advance() {
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                BugInstance bugInstance = head.bug;
+                if (head.source.hasNext()) {
+                    head.bug = head.source.next();
+                    heads.add(head);
+                }
+                if (previous == null || comparator.compare(previous, bugInstance) != 0) {
+                    previous = bugInstance;
+                    return bugInstance;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public BugInstance next() {
+            BugInstance result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            next = advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The next bug of a sequence being merged.
+     */
+    private static class Head implements Comparable<Head> {
+        final Comparator<BugInstance> comparator;
+
+        final Iterator<BugInstance> source;
+
+        final int index;
+
+        BugInstance bug;
+
+        Head(Comparator<BugInstance> comparator, Iterator<BugInstance> source, int index) {
+            this.comparator = comparator;
+            this.source = source;
+            this.index = index;
+            this.bug = source.next();
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int cmp = comparator.compare(bug, other.bug);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return index - other.index;
+        }
+    }
+}
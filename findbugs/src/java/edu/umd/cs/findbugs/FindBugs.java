@@ -514,7 +514,7 @@ public abstract class FindBugs {
     public static BugReporter configureFilter(BugReporter bugReporter, String filterFileName, boolean include)
             throws IOException, FilterException {
         Filter filter = new Filter(filterFileName);
-        return new FilterBugReporter(bugReporter, filter, include);
+        return new FilterBugReporter(bugReporter, filter.compile(), include);
 
     }
 
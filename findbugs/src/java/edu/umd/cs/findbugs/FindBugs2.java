@@ -19,6 +19,7 @@
 
 package edu.umd.cs.findbugs;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -32,6 +33,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -40,12 +49,15 @@ import org.apache.bcel.classfile.ClassFormatException;
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.AnalysisFeatures;
 import edu.umd.cs.findbugs.ba.ObjectTypeFactory;
 import edu.umd.cs.findbugs.ba.SourceInfoMap;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.ba.interproc.InterproceduralDatabaseCache;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierAnnotation;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierApplications;
 import edu.umd.cs.findbugs.ba.jsr305.TypeQualifierValue;
@@ -63,11 +75,13 @@ import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
 import edu.umd.cs.findbugs.classfile.ICodeBase;
 import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
 import edu.umd.cs.findbugs.classfile.MissingClassException;
+import edu.umd.cs.findbugs.classfile.impl.AnalysisCache;
 import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
 import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
 import edu.umd.cs.findbugs.config.UserPreferences;
 import edu.umd.cs.findbugs.detect.NoteSuppressedWarnings;
 import edu.umd.cs.findbugs.filter.FilterException;
+import edu.umd.cs.findbugs.log.ProfileReport;
 import edu.umd.cs.findbugs.log.Profiler;
 import edu.umd.cs.findbugs.log.YourKitController;
 import edu.umd.cs.findbugs.plan.AnalysisPass;
@@ -93,6 +107,15 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private static final boolean SCREEN_FIRST_PASS_CLASSES = SystemProperties.getBoolean("findbugs.screenFirstPass");
 
+    private static final boolean REPORT_MEMORY_USAGE = SystemProperties.getBoolean("findbugs.memoryReport");
+
+    /**
+     * Decode the methods once for all the bytecode scanning detectors of a
+     * pass, instead of once per detector. Each detector still walks the
+     * decoded instructions on its own.
+     */
+    private static final boolean SHARE_DECODED_BYTECODE = SystemProperties.getBoolean("findbugs.shareDecodedBytecode");
+
     public static final String PROP_FINDBUGS_HOST_APP = "findbugs.hostApp";
     public static final String PROP_FINDBUGS_HOST_APP_VERSION = "findbugs.hostAppVersion";
 
@@ -120,7 +143,7 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private final YourKitController yourkitController = new YourKitController();
 
-    private String currentClassName;
+    private volatile String currentClassName;
 
     private FindBugsProgress progress;
 
@@ -128,6 +151,12 @@ public class FindBugs2 implements IFindBugsEngine {
 
     private final AnalysisOptions analysisOptions = new AnalysisOptions(true);
 
+    private InterproceduralDatabaseCache databaseCache;
+
+    private IncrementalAnalysis incrementalAnalysis;
+
+    private List<ClassDescriptor> reportingClassList;
+
     /**
      * Constructor.
      */
@@ -195,6 +224,9 @@ public class FindBugs2 implements IFindBugsEngine {
         }
 
         Profiler profiler = bugReporter.getProjectStats().getProfiler();
+        if (analysisOptions.profileReportFile != null) {
+            profiler.enableDetailedReport();
+        }
 
         try {
             try {
@@ -237,9 +269,15 @@ public class FindBugs2 implements IFindBugsEngine {
                 // Configure analysis features
                 configureAnalysisFeatures();
 
+                // Load the cached databases of referenced classes
+                loadDatabaseCache();
+
                 // Create the execution plan (which passes/detectors to execute)
                 createExecutionPlan();
 
+                // Choose the classes the reporting passes analyze
+                prepareIncrementalAnalysis();
+
                 for (Plugin p : detectorFactoryCollection.plugins()) {
                     for (ComponentPlugin<BugReporterDecorator> brp
                             : p.getComponentPlugins(BugReporterDecorator.class)) {
@@ -268,6 +306,10 @@ public class FindBugs2 implements IFindBugsEngine {
                     bugReporter = new FilterBugReporter(bugReporter, m, false);
                 }
 
+                if (incrementalAnalysis != null) {
+                    bugReporter = incrementalAnalysis.recordingBugReporter(bugReporter);
+                }
+
                 if (appClassList.size() == 0) {
                     Map<String, ICodeBaseEntry> codebase = classPath.getApplicationCodebaseEntries();
                     if (analysisOptions.noClassOk) {
@@ -301,6 +343,7 @@ public class FindBugs2 implements IFindBugsEngine {
                 clearCaches();
                 profiler.end(this.getClass());
                 profiler.report();
+                writeProfileReport(profiler);
             }
         } catch (IOException e) {
             bugReporter.reportQueuedErrors();
@@ -308,10 +351,32 @@ public class FindBugs2 implements IFindBugsEngine {
         }
     }
 
+    private void writeProfileReport(Profiler profiler) {
+        ProfileReport report = profiler.getDetailedReport();
+        if (report == null || analysisOptions.profileReportFile == null) {
+            return;
+        }
+        try {
+            report.write(new File(analysisOptions.profileReportFile));
+        } catch (IOException e) {
+            System.err.println("Could not write profile report to " + analysisOptions.profileReportFile + ": " + e);
+        }
+    }
+
     /**
      * Protected to allow Eclipse plugin remember some cache data for later reuse
      */
     protected void clearCaches() {
+        IAnalysisCache analysisCache = Global.getAnalysisCache();
+        if (analysisCache instanceof AnalysisCache) {
+            ((AnalysisCache) analysisCache).reportStatistics();
+        }
+        if (REPORT_MEMORY_USAGE) {
+            if (AnalysisContext.currentAnalysisContext() != null) {
+                AnalysisContext.currentXFactory().reportMemoryUsage(System.err);
+            }
+            DescriptorFactory.instance().reportMemoryUsage(System.err);
+        }
         DescriptorFactory.clearInstance();
         ObjectTypeFactory.clearInstance();
         TypeQualifierApplications.clearInstance();
@@ -570,11 +635,47 @@ public class FindBugs2 implements IFindBugsEngine {
         this.analysisOptions.scanNestedArchives = scanNestedArchives;
     }
 
+    @Override
+    public void setLazyAuxClasspath(boolean lazyAuxClasspath) {
+        this.analysisOptions.lazyAuxClasspath = lazyAuxClasspath;
+    }
+
     @Override
     public void setNoClassOk(boolean noClassOk) {
         this.analysisOptions.noClassOk = noClassOk;
     }
 
+    @Override
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.analysisOptions.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    @Override
+    public void setAnalysisCacheMB(int analysisCacheMB) {
+        this.analysisOptions.analysisCacheMB = Math.max(0, analysisCacheMB);
+    }
+
+    @Override
+    public void setDetectorBudget(int cpuMillis, int allocationMB) {
+        this.analysisOptions.detectorCpuBudgetMillis = Math.max(0, cpuMillis);
+        this.analysisOptions.detectorAllocationBudgetMB = Math.max(0, allocationMB);
+    }
+
+    @Override
+    public void setDatabaseCacheDir(String databaseCacheDir) {
+        this.analysisOptions.databaseCacheDir = databaseCacheDir;
+    }
+
+    @Override
+    public void setProfileReportFile(String profileReportFile) {
+        this.analysisOptions.profileReportFile = profileReportFile;
+    }
+
+    @Override
+    public void setIncrementalStateFile(String incrementalStateFile) {
+        this.analysisOptions.incrementalStateFile = incrementalStateFile;
+    }
+
     /**
      * Create the analysis cache object and register it for current execution thread.
      * <p>
@@ -586,6 +687,12 @@ public class FindBugs2 implements IFindBugsEngine {
      */
     protected IAnalysisCache createAnalysisCache() throws IOException {
         IAnalysisCache analysisCache = ClassFactory.instance().createAnalysisCache(classPath, bugReporter);
+        if (analysisOptions.analysisCacheMB > 0 && analysisCache instanceof AnalysisCache) {
+            ((AnalysisCache) analysisCache).setMemoryBudget(analysisOptions.analysisCacheMB * 1024L * 1024L);
+        }
+        if (analysisCache instanceof AnalysisCache) {
+            ((AnalysisCache) analysisCache).setNumberOfThreads(analysisOptions.numberOfThreads);
+        }
 
         // Register the "built-in" analysis engines
         registerBuiltInAnalysisEngines(analysisCache);
@@ -673,6 +780,8 @@ public class FindBugs2 implements IFindBugsEngine {
         }
 
         builder.scanNestedArchives(analysisOptions.scanNestedArchives);
+        builder.scanAuxiliaryCodeBases(!analysisOptions.lazyAuxClasspath);
+        builder.setNumberOfThreads(analysisOptions.numberOfThreads);
 
         builder.build(classPath, progress);
 
@@ -816,7 +925,14 @@ public class FindBugs2 implements IFindBugsEngine {
         for (ClassDescriptor d : DescriptorFactory.instance().getAllClassDescriptors()) {
             referencedPackageSet.add(d.getPackageName());
         }
-        referencedClassSet = new ArrayList<ClassDescriptor>(DescriptorFactory.instance().getAllClassDescriptors());
+        if (analysisOptions.lazyAuxClasspath) {
+            // Only the application classes and their supertypes; everything
+            // else is resolved when needed
+            seen.removeAll(badAppClassSet);
+            referencedClassSet = new ArrayList<ClassDescriptor>(seen);
+        } else {
+            referencedClassSet = new ArrayList<ClassDescriptor>(DescriptorFactory.instance().getAllClassDescriptors());
+        }
 
         // Based on referenced packages, add any resolvable package-info classes
         // to the set of referenced classes.
@@ -888,6 +1004,46 @@ public class FindBugs2 implements IFindBugsEngine {
                 analysisOptions.mergeSimilarWarnings);
     }
 
+    /**
+     * If a database cache directory was given and referenced classes are
+     * analyzed interprocedurally, load the database entries cached for the
+     * current auxiliary classpath.
+     */
+    private void loadDatabaseCache() {
+        databaseCache = null;
+        if (analysisOptions.databaseCacheDir == null
+                || !AnalysisContext.currentAnalysisContext().getBoolProperty(
+                        FindBugsAnalysisFeatures.INTERPROCEDURAL_ANALYSIS_OF_REFERENCED_CLASSES)) {
+            return;
+        }
+        try {
+            databaseCache = new InterproceduralDatabaseCache(new File(analysisOptions.databaseCacheDir), classPath,
+                    detectorFactoryCollection.plugins(), analysisOptions.analysisFeatureSettingList,
+                    useTrainingInput() ? getTrainingInputDir() : null);
+        } catch (IOException e) {
+            AnalysisContext.logError("Error computing key of interprocedural database cache", e);
+            return;
+        }
+        databaseCache.load(AnalysisContext.currentAnalysisContext());
+    }
+
+    /**
+     * If an incremental analysis was requested, determine which application
+     * classes changed since the previous analysis. Otherwise, all application
+     * classes are analyzed.
+     */
+    private void prepareIncrementalAnalysis() throws IOException, InterruptedException {
+        incrementalAnalysis = null;
+        reportingClassList = appClassList;
+        if (analysisOptions.incrementalStateFile == null) {
+            return;
+        }
+        incrementalAnalysis = new IncrementalAnalysis(new File(analysisOptions.incrementalStateFile));
+        incrementalAnalysis.computeDirtyClasses(appClassList,
+                IncrementalAnalysis.computeKey(classPath, executionPlan, analysisOptions.analysisFeatureSettingList));
+        reportingClassList = incrementalAnalysis.getClassesToAnalyze(appClassList);
+    }
+
     /**
      * Create an execution plan.
      *
@@ -958,7 +1114,7 @@ public class FindBugs2 implements IFindBugsEngine {
             int[] classesPerPass = new int[executionPlan.getNumPasses()];
             classesPerPass[0] = referencedClassSet.size();
             for (int i = 0; i < classesPerPass.length; i++) {
-                classesPerPass[i] = i == 0 ? referencedClassSet.size() : appClassList.size();
+                classesPerPass[i] = i == 0 ? referencedClassSet.size() : reportingClassList.size();
             }
             progress.predictPassCount(classesPerPass);
             XFactory factory = AnalysisContext.currentXFactory();
@@ -989,15 +1145,29 @@ public class FindBugs2 implements IFindBugsEngine {
                 // gathers information about referenced classes.
                 boolean isNonReportingFirstPass = multiplePasses && passCount == 0;
 
+                // Passes may be analyzed by several threads; the detectors of
+                // a reporting pass then report through a reporter that keeps
+                // the bugs in class order
+                boolean parallel = analysisOptions.numberOfThreads > 1;
+                ClassOrderedBugReporter orderedReporter = null;
+                if (parallel && !isNonReportingFirstPass) {
+                    orderedReporter = new ClassOrderedBugReporter(bugReporter) {
+                        @Override
+                        protected void classPublished(int classIndex) {
+                            progress.finishClass();
+                        }
+                    };
+                }
+
                 // Instantiate the detectors
-                Detector2[] detectorList = pass.instantiateDetector2sInPass(bugReporter);
+                Detector2[] detectorList = pass.instantiateDetector2sInPass(orderedReporter != null ? orderedReporter : bugReporter);
 
                 // If there are multiple passes, then on the first pass,
                 // we apply detectors to all classes referenced by the
                 // application classes.
                 // On subsequent passes, we apply detector only to application
                 // classes.
-                Collection<ClassDescriptor> classCollection = (isNonReportingFirstPass) ? referencedClassSet : appClassList;
+                Collection<ClassDescriptor> classCollection = (isNonReportingFirstPass) ? referencedClassSet : reportingClassList;
                 AnalysisContext.currentXFactory().canonicalizeAll();
                 if (PROGRESS || LIST_ORDER) {
                     System.out.printf("%6d : Pass %d: %d classes%n", (System.currentTimeMillis() - startTime)/1000, passCount,  classCollection.size());
@@ -1031,92 +1201,19 @@ public class FindBugs2 implements IFindBugsEngine {
                 }
                 AnalysisContext currentAnalysisContext = AnalysisContext.currentAnalysisContext();
                 currentAnalysisContext.updateDatabases(passCount);
+                currentAnalysisContext.setBoolProperty(AnalysisFeatures.SHARE_DECODED_BYTECODE,
+                        SHARE_DECODED_BYTECODE && pass.getNumBytecodeScanningDetectors() > 1);
 
                 progress.startAnalysis(classCollection.size());
-                int count = 0;
                 Global.getAnalysisCache().purgeAllMethodAnalysis();
                 Global.getAnalysisCache().purgeClassAnalysis(FBClassReader.class);
-                for (ClassDescriptor classDescriptor : classCollection) {
-                    long classStartNanoTime = 0;
-                    if (PROGRESS) {
-                        classStartNanoTime = System.nanoTime();
-                        System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
-                                passCount, executionPlan.getNumPasses(), count,
-                                classCollection.size(), classDescriptor);
-                    }
-                    count++;
-                    if (!isNonReportingFirstPass && count % 1000 == 0) {
-                        yourkitController.advanceGeneration(String.format("Pass %d.%02d", passCount, count/1000));
-                    }
-
-
-                    // Check to see if class is excluded by the class screener.
-                    // In general, we do not want to screen classes from the
-                    // first pass, even if they would otherwise be excluded.
-                    if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
-                            && !classScreener.matches(classDescriptor.toResourceName())) {
-                        if (DEBUG) {
-                            System.out.println("*** Excluded by class screener");
-                        }
-                        continue;
-                    }
-                    boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
-                    if (isHuge && currentAnalysisContext.isApplicationClass(classDescriptor)) {
-                        bugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
-                        .addClass(classDescriptor));
-                    }
-                    currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
-                    notifyClassObservers(classDescriptor);
-                    profiler.startContext(currentClassName);
-                    currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
-
-                    try {
-                        for (Detector2 detector : detectorList) {
-                            if (Thread.interrupted()) {
-                                throw new InterruptedException();
-                            }
-                            if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
-                                continue;
-                            }
-                            if (DEBUG) {
-                                System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
-                                // System.out.println("foo: " +
-                                // NonReportingDetector.class.isAssignableFrom(detector.getClass())
-                                // + ", bar: " + detector.getClass().getName());
-                            }
-                            try {
-                                profiler.start(detector.getClass());
-                                detector.visitClass(classDescriptor);
-                            } catch (ClassFormatException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } catch (MissingClassException e) {
-                                Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
-                            } catch (CheckedAnalysisException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } catch (RuntimeException e) {
-                                logRecoverableException(classDescriptor, detector, e);
-                            } finally {
-                                profiler.end(detector.getClass());
-                            }
-                        }
-                    } finally {
-
-                        progress.finishClass();
-                        profiler.endContext(currentClassName);
-                        currentAnalysisContext.clearClassBeingAnalyzed();
-                        if (PROGRESS) {
-                            long usecs = (System.nanoTime() - classStartNanoTime)/1000;
-                            if (usecs > 15000) {
-                                int classSize = currentAnalysisContext.getClassSize(classDescriptor);
-                                long speed = usecs /classSize;
-                                if (speed > 15) {
-                                    System.out.printf("  %6d usecs/byte  %6d msec  %6d bytes  %d pass %s%n", speed, usecs/1000, classSize, passCount,
-                                            classDescriptor);
-                                }
-                            }
-
-                        }
-                    }
+                if (parallel && isNonReportingFirstPass) {
+                    analyzeFirstPassInParallel(detectorList, new ArrayList<ClassDescriptor>(classCollection), passCount, startTime);
+                } else if (parallel) {
+                    analyzeClassesInParallel(detectorList, orderedReporter, new ArrayList<ClassDescriptor>(classCollection),
+                            passCount, startTime);
+                } else {
+                    analyzeClassesSequentially(detectorList, classCollection, passCount, isNonReportingFirstPass, startTime);
                 }
 
                 if (!passIterator.hasNext()) {
@@ -1127,11 +1224,29 @@ public class FindBugs2 implements IFindBugsEngine {
                     detector.finishPass();
                 }
 
+                if (isNonReportingFirstPass && databaseCache != null) {
+                    try {
+                        databaseCache.store(AnalysisContext.currentAnalysisContext(), classCollection);
+                    } catch (IOException e) {
+                        AnalysisContext.logError("Error storing interprocedural databases in "
+                                + databaseCache.getDirectory(), e);
+                    }
+                }
+
                 progress.finishPerClassAnalysis();
 
                 passCount++;
             }
 
+            if (incrementalAnalysis != null) {
+                incrementalAnalysis.reportPreviousResults();
+                try {
+                    incrementalAnalysis.save(project, bugReporter.getProjectStats());
+                } catch (IOException e) {
+                    AnalysisContext.logError("Error saving incremental analysis state to "
+                            + analysisOptions.incrementalStateFile, e);
+                }
+            }
 
         } finally {
 
@@ -1145,18 +1260,462 @@ public class FindBugs2 implements IFindBugsEngine {
 
     }
 
+    /**
+     * Analyze the classes of a pass in the current thread.
+     *
+     * @param detectorList
+     *            the detectors of the pass
+     * @param classCollection
+     *            the classes to analyze, in analysis order
+     */
+    private void analyzeClassesSequentially(Detector2[] detectorList, Collection<ClassDescriptor> classCollection,
+            int passCount, boolean isNonReportingFirstPass, long startTime) throws InterruptedException {
+        AnalysisContext currentAnalysisContext = AnalysisContext.currentAnalysisContext();
+        Profiler profiler = bugReporter.getProjectStats().getProfiler();
+        int count = 0;
+        for (ClassDescriptor classDescriptor : classCollection) {
+            long classStartNanoTime = 0;
+            if (PROGRESS) {
+                classStartNanoTime = System.nanoTime();
+                System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
+                        passCount, executionPlan.getNumPasses(), count,
+                        classCollection.size(), classDescriptor);
+            }
+            count++;
+            if (!isNonReportingFirstPass && count % 1000 == 0) {
+                yourkitController.advanceGeneration(String.format("Pass %d.%02d", passCount, count/1000));
+            }
+
+
+            // Check to see if class is excluded by the class screener.
+            // In general, we do not want to screen classes from the
+            // first pass, even if they would otherwise be excluded.
+            if ((SCREEN_FIRST_PASS_CLASSES || !isNonReportingFirstPass)
+                    && !classScreener.matches(classDescriptor.toResourceName())) {
+                if (DEBUG) {
+                    System.out.println("*** Excluded by class screener");
+                }
+                continue;
+            }
+            boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
+            if (isHuge && currentAnalysisContext.isApplicationClass(classDescriptor)) {
+                bugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
+                .addClass(classDescriptor));
+            }
+            currentClassName = ClassName.toDottedClassName(classDescriptor.getClassName());
+            notifyClassObservers(classDescriptor);
+            profiler.startContext(currentClassName);
+            currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
+
+            try {
+                for (Detector2 detector : detectorList) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                        continue;
+                    }
+                    if (DEBUG) {
+                        System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
+                        // System.out.println("foo: " +
+                        // NonReportingDetector.class.isAssignableFrom(detector.getClass())
+                        // + ", bar: " + detector.getClass().getName());
+                    }
+                    applyDetector(profiler, detector, classDescriptor);
+                }
+            } finally {
+
+                progress.finishClass();
+                profiler.endContext(currentClassName);
+                currentAnalysisContext.clearClassBeingAnalyzed();
+                if (PROGRESS) {
+                    reportSlowClass(classStartNanoTime, passCount, classDescriptor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Print the analysis time of a class, if the class took long to analyze
+     * for its size.
+     */
+    private void reportSlowClass(long classStartNanoTime, int passCount, ClassDescriptor classDescriptor) {
+        long usecs = (System.nanoTime() - classStartNanoTime)/1000;
+        if (usecs > 15000) {
+            int classSize = AnalysisContext.currentAnalysisContext().getClassSize(classDescriptor);
+            long speed = usecs /classSize;
+            if (speed > 15) {
+                System.out.printf("  %6d usecs/byte  %6d msec  %6d bytes  %d pass %s%n", speed, usecs/1000, classSize, passCount,
+                        classDescriptor);
+            }
+        }
+    }
+
     /**
      * Notify all IClassObservers that we are visiting given class.
      *
      * @param classDescriptor
      *            the class being visited
      */
-    private void notifyClassObservers(ClassDescriptor classDescriptor) {
+    private synchronized void notifyClassObservers(ClassDescriptor classDescriptor) {
         for (IClassObserver observer : classObserverList) {
             observer.observeClass(classDescriptor);
         }
     }
 
+    /**
+     * Apply a detector to a class, logging recoverable errors.
+     *
+     * @param profiler
+     *            profiler of the current thread
+     * @param detector
+     *            the detector
+     * @param classDescriptor
+     *            the class to analyze
+     */
+    private void applyDetector(Profiler profiler, Detector2 detector, ClassDescriptor classDescriptor) {
+        AnalysisBudget previousBudget = AnalysisBudget.enter(createBudget(detector));
+        try {
+            profiler.start(detector.getClass());
+            detector.visitClass(classDescriptor);
+        } catch (AnalysisBudgetExceededException e) {
+            // Already reported; the detector goes on with the next class
+        } catch (ClassFormatException e) {
+            logRecoverableException(classDescriptor, detector, e);
+        } catch (MissingClassException e) {
+            Global.getAnalysisCache().getErrorLogger().reportMissingClass(e.getClassDescriptor());
+        } catch (CheckedAnalysisException e) {
+            logRecoverableException(classDescriptor, detector, e);
+        } catch (RuntimeException e) {
+            logRecoverableException(classDescriptor, detector, e);
+        } finally {
+            profiler.end(detector.getClass());
+            AnalysisBudget.exit(previousBudget);
+        }
+    }
+
+    /**
+     * Create the budget of a detector for analyzing a class.
+     *
+     * @return the budget, or null if the detectors have no budget
+     */
+    private @CheckForNull
+    AnalysisBudget createBudget(Detector2 detector) {
+        if (analysisOptions.detectorCpuBudgetMillis <= 0 && analysisOptions.detectorAllocationBudgetMB <= 0) {
+            return null;
+        }
+        // Methods are visited by the detector wrapped by the adapter
+        Object visitor = detector instanceof DetectorToDetector2Adapter ? ((DetectorToDetector2Adapter) detector)
+                .getDetector() : detector;
+        return new AnalysisBudget(visitor, detector.getDetectorClassName(),
+                analysisOptions.detectorCpuBudgetMillis * 1000000L,
+                analysisOptions.detectorAllocationBudgetMB * 1024L * 1024L);
+    }
+
+    /**
+     * Analysis of one class by a worker thread.
+     */
+    private interface ClassAnalysisTask {
+        void analyzeClass(int classIndex, ClassDescriptor classDescriptor) throws InterruptedException;
+    }
+
+    /**
+     * Analyze the classes of a reporting pass using
+     * {@link AnalysisOptions#numberOfThreads} worker threads. Each detector
+     * still sees the classes one at a time and in the given order, and the
+     * bugs are reported in that order, so the results are the same as those of
+     * a single-threaded analysis.
+     *
+     * @param detectorList
+     *            the detectors of the pass, reporting to orderedReporter
+     * @param orderedReporter
+     *            the reporter publishing the bugs in class order
+     * @param classList
+     *            the classes to analyze, in analysis order
+     * @param passCount
+     *            number of the pass
+     * @param startTime
+     *            time the analysis of the application started
+     */
+    private void analyzeClassesInParallel(final Detector2[] detectorList, final ClassOrderedBugReporter orderedReporter,
+            List<ClassDescriptor> classList, int passCount, long startTime) throws InterruptedException {
+        final DetectorPipeline pipeline = new DetectorPipeline(detectorList.length);
+        analyzeInWorkerThreads(classList, passCount, true, startTime, new ClassAnalysisTask() {
+            @Override
+            public void analyzeClass(int classIndex, ClassDescriptor classDescriptor) throws InterruptedException {
+                analyzeClassInPipeline(detectorList, orderedReporter, pipeline, classIndex, classDescriptor);
+            }
+        });
+    }
+
+    /**
+     * Analyze the classes of the first pass using
+     * {@link AnalysisOptions#numberOfThreads} worker threads. Each thread
+     * applies its own partial instance of every {@link MergeableDetector} to
+     * the classes it analyzes; the partial results are merged into the
+     * detectors of the pass once all classes have been analyzed. The other
+     * detectors are applied to one class at a time, in the given order, as in
+     * a single-threaded analysis.
+     *
+     * @param detectorList
+     *            the detectors of the pass
+     * @param classList
+     *            the classes to analyze, in analysis order
+     * @param passCount
+     *            number of the pass
+     * @param startTime
+     *            time the analysis of the application started
+     */
+    private void analyzeFirstPassInParallel(Detector2[] detectorList, List<ClassDescriptor> classList, int passCount,
+            long startTime) throws InterruptedException {
+        final List<MergeableDetector> mergeableDetectors = new ArrayList<MergeableDetector>();
+        List<Detector2> sequentialDetectors = new ArrayList<Detector2>();
+        for (Detector2 detector : detectorList) {
+            MergeableDetector mergeable = getMergeableDetector(detector);
+            if (mergeable != null) {
+                mergeableDetectors.add(mergeable);
+            } else {
+                sequentialDetectors.add(detector);
+            }
+        }
+        final Detector2[] sequentialDetectorList = sequentialDetectors.toArray(new Detector2[sequentialDetectors.size()]);
+        final List<MergeableDetector[]> partialDetectorLists = Collections
+                .synchronizedList(new ArrayList<MergeableDetector[]>());
+        final ThreadLocal<Detector2[]> partialDetectorsOfThread = new ThreadLocal<Detector2[]>() {
+            @Override
+            protected Detector2[] initialValue() {
+                MergeableDetector[] partialDetectors = new MergeableDetector[mergeableDetectors.size()];
+                Detector2[] result = new Detector2[partialDetectors.length];
+                for (int i = 0; i < partialDetectors.length; i++) {
+                    partialDetectors[i] = mergeableDetectors.get(i).createPartialDetector();
+                    result[i] = partialDetectors[i] instanceof Detector2 ? (Detector2) partialDetectors[i]
+                            : new DetectorToDetector2Adapter((Detector) partialDetectors[i]);
+                }
+                partialDetectorLists.add(partialDetectors);
+                return result;
+            }
+        };
+        final DetectorPipeline pipeline = new DetectorPipeline(1);
+        analyzeInWorkerThreads(classList, passCount, false, startTime, new ClassAnalysisTask() {
+            @Override
+            public void analyzeClass(int classIndex, ClassDescriptor classDescriptor) throws InterruptedException {
+                analyzeFirstPassClass(partialDetectorsOfThread.get(), sequentialDetectorList, pipeline, classIndex,
+                        classDescriptor);
+            }
+        });
+        for (MergeableDetector[] partialDetectors : partialDetectorLists) {
+            for (int i = 0; i < partialDetectors.length; i++) {
+                mergeableDetectors.get(i).mergePartialResults(partialDetectors[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the MergeableDetector a detector of a pass is, or adapts.
+     *
+     * @return the MergeableDetector, or null if the detector's results can't
+     *         be merged
+     */
+    private static @CheckForNull MergeableDetector getMergeableDetector(Detector2 detector) {
+        Object d = detector;
+        if (detector instanceof DetectorToDetector2Adapter) {
+            d = ((DetectorToDetector2Adapter) detector).getDetector();
+        }
+        return d instanceof MergeableDetector ? (MergeableDetector) d : null;
+    }
+
+    /**
+     * Analyze the classes in the given order using
+     * {@link AnalysisOptions#numberOfThreads} worker threads.
+     *
+     * @param classList
+     *            the classes to analyze, in analysis order
+     * @param passCount
+     *            number of the pass
+     * @param isReportingPass
+     *            true if the pass reports bugs
+     * @param startTime
+     *            time the analysis of the application started
+     * @param task
+     *            the analysis of a class
+     */
+    private void analyzeInWorkerThreads(final List<ClassDescriptor> classList, final int passCount,
+            boolean isReportingPass, final long startTime, final ClassAnalysisTask task) throws InterruptedException {
+        final DescriptorFactory descriptorFactory = DescriptorFactory.instance();
+        ExecutorService executor = Executors.newFixedThreadPool(analysisOptions.numberOfThreads, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                // The analysis cache and analysis context are inherited
+                // from the creating thread
+                Thread t = new Thread(r, "FindBugs worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+            // The executor runs the classes in submission order, so the
+            // smallest class being analyzed can always make progress
+            for (int i = 0; i < classList.size(); i++) {
+                final int classIndex = i;
+                final ClassDescriptor classDescriptor = classList.get(i);
+                completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        DescriptorFactory.setInstance(descriptorFactory);
+                        long classStartNanoTime = 0;
+                        if (PROGRESS) {
+                            classStartNanoTime = System.nanoTime();
+                            System.out.printf("%6d %d/%d  %d/%d %s%n", (System.currentTimeMillis() - startTime)/1000,
+                                    passCount, executionPlan.getNumPasses(), classIndex,
+                                    classList.size(), classDescriptor);
+                        }
+                        try {
+                            task.analyzeClass(classIndex, classDescriptor);
+                        } finally {
+                            if (PROGRESS) {
+                                reportSlowClass(classStartNanoTime, passCount, classDescriptor);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (int i = 0; i < classList.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof InterruptedException) {
+                        throw new InterruptedException();
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException("Unexpected exception analyzing classes", cause);
+                }
+                int count = i + 1;
+                if (isReportingPass && count % 1000 == 0) {
+                    yourkitController.advanceGeneration(String.format("Pass %d.%02d", passCount, count/1000));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Analyze one class of a multithreaded first pass: apply the partial
+     * detectors of the current thread, then wait for the preceding classes
+     * to be done by the other detectors before applying them.
+     */
+    private void analyzeFirstPassClass(Detector2[] partialDetectors, Detector2[] sequentialDetectors,
+            DetectorPipeline pipeline, int classIndex, ClassDescriptor classDescriptor) throws InterruptedException {
+        if (SCREEN_FIRST_PASS_CLASSES && !classScreener.matches(classDescriptor.toResourceName())) {
+            pipeline.skipClass(classIndex);
+            return;
+        }
+        AnalysisContext currentAnalysisContext = AnalysisContext.currentAnalysisContext();
+        Profiler profiler = bugReporter.getProjectStats().getProfiler();
+        String className = ClassName.toDottedClassName(classDescriptor.getClassName());
+        boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
+        profiler.startContext(className);
+        currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
+        try {
+            for (Detector2 detector : partialDetectors) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                    continue;
+                }
+                applyDetector(profiler, detector, classDescriptor);
+            }
+            pipeline.awaitTurn(0, classIndex);
+            try {
+                if (isHuge && currentAnalysisContext.isApplicationClass(classDescriptor)) {
+                    bugReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
+                    .addClass(classDescriptor));
+                }
+                currentClassName = className;
+                notifyClassObservers(classDescriptor);
+                for (Detector2 detector : sequentialDetectors) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                        continue;
+                    }
+                    if (DEBUG) {
+                        System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
+                    }
+                    applyDetector(profiler, detector, classDescriptor);
+                }
+                progress.finishClass();
+            } finally {
+                pipeline.finishTurn(0);
+            }
+        } finally {
+            profiler.endContext(className);
+            currentAnalysisContext.clearClassBeingAnalyzed();
+        }
+    }
+
+    /**
+     * Analyze one class of a multithreaded pass, waiting for each detector to
+     * finish the preceding classes before applying it.
+     */
+    private void analyzeClassInPipeline(Detector2[] detectorList, ClassOrderedBugReporter orderedReporter,
+            DetectorPipeline pipeline, int classIndex, ClassDescriptor classDescriptor) throws InterruptedException {
+        if (!classScreener.matches(classDescriptor.toResourceName())) {
+            pipeline.skipClass(classIndex);
+            orderedReporter.skipClass(classIndex);
+            return;
+        }
+        AnalysisContext currentAnalysisContext = AnalysisContext.currentAnalysisContext();
+        Profiler profiler = bugReporter.getProjectStats().getProfiler();
+        String className = ClassName.toDottedClassName(classDescriptor.getClassName());
+        orderedReporter.startClass();
+        try {
+            boolean isHuge = currentAnalysisContext.isTooBig(classDescriptor);
+            if (isHuge && currentAnalysisContext.isApplicationClass(classDescriptor)) {
+                orderedReporter.reportBug(new BugInstance("SKIPPED_CLASS_TOO_BIG", Priorities.NORMAL_PRIORITY)
+                .addClass(classDescriptor));
+            }
+            currentClassName = className;
+            notifyClassObservers(classDescriptor);
+            profiler.startContext(className);
+            currentAnalysisContext.setClassBeingAnalyzed(classDescriptor);
+            try {
+                for (int i = 0; i < detectorList.length; i++) {
+                    Detector2 detector = detectorList[i];
+                    pipeline.awaitTurn(i, classIndex);
+                    try {
+                        if (isHuge && !FirstPassDetector.class.isAssignableFrom(detector.getClass())) {
+                            continue;
+                        }
+                        if (DEBUG) {
+                            System.out.println("Applying " + detector.getDetectorClassName() + " to " + classDescriptor);
+                        }
+                        applyDetector(profiler, detector, classDescriptor);
+                    } finally {
+                        pipeline.finishTurn(i);
+                    }
+                }
+            } finally {
+                profiler.endContext(className);
+                currentAnalysisContext.clearClassBeingAnalyzed();
+            }
+        } finally {
+            orderedReporter.finishClass(classIndex);
+        }
+    }
+
     /**
      * Report an exception that occurred while analyzing a class with a
      * detector.
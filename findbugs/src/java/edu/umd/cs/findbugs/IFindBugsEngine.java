@@ -265,6 +265,18 @@ public interface IFindBugsEngine {
      */
     public void setScanNestedArchives(boolean scanNestedArchives);
 
+    /**
+     * Set whether the classes of the auxiliary classpath are resolved only on
+     * demand. If so, auxiliary codebases are not scanned while building the
+     * classpath, and the first pass only analyzes the application classes
+     * and their supertypes, rather than every class referenced by them.
+     * Other auxiliary classes are parsed when an analysis asks for them.
+     *
+     * @param lazyAuxClasspath
+     *            true to resolve auxiliary classes on demand
+     */
+    public void setLazyAuxClasspath(boolean lazyAuxClasspath);
+
     /**
      * Set whether or not to generate an empty output file if there were no
      * class files specified.
@@ -274,6 +286,76 @@ public interface IFindBugsEngine {
      */
     public void setNoClassOk(boolean noClassOk);
 
+    /**
+     * Set the number of threads used to analyze the classes. Bugs are
+     * reported in the same order as with a single thread. In the first pass,
+     * only the {@link MergeableDetector}s run concurrently with the other
+     * detectors.
+     *
+     * @param numberOfThreads
+     *            number of analysis threads (1 for single-threaded analysis)
+     */
+    public void setNumberOfThreads(int numberOfThreads);
+
+    /**
+     * Set the memory budget of the analysis cache. Evictable analysis results
+     * are then evicted according to their approximate size, instead of their
+     * number.
+     *
+     * @param analysisCacheMB
+     *            budget in megabytes, or 0 to bound results by entry count
+     */
+    public void setAnalysisCacheMB(int analysisCacheMB);
+
+    /**
+     * Set the budget of each detector for analyzing a method. A detector
+     * exceeding its budget on a method skips the rest of the method (or of the
+     * class, if the detector doesn't visit the methods one at a time); the
+     * skipped analysis is reported as an analysis error.
+     *
+     * @param cpuMillis
+     *            CPU time budget in milliseconds, or 0 for no limit
+     * @param allocationMB
+     *            allocated memory budget in megabytes, or 0 for no limit
+     */
+    public void setDetectorBudget(int cpuMillis, int allocationMB);
+
+    /**
+     * Set the directory in which the interprocedural databases computed for
+     * the referenced (library) classes are cached between analyses. Only
+     * used when referenced classes are analyzed interprocedurally (e.g.,
+     * -effort:max). Only the unconditional parameter dereference and return
+     * value nullness databases are cached, and any change to the auxiliary
+     * classpath starts a new cache.
+     *
+     * @param databaseCacheDir
+     *            the cache directory, or null to disable the cache
+     */
+    public void setDatabaseCacheDir(String databaseCacheDir);
+
+    /**
+     * Write a detailed profile of the analysis: the time, allocated memory and
+     * analysis cache misses of each detector and analysis engine, with the
+     * distribution of its time over the analyzed classes.
+     *
+     * @param profileReportFile
+     *            the report file, written as CSV if its name ends with
+     *            ".csv" and as JSON otherwise, or null for no report
+     * @see edu.umd.cs.findbugs.log.ProfileReport
+     */
+    public void setProfileReportFile(String profileReportFile);
+
+    /**
+     * Analyze incrementally: only the application classes which changed since
+     * the previous analysis with the same state file, and the classes
+     * depending on them, are analyzed. The warnings of the other classes are
+     * taken from the previous analysis, and the state is updated.
+     *
+     * @param incrementalStateFile
+     *            the state file, or null to analyze all classes
+     */
+    public void setIncrementalStateFile(String incrementalStateFile);
+
     /**
      * Set the DetectorFactoryCollection from which plugins/detectors may be
      * accessed.
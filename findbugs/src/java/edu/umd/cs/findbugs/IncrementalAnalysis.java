@@ -0,0 +1,473 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.dom4j.DocumentException;
+
+import edu.umd.cs.findbugs.PackageStats.ClassStats;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.interproc.InterproceduralDatabaseCache;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
+import edu.umd.cs.findbugs.classfile.engine.ClassParser;
+import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
+import edu.umd.cs.findbugs.plan.AnalysisPass;
+import edu.umd.cs.findbugs.plan.ExecutionPlan;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Support for incremental analysis: only the application classes which changed
+ * since the previous analysis, and the classes depending on them, are analyzed
+ * by the reporting passes. The warnings of the other classes are taken from
+ * the results of the previous analysis.
+ * <p>
+ * The state of the previous analysis is kept in two files: a bug collection
+ * (in the usual XML format) holding the unfiltered warnings and class
+ * statistics, and next to it a file with the hash of every application class
+ * file. The hashes file also records a key identifying the FindBugs release,
+ * the auxiliary classpath, the detectors and the analysis features; if any of
+ * them changed, everything is analyzed again.
+ * <p>
+ * A class is reanalyzed if its class file changed, or if it depends on a
+ * changed or removed class, directly or through other application classes: a
+ * class depends on the classes it refers to (including its supertypes), on
+ * its enclosing class and on the classes nested in it. The dependencies are
+ * only kept while the classes to analyze are determined. Warnings the
+ * reanalyzed classes cause for other
+ * classes are ignored: the warnings of classes which are not reanalyzed
+ * always come from the previous analysis.
+ *
+ * @see FindBugs2
+ */
+public class IncrementalAnalysis {
+
+    private static final boolean DEBUG = SystemProperties.getBoolean("findbugs.incremental.debug");
+
+    static final String HASHES_SUFFIX = ".hashes";
+
+    private final File stateFile;
+
+    private final File hashesFile;
+
+    private final Map<ClassDescriptor, String> classHashes = new HashMap<ClassDescriptor, String>();
+
+    private final Set<BugInstance> results = new TreeSet<BugInstance>(SortedBugCollection.BugInstanceComparator.instance);
+
+    private String key;
+
+    private @CheckForNull SortedBugCollection previous;
+
+    private Set<ClassDescriptor> appClasses = Collections.emptySet();
+
+    private Set<ClassDescriptor> dirtyClasses = Collections.emptySet();
+
+    private BugReporter bugReporter;
+
+    /**
+     * @param stateFile
+     *            the file holding the warnings of the previous analysis; the
+     *            class hashes are kept in the same file name with ".hashes"
+     *            appended
+     */
+    public IncrementalAnalysis(File stateFile) {
+        this.stateFile = stateFile;
+        this.hashesFile = new File(stateFile.getPath() + HASHES_SUFFIX);
+    }
+
+    /**
+     * Compute the key identifying the settings an analysis depends on besides
+     * the application classes.
+     *
+     * @param classPath
+     *            the classpath of the analysis
+     * @param executionPlan
+     *            the execution plan
+     * @param featureSettings
+     *            the analysis feature settings
+     * @return the key
+     * @throws IOException
+     *             if an auxiliary codebase can't be read
+     */
+    public static String computeKey(IClassPath classPath, ExecutionPlan executionPlan,
+            AnalysisFeatureSetting[] featureSettings) throws IOException {
+        StringBuilder settings = new StringBuilder(InterproceduralDatabaseCache.computeKey(classPath));
+        for (Iterator<AnalysisPass> i = executionPlan.passIterator(); i.hasNext();) {
+            settings.append("|");
+            for (DetectorFactory factory : i.next().getMembers()) {
+                settings.append(factory.getFullName()).append(",");
+            }
+        }
+        for (AnalysisFeatureSetting setting : featureSettings) {
+            settings.append("|").append(setting);
+        }
+        return hash(UTF8.getBytes(settings.toString()));
+    }
+
+    private static String hash(byte[] data) {
+        MessageDigest digest = Util.getMD5Digest();
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest(data)) {
+            result.append(String.format("%02x", b & 0xff));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Hash the application classes, compare them with the previous analysis,
+     * and determine which classes the reporting passes have to analyze.
+     *
+     * @param appClassList
+     *            the application classes
+     * @param key
+     *            the key computed by
+     *            {@link #computeKey(IClassPath, ExecutionPlan, AnalysisFeatureSetting[])}
+     * @throws InterruptedException
+     *             if the thread is interrupted
+     */
+    public void computeDirtyClasses(List<ClassDescriptor> appClassList, String key) throws InterruptedException {
+        this.key = key;
+        this.appClasses = new HashSet<ClassDescriptor>(appClassList);
+        Map<ClassDescriptor, String> previousHashes = readPreviousState();
+
+        // Classes which depend on each application class, and on each class
+        // removed since the previous analysis
+        Map<ClassDescriptor, Set<ClassDescriptor>> dependents = new HashMap<ClassDescriptor, Set<ClassDescriptor>>();
+        for (ClassDescriptor c : appClassList) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                ClassData classData = Global.getAnalysisCache().getClassAnalysis(ClassData.class, c);
+                classHashes.put(c, hash(classData.getData()));
+                if (previousHashes != null) {
+                    addDependencies(dependents, c, classData, previousHashes.keySet());
+                }
+            } catch (CheckedAnalysisException e) {
+                AnalysisContext.logError("Couldn't read class " + c, e);
+            }
+        }
+        if (previousHashes == null) {
+            dirtyClasses = appClasses;
+            return;
+        }
+
+        Set<ClassDescriptor> changed = new HashSet<ClassDescriptor>();
+        for (ClassDescriptor c : appClassList) {
+            String hash = classHashes.get(c);
+            if (hash == null || !hash.equals(previousHashes.get(c))) {
+                changed.add(c);
+            }
+        }
+        Set<ClassDescriptor> changedOrRemoved = new HashSet<ClassDescriptor>(changed);
+        for (ClassDescriptor c : previousHashes.keySet()) {
+            if (!appClasses.contains(c)) {
+                changedOrRemoved.add(c);
+            }
+        }
+
+        // Everything depending on a changed or removed class, directly or
+        // through other classes
+        Set<ClassDescriptor> dirty = new HashSet<ClassDescriptor>(changedOrRemoved);
+        LinkedList<ClassDescriptor> workList = new LinkedList<ClassDescriptor>(changedOrRemoved);
+        while (!workList.isEmpty()) {
+            Set<ClassDescriptor> d = dependents.get(workList.removeFirst());
+            if (d == null) {
+                continue;
+            }
+            for (ClassDescriptor dependent : d) {
+                if (dirty.add(dependent)) {
+                    workList.add(dependent);
+                }
+            }
+        }
+        dirty.retainAll(appClasses);
+        dirtyClasses = dirty;
+        if (DEBUG) {
+            System.out.println("Incremental analysis: " + changed.size() + " changed classes, "
+                    + (changedOrRemoved.size() - changed.size()) + " removed, " + dirty.size() + " to analyze");
+        }
+    }
+
+    /**
+     * Record the application classes a class depends on: the classes referred
+     * to by its constant pool (which include its supertypes and the classes
+     * it calls), its enclosing class, and the classes nested in it.
+     */
+    private void addDependencies(Map<ClassDescriptor, Set<ClassDescriptor>> dependents, ClassDescriptor c,
+            ClassData classData, Set<ClassDescriptor> previousAppClasses) throws CheckedAnalysisException {
+        ReferencedClassesBuilder builder = new ReferencedClassesBuilder();
+        new ClassParser(new DataInputStream(classData.getInputStream()), c, classData.getCodeBaseEntry()).parse(builder);
+        for (ClassDescriptor referenced : builder.referencedClasses) {
+            if (!referenced.equals(c) && (appClasses.contains(referenced) || previousAppClasses.contains(referenced))) {
+                addDependency(dependents, c, referenced);
+            }
+        }
+        XClass xclass = getXClass(c);
+        ClassDescriptor enclosing = xclass == null ? null : xclass.getImmediateEnclosingClass();
+        if (enclosing != null) {
+            addDependency(dependents, c, enclosing);
+            addDependency(dependents, enclosing, c);
+        }
+    }
+
+    private static void addDependency(Map<ClassDescriptor, Set<ClassDescriptor>> dependents, ClassDescriptor dependent,
+            ClassDescriptor dependency) {
+        Set<ClassDescriptor> d = dependents.get(dependency);
+        if (d == null) {
+            d = new HashSet<ClassDescriptor>();
+            dependents.put(dependency, d);
+        }
+        d.add(dependent);
+    }
+
+    /**
+     * Keeps only the classes referred to by the constant pool of the parsed
+     * class.
+     */
+    private static class ReferencedClassesBuilder extends ClassNameAndSuperclassInfo.Builder {
+        Collection<ClassDescriptor> referencedClasses = Collections.emptyList();
+
+        @Override
+        public void setReferencedClassDescriptors(Collection<ClassDescriptor> referencedClassDescriptorList) {
+            this.referencedClasses = referencedClassDescriptorList;
+        }
+    }
+
+    private static @CheckForNull XClass getXClass(ClassDescriptor c) {
+        try {
+            return Global.getAnalysisCache().getClassAnalysis(XClass.class, c);
+        } catch (CheckedAnalysisException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the hashes and warnings of the previous analysis.
+     *
+     * @return the previous class hashes, or null if there is no usable
+     *         previous analysis
+     */
+    private @CheckForNull Map<ClassDescriptor, String> readPreviousState() {
+        if (!hashesFile.isFile() || !stateFile.isFile()) {
+            return null;
+        }
+        Map<ClassDescriptor, String> previousHashes = new HashMap<ClassDescriptor, String>();
+        try {
+            BufferedReader reader = UTF8.bufferedReader(new FileInputStream(hashesFile));
+            try {
+                if (!key.equals(reader.readLine())) {
+                    if (DEBUG) {
+                        System.out.println("Incremental analysis: settings changed, analyzing all classes");
+                    }
+                    return null;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        previousHashes.put(DescriptorFactory.instance().getClassDescriptor(line.substring(0, space)),
+                                line.substring(space + 1));
+                    }
+                }
+            } finally {
+                Util.closeSilently(reader);
+            }
+            SortedBugCollection bugs = new SortedBugCollection();
+            bugs.readXML(stateFile);
+            previous = bugs;
+            return previousHashes;
+        } catch (IOException e) {
+            AnalysisContext.logError("Couldn't read previous analysis from " + stateFile, e);
+        } catch (DocumentException e) {
+            AnalysisContext.logError("Couldn't read previous analysis from " + stateFile, e);
+        }
+        return null;
+    }
+
+    /**
+     * @param appClassList
+     *            the application classes, in analysis order
+     * @return the application classes to analyze in the reporting passes, in
+     *         the same order
+     */
+    public List<ClassDescriptor> getClassesToAnalyze(List<ClassDescriptor> appClassList) {
+        if (dirtyClasses == appClasses) {
+            return appClassList;
+        }
+        List<ClassDescriptor> result = new ArrayList<ClassDescriptor>(dirtyClasses.size());
+        for (ClassDescriptor c : appClassList) {
+            if (dirtyClasses.contains(c)) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wrap the bug reporter of the analysis, so that the warnings it reports
+     * are recorded for the next incremental analysis, and warnings for classes
+     * which are not reanalyzed are dropped.
+     *
+     * @param bugReporter
+     *            the bug reporter used by the detectors
+     * @return the bug reporter to use instead
+     */
+    public BugReporter recordingBugReporter(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+        return new DelegatingBugReporter(bugReporter) {
+            @Override
+            public void reportBug(@Nonnull BugInstance bugInstance) {
+                // Warnings for classes which are not reanalyzed come from the
+                // previous analysis: detectors which look at several classes
+                // only saw part of the application
+                if (!isReanalyzed(bugInstance)) {
+                    return;
+                }
+                // Ignored warnings are never reported, so they need not be
+                // recorded
+                if (bugInstance.getPriority() < Priorities.IGNORE_PRIORITY) {
+                    synchronized (results) {
+                        results.add(bugInstance);
+                    }
+                }
+                getDelegate().reportBug(bugInstance);
+            }
+        };
+    }
+
+    private boolean isReanalyzed(BugInstance bugInstance) {
+        ClassDescriptor c = getPrimaryClass(bugInstance);
+        return dirtyClasses.contains(c) || !appClasses.contains(c);
+    }
+
+    private static ClassDescriptor getPrimaryClass(BugInstance bugInstance) {
+        return DescriptorFactory.createClassDescriptorFromDottedClassName(bugInstance.getPrimaryClass().getClassName());
+    }
+
+    /**
+     * Report the warnings of the previous analysis for the classes which were
+     * not analyzed again, and add their class statistics.
+     */
+    public void reportPreviousResults() {
+        SortedBugCollection previousBugs = previous;
+        if (previousBugs == null || bugReporter == null) {
+            return;
+        }
+        ProjectStats stats = bugReporter.getProjectStats();
+        for (PackageStats packageStats : previousBugs.getProjectStats().getPackageStats()) {
+            for (ClassStats classStats : packageStats.getClassStats()) {
+                ClassDescriptor c = DescriptorFactory.createClassDescriptorFromDottedClassName(classStats.getName());
+                if (appClasses.contains(c) && !dirtyClasses.contains(c)) {
+                    stats.addClass(classStats.getName(), classStats.getSourceFile(), classStats.isInterface(),
+                            classStats.size());
+                }
+            }
+        }
+        for (BugInstance bug : previousBugs) {
+            if (!isReanalyzed(bug) && results.add(bug)) {
+                bugReporter.reportBug(bug);
+            }
+        }
+        previous = null;
+    }
+
+    /**
+     * Save the warnings and class hashes of this analysis, for the next
+     * incremental analysis.
+     *
+     * @param project
+     *            the analyzed project
+     * @param projectStats
+     *            the statistics of the analysis
+     * @throws IOException
+     *             if the state can't be written
+     */
+    public void save(Project project, ProjectStats projectStats) throws IOException {
+        // Remove the hashes first, so that an interrupted save leaves no
+        // usable state
+        if (hashesFile.exists() && !hashesFile.delete()) {
+            throw new IOException("Couldn't delete " + hashesFile);
+        }
+        SortedBugCollection bugs = new SortedBugCollection(project);
+        bugs.setDoNotUseCloud(true);
+        for (PackageStats packageStats : projectStats.getPackageStats()) {
+            for (ClassStats classStats : packageStats.getClassStats()) {
+                bugs.getProjectStats().addClass(classStats.getName(), classStats.getSourceFile(),
+                        classStats.isInterface(), classStats.size());
+            }
+        }
+        for (BugInstance bug : results) {
+            bugs.add(bug, false);
+        }
+        bugs.writeXML(stateFile);
+
+        Writer writer = UTF8.bufferedWriter(hashesFile);
+        try {
+            writer.write(key);
+            writer.write("\n");
+            for (Map.Entry<String, String> e : sortedHashes().entrySet()) {
+                writer.write(e.getKey());
+                writer.write(" ");
+                writer.write(e.getValue());
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Map<String, String> sortedHashes() {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Map.Entry<ClassDescriptor, String> e : classHashes.entrySet()) {
+            sorted.put(e.getKey().getClassName(), e.getValue());
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.Comparator;
+
+/**
+ * A comparator of bug instances that can compute a hashable key for each
+ * warning, so that warnings can be matched by looking up their key instead
+ * of being compared with every other warning.
+ * <p>
+ * Warnings which compare as equal must have equal keys; warnings with equal
+ * keys need not compare as equal, so the key may leave out criteria which are
+ * expensive to compute.
+ *
+ * @see edu.umd.cs.findbugs.workflow.Update
+ */
+public interface KeyedBugComparator extends Comparator<BugInstance> {
+
+    /**
+     * Get the matching key of a warning.
+     *
+     * @param bug
+     *            the warning
+     * @return a key, equal to the key of every warning which compares as
+     *         equal to the given warning
+     */
+    public Object getMatchingKey(BugInstance bug);
+}
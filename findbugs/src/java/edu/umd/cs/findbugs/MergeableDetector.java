@@ -0,0 +1,62 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+/**
+ * A first pass detector whose results can be collected by several instances,
+ * each visiting some of the classes, and then merged.
+ * <p>
+ * When the first pass is analyzed by several threads, each thread applies
+ * its own partial detector, created with {@link #createPartialDetector()}, to
+ * the classes it analyzes. Once all classes have been analyzed, the partial
+ * results are merged into the detector of the pass, whose
+ * {@link Detector#report()} or {@link Detector2#finishPass()} then publishes
+ * them as usual.
+ * <p>
+ * A partial detector runs at the same time as the other detectors of the
+ * pass, so it must not depend on what they collect, and must only write to
+ * its own state or to services that are safe for concurrent use (such as the
+ * XFactory). A detector whose results are read by the analyses of the same
+ * pass, such as the interprocedural databases built in call graph order by
+ * the {@link InterproceduralFirstPassDetector}s, must not be mergeable: the
+ * analyses of later classes would not see the results of earlier ones.
+ *
+ * @see FindBugs2
+ */
+public interface MergeableDetector extends NonReportingDetector {
+
+    /**
+     * Create a detector collecting partial results. The partial detector must
+     * not publish anything to the analysis context: it is never asked to
+     * report, and its results are passed to
+     * {@link #mergePartialResults(MergeableDetector)} instead.
+     *
+     * @return a new detector of the same class as this one
+     */
+    MergeableDetector createPartialDetector();
+
+    /**
+     * Merge the results collected by a partial detector into this detector.
+     *
+     * @param partial
+     *            a detector created by {@link #createPartialDetector()}
+     */
+    void mergePartialResults(MergeableDetector partial);
+}
@@ -26,9 +26,12 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -118,12 +121,31 @@ public class OpcodeStack implements Constants2 {
     public @interface CustomUserValue {
     }
 
+    /** You can put this annotation on a OpcodeStack detector
+     * to indicate that it replaces items of the opcode stack
+     * (with {@link #replace(int, Item)} or {@link #replaceTop(Item)}),
+     * and thus should always simulate the opcode stack itself rather than
+     * replay {@link StackStates} shared with other detectors.
+     */
+    @Documented
+    @Target({ElementType.TYPE, ElementType.PACKAGE})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface ReplacesStackItems {
+    }
+
     private static final String JAVA_UTIL_ARRAYS_ARRAY_LIST = "Ljava/util/Arrays$ArrayList;";
 
     private static final boolean DEBUG = SystemProperties.getBoolean("ocstack.debug");
 
     private static final boolean DEBUG2 = DEBUG;
 
+    /**
+     * If true, the opcode stack states of each method are computed once per
+     * pass, and replayed by the OpcodeStackDetectors that can share them
+     * rather than simulated again by each detector.
+     */
+    private static final boolean SHARE_STACK_STATES = SystemProperties.getBoolean("ocstack.shareStates");
+
     @StaticConstant
     static final HashMap<String, String> boxedTypes = new HashMap<String, String>();
 
@@ -131,7 +153,7 @@ public class OpcodeStack implements Constants2 {
 
     private List<Item> lvValues;
 
-    private final List<Integer> lastUpdate;
+    private List<Integer> lastUpdate;
 
     private boolean top;
 
@@ -181,6 +203,22 @@ public class OpcodeStack implements Constants2 {
 
     private boolean reachOnlyByBranch;
 
+    /** States replayed instead of simulating the bytecode, or null */
+    private StackStates replayedStates;
+
+    private int replayedPC;
+
+    private boolean replayedAfterOpcode;
+
+    /**
+     * Copies of the replayed items handed out since the last state was
+     * replayed, so that detectors never modify the shared items
+     */
+    private IdentityHashMap<Item, Item> replayedItemCopies;
+
+    /** States being recorded by simulating the bytecode, or null */
+    private StackStates recordedStates;
+
     public static class Item {
 
         @Documented
@@ -1085,6 +1123,9 @@ public class OpcodeStack implements Constants2 {
     }
 
     public boolean hasIncomingBranches(int pc) {
+        if (replayedStates != null) {
+            return replayedStates.hasIncomingBranches(pc, replayedPC, replayedAfterOpcode);
+        }
         return jumpEntryLocations.get(pc) && jumpEntries.get(pc) != null;
 
     }
@@ -1243,6 +1284,10 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void sawOpcode(DismantleBytecode dbc, int seen) {
+        if (replayedStates != null) {
+            replay(dbc.getPC(), true);
+            return;
+        }
         int register;
         String signature;
         Item it, it2;
@@ -2150,6 +2195,10 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void precomputation(DismantleBytecode dbc) {
+        if (replayedStates != null) {
+            replay(dbc.getPC(), false);
+            return;
+        }
         if (registerTestedFoundToBeNonnegative >= 0) {
             for (int i = 0; i < stack.size(); i++) {
                 Item item = stack.get(i);
@@ -2751,8 +2800,13 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void clear() {
-        stack.clear();
-        lvValues.clear();
+        if (replayedStates != null) {
+            stack = new ArrayList<Item>();
+            lvValues = new ArrayList<Item>();
+        } else {
+            stack.clear();
+            lvValues.clear();
+        }
     }
 
     public void printJumpEntries() {
@@ -2899,7 +2953,230 @@ public class OpcodeStack implements Constants2 {
         }
     }
 
+    /**
+     * The opcode stack states of a method, computed once by simulating its
+     * bytecode and replayed by all OpcodeStackDetectors that can share them.
+     * For each instruction, the states before the instruction is executed
+     * (once jumps to it are merged) and after it is executed are kept.
+     * <p>
+     * Consecutive states share their lists, and states share their items,
+     * so neither may be modified: replaying stacks hand out copies of the
+     * items.
+     *
+     * @see OpcodeStackDetector#canShareStackStates()
+     */
+    public static class StackStates {
+        static class State {
+            final boolean top;
+
+            final List<Item> stack;
+
+            final List<Item> lvValues;
+
+            final List<Integer> lastUpdate;
+
+            State(boolean top, List<Item> stack, List<Item> lvValues, List<Integer> lastUpdate) {
+                this.top = top;
+                this.stack = stack;
+                this.lvValues = lvValues;
+                this.lastUpdate = lastUpdate;
+            }
+        }
+
+        /** Jump target known before the first instruction is simulated */
+        private static final int INITIAL = Integer.MIN_VALUE;
+
+        private static final int NEVER = Integer.MAX_VALUE;
+
+        final State[] before;
+
+        final State[] after;
+
+        /**
+         * For each pc, the pc of the instruction that made it a jump target,
+         * so that replayed stacks only know the jump targets that a simulated
+         * stack would know at the same point
+         */
+        private final int[] jumpTargetFrom;
+
+        /** For each pc, the pc of the instruction that added its jump entry */
+        private final int[] jumpEntryFrom;
+
+        StackStates(int codeLength) {
+            before = new State[codeLength];
+            after = new State[codeLength];
+            jumpTargetFrom = new int[codeLength];
+            jumpEntryFrom = new int[codeLength];
+            Arrays.fill(jumpTargetFrom, NEVER);
+            Arrays.fill(jumpEntryFrom, NEVER);
+        }
+
+        void learnJumpTargets(BitSet jumpEntryLocations, Map<Integer, List<Item>> jumpEntries) {
+            for (int pc = jumpEntryLocations.nextSetBit(0); pc >= 0 && pc < jumpTargetFrom.length; pc = jumpEntryLocations
+                    .nextSetBit(pc + 1)) {
+                jumpTargetFrom[pc] = INITIAL;
+                if (jumpEntries.get(pc) != null) {
+                    jumpEntryFrom[pc] = INITIAL;
+                }
+            }
+        }
+
+        void jumpTargetAdded(int target, int from) {
+            if (target >= 0 && target < jumpTargetFrom.length) {
+                jumpTargetFrom[target] = Math.min(jumpTargetFrom[target], from);
+                jumpEntryFrom[target] = Math.min(jumpEntryFrom[target], from);
+            }
+        }
+
+        boolean isJumpTarget(int target, int pc, boolean afterOpcode) {
+            return isKnown(jumpTargetFrom, target, pc, afterOpcode);
+        }
+
+        boolean hasIncomingBranches(int target, int pc, boolean afterOpcode) {
+            return isKnown(jumpTargetFrom, target, pc, afterOpcode) && isKnown(jumpEntryFrom, target, pc, afterOpcode);
+        }
+
+        private static boolean isKnown(int[] from, int target, int pc, boolean afterOpcode) {
+            if (target < 0 || target >= from.length) {
+                return false;
+            }
+            return from[target] < pc || from[target] == pc && afterOpcode;
+        }
+    }
+
+    public static class StackStatesFactory extends edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory<StackStates> {
+
+        public StackStatesFactory() {
+            super("Opcode stack states shared by detectors", StackStates.class);
+        }
+
+        @Override
+        public @CheckForNull StackStates analyze(IAnalysisCache analysisCache, MethodDescriptor descriptor) throws CheckedAnalysisException {
+            Method method = analysisCache.getMethodAnalysis(Method.class, descriptor);
+            JavaClass jclass = getJavaClass(analysisCache, descriptor.getClassDescriptor());
+            if (method.getCode() == null) {
+                return null;
+            }
+            StackStatesRecorder recorder = new StackStatesRecorder();
+            recorder.setupVisitorForClass(jclass);
+            recorder.doVisitMethod(method);
+            return recorder.states;
+        }
+
+        /**
+         * Key of an item recorded in the states: unlike {@link Item#equals(Object)},
+         * the pc of the item is compared too.
+         */
+        private static class ItemKey {
+            final Item item;
+
+            ItemKey(Item item) {
+                this.item = item;
+            }
+
+            @Override
+            public int hashCode() {
+                return item.hashCode() * 31 + item.pc;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof ItemKey)) {
+                    return false;
+                }
+                Item that = ((ItemKey) o).item;
+                return item.equals(that) && item.pc == that.pc;
+            }
+        }
+
+        static class StackStatesRecorder extends BytecodeScanningDetector {
+            final OpcodeStack stack = new OpcodeStack();
+
+            /**
+             * Copies of the simulated items: the simulation modifies some
+             * items in place, which must not change the recorded states
+             */
+            private final Map<ItemKey, Item> recordedItems = new HashMap<ItemKey, Item>();
+
+            private StackStates.State last;
+
+            StackStates states;
+
+            @Override
+            public void visitCode(Code obj) {
+                states = new StackStates(obj.getLength());
+                stack.resetForRecording(this);
+                states.learnJumpTargets(stack.jumpEntryLocations, stack.jumpEntries);
+                stack.recordedStates = states;
+                super.visitCode(obj);
+                stack.recordedStates = null;
+            }
+
+            @Override
+            public boolean beforeOpcode(int seen) {
+                stack.precomputation(this);
+                states.before[getPC()] = record();
+                return false;
+            }
+
+            @Override
+            public void afterOpcode(int seen) {
+                stack.sawOpcode(this, seen);
+                states.after[getPC()] = record();
+            }
+
+            @Override
+            public void sawOpcode(int seen) {
+                // The stack is simulated by beforeOpcode and afterOpcode
+            }
+
+            private StackStates.State record() {
+                List<Item> s = recordList(stack.stack, last == null ? null : last.stack);
+                List<Item> lv = recordList(stack.lvValues, last == null ? null : last.lvValues);
+                List<Integer> u;
+                if (last != null && last.lastUpdate.equals(stack.lastUpdate)) {
+                    u = last.lastUpdate;
+                } else {
+                    u = Collections.unmodifiableList(new ArrayList<Integer>(stack.lastUpdate));
+                }
+                boolean isTop = stack.isTop();
+                if (last == null || s != last.stack || lv != last.lvValues || u != last.lastUpdate || isTop != last.top) {
+                    last = new StackStates.State(isTop, s, lv, u);
+                }
+                return last;
+            }
+
+            private List<Item> recordList(List<Item> items, @CheckForNull List<Item> previous) {
+                Item[] result = new Item[items.size()];
+                boolean same = previous != null && previous.size() == result.length;
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = recordItem(items.get(i));
+                    same = same && result[i] == previous.get(i);
+                }
+                if (same) {
+                    return previous;
+                }
+                return Collections.unmodifiableList(Arrays.asList(result));
+            }
+
+            private @CheckForNull Item recordItem(@CheckForNull Item item) {
+                if (item == null) {
+                    return null;
+                }
+                Item recorded = recordedItems.get(new ItemKey(item));
+                if (recorded == null) {
+                    recorded = new Item(item);
+                    recordedItems.put(new ItemKey(recorded), recorded);
+                }
+                return recorded;
+            }
+        }
+    }
+
     public boolean isJumpTarget(int pc) {
+        if (replayedStates != null) {
+            return replayedStates.isJumpTarget(pc, replayedPC, replayedAfterOpcode);
+        }
         return jumpEntryLocations.get(pc);
     }
 
@@ -2917,6 +3194,9 @@ public class OpcodeStack implements Constants2 {
             setJumpInfoChangedByNewTarget();
             jumpEntries.put(Integer.valueOf(target), new ArrayList<Item>(lvValues));
             jumpEntryLocations.set(target);
+            if (recordedStates != null) {
+                recordedStates.jumpTargetAdded(target, v.getPC());
+            }
             if (stack.size() > 0) {
                 jumpStackEntries.put(Integer.valueOf(target), new ArrayList<Item>(stack));
             }
@@ -2948,6 +3228,14 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void initialize() {
+        if (replayedStates != null) {
+            // The replayed lists are shared with other stacks
+            replayedStates = null;
+            replayedItemCopies = null;
+            stack = new ArrayList<Item>();
+            lvValues = new ArrayList<Item>();
+            lastUpdate = new ArrayList<Integer>();
+        }
         setTop(false);
         jumpEntries.clear();
         jumpStackEntries.clear();
@@ -2983,10 +3271,83 @@ public class OpcodeStack implements Constants2 {
             jump = getJumpInfoFromStackMap();
         }
         learnFrom(jump);
+        if (SHARE_STACK_STATES && visitor instanceof OpcodeStackDetector
+                && ((OpcodeStackDetector) visitor).canShareStackStates()) {
+            replayedStates = getStackStates();
+            replayedPC = -1;
+            replayedAfterOpcode = false;
+        }
         return result;
 
     }
 
+    /**
+     * Prepare to record the stack states of the visited method. The jump
+     * information is the one used by the detectors that share the states.
+     */
+    private void resetForRecording(DismantleBytecode visitor) {
+        this.v = visitor;
+        initialize();
+        resetForMethodEntry0(v);
+        learnFrom(useIterativeAnalysis ? getJumpInfo() : getJumpInfoFromStackMap());
+    }
+
+    private @CheckForNull StackStates getStackStates() {
+        XMethod xMethod = XFactory.createXMethod(v.getThisClass(), v.getMethod());
+        try {
+            return Global.getAnalysisCache().getMethodAnalysis(StackStates.class, xMethod.getMethodDescriptor());
+        } catch (CheckedAnalysisException e) {
+            AnalysisContext.logError("Error getting opcode stack states", e);
+            return null;
+        }
+    }
+
+    private void replay(int pc, boolean afterOpcode) {
+        StackStates.State state = afterOpcode ? replayedStates.after[pc] : replayedStates.before[pc];
+        if (state == null) {
+            throw new IllegalStateException("No opcode stack state recorded at pc " + pc + " in "
+                    + v.getFullyQualifiedMethodName());
+        }
+        replayedPC = pc;
+        replayedAfterOpcode = afterOpcode;
+        replayedItemCopies = null;
+        top = state.top;
+        stack = state.stack;
+        lvValues = state.lvValues;
+        lastUpdate = state.lastUpdate;
+    }
+
+    /**
+     * The replayed items are shared with other stacks, and detectors may
+     * modify the items they get, so hand out copies instead. The same item
+     * is copied once for each replayed state.
+     */
+    private Item copyReplayedItem(Item item) {
+        if (replayedStates == null) {
+            return item;
+        }
+        if (replayedItemCopies == null) {
+            replayedItemCopies = new IdentityHashMap<Item, Item>();
+        }
+        Item copy = replayedItemCopies.get(item);
+        if (copy == null) {
+            copy = new Item(item);
+            replayedItemCopies.put(item, copy);
+        }
+        return copy;
+    }
+
+    /**
+     * The replayed lists are shared with other stacks, so copy the stack
+     * before it is modified. The modification only lasts until the next
+     * state is replayed.
+     */
+    private void copyReplayedStack() {
+        if (replayedStates != null) {
+            stack = new ArrayList<Item>(stack);
+        }
+    }
+
     int nullSafeSize(@CheckForNull Collection<?> c) {
         if (c == null) {
             return 0;
@@ -3106,7 +3467,7 @@ public class OpcodeStack implements Constants2 {
         int tos = stack.size() - 1;
         int pos = tos - stackOffset;
         try {
-            return stack.get(pos);
+            return copyReplayedItem(stack.get(pos));
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new ArrayIndexOutOfBoundsException("Requested item at offset " + stackOffset + " in a stack of size "
                     + stack.size() + ", made request for position " + pos);
@@ -3118,6 +3479,7 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void replace(int stackOffset, Item value) {
+        copyReplayedStack();
         if (stackOffset < 0 || stackOffset >= stack.size()) {
             AnalysisContext.logError("Can't get replace stack offset " + stackOffset + " from " + stack.toString() + " @ " + v.getPC()
                     + " in " + v.getFullyQualifiedMethodName(), new IllegalArgumentException(stackOffset
@@ -3132,6 +3494,7 @@ public class OpcodeStack implements Constants2 {
     }
 
     public void replaceTop(Item newTop) {
+        copyReplayedStack();
         pop();
         push(newTop);
     }
@@ -3560,7 +3923,7 @@ public class OpcodeStack implements Constants2 {
 
         Item item = lvValues.get(index);
         if (item != null) {
-            return item;
+            return copyReplayedItem(item);
         }
 
         return new Item();
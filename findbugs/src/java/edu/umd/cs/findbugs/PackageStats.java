@@ -141,6 +141,10 @@ public class PackageStats extends BugCounts implements XMLWriteable {
             return size;
         }
 
+        public boolean isInterface() {
+            return isInterface;
+        }
+
         public String getName() {
             return name;
         }
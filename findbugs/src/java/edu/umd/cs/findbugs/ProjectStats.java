@@ -380,6 +380,17 @@ public class ProjectStats implements XMLWriteable, Cloneable {
         fileBugHashes = FileBugHash.compute(bugs);
     }
 
+    /**
+     * Compute the file statistics from bugs that are not kept in a
+     * BugCollection.
+     *
+     * @param bugs
+     *            the bugs, sorted as in a SortedBugCollection
+     */
+    public void computeFileStats(Iterable<BugInstance> bugs) {
+        fileBugHashes = FileBugHash.compute(this, bugs);
+    }
+
     /**
      * Output as XML.
      */
@@ -117,6 +117,10 @@ public class SAXBugCollectionHandler extends DefaultHandler {
 
     private String cloudPropertyKey;
 
+    private Set<BugCollectionStreamReader.Skip> skipped = Collections.emptySet();
+
+    private int skippedDepth;
+
     private SAXBugCollectionHandler(String topLevelName, @CheckForNull BugCollection bugCollection,
             @CheckForNull Project project, @CheckForNull File base) {
         this.topLevelName = topLevelName;
@@ -148,6 +152,47 @@ public class SAXBugCollectionHandler extends DefaultHandler {
         pushCompoundMatcher(filter);
     }
 
+    /**
+     * Set the parts of the BugCollection that are not read.
+     *
+     * @see BugCollectionStreamReader
+     */
+    void setSkipped(Set<BugCollectionStreamReader.Skip> skipped) {
+        this.skipped = skipped;
+    }
+
+    private static final Set<String> ANNOTATION_ELEMENTS = unmodifiableSet(new HashSet<String>(asList("Class", "Type",
+            "Method", "Field", "SourceLine", "Int", "String", "LocalVariable")));
+
+    private boolean isSkipped(String qName) {
+        if (skipped.isEmpty() || elementStack.isEmpty()) {
+            return false;
+        }
+        String outerElement = elementStack.get(elementStack.size() - 1);
+        if (BUG_COLLECTION.equals(outerElement)) {
+            return skipped.contains(BugCollectionStreamReader.Skip.CLASS_FEATURES) && "ClassFeatures".equals(qName)
+                    || skipped.contains(BugCollectionStreamReader.Skip.HISTORY)
+                    && BugCollection.HISTORY_ELEMENT_NAME.equals(qName);
+        }
+        if ("BugInstance".equals(outerElement) && skipped.contains(BugCollectionStreamReader.Skip.ANNOTATIONS)) {
+            // Keep the primary class, which the statistics need
+            return ANNOTATION_ELEMENTS.contains(qName) && !("Class".equals(qName) && bugInstance.getPrimaryClass() == null);
+        }
+        return false;
+    }
+
+    /**
+     * Called when a BugInstance element has been read.
+     *
+     * @param bugInstance
+     *            the BugInstance
+     */
+    void bugInstanceRead(BugInstance bugInstance) {
+        BugCollection bugCollection = this.bugCollection;
+        assert bugCollection != null;
+        bugCollection.add(bugInstance, false);
+    }
+
     Pattern ignoredElement = Pattern.compile("Message|ShortMessage|LongMessage");
 
     public boolean discardedElement(String qName) {
@@ -178,6 +223,10 @@ public class SAXBugCollectionHandler extends DefaultHandler {
         // URI should always be empty.
         // So, qName is the name of the element.
 
+        if (skippedDepth > 0 || isSkipped(qName)) {
+            skippedDepth++;
+            return;
+        }
         if (discardedElement(qName)) {
             nestingOfIgnoredElements++;
         } else if (nestingOfIgnoredElements > 0) {
@@ -735,6 +784,10 @@ public class SAXBugCollectionHandler extends DefaultHandler {
         // URI should always be empty.
         // So, qName is the name of the element.
 
+        if (skippedDepth > 0) {
+            skippedDepth--;
+            return;
+        }
         if (discardedElement(qName)) {
             nestingOfIgnoredElements--;
         } else if (nestingOfIgnoredElements > 0) {
@@ -751,10 +804,8 @@ public class SAXBugCollectionHandler extends DefaultHandler {
 
                 matcherStack.pop();
             } else if (BUG_COLLECTION.equals(outerElement)) {
-                BugCollection bugCollection = this.bugCollection;
-                assert bugCollection != null;
                 if ("BugInstance".equals(qName)) {
-                    bugCollection.add(bugInstance, false);
+                    bugInstanceRead(bugInstance);
                 }
             } else if (PROJECT.equals(outerElement)) {
                 Project project = this.project;
@@ -29,7 +29,7 @@ import edu.umd.cs.findbugs.model.IdentityClassNameRewriter;
  *
  * @author David Hovemeyer
  */
-public class SloppyBugComparator implements WarningComparator {
+public class SloppyBugComparator implements WarningComparator, KeyedBugComparator {
 
     private static final boolean DEBUG = SystemProperties.getBoolean("sloppyComparator.debug");
 
@@ -158,6 +158,28 @@ public class SloppyBugComparator implements WarningComparator {
         return 0;
     }
 
+    @Override
+    public Object getMatchingKey(BugInstance bug) {
+        StringBuilder key = new StringBuilder();
+        key.append(bug.getBugPattern().getAbbrev());
+        ClassAnnotation primaryClass = bug.getPrimaryClass();
+        if (primaryClass != null) {
+            key.append(' ').append(classNameRewriter.rewriteClassName(primaryClass.getClassName()));
+        }
+        MethodAnnotation primaryMethod = bug.getPrimaryMethod();
+        FieldAnnotation primaryField = bug.getPrimaryField();
+        if (primaryMethod != null) {
+            MethodAnnotation method = convertMethod(primaryMethod);
+            key.append(" M ").append(method.getClassName()).append('.').append(method.getMethodName())
+                    .append(method.getMethodSignature());
+        } else if (primaryField != null) {
+            FieldAnnotation field = convertField(primaryField);
+            key.append(" F ").append(field.getClassName()).append('.').append(field.getFieldName())
+                    .append(field.getFieldSignature());
+        }
+        return key.toString();
+    }
+
     /*
     private static String getAbbrevFromBugType(String type) {
         int bar = type.indexOf('_');
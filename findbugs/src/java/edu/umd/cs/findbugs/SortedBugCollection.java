@@ -75,6 +75,8 @@ import edu.umd.cs.findbugs.cloud.CloudFactory;
 import edu.umd.cs.findbugs.log.Profiler;
 import edu.umd.cs.findbugs.model.ClassFeatureSet;
 import edu.umd.cs.findbugs.util.Util;
+import edu.umd.cs.findbugs.xml.BinaryXMLInput;
+import edu.umd.cs.findbugs.xml.BinaryXMLOutput;
 import edu.umd.cs.findbugs.xml.Dom4JXMLOutput;
 import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
 import edu.umd.cs.findbugs.xml.XMLAttributeList;
@@ -95,6 +97,13 @@ public class SortedBugCollection implements BugCollection {
 
     private static final boolean REPORT_SUMMARY_HTML = SystemProperties.getBoolean("findbugs.report.SummaryHTML");
 
+    /**
+     * Extension of bug collection files written in the binary format of
+     * {@link BinaryXMLOutput} by {@link #writeXML(String)} and read by
+     * {@link #readXML(String)}
+     */
+    public static final String BINARY_EXTENSION = ".fbb";
+
     long analysisTimestamp = System.currentTimeMillis();
 
     String analysisVersion = Version.RELEASE;
@@ -319,6 +328,16 @@ public class SortedBugCollection implements BugCollection {
     public void readXML(File file) throws IOException, DocumentException {
         project.setCurrentWorkingDirectory(file.getParentFile());
         dataSource = file.getAbsolutePath();
+        if (isBinaryFile(file.getName())) {
+            try {
+                doReadBinary(BinaryXMLInput.map(file), file);
+            } catch (IOException e) {
+                throw newIOException(file, e);
+            } catch (DocumentException e) {
+                throw new DocumentException("Failing reading " + file, e);
+            }
+            return;
+        }
         InputStream in = progessMonitoredInputStream(file, "Loading analysis");
         try {
             readXML(in, file);
@@ -433,6 +452,37 @@ public class SortedBugCollection implements BugCollection {
     }
 
 
+    private void doReadBinary(BinaryXMLInput input, File base) throws IOException, DocumentException {
+        timeStartedLoading = System.currentTimeMillis();
+
+        SAXBugCollectionHandler handler = new SAXBugCollectionHandler(this, base);
+        Profiler profiler = getProjectStats().getProfiler();
+        profiler.start(handler.getClass());
+        try {
+            input.replay(handler);
+        } catch (SAXException e) {
+            throw new DocumentException("Sax error while parsing " + base, e);
+        } finally {
+            profiler.end(handler.getClass());
+        }
+        timeFinishedLoading = System.currentTimeMillis();
+        bugsPopulated();
+        // Presumably, project is now up-to-date
+        project.setModified(false);
+    }
+
+    /**
+     * Check whether a bug collection file is in the binary format of
+     * {@link BinaryXMLOutput} rather than XML.
+     *
+     * @param fileName
+     *            name of the file
+     * @return true if the name of the file ends with {@link #BINARY_EXTENSION}
+     */
+    public static boolean isBinaryFile(String fileName) {
+        return fileName.endsWith(BINARY_EXTENSION);
+    }
+
     @Override
     public void writeXML(OutputStream out) throws IOException {
         writeXML(UTF8.writer(out));
@@ -447,12 +497,40 @@ public class SortedBugCollection implements BugCollection {
     @Override
     public void writeXML(String fileName) throws IOException {
         OutputStream out = new FileOutputStream(fileName);
+        if (isBinaryFile(fileName)) {
+            writeBinary(out);
+            return;
+        }
         if (fileName.endsWith(".gz")) {
             out = new GZIPOutputStream(out);
         }
         writeXML(out);
     }
 
+    /**
+     * Write this BugCollection, with the given bugs instead of its own, to a
+     * file: see {@link #writeXML(Writer, Iterable)}. As with
+     * {@link #writeXML(String)}, the file is written in the binary format if
+     * its name ends with {@link #BINARY_EXTENSION}, and compressed if its name
+     * ends with ".gz".
+     *
+     * @param fileName
+     *            the file to write to
+     * @param sortedBugs
+     *            the bugs, or null to write the bugs of this collection
+     */
+    public void writeXML(String fileName, @CheckForNull Iterable<BugInstance> sortedBugs) throws IOException {
+        OutputStream out = new FileOutputStream(fileName);
+        if (isBinaryFile(fileName)) {
+            writeBinary(out, sortedBugs);
+            return;
+        }
+        if (fileName.endsWith(".gz")) {
+            out = new GZIPOutputStream(out);
+        }
+        writeXML(UTF8.writer(out), sortedBugs);
+    }
+
     /**
      * Write this BugCollection to a file as XML.
      *
@@ -461,6 +539,10 @@ public class SortedBugCollection implements BugCollection {
      */
     public void writeXML(File file) throws IOException {
         OutputStream out = new FileOutputStream(file);
+        if (isBinaryFile(file.getName())) {
+            writeBinary(out);
+            return;
+        }
         if (file.getName().endsWith(".gz")) {
             out = new GZIPOutputStream(out);
         }
@@ -498,6 +580,26 @@ public class SortedBugCollection implements BugCollection {
      */
     @Override
     public void writeXML(@WillClose Writer out) throws IOException {
+        writeXML(out, null);
+    }
+
+    /**
+     * Write this BugCollection, with the given bugs instead of its own, to
+     * given output stream as XML. This is used to write more bugs than could be
+     * kept in memory: the bugs are read as they are written. The output stream
+     * will be closed, even if an exception is thrown.
+     *
+     * @param out
+     *            the OutputStream to write to
+     * @param sortedBugs
+     *            the bugs, sorted with the comparator of this collection and
+     *            without duplicates, or null to write the bugs of this
+     *            collection. If the XML is written with messages, the
+     *            instance hash occurrence numbers of the bugs and the file
+     *            statistics of the project must already be computed (see
+     *            {@link ProjectStats#computeFileStats(Iterable)}).
+     */
+    public void writeXML(@WillClose Writer out, @CheckForNull Iterable<BugInstance> sortedBugs) throws IOException {
         assert project != null;
         bugsPopulated();
         XMLOutput xmlOutput;
@@ -505,20 +607,59 @@ public class SortedBugCollection implements BugCollection {
 
 
         if (withMessages && cloud != null) {
-            cloud.bugsPopulated();
-            cloud.initiateCommunication();
-            cloud.waitUntilIssueDataDownloaded();
-            String token = SystemProperties.getProperty("findbugs.cloud.token");
-            if (token != null && token.trim().length() > 0) {
-                LOGGER.info("Cloud token specified - uploading new issues, if necessary...");
-                cloud.waitUntilNewIssuesUploaded();
-            }
+            waitForCloud();
             xmlOutput = new OutputStreamXMLOutput(out, "http://findbugs.sourceforge.net/xsl/default.xsl");
         } else {
             xmlOutput = new OutputStreamXMLOutput(out);
         }
 
-        writeXML(xmlOutput);
+        writeXML(xmlOutput, sortedBugs);
+    }
+
+    private void waitForCloud() {
+        Cloud cloud = this.cloud;
+        assert cloud != null;
+        cloud.bugsPopulated();
+        cloud.initiateCommunication();
+        cloud.waitUntilIssueDataDownloaded();
+        String token = SystemProperties.getProperty("findbugs.cloud.token");
+        if (token != null && token.trim().length() > 0) {
+            LOGGER.info("Cloud token specified - uploading new issues, if necessary...");
+            cloud.waitUntilNewIssuesUploaded();
+        }
+    }
+
+    /**
+     * Write this BugCollection to given output stream in the binary format of
+     * {@link BinaryXMLOutput}, which is faster to read and write than XML. The
+     * output stream will be closed, even if an exception is thrown.
+     *
+     * @param out
+     *            the OutputStream to write to
+     * @see #BINARY_EXTENSION
+     */
+    public void writeBinary(@WillClose OutputStream out) throws IOException {
+        writeBinary(out, null);
+    }
+
+    /**
+     * Write this BugCollection, with the given bugs instead of its own, to
+     * given output stream in the binary format of {@link BinaryXMLOutput}. The
+     * output stream will be closed, even if an exception is thrown.
+     *
+     * @param out
+     *            the OutputStream to write to
+     * @param sortedBugs
+     *            the bugs, or null to write the bugs of this collection; see
+     *            {@link #writeXML(Writer, Iterable)}
+     */
+    public void writeBinary(@WillClose OutputStream out, @CheckForNull Iterable<BugInstance> sortedBugs) throws IOException {
+        assert project != null;
+        bugsPopulated();
+        if (withMessages && cloud != null) {
+            waitForCloud();
+        }
+        writeXML(new BinaryXMLOutput(out, "BugInstance"), sortedBugs);
     }
 
     @Override
@@ -559,6 +700,53 @@ public class SortedBugCollection implements BugCollection {
         preciseHashOccurrenceNumbersAvailable = true;
     }
 
+    /**
+     * Set the instance hash occurrence numbers of bugs that are not kept in
+     * memory, as {@link #computeBugHashes()} does, as they are read.
+     *
+     * @param sortedBugs
+     *            the bugs, which are read twice
+     * @return the bugs, with their occurrence numbers set when they are read
+     */
+    public static Iterable<BugInstance> computeBugHashes(final Iterable<BugInstance> sortedBugs) {
+        final Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (BugInstance bugInstance : sortedBugs) {
+            String hash = bugInstance.getInstanceHash();
+            Integer count = occurrences.get(hash);
+            occurrences.put(hash, count == null ? 1 : count + 1);
+        }
+        return new Iterable<BugInstance>() {
+            @Override
+            public Iterator<BugInstance> iterator() {
+                final Iterator<BugInstance> i = sortedBugs.iterator();
+                final Map<String, Integer> seen = new HashMap<String, Integer>();
+                return new Iterator<BugInstance>() {
+                    @Override
+                    public boolean hasNext() {
+                        return i.hasNext();
+                    }
+
+                    @Override
+                    public BugInstance next() {
+                        BugInstance bugInstance = i.next();
+                        String hash = bugInstance.getInstanceHash();
+                        Integer count = seen.get(hash);
+                        int num = count == null ? 0 : count + 1;
+                        seen.put(hash, num);
+                        bugInstance.setInstanceOccurrenceNum(num);
+                        bugInstance.setInstanceOccurrenceMax(occurrences.get(hash) - 1);
+                        return bugInstance;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
     /**
      * Write the BugCollection to an XMLOutput object. The finish() method of
      * the XMLOutput object is guaranteed to be called.
@@ -573,12 +761,18 @@ public class SortedBugCollection implements BugCollection {
      */
     @Override
     public void writeXML(@WillClose XMLOutput xmlOutput) throws IOException {
+        writeXML(xmlOutput, null);
+    }
+
+    private void writeXML(@WillClose XMLOutput xmlOutput, @CheckForNull Iterable<BugInstance> sortedBugs) throws IOException {
         assert project != null;
         try {
             writePrologue(xmlOutput);
             if (withMessages) {
-                computeBugHashes();
-                getProjectStats().computeFileStats(this);
+                if (sortedBugs == null) {
+                    computeBugHashes();
+                    getProjectStats().computeFileStats(this);
+                }
                 String commonBase = null;
                 for (String s : project.getSourceDirList()) {
                     if (commonBase == null) {
@@ -603,13 +797,13 @@ public class SortedBugCollection implements BugCollection {
             }
 
             // Write BugInstances
-            for (BugInstance bugInstance : getCollection()) {
+            for (BugInstance bugInstance : sortedBugs != null ? sortedBugs : getCollection()) {
                 if (!applySuppressions || !project.getSuppressionFilter().match(bugInstance)) {
                     bugInstance.writeXML(xmlOutput, this, withMessages);
                 }
             }
 
-            writeEpilogue(xmlOutput);
+            writeEpilogue(xmlOutput, sortedBugs != null ? sortedBugs : this);
 
         } finally {
             xmlOutput.finish();
@@ -627,10 +821,14 @@ public class SortedBugCollection implements BugCollection {
 
     @Override
     public void writeEpilogue(XMLOutput xmlOutput) throws IOException {
+        writeEpilogue(xmlOutput, this);
+    }
+
+    private void writeEpilogue(XMLOutput xmlOutput, Iterable<BugInstance> bugs) throws IOException {
         if (withMessages) {
-            writeBugCategories(xmlOutput);
-            writeBugPatterns(xmlOutput);
-            writeBugCodes(xmlOutput);
+            writeBugCategories(xmlOutput, bugs);
+            writeBugPatterns(xmlOutput, bugs);
+            writeBugCodes(xmlOutput, bugs);
         }
         // Errors, missing classes
         if (!minimalXML) {
@@ -678,11 +876,10 @@ public class SortedBugCollection implements BugCollection {
         xmlOutput.closeTag(ROOT_ELEMENT_NAME);
     }
 
-    private void writeBugPatterns(XMLOutput xmlOutput) throws IOException {
+    private void writeBugPatterns(XMLOutput xmlOutput, Iterable<BugInstance> bugs) throws IOException {
         // Find bug types reported
         Set<String> bugTypeSet = new HashSet<String>();
-        for (Iterator<BugInstance> i = iterator(); i.hasNext();) {
-            BugInstance bugInstance = i.next();
+        for (BugInstance bugInstance : bugs) {
             BugPattern bugPattern = bugInstance.getBugPattern();
             bugTypeSet.add(bugPattern.getType());
         }
@@ -714,11 +911,10 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
-    private void writeBugCodes(XMLOutput xmlOutput) throws IOException {
+    private void writeBugCodes(XMLOutput xmlOutput, Iterable<BugInstance> bugs) throws IOException {
         // Find bug codes reported
         Set<String> bugCodeSet = new HashSet<String>();
-        for (Iterator<BugInstance> i = iterator(); i.hasNext();) {
-            BugInstance bugInstance = i.next();
+        for (BugInstance bugInstance : bugs) {
             String bugCode = bugInstance.getAbbrev();
             if (bugCode != null) {
                 bugCodeSet.add(bugCode);
@@ -747,11 +943,10 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
-    private void writeBugCategories(XMLOutput xmlOutput) throws IOException {
+    private void writeBugCategories(XMLOutput xmlOutput, Iterable<BugInstance> bugs) throws IOException {
         // Find bug categories reported
         Set<String> bugCatSet = new HashSet<String>();
-        for (Iterator<BugInstance> i = iterator(); i.hasNext();) {
-            BugInstance bugInstance = i.next();
+        for (BugInstance bugInstance : bugs) {
             BugPattern bugPattern = bugInstance.getBugPattern();
             bugCatSet.add(bugPattern.getCategory());
         }
@@ -890,7 +1085,7 @@ public class SortedBugCollection implements BugCollection {
         }
     }
 
-    public static class BugInstanceComparator implements Comparator<BugInstance> {
+    public static class BugInstanceComparator implements KeyedBugComparator {
 
         private BugInstanceComparator() {
         }
@@ -909,6 +1104,24 @@ public class SortedBugCollection implements BugCollection {
             return lhs.compareTo(rhs);
         }
 
+        @Override
+        public Object getMatchingKey(BugInstance bug) {
+            // Warnings comparing as equal have the same type, priority and
+            // number of annotations, and equal annotations
+            ClassAnnotation ca = bug.getPrimaryClass();
+            if (ca == null) {
+                throw new IllegalStateException("null class annotation: " + bug);
+            }
+            StringBuilder key = new StringBuilder();
+            key.append(ca.getClassName()).append(' ').append(bug.getType()).append(' ')
+                    .append(bug.getPriority()).append(' ').append(bug.getAnnotations().size());
+            MethodAnnotation method = bug.getPrimaryMethod();
+            if (method != null) {
+                key.append(' ').append(method.getMethodName()).append(method.getMethodSignature());
+            }
+            return key.toString();
+        }
+
         public static final BugInstanceComparator instance = new BugInstanceComparator();
     }
 
@@ -0,0 +1,103 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.IOException;
+
+/**
+ * Report warnings as an XML document, like XMLBugReporter, without keeping
+ * the warnings in memory: they are spilled to temporary files as they are
+ * reported, and merged in the order of a SortedBugCollection when the
+ * document is written. The memory used doesn't grow with the number of
+ * warnings (except, for XML with messages, for a count of each instance
+ * hash).
+ * <p>
+ * Since duplicate warnings are only dropped when the document is written,
+ * observers are notified of every reported warning.
+ */
+public class StreamingXMLBugReporter extends XMLBugReporter {
+
+    private final SortedBugCollection bugCollection;
+
+    private final ExternalBugSorter sorter;
+
+    public StreamingXMLBugReporter(Project project) {
+        this(project, SystemProperties.getInt("findbugs.streamXML.runSize", ExternalBugSorter.DEFAULT_RUN_SIZE));
+    }
+
+    /**
+     * @param project
+     *            the project
+     * @param runSize
+     *            number of warnings kept in memory before they are spilled
+     */
+    public StreamingXMLBugReporter(Project project, int runSize) {
+        super(project);
+        bugCollection = (SortedBugCollection) getBugCollection();
+        sorter = new ExternalBugSorter(SortedBugCollection.MultiversionBugInstanceComparator.instance, runSize);
+    }
+
+    @Override
+    public void doReportBug(BugInstance bugInstance) {
+        if (VERIFY_INTEGRITY) {
+            checkBugInstance(bugInstance);
+        }
+        // As in SortedBugCollection.add()
+        if (bugInstance.getFirstVersion() == 0L && bugInstance.getLastVersion() == 0L) {
+            bugInstance.setFirstVersion(bugCollection.getSequenceNumber());
+        }
+        if (!bugInstance.isDead()) {
+            bugCollection.getProjectStats().addBug(bugInstance);
+        }
+        try {
+            sorter.add(bugInstance);
+        } catch (IOException e) {
+            throw new FatalException("Error spilling warnings to temporary file: " + e.getMessage(), e);
+        }
+        notifyObservers(bugInstance);
+    }
+
+    @Override
+    public void finish() {
+        try {
+            Project project = getProject();
+            if (project == null) {
+                throw new NullPointerException("No project");
+            }
+            bugCollection.bugsPopulated();
+            Iterable<BugInstance> sortedBugs = sorter.getSortedBugs();
+            if (bugCollection.getWithMessages()) {
+                sortedBugs = SortedBugCollection.computeBugHashes(sortedBugs);
+                bugCollection.getProjectStats().computeFileStats(sortedBugs);
+            }
+            bugCollection.writeXML(outputStream, sortedBugs);
+            outputStream.close();
+        } catch (IOException e) {
+            throw new FatalException("Error writing XML output: " + e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new FatalException("Error reading spilled warnings: " + e.getCause().getMessage(), e.getCause());
+            }
+            throw e;
+        } finally {
+            sorter.close();
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class SuppressionMatcher implements Matcher {
 
     int count = 0;
 
-    public void addPackageSuppressor(PackageWarningSuppressor suppressor) {
+    public synchronized void addPackageSuppressor(PackageWarningSuppressor suppressor) {
         String packageName = suppressor.getPackageName();
 
         Collection<WarningSuppressor> c = suppressedPackageWarnings.get(packageName);
@@ -46,7 +46,7 @@ public class SuppressionMatcher implements Matcher {
         c.add(suppressor);
     }
 
-    public void addSuppressor(ClassWarningSuppressor suppressor) {
+    public synchronized void addSuppressor(ClassWarningSuppressor suppressor) {
         ClassAnnotation clazz = suppressor.getClassAnnotation().getTopLevelClass();
         Collection<WarningSuppressor> c = suppressedWarnings.get(clazz);
         if (c == null) {
@@ -56,12 +56,12 @@ public class SuppressionMatcher implements Matcher {
         c.add(suppressor);
     }
 
-    public int count() {
+    public synchronized int count() {
         return count;
     }
 
     @Override
-    public boolean match(BugInstance b) {
+    public synchronized boolean match(BugInstance b) {
         ClassAnnotation clazz = b.getPrimaryClass().getTopLevelClass();
         Collection<WarningSuppressor> c = suppressedWarnings.get(clazz);
         if (c != null) {
@@ -96,6 +96,8 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
     private boolean xmlWithAbridgedMessages = false;
 
+    private boolean xmlStreaming = false;
+
     private String stylesheet = null;
 
     private boolean quiet = false;
@@ -136,8 +138,24 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
     private boolean scanNestedArchives = true;
 
+    private boolean lazyAuxClasspath;
+
     private boolean applySuppression;
 
+    private int numberOfThreads = 1;
+
+    private int analysisCacheMB;
+
+    private int detectorCpuBudgetMillis;
+
+    private int detectorAllocationBudgetMB;
+
+    private String databaseCacheDir;
+
+    private String profileReportFile;
+
+    private String incrementalStateFile;
+
     private boolean printConfiguration;
 
     private boolean printVersion;
@@ -169,6 +187,7 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         addSwitch("-sortByClass", "sort warnings by class");
         addSwitchWithOptionalExtraPart("-xml", "withMessages", "XML output (optionally with messages)");
+        addSwitch("-streamXML", "don't keep the warnings in memory for XML output");
         addSwitch("-xdocs", "xdoc XML output to use with Apache Maven");
         addSwitchWithOptionalExtraPart("-html", "stylesheet", "Generate HTML output (default stylesheet is default.xsl)");
         addSwitch("-emacs", "Use emacs reporting format");
@@ -185,6 +204,14 @@ public class TextUICommandLine extends FindBugsCommandLine {
         addOption("-output", "filename", "Save output in named file");
         makeOptionUnlisted("-outputFile");
         addSwitchWithOptionalExtraPart("-nested", "true|false", "analyze nested jar/zip archives (default=true)");
+        addSwitch("-lazyAuxClasspath", "only load auxiliary classpath classes when needed");
+        addOption("-threads", "count", "number of threads used to analyze classes (experimental; default=1)");
+        addOption("-analysisCacheMB", "megabytes", "memory budget for cached class analyses (default: bounded by count)");
+        addOption("-detectorBudget", "msecs", "CPU time a detector may spend on a method before skipping it");
+        addOption("-detectorAllocationBudget", "megabytes", "memory a detector may allocate on a method before skipping it");
+        addOption("-databaseCache", "directory", "cache library null-dereference databases between runs (-effort:max only; keyed on the whole auxclasspath)");
+        addOption("-profileReport", "file.json|file.csv", "write the time, memory and cache misses of each detector");
+        addOption("-incremental", "state file", "only analyze classes changed since the analysis which saved the state file");
 
         startOptionGroup("Output filtering options:");
         addOption("-bugCategories", "cat1[,cat2...]", "only report bugs in given categories");
@@ -320,6 +347,8 @@ public class TextUICommandLine extends FindBugsCommandLine {
                     throw new IllegalArgumentException("Unknown option: -xml:" + optionExtraPart);
                 }
             }
+        } else if ("-streamXML".equals(option)) {
+            xmlStreaming = true;
         } else if ("-emacs".equals(option)) {
             bugReporterType = EMACS_REPORTER;
         } else if ("-relaxed".equals(option)) {
@@ -343,6 +372,8 @@ public class TextUICommandLine extends FindBugsCommandLine {
             quiet = true;
         } else if ("-nested".equals(option)) {
             scanNestedArchives = "".equals(optionExtraPart) || Boolean.valueOf(optionExtraPart).booleanValue();
+        } else if ("-lazyAuxClasspath".equals(option)) {
+            lazyAuxClasspath = true;
         } else if ("-exitcode".equals(option)) {
             setExitCode = true;
         } else if ("-auxclasspathFromInput".equals(option)) {
@@ -432,6 +463,32 @@ public class TextUICommandLine extends FindBugsCommandLine {
 
         } else if ("-maxRank".equals(option)) {
             this.rankThreshold = Integer.parseInt(argument);
+        } else if ("-threads".equals(option)) {
+            this.numberOfThreads = Integer.parseInt(argument);
+            if (numberOfThreads < 1) {
+                throw new IllegalArgumentException("Number of threads must be positive: " + argument);
+            }
+        } else if ("-analysisCacheMB".equals(option)) {
+            this.analysisCacheMB = Integer.parseInt(argument);
+            if (analysisCacheMB < 1) {
+                throw new IllegalArgumentException("Analysis cache size must be positive: " + argument);
+            }
+        } else if ("-detectorBudget".equals(option)) {
+            this.detectorCpuBudgetMillis = Integer.parseInt(argument);
+            if (detectorCpuBudgetMillis < 1) {
+                throw new IllegalArgumentException("Detector CPU time budget must be positive: " + argument);
+            }
+        } else if ("-detectorAllocationBudget".equals(option)) {
+            this.detectorAllocationBudgetMB = Integer.parseInt(argument);
+            if (detectorAllocationBudgetMB < 1) {
+                throw new IllegalArgumentException("Detector allocation budget must be positive: " + argument);
+            }
+        } else if ("-databaseCache".equals(option)) {
+            this.databaseCacheDir = argument;
+        } else if ("-profileReport".equals(option)) {
+            this.profileReportFile = argument;
+        } else if ("-incremental".equals(option)) {
+            this.incrementalStateFile = argument;
         } else if ("-projectName".equals(option)) {
             this.projectName = argument;
         } else if ("-release".equals(option)) {
@@ -636,7 +693,7 @@ public class TextUICommandLine extends FindBugsCommandLine {
             textuiBugReporter = new SortingBugReporter();
             break;
         case XML_REPORTER: {
-            XMLBugReporter xmlBugReporter = new XMLBugReporter(project);
+            XMLBugReporter xmlBugReporter = xmlStreaming ? new StreamingXMLBugReporter(project) : new XMLBugReporter(project);
             xmlBugReporter.setAddMessages(xmlWithMessages);
             xmlBugReporter.setMinimalXML(xmlMinimal);
 
@@ -706,7 +763,14 @@ public class TextUICommandLine extends FindBugsCommandLine {
         findBugs.setProjectName(projectName);
 
         findBugs.setScanNestedArchives(scanNestedArchives);
+        findBugs.setLazyAuxClasspath(lazyAuxClasspath);
         findBugs.setNoClassOk(noClassOk);
+        findBugs.setNumberOfThreads(numberOfThreads);
+        findBugs.setAnalysisCacheMB(analysisCacheMB);
+        findBugs.setDetectorBudget(detectorCpuBudgetMillis, detectorAllocationBudgetMB);
+        findBugs.setDatabaseCacheDir(databaseCacheDir);
+        findBugs.setProfileReportFile(profileReportFile);
+        findBugs.setIncrementalStateFile(incrementalStateFile);
 
         findBugs.setBugReporterDecorators(enabledBugReporterDecorators, disabledBugReporterDecorators);
         if (applySuppression) {
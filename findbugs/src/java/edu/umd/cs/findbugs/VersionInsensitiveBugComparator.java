@@ -30,7 +30,7 @@ import edu.umd.cs.findbugs.model.IdentityClassNameRewriter;
  * Compare bug instances by only those criteria which we would expect to remain
  * constant between versions.
  */
-public class VersionInsensitiveBugComparator implements WarningComparator {
+public class VersionInsensitiveBugComparator implements WarningComparator, KeyedBugComparator {
 
     private ClassNameRewriter classNameRewriter = IdentityClassNameRewriter.instance();
 
@@ -262,6 +262,56 @@ public class VersionInsensitiveBugComparator implements WarningComparator {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is built from the bug pattern and from the interesting
+     * annotations other than local variables, which are the annotations that
+     * {@link #compare(BugInstance, BugInstance)} requires to match in order.
+     */
+    @Override
+    public Object getMatchingKey(BugInstance bug) {
+        BugPattern pattern = bug.getBugPattern();
+        StringBuilder key = new StringBuilder();
+        key.append(pattern.getAbbrev());
+        if (isExactBugPatternMatch()) {
+            key.append(' ').append(pattern.getType());
+        }
+        if (comparePriorities) {
+            key.append(' ').append(bug.getPriority());
+        }
+        for (Iterator<BugAnnotation> i = new FilteringAnnotationIterator(bug.annotationIterator()); i.hasNext();) {
+            BugAnnotation annotation = i.next();
+            Class<? extends BugAnnotation> annotationClass = annotation.getClass();
+            if (annotationClass == LocalVariableAnnotation.class) {
+                // Local variables may be skipped or match any name, so they
+                // are left out of the key, separator included
+                continue;
+            }
+            key.append(' ');
+            if (annotationClass == ClassAnnotation.class) {
+                key.append(classNameRewriter.rewriteClassName(((ClassAnnotation) annotation).getClassName()));
+            } else if (annotationClass == MethodAnnotation.class) {
+                MethodAnnotation method = ClassNameRewriterUtil.convertMethodAnnotation(classNameRewriter,
+                        (MethodAnnotation) annotation);
+                key.append(method.getClassName()).append('.').append(method.getMethodName())
+                        .append(method.getMethodSignature());
+            } else if (annotationClass == FieldAnnotation.class) {
+                FieldAnnotation field = ClassNameRewriterUtil.convertFieldAnnotation(classNameRewriter,
+                        (FieldAnnotation) annotation);
+                key.append(field.getClassName()).append('.').append(field.getFieldName()).append(field.getFieldSignature());
+            } else if (annotationClass == StringAnnotation.class) {
+                key.append(((StringAnnotation) annotation).getValue());
+            } else if (annotationClass == TypeAnnotation.class) {
+                key.append(ClassNameRewriterUtil.rewriteSignature(classNameRewriter,
+                        ((TypeAnnotation) annotation).getTypeDescriptor()));
+            } else if (annotationClass == IntAnnotation.class) {
+                key.append(((IntAnnotation) annotation).getValue());
+            }
+        }
+        return key.toString();
+    }
+
     private boolean interestingNext(Iterator<BugAnnotation> i) {
         while (i.hasNext()) {
             BugAnnotation a = i.next();
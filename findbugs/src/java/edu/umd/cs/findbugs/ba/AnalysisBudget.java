@@ -0,0 +1,233 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.util.ThreadResourceUsage;
+
+/**
+ * Budget of CPU time and allocated memory of a detector, for each method it
+ * analyzes. A detector that exceeds its budget is aborted by an
+ * {@link AnalysisBudgetExceededException}: the detectors visiting the methods
+ * with a {@link edu.umd.cs.findbugs.visitclass.PreorderVisitor} or a
+ * {@link edu.umd.cs.findbugs.bcel.CFGDetector} then go on with the next
+ * method, the others with the next class. The other detectors still analyze
+ * the method.
+ * <p>
+ * The budget of the detector being applied is kept by the analysis thread.
+ * The time and memory used by the analysis engines are charged to the
+ * detector that requested them: the budget stays in effect while they run,
+ * between {@link #startEngine()} and {@link #endEngine}. The engines are never
+ * aborted, though, since their results are shared by all detectors: if the
+ * budget runs out while an engine runs, the detector is aborted at its first
+ * checkpoint after the engine returns.
+ */
+public class AnalysisBudget {
+
+    /** Number of checkpoints between two measures of the resources used */
+    private static final int CHECK_INTERVAL = 256;
+
+    private static final ThreadLocal<AnalysisBudget> currentBudget = new ThreadLocal<AnalysisBudget>();
+
+    /**
+     * Whether a budget was ever entered; until then, checkpoints don't need to
+     * look for the budget of the thread
+     */
+    private static volatile boolean used;
+
+    private final Object detector;
+
+    private final String detectorName;
+
+    private final long maxCpuNanos;
+
+    private final long maxAllocatedBytes;
+
+    private @CheckForNull MethodDescriptor method;
+
+    private long startCpuNanos;
+
+    private long startAllocatedBytes;
+
+    private int countdown;
+
+    /** Number of analysis engines being run for the detector */
+    private int engineDepth;
+
+    private @CheckForNull String exceeded;
+
+    /**
+     * @param detector
+     *            the detector object whose methods visits are budgeted
+     * @param detectorName
+     *            name of the detector, for the skipped analysis reports
+     * @param maxCpuNanos
+     *            CPU time budget per method in nanoseconds, or 0 for no limit
+     * @param maxAllocatedBytes
+     *            allocated memory budget per method in bytes, or 0 for no limit
+     */
+    public AnalysisBudget(Object detector, String detectorName, long maxCpuNanos, long maxAllocatedBytes) {
+        this.detector = detector;
+        this.detectorName = detectorName;
+        this.maxCpuNanos = ThreadResourceUsage.isCpuTimeSupported() ? maxCpuNanos : 0;
+        this.maxAllocatedBytes = ThreadResourceUsage.isAllocatedBytesSupported() ? maxAllocatedBytes : 0;
+    }
+
+    /**
+     * Make a budget the budget of the current thread, until {@link #exit} is
+     * called.
+     *
+     * @param budget
+     *            the budget, or null for no budget
+     * @return the previous budget of the thread, to be passed to exit
+     */
+    public static @CheckForNull AnalysisBudget enter(@CheckForNull AnalysisBudget budget) {
+        AnalysisBudget previous = currentBudget.get();
+        if (budget != null) {
+            used = true;
+            budget.start(null);
+        }
+        currentBudget.set(budget);
+        return previous;
+    }
+
+    /**
+     * Restore the budget of the current thread.
+     *
+     * @param previous
+     *            the budget returned by {@link #enter}
+     */
+    public static void exit(@CheckForNull AnalysisBudget previous) {
+        currentBudget.set(previous);
+    }
+
+    /**
+     * Called when the current thread starts running an analysis engine: the
+     * resources the engine uses are charged to the budget of the thread, but
+     * the engine is not aborted.
+     *
+     * @return the budget charged, to be passed to {@link #endEngine}
+     */
+    public static @CheckForNull AnalysisBudget startEngine() {
+        if (!used) {
+            return null;
+        }
+        AnalysisBudget budget = currentBudget.get();
+        if (budget != null) {
+            budget.engineDepth++;
+        }
+        return budget;
+    }
+
+    /**
+     * Called when an analysis engine started by {@link #startEngine()}
+     * returns. The next checkpoint measures the resources used so far.
+     *
+     * @param budget
+     *            the budget returned by startEngine
+     */
+    public static void endEngine(@CheckForNull AnalysisBudget budget) {
+        if (budget != null && --budget.engineDepth == 0) {
+            budget.countdown = 1;
+        }
+    }
+
+    /**
+     * Called by a detector when it starts analyzing a method: the budget of
+     * the detector starts again for the method.
+     *
+     * @param detector
+     *            the detector
+     * @param method
+     *            the method
+     * @return true if the detector has a budget; it should then catch the
+     *         {@link AnalysisBudgetExceededException} thrown while analyzing
+     *         the method, and go on with the next method
+     */
+    public static boolean startMethod(Object detector, @CheckForNull MethodDescriptor method) {
+        if (!used) {
+            return false;
+        }
+        AnalysisBudget budget = currentBudget.get();
+        if (budget == null || budget.detector != detector) {
+            return false;
+        }
+        budget.start(method);
+        return true;
+    }
+
+    /**
+     * Check whether the detector being applied by the current thread is within
+     * its budget. Cheap enough to be called for each instruction analyzed.
+     *
+     * @throws AnalysisBudgetExceededException
+     *             if the detector exceeded its budget
+     */
+    public static void checkpoint() {
+        if (!used) {
+            return;
+        }
+        AnalysisBudget budget = currentBudget.get();
+        if (budget != null && --budget.countdown <= 0) {
+            budget.check();
+        }
+    }
+
+    private void start(@CheckForNull MethodDescriptor method) {
+        this.method = method;
+        this.exceeded = null;
+        this.countdown = CHECK_INTERVAL;
+        if (maxCpuNanos > 0) {
+            startCpuNanos = ThreadResourceUsage.getCpuTime();
+        }
+        if (maxAllocatedBytes > 0) {
+            startAllocatedBytes = ThreadResourceUsage.getAllocatedBytes();
+        }
+    }
+
+    private void check() {
+        countdown = CHECK_INTERVAL;
+        if (exceeded == null) {
+            if (maxCpuNanos > 0 && ThreadResourceUsage.getCpuTime() - startCpuNanos > maxCpuNanos) {
+                exceeded = "CPU time budget of " + maxCpuNanos / 1000000 + " ms";
+            } else if (maxAllocatedBytes > 0 && ThreadResourceUsage.getAllocatedBytes() - startAllocatedBytes > maxAllocatedBytes) {
+                exceeded = "allocation budget of " + maxAllocatedBytes / (1024 * 1024) + " MB";
+            } else {
+                return;
+            }
+            // Report once, even if the detector catches the exception
+            AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+            if (analysisContext != null) {
+                Object analyzed = method != null ? method : analysisContext.getClassBeingAnalyzed();
+                analysisContext.logAnError("Skipped analysis of " + analyzed + " by " + detectorName + ": exceeded " + exceeded);
+                if (method != null && analysisContext.getLookupFailureCallback() != null) {
+                    analysisContext.getLookupFailureCallback().reportSkippedAnalysis(method);
+                }
+            }
+        }
+        if (engineDepth > 0) {
+            // Let the engine finish, the detector is aborted afterwards
+            return;
+        }
+        throw new AnalysisBudgetExceededException(detectorName + " exceeded " + exceeded, detectorName, method);
+    }
+}
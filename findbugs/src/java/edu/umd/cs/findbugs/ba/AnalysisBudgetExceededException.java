@@ -0,0 +1,57 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * Thrown to abort a detector which exceeded its {@link AnalysisBudget}. The
+ * analysis skipped because of it has already been reported.
+ */
+public class AnalysisBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String detectorName;
+
+    private final @CheckForNull MethodDescriptor method;
+
+    public AnalysisBudgetExceededException(String message, String detectorName, @CheckForNull MethodDescriptor method) {
+        super(message);
+        this.detectorName = detectorName;
+        this.method = method;
+    }
+
+    /**
+     * @return the name of the aborted detector
+     */
+    public String getDetectorName() {
+        return detectorName;
+    }
+
+    /**
+     * @return the method whose analysis was aborted, or null if the detector
+     *         was not analyzing a particular method
+     */
+    public @CheckForNull MethodDescriptor getMethod() {
+        return method;
+    }
+}
@@ -26,10 +26,12 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -144,11 +146,13 @@ public class AnalysisContext {
 
     private String databaseOutputDir;
 
+    private volatile Set<ClassDescriptor> classesWithLoadedDatabaseEntries = Collections.emptySet();
+
     boolean missingClassWarningsSuppressed;
 
     private ClassSummary classSummary;
 
-    private ClassDescriptor classBeingAnalyzed;
+    private final ThreadLocal<ClassDescriptor> classBeingAnalyzed = new ThreadLocal<ClassDescriptor>();
 
     private FieldSummary fieldSummary;
 
@@ -203,16 +207,19 @@ public class AnalysisContext {
         return currentXFactory.get();
     }
 
+    /**
+     * Get the class being analyzed by the current thread.
+     */
     public ClassDescriptor getClassBeingAnalyzed() {
-        return classBeingAnalyzed;
+        return classBeingAnalyzed.get();
     }
 
     public void setClassBeingAnalyzed(@Nonnull ClassDescriptor classBeingAnalyzed) {
-        this.classBeingAnalyzed = classBeingAnalyzed;
+        this.classBeingAnalyzed.set(classBeingAnalyzed);
     }
 
     public void clearClassBeingAnalyzed() {
-        this.classBeingAnalyzed = null;
+        this.classBeingAnalyzed.remove();
     }
 
     public ClassSummary getClassSummary() {
@@ -403,7 +410,11 @@ public class AnalysisContext {
         if (!m.usesInvokeDynamic()) {
             throw new IllegalArgumentException();
         }
-        if (skippedDueToInvokeDynamic.add(m.getMethodDescriptor())) {
+        boolean added;
+        synchronized (skippedDueToInvokeDynamic) {
+            added = skippedDueToInvokeDynamic.add(m.getMethodDescriptor());
+        }
+        if (added) {
             logAnError(m + " skipped due to invoke_dynamic");
         }
 
@@ -662,6 +673,29 @@ public class AnalysisContext {
         return databaseOutputDir;
     }
 
+    /**
+     * Record the referenced classes whose interprocedural database entries
+     * were loaded from a previous analysis, and need not be computed again.
+     *
+     * @param classes
+     *            the classes
+     */
+    public final void setClassesWithLoadedDatabaseEntries(Set<ClassDescriptor> classes) {
+        this.classesWithLoadedDatabaseEntries = Collections.unmodifiableSet(new HashSet<ClassDescriptor>(classes));
+    }
+
+    /**
+     * Return whether the interprocedural database entries of given class were
+     * loaded from a previous analysis.
+     *
+     * @param classDescriptor
+     *            the class
+     * @return true if the entries were loaded, false if they must be computed
+     */
+    public final boolean hasLoadedDatabaseEntries(ClassDescriptor classDescriptor) {
+        return classesWithLoadedDatabaseEntries.contains(classDescriptor);
+    }
+
     /**
      * Load an interprocedural property database.
      *
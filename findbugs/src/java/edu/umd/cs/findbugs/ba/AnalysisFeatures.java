@@ -110,6 +110,14 @@ public interface AnalysisFeatures {
     public static final @AnalysisFeature
     int MERGE_SIMILAR_WARNINGS = 7;
 
+    /**
+     * Decode the bytecode of each method once, and replay the decoded
+     * instructions to all the detectors of the analysis pass that visit the
+     * method.
+     */
+    public static final @AnalysisFeature
+    int SHARE_DECODED_BYTECODE = 8;
+
     /**
      * Number of boolean analysis properties reserved for the bytecode analysis
      * framework. Clients of the framework may use property values &gt;= this
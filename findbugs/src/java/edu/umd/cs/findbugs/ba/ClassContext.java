@@ -124,7 +124,7 @@ public class ClassContext {
         }
     }
 
-    public Map<MethodDescriptor, Object> getObjectMap(Class<?> analysisClass) {
+    public synchronized Map<MethodDescriptor, Object> getObjectMap(Class<?> analysisClass) {
         Map<MethodDescriptor, Object> objectMap = methodAnalysisObjectMap.get(analysisClass);
         if (objectMap == null) {
             if (analysisClass == ValueNumberDataflow.class) {
@@ -150,7 +150,7 @@ public class ClassContext {
      * @param object
      *            the analysis object to cache
      */
-    public void putMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor, Object object) {
+    public synchronized void putMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor, Object object) {
         if (object == null) {
             throw new IllegalArgumentException();
         }
@@ -167,12 +167,12 @@ public class ClassContext {
      *            method descriptor identifying the analyzed method
      * @return the analysis object
      */
-    public Object getMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor) {
+    public synchronized Object getMethodAnalysis(Class<?> analysisClass, MethodDescriptor methodDescriptor) {
         Map<MethodDescriptor, Object> objectMap = getObjectMap(analysisClass);
         return objectMap.get(methodDescriptor);
     }
 
-    public void purgeAllMethodAnalyses() {
+    public synchronized void purgeAllMethodAnalyses() {
         methodAnalysisObjectMap.clear();
     }
 
@@ -182,7 +182,7 @@ public class ClassContext {
      * @param methodDescriptor
      *            method descriptor identifying method to purge
      */
-    public void purgeMethodAnalyses(MethodDescriptor methodDescriptor) {
+    public synchronized void purgeMethodAnalyses(MethodDescriptor methodDescriptor) {
         Set<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> entrySet = methodAnalysisObjectMap.entrySet();
         for (Iterator<Map.Entry<Class<?>, Map<MethodDescriptor, Object>>> i = entrySet.iterator(); i.hasNext();) {
             Map.Entry<Class<?>, Map<MethodDescriptor, Object>> entry = i.next();
@@ -430,8 +430,11 @@ public class ClassContext {
     static public BitSet getBytecodeSet(JavaClass clazz, Method method) {
 
         XMethod xmethod = XFactory.createXMethod(clazz, method);
-        if (cachedBitsets().containsKey(xmethod)) {
-            return cachedBitsets().get(xmethod);
+        MapCache<XMethod, BitSet> cachedBitsets = cachedBitsets();
+        synchronized (cachedBitsets) {
+            if (cachedBitsets.containsKey(xmethod)) {
+                return cachedBitsets.get(xmethod);
+            }
         }
         Code code = method.getCode();
         if (code == null) {
@@ -452,7 +455,9 @@ public class ClassContext {
         if (unpackedCode != null) {
             result = unpackedCode.getBytecodeSet();
         }
-        cachedBitsets().put(xmethod, result);
+        synchronized (cachedBitsets) {
+            cachedBitsets.put(xmethod, result);
+        }
         return result;
     }
 
@@ -464,8 +469,15 @@ public class ClassContext {
     static public Set<Integer> getLoopExitBranches(Method method, MethodGen methodGen) {
 
         XMethod xmethod = XFactory.createXMethod(methodGen);
-        if (cachedLoopExits().containsKey(xmethod)) {
-            Set<Integer> result = cachedLoopExits().get(xmethod);
+        MapCache<XMethod, Set<Integer>> cachedLoopExits = cachedLoopExits();
+        Set<Integer> cached;
+        boolean isCached;
+        synchronized (cachedLoopExits) {
+            isCached = cachedLoopExits.containsKey(xmethod);
+            cached = cachedLoopExits.get(xmethod);
+        }
+        if (isCached) {
+            Set<Integer> result = cached;
             if (result == null) {
                 AnalysisContext.logError("Null cachedLoopExits for " + xmethod, new NullPointerException());
                 assert false;
@@ -491,7 +503,9 @@ public class ClassContext {
             result = Collections.<Integer> emptySet();
         }
 
-        cachedLoopExits().put(xmethod, result);
+        synchronized (cachedLoopExits) {
+            cachedLoopExits.put(xmethod, result);
+        }
         return result;
     }
 
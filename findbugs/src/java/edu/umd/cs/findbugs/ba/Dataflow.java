@@ -20,9 +20,17 @@
 package edu.umd.cs.findbugs.ba;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.MethodGen;
@@ -34,6 +42,7 @@ import edu.umd.cs.findbugs.ba.deref.UnconditionalValueDerefSet;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.util.Util;
 
 /**
  * Perform dataflow analysis on a method using a control flow graph. Both
@@ -47,6 +56,12 @@ import edu.umd.cs.findbugs.classfile.Global;
  * The analysis's transfer function is applied to transform the meet of the
  * results of the block's logical predecessors (the block's start facts) into
  * the block's result facts.
+ * <p>
+ * By default, the analysis is solved with a worklist: a block is only visited
+ * again when the result fact of one of its logical predecessors has changed,
+ * and pending blocks are visited in the analysis's block order. Setting the
+ * <code>dataflow.worklist</code> property to false restores the older solver,
+ * which sweeps over all blocks until no result fact changes.
  *
  * @author David Hovemeyer
  * @see CFG
@@ -63,6 +78,14 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
     private int numIterations;
 
+    private int numBlockVisits;
+
+    private int numMeets;
+
+    private int timestamp;
+
+    private boolean useWorklist = USE_WORKLIST;
+
     public static boolean DEBUG = SystemProperties.getBoolean("dataflow.debug");
 
     /**
@@ -103,6 +126,30 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
     // Maximum number of iterations before we assume there is a bug and give up.
     private static final int MAX_ITERS = SystemProperties.getInt("dataflow.maxiters", 97);
 
+    private static final boolean USE_WORKLIST = SystemProperties.getBoolean("dataflow.worklist", true);
+
+    /**
+     * Number of dataflow executions, iterations, block visits and meets, by
+     * analysis class name.
+     */
+    private static final ConcurrentHashMap<String, AtomicLongArray> statistics = new ConcurrentHashMap<String, AtomicLongArray>();
+
+    static {
+        Util.runLogAtShutdown(new Runnable() {
+
+            @Override
+            public void run() {
+                System.err.println("Dataflow executions, iterations, block visits, meets:");
+                for (Map.Entry<String, AtomicLongArray> e : new TreeMap<String, AtomicLongArray>(statistics).entrySet()) {
+                    AtomicLongArray counts = e.getValue();
+                    System.err.printf("  %-40s %8d %10d %10d %10d%n", e.getKey(), counts.get(0), counts.get(1),
+                            counts.get(2), counts.get(3));
+                }
+                System.err.println();
+            }
+        });
+    }
+
     private String getFullyQualifiedMethodName() {
         String methodName;
         MethodGen methodGen = cfg.getMethodGen();
@@ -134,19 +181,133 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
 
     }
 
+    /**
+     * Choose whether to solve the analysis with a worklist or by sweeping
+     * over all blocks. Only used to compare the two solvers.
+     */
+    void setUseWorklist(boolean useWorklist) {
+        this.useWorklist = useWorklist;
+    }
+
     /**
      * Run the algorithm. Afterwards, caller can use the getStartFact() and
      * getResultFact() methods to to get dataflow facts at start and result
      * points of each block.
      */
     public void execute() throws DataflowAnalysisException {
+        try {
+            if (useWorklist) {
+                executeWorklist();
+            } else {
+                executeSweep();
+            }
+        } finally {
+            recordStatistics();
+        }
+    }
+
+    /**
+     * Solve the analysis with a worklist of blocks whose logical predecessors'
+     * result facts changed since they were last visited. Pending blocks are
+     * visited in block order; every time the solver wraps around to the start
+     * of the block order, a new iteration begins.
+     */
+    private void executeWorklist() throws DataflowAnalysisException {
+        if (DEBUG) {
+            reportAnalysis("Executing");
+        }
+
+        List<BasicBlock> blockList = new ArrayList<BasicBlock>();
+        Map<BasicBlock, Integer> blockIndexMap = new IdentityHashMap<BasicBlock, Integer>();
+        for (Iterator<BasicBlock> i = blockOrder.blockIterator(); i.hasNext();) {
+            BasicBlock block = i.next();
+            blockIndexMap.put(block, blockList.size());
+            blockList.add(block);
+        }
+
+        int[] visitCount = new int[blockList.size()];
+        BitSet pending = new BitSet();
+        pending.set(0, blockList.size());
+
+        timestamp = 0;
+        numIterations = 1;
+        analysis.startIteration();
+        int next = 0;
+        while (!pending.isEmpty()) {
+            int index = pending.nextSetBit(next);
+            if (index < 0) {
+                analysis.finishIteration();
+                ++numIterations;
+                analysis.startIteration();
+                index = pending.nextSetBit(0);
+            }
+            pending.clear(index);
+            next = index + 1;
+
+            BasicBlock block = blockList.get(index);
+            if (++visitCount[index] > MAX_ITERS + 9) {
+                throw new DataflowAnalysisException("Too many iterations (" + numIterations + ") in dataflow when analyzing "
+                        + getFullyQualifiedMethodName());
+            }
+
+            Fact start = analysis.getStartFact(block);
+            Fact result = analysis.getResultFact(block);
+            if (block == logicalEntryBlock()) {
+                analysis.makeFactTop(start);
+                analysis.initEntryFact(start);
+            } else {
+                meetPredecessorFacts(block, start);
+            }
+
+            AnalysisBudget.checkpoint();
+            if (transferBlock(block, start, result)) {
+                Iterator<Edge> succEdgeIter = isForwards ? cfg.outgoingEdgeIterator(block) : cfg.incomingEdgeIterator(block);
+                while (succEdgeIter.hasNext()) {
+                    Edge edge = succEdgeIter.next();
+                    Integer succIndex = blockIndexMap.get(isForwards ? edge.getTarget() : edge.getSource());
+                    if (succIndex != null) {
+                        pending.set(succIndex);
+                    }
+                }
+            }
+        }
+        analysis.finishIteration();
+
+        if (DEBUG) {
+            System.out.println("-- Quiescence achieved after " + numIterations + " iterations, " + numBlockVisits
+                    + " block visits, " + numMeets + " meets");
+        }
+    }
+
+    private void recordStatistics() {
+        String analysisName = analysis.getClass().getName();
+        analysisName = analysisName.substring(analysisName.lastIndexOf('.') + 1);
+        AtomicLongArray counts = statistics.get(analysisName);
+        if (counts == null) {
+            counts = new AtomicLongArray(4);
+            AtomicLongArray existing = statistics.putIfAbsent(analysisName, counts);
+            if (existing != null) {
+                counts = existing;
+            }
+        }
+        counts.incrementAndGet(0);
+        counts.addAndGet(1, numIterations);
+        counts.addAndGet(2, numBlockVisits);
+        counts.addAndGet(3, numMeets);
+    }
+
+    /**
+     * Solve the analysis by sweeping over all blocks in block order, until no
+     * result fact changes.
+     */
+    private void executeSweep() throws DataflowAnalysisException {
         boolean change;
         boolean debugWas = DEBUG;
         if (DEBUG) {
             reportAnalysis("Executing");
         }
 
-        int timestamp = 0;
+        timestamp = 0;
         boolean firstTime = true;
         do {
             change = false;
@@ -239,8 +400,6 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                 Fact result = analysis.getResultFact(block);
                 assert result != null;
 
-                int originalResultTimestamp = analysis.getLastUpdateTimestamp(result);
-
                 // Meet all of the logical predecessor results into this block's
                 // start.
                 // Special case: if the block is the logical entry, then it gets
@@ -257,10 +416,8 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                     Iterator<Edge> predEdgeIter = logicalPredecessorEdgeIterator(block);
 
                     int predCount = 0;
-                    int rawPredCount = 0;
                     while (predEdgeIter.hasNext()) {
                         Edge edge = predEdgeIter.next();
-                        rawPredCount++;
                         if (needToRecompute) {
                             // don't need to check to see if we need to recompute.
                             if (firstTime && !sawBackEdge) {
@@ -305,118 +462,15 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
                         continue;
                     }
 
-                    analysis.makeFactTop(start);
-                    predEdgeIter = logicalPredecessorEdgeIterator(block);
-                    while (predEdgeIter.hasNext()) {
-                        Edge edge = predEdgeIter.next();
-                        BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
-
-                        // Get the predecessor result fact
-                        Fact predFact = analysis.getResultFact(logicalPred);
-
-                        // Apply the edge transfer function.
-                        Fact edgeFact = analysis.createFact();
-                        analysis.copy(predFact, edgeFact);
-                        analysis.edgeTransfer(edge, edgeFact);
-
-                        if (DEBUG && !analysis.same(edgeFact, predFact)) {
-                            debug(block, logicalPred, edge, "Edge transfer " + analysis.factToString(predFact) + " ==> "
-                                    + analysis.factToString(edgeFact));
-                        }
-
-                        // Merge the predecessor fact (possibly transformed
-                        // by the edge transfer function)
-                        // into the block's start fact.
-                        if (DEBUG) {
-                            if (analysis.isTop(start)) {
-                                debug(block, logicalPred, edge, "\n  First pred is " + analysis.factToString(edgeFact)
-                                        + "\n   last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
-                            } else {
-                                debug(block, logicalPred, edge, "\n  Meet " + analysis.factToString(start) + "\n   with "
-                                        + analysis.factToString(edgeFact)
-
-                                        + "\n   pred last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
-                            }
-                        }
-
-                        if (analysis instanceof UnconditionalValueDerefAnalysis) {
-                            ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact,
-                                    edge, (UnconditionalValueDerefSet) start, rawPredCount == 1);
-                        } else {
-                            analysis.meetInto(edgeFact, edge, start);
-                        }
-                        analysis.setLastUpdateTimestamp(start, timestamp);
-
-                        int pos = -1;
-                        if (block.getFirstInstruction() != null) {
-                            pos = block.getFirstInstruction().getPosition();
-                        }
-                        if (DEBUG) {
-                            System.out.println(" [" + pos + "]==> " + analysis.factToString(start) + " @ " + timestamp
-                                    + " \n");
-                        }
-                    }
+                    meetPredecessorFacts(block, start);
                 }
                 if (DEBUG) {
                     debug(block, "start fact is " + analysis.factToString(start) + "\n");
                 }
 
-                // making a copy of result facts (so we can detect if it
-                // changed).
-                boolean resultWasTop = analysis.isTop(result);
-                Fact origResult = null;
-                if (!resultWasTop) {
-                    origResult = analysis.createFact();
-                    analysis.copy(result, origResult);
-                }
-
-                //                if (true || analysis.isTop(start)) {
-                // Apply the transfer function.
-
-                analysis.transfer(block, null, start, result);
-                //                } else {
-                //                    analysis.copy(start, result);
-                //                }
-
-                if (DEBUG && SystemProperties.getBoolean("dataflow.blockdebug")) {
-                    debug(block, "Dumping flow values for block:\n");
-                    Iterator<org.apache.bcel.generic.InstructionHandle> ii = block.instructionIterator();
-                    while (ii.hasNext()) {
-                        org.apache.bcel.generic.InstructionHandle handle = ii.next();
-                        Fact tmpResult = analysis.createFact();
-                        analysis.transfer(block, handle, start, tmpResult);
-                        System.out.println("\t" + handle + " " + analysis.factToString(tmpResult));
-                    }
-                }
-
-                // See if the result changed.
-                if (DEBUG) {
-                    debug(block, "orig result is " + (origResult == null ? "TOP" : analysis.factToString(origResult)) + "\n");
-                }
-                boolean thisResultChanged = false;
-                if (resultWasTop) {
-                    thisResultChanged = !analysis.isTop(result);
-                } else {
-                    thisResultChanged = !analysis.same(result, origResult);
-                }
-                if (thisResultChanged) {
-                    timestamp++;
-                    if (DEBUG) {
-                        debug(block, "result changed at timestamp " + timestamp + "\n");
-                    }
-                    if (DEBUG && !needToRecompute) {
-                        System.out.println("I thought I didn't need to recompute");
-                    }
+                AnalysisBudget.checkpoint();
+                if (transferBlock(block, start, result)) {
                     change = true;
-                    analysis.setLastUpdateTimestamp(result, timestamp);
-                } else {
-                    analysis.setLastUpdateTimestamp(result, originalResultTimestamp);
-                }
-
-                if (DEBUG) {
-                    debug(block,
-                            "result is " + analysis.factToString(result) + " @ timestamp "
-                                    + analysis.getLastUpdateTimestamp(result) + "\n");
                 }
             }
 
@@ -439,6 +493,139 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
         DEBUG = debugWas;
     }
 
+    /**
+     * Meet the result facts of the logical predecessors of a block, each
+     * transformed by the transfer function of the edge connecting it to the
+     * block, into the block's start fact.
+     */
+    private void meetPredecessorFacts(BasicBlock block, Fact start) throws DataflowAnalysisException {
+        int rawPredCount = 0;
+        Iterator<Edge> predEdgeIter = logicalPredecessorEdgeIterator(block);
+        while (predEdgeIter.hasNext()) {
+            predEdgeIter.next();
+            rawPredCount++;
+        }
+
+        analysis.makeFactTop(start);
+        predEdgeIter = logicalPredecessorEdgeIterator(block);
+        while (predEdgeIter.hasNext()) {
+            Edge edge = predEdgeIter.next();
+            BasicBlock logicalPred = isForwards ? edge.getSource() : edge.getTarget();
+
+            // Get the predecessor result fact
+            Fact predFact = analysis.getResultFact(logicalPred);
+
+            // Apply the edge transfer function.
+            Fact edgeFact = analysis.createFact();
+            analysis.copy(predFact, edgeFact);
+            analysis.edgeTransfer(edge, edgeFact);
+
+            if (DEBUG && !analysis.same(edgeFact, predFact)) {
+                debug(block, logicalPred, edge, "Edge transfer " + analysis.factToString(predFact) + " ==> "
+                        + analysis.factToString(edgeFact));
+            }
+
+            // Merge the predecessor fact (possibly transformed
+            // by the edge transfer function)
+            // into the block's start fact.
+            if (DEBUG) {
+                if (analysis.isTop(start)) {
+                    debug(block, logicalPred, edge, "\n  First pred is " + analysis.factToString(edgeFact)
+                            + "\n   last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
+                } else {
+                    debug(block, logicalPred, edge, "\n  Meet " + analysis.factToString(start) + "\n   with "
+                            + analysis.factToString(edgeFact)
+
+                            + "\n   pred last updated at " + analysis.getLastUpdateTimestamp(predFact) + "\n");
+                }
+            }
+
+            if (analysis instanceof UnconditionalValueDerefAnalysis) {
+                ((UnconditionalValueDerefAnalysis) analysis).meetInto((UnconditionalValueDerefSet) edgeFact,
+                        edge, (UnconditionalValueDerefSet) start, rawPredCount == 1);
+            } else {
+                analysis.meetInto(edgeFact, edge, start);
+            }
+            ++numMeets;
+            analysis.setLastUpdateTimestamp(start, timestamp);
+
+            int pos = -1;
+            if (block.getFirstInstruction() != null) {
+                pos = block.getFirstInstruction().getPosition();
+            }
+            if (DEBUG) {
+                System.out.println(" [" + pos + "]==> " + analysis.factToString(start) + " @ " + timestamp
+                        + " \n");
+            }
+        }
+    }
+
+    /**
+     * Apply the transfer function of a block to its start fact, and update the
+     * timestamp of its result fact.
+     *
+     * @return true if the result fact changed
+     */
+    private boolean transferBlock(BasicBlock block, Fact start, Fact result) throws DataflowAnalysisException {
+        int originalResultTimestamp = analysis.getLastUpdateTimestamp(result);
+
+        // making a copy of result facts (so we can detect if it
+        // changed).
+        boolean resultWasTop = analysis.isTop(result);
+        Fact origResult = null;
+        if (!resultWasTop) {
+            origResult = analysis.createFact();
+            analysis.copy(result, origResult);
+        }
+
+        //                if (true || analysis.isTop(start)) {
+        // Apply the transfer function.
+
+        analysis.transfer(block, null, start, result);
+        ++numBlockVisits;
+        //                } else {
+        //                    analysis.copy(start, result);
+        //                }
+
+        if (DEBUG && SystemProperties.getBoolean("dataflow.blockdebug")) {
+            debug(block, "Dumping flow values for block:\n");
+            Iterator<org.apache.bcel.generic.InstructionHandle> ii = block.instructionIterator();
+            while (ii.hasNext()) {
+                org.apache.bcel.generic.InstructionHandle handle = ii.next();
+                Fact tmpResult = analysis.createFact();
+                analysis.transfer(block, handle, start, tmpResult);
+                System.out.println("\t" + handle + " " + analysis.factToString(tmpResult));
+            }
+        }
+
+        // See if the result changed.
+        if (DEBUG) {
+            debug(block, "orig result is " + (origResult == null ? "TOP" : analysis.factToString(origResult)) + "\n");
+        }
+        boolean thisResultChanged = false;
+        if (resultWasTop) {
+            thisResultChanged = !analysis.isTop(result);
+        } else {
+            thisResultChanged = !analysis.same(result, origResult);
+        }
+        if (thisResultChanged) {
+            timestamp++;
+            if (DEBUG) {
+                debug(block, "result changed at timestamp " + timestamp + "\n");
+            }
+            analysis.setLastUpdateTimestamp(result, timestamp);
+        } else {
+            analysis.setLastUpdateTimestamp(result, originalResultTimestamp);
+        }
+
+        if (DEBUG) {
+            debug(block,
+                    "result is " + analysis.factToString(result) + " @ timestamp "
+                            + analysis.getLastUpdateTimestamp(result) + "\n");
+        }
+        return thisResultChanged;
+    }
+
     private void reportAnalysis(String msg) {
         String shortAnalysisName = analysis.getClass().getName();
         int pkgEnd = shortAnalysisName.lastIndexOf('.');
@@ -473,6 +660,21 @@ public class Dataflow<Fact, AnalysisType extends DataflowAnalysis<Fact>> {
         return numIterations;
     }
 
+    /**
+     * Return the number of times the transfer function of a block was
+     * applied.
+     */
+    public int getNumBlockVisits() {
+        return numBlockVisits;
+    }
+
+    /**
+     * Return the number of facts met into the start facts of blocks.
+     */
+    public int getNumMeets() {
+        return numMeets;
+    }
+
     /**
      * Get dataflow facts for start of given block.
      */
@@ -201,6 +201,34 @@ public class FieldSummary {
         }
     }
 
+    /**
+     * Merge a summary collected for a different set of classes into this
+     * one. Both summaries must still be incomplete.
+     *
+     * @param other
+     *            the summary to merge into this one
+     */
+    public void merge(FieldSummary other) {
+        if (complete || other.complete) {
+            throw new IllegalStateException("Can't merge a complete field summary");
+        }
+        writtenOutsideOfConstructor.addAll(other.writtenOutsideOfConstructor);
+        for (Map.Entry<XField, OpcodeStack.Item> e : other.summary.entrySet()) {
+            mergeSummary(e.getKey(), e.getValue());
+        }
+        fieldsWritten.putAll(other.fieldsWritten);
+        nonVoidSuperConstructorsCalled.putAll(other.nonVoidSuperConstructorsCalled);
+        for (Map.Entry<XMethod, Set<ProgramPoint>> e : other.selfMethodsCalledFromConstructor.entrySet()) {
+            Set<ProgramPoint> set = selfMethodsCalledFromConstructor.get(e.getKey());
+            if (set == null) {
+                set = new HashSet<ProgramPoint>();
+                selfMethodsCalledFromConstructor.put(e.getKey(), set);
+            }
+            set.addAll(e.getValue());
+        }
+        callsOverriddenMethodsFromConstructor.addAll(other.callsOverriddenMethodsFromConstructor);
+    }
+
     /**
      * @param complete
      *            The complete to set.
@@ -21,10 +21,10 @@ package edu.umd.cs.findbugs.ba;
 
 import static edu.umd.cs.findbugs.ba.Debug.VERIFY_INTEGRITY;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.generic.ConstantPoolGen;
@@ -57,6 +57,14 @@ import edu.umd.cs.findbugs.SystemProperties;
  * <p>
  * A Frame may have the special "BOTTOM" value. The result of merging any frame
  * with BOTTOM is BOTTOM.
+ * <p/>
+ * <p>
+ * The slots are kept in an array that copyFrom() shares between the two
+ * frames rather than copying it; a frame copies the array the first time it
+ * modifies a shared one. Since most facts are copied far more often than they
+ * are changed (e.g., the start fact of a block that is visited again without
+ * any change to its predecessors), this avoids most of the copying done while
+ * analyzing a method.
  *
  * @author David Hovemeyer
  * @see FrameDataflowAnalysis
@@ -76,8 +84,20 @@ public abstract class Frame<ValueType> {
 
     /**
      * Array storing the values of local variables and operand stack slots.
+     * May be shared with other frames: see {@link #slotSharing}.
+     */
+    private Object[] slots;
+
+    /**
+     * Sharing state of the slot array, itself shared by the frames using the
+     * array.
      */
-    private final ArrayList<ValueType> slotList;
+    private SlotSharing slotSharing;
+
+    /**
+     * Number of slots in use: locals plus stack values.
+     */
+    private int numSlots;
 
     /**
      * Flag marking this frame as a special "TOP" value. Such Frames serve as
@@ -96,6 +116,17 @@ public abstract class Frame<ValueType> {
      */
     private static final int DEFAULT_STACK_CAPACITY = 4;
 
+    /**
+     * Marks a slot array as possibly used by several frames, in which case it
+     * must be copied before being modified. The mark is kept next to the
+     * array rather than in the frames, so that copying a frame doesn't write
+     * to it: frames of cached dataflow results may be copied by several
+     * threads at once.
+     */
+    private static final class SlotSharing {
+        volatile boolean shared;
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////
     // Methods
     // //////////////////////////////////////////////////////////////////////////////////
@@ -110,12 +141,27 @@ public abstract class Frame<ValueType> {
      */
     public Frame(int numLocals) {
         this.numLocals = numLocals;
-        this.slotList = new ArrayList<ValueType>(numLocals + DEFAULT_STACK_CAPACITY);
-        for (int i = 0; i < numLocals; ++i) {
-            slotList.add(null);
+        this.slots = new Object[numLocals + DEFAULT_STACK_CAPACITY];
+        this.slotSharing = new SlotSharing();
+        this.numSlots = numLocals;
+    }
+
+    /**
+     * Make sure the slot array is owned by this frame and can hold the given
+     * number of slots.
+     */
+    private void makeSlotsWritable(int capacity) {
+        if (slotSharing.shared || capacity > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(capacity, numSlots + DEFAULT_STACK_CAPACITY));
+            slotSharing = new SlotSharing();
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private ValueType slot(int n) {
+        return (ValueType) slots[n];
+    }
+
     /**
      * Return whether or not this object the special "TOP" value for Frames.
      * Such Frames are the identity element of the meet operation.
@@ -178,7 +224,8 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        slotList.add(value);
+        makeSlotsWritable(numSlots + 1);
+        slots[numSlots++] = value;
     }
 
     /**
@@ -192,10 +239,14 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new DataflowAnalysisException("accessing top or bottom frame");
         }
-        if (slotList.size() == numLocals) {
+        if (numSlots == numLocals) {
             throw new DataflowAnalysisException("operand stack empty");
         }
-        return slotList.remove(slotList.size() - 1);
+        ValueType value = slot(--numSlots);
+        if (!slotSharing.shared) {
+            slots[numSlots] = null;
+        }
+        return value;
     }
 
     /**
@@ -208,11 +259,11 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new DataflowAnalysisException("accessing top or bottom frame");
         }
-        assert slotList.size() >= numLocals;
-        if (slotList.size() == numLocals) {
+        assert numSlots >= numLocals;
+        if (numSlots == numLocals) {
             throw new DataflowAnalysisException("operand stack is empty");
         }
-        return slotList.get(slotList.size() - 1);
+        return slot(numSlots - 1);
     }
 
     /**
@@ -225,9 +276,8 @@ public abstract class Frame<ValueType> {
         if (valueList.length > stackDepth) {
             throw new DataflowAnalysisException("not enough values on stack");
         }
-        int numSlots = slotList.size();
         for (int i = numSlots - valueList.length, j = 0; i < numSlots; ++i, ++j) {
-            valueList[j] = slotList.get(i);
+            valueList[j] = slot(i);
         }
     }
 
@@ -249,8 +299,8 @@ public abstract class Frame<ValueType> {
         if (loc < 0) {
             throw new DataflowAnalysisException("can't get position " + loc + " of stack");
         }
-        int pos = slotList.size() - (loc + 1);
-        return slotList.get(pos);
+        int pos = numSlots - (loc + 1);
+        return slot(pos);
     }
 
     /**
@@ -265,7 +315,7 @@ public abstract class Frame<ValueType> {
         if (loc >= stackDepth) {
             throw new DataflowAnalysisException("not enough values on stack: access=" + loc + ", avail=" + stackDepth);
         }
-        return slotList.size() - (loc + 1);
+        return numSlots - (loc + 1);
     }
 
     /**
@@ -427,7 +477,7 @@ public abstract class Frame<ValueType> {
             throw new IllegalArgumentException();
         }
 
-        return (slotList.size() - numArguments) + i;
+        return (numSlots - numArguments) + i;
     }
 
     /**
@@ -488,17 +538,18 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        assert slotList.size() >= numLocals;
-        if (slotList.size() > numLocals) {
-            slotList.subList(numLocals, slotList.size()).clear();
+        assert numSlots >= numLocals;
+        if (!slotSharing.shared) {
+            Arrays.fill(slots, numLocals, numSlots, null);
         }
+        numSlots = numLocals;
     }
 
     /**
      * Get the depth of the Java operand stack.
      */
     public int getStackDepth() {
-        return slotList.size() - numLocals;
+        return numSlots - numLocals;
     }
 
     /**
@@ -512,15 +563,15 @@ public abstract class Frame<ValueType> {
      * Get the number of slots (locals plus stack values).
      */
     public int getNumSlots() {
-        return slotList.size();
+        return numSlots;
     }
 
     public boolean contains(ValueType value) {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        for (ValueType v : slotList) {
-            if (v.equals(value)) {
+        for (int i = 0; i < numSlots; ++i) {
+            if (slots[i].equals(value)) {
                 return true;
             }
         }
@@ -538,7 +589,10 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        return slotList.get(n);
+        if (n >= numSlots) {
+            throw new IndexOutOfBoundsException("slot " + n + " of " + numSlots);
+        }
+        return slot(n);
     }
 
     /**
@@ -556,7 +610,14 @@ public abstract class Frame<ValueType> {
         if (!isValid()) {
             throw new IllegalStateException("accessing top or bottom frame");
         }
-        slotList.set(n, value);
+        if (n >= numSlots) {
+            throw new IndexOutOfBoundsException("slot " + n + " of " + numSlots);
+        }
+        if (slots[n] == value) {
+            return;
+        }
+        makeSlotsWritable(numSlots);
+        slots[n] = value;
     }
 
     /**
@@ -588,6 +649,10 @@ public abstract class Frame<ValueType> {
             return false;
         }
 
+        if (slots == other.slots) {
+            return true;
+        }
+
         for (int i = 0; i < getNumSlots(); ++i) {
             if (!getValue(i).equals(other.getValue(i))) {
                 return false;
@@ -605,30 +670,15 @@ public abstract class Frame<ValueType> {
      */
     public void copyFrom(Frame<ValueType> other) {
         lastUpdateTimestamp = other.lastUpdateTimestamp;
-        if (true) {
-            int size = slotList.size();
-            if (size == other.slotList.size()) {
-                for (int i = 0; i < size; i++) {
-                    slotList.set(i, other.slotList.get(i));
-                }
-            } else {
-                slotList.clear();
-                for (ValueType v : other.slotList) {
-                    slotList.add(v);
-                }
+        if (other != this) {
+            SlotSharing sharing = other.slotSharing;
+            if (!sharing.shared) {
+                sharing.shared = true;
             }
-        } else {
-            slotList.clear();
-            slotList.addAll(other.slotList);
-
-        }
-        /*
-         * Andrei, 27.02.2008: "optimized" code below takes ~18% overall FB
-         * execution time, code above only 5% int size = slotList.size(); if
-         * (size == other.slotList.size()) { for (int i = 0; i < size; i++)
-         * slotList.set(i, other.slotList.get(i)); } else { slotList.clear();
-         * for (ValueType v : other.slotList) slotList.add(v); }
-         */
+            slots = other.slots;
+            slotSharing = sharing;
+            numSlots = other.numSlots;
+        }
         isTop = other.isTop;
         isBottom = other.isBottom;
     }
@@ -690,10 +740,20 @@ public abstract class Frame<ValueType> {
      *         stack slots
      */
     public Collection<ValueType> allSlots() {
-        if (slotList == null) {
-            return Collections.<ValueType> emptyList();
-        }
-        return Collections.<ValueType> unmodifiableCollection(slotList);
+        return new AbstractList<ValueType>() {
+            @Override
+            public ValueType get(int index) {
+                if (index >= numSlots) {
+                    throw new IndexOutOfBoundsException("slot " + index + " of " + numSlots);
+                }
+                return slot(index);
+            }
+
+            @Override
+            public int size() {
+                return numSlots;
+            }
+        };
     }
 
     /**
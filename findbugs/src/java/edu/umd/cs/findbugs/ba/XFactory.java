@@ -19,12 +19,13 @@
 
 package edu.umd.cs.findbugs.ba;
 
+import java.io.PrintStream;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -71,19 +72,51 @@ import edu.umd.cs.findbugs.visitclass.PreorderVisitor;
 public class XFactory {
     public static final boolean DEBUG_UNRESOLVED = SystemProperties.getBoolean("findbugs.xfactory.debugunresolved");
 
-    private final Set<ClassDescriptor> reflectiveClasses = new HashSet<ClassDescriptor>();
+    // All tables are concurrent: the XFactory is shared by the worker threads
+    // of a multithreaded analysis.
 
-    private final Map<MethodDescriptor, XMethod> methods = new HashMap<MethodDescriptor, XMethod>();
+    private final Set<ClassDescriptor> reflectiveClasses = newConcurrentSet();
 
-    private final Map<FieldDescriptor, XField> fields = new HashMap<FieldDescriptor, XField>();
+    private final Map<MethodDescriptor, XMethod> methods = new ConcurrentHashMap<MethodDescriptor, XMethod>();
 
-    private final Set<XMethod> calledMethods = new HashSet<XMethod>();
+    private final Map<FieldDescriptor, XField> fields = new ConcurrentHashMap<FieldDescriptor, XField>();
 
-    private final Set<XField> emptyArrays = new HashSet<XField>();
+    private final Set<XMethod> calledMethods = newConcurrentSet();
 
-    private final Set<String> calledMethodSignatures = new HashSet<String>();
+    private final Set<XField> emptyArrays = newConcurrentSet();
 
-    private final Set<MethodDescriptor> functionsThatMightBeMistakenForProcedures = new HashSet<MethodDescriptor>();
+    private final Set<String> calledMethodSignatures = newConcurrentSet();
+
+    private final Set<MethodDescriptor> functionsThatMightBeMistakenForProcedures = newConcurrentSet();
+
+    private static <E> Set<E> newConcurrentSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<E, Boolean>());
+    }
+
+    // Rough size, in bytes, of an XMethod or XField with its annotation maps
+    private static final int MEMBER_INFO_SIZE = 96;
+
+    /**
+     * Print the number of entries in each table of this factory, and an
+     * estimate of the memory used by the table. Descriptors and strings are
+     * accounted for in the report of the DescriptorFactory.
+     *
+     * @param stream
+     *            stream to print to
+     * @see DescriptorFactory#reportMemoryUsage(PrintStream)
+     */
+    public void reportMemoryUsage(PrintStream stream) {
+        stream.println("XFACTORY MEMORY REPORT");
+        stream.printf("%10s %10s  %s%n", "entries", "KB", "table");
+        DescriptorFactory.printTableUsage(stream, "methods", methods.size(), (long) methods.size() * MEMBER_INFO_SIZE);
+        DescriptorFactory.printTableUsage(stream, "fields", fields.size(), (long) fields.size() * MEMBER_INFO_SIZE);
+        DescriptorFactory.printTableUsage(stream, "called methods", calledMethods.size(), 0);
+        DescriptorFactory.printTableUsage(stream, "called method signatures", calledMethodSignatures.size(), 0);
+        DescriptorFactory.printTableUsage(stream, "reflective classes", reflectiveClasses.size(), 0);
+        DescriptorFactory.printTableUsage(stream, "empty arrays", emptyArrays.size(), 0);
+        DescriptorFactory.printTableUsage(stream, "functions that might be mistaken for procedures",
+                functionsThatMightBeMistakenForProcedures.size(), 0);
+    }
 
     public void canonicalizeAll() {
         DescriptorFactory descriptorFactory = DescriptorFactory.instance();
@@ -130,7 +163,7 @@ public class XFactory {
     }
 
     public boolean isEmptyArrayField(@CheckForNull XField f) {
-        return emptyArrays.contains(f);
+        return f != null && emptyArrays.contains(f);
     }
 
     public boolean isCalled(XMethod m) {
@@ -28,6 +28,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.CheckForNull;
 
@@ -54,6 +55,9 @@ import edu.umd.cs.findbugs.util.MapCache;
 /**
  * Class for performing class hierarchy queries. Does <em>not</em> require
  * JavaClass objects to be in memory. Instead, uses XClass objects.
+ * Public instance methods are thread safe: the inheritance graph grows lazily
+ * as classes are queried, so adding vertices and edges takes the write lock of
+ * a read/write lock, while traversals of the graph take its read lock.
  *
  * @author David Hovemeyer
  */
@@ -77,6 +81,10 @@ public class Subtypes2 {
 
     private final DualKeyHashMap<ReferenceType, ReferenceType, ReferenceType> firstCommonSuperclassQueryCache;
 
+    private final ReentrantReadWriteLock graphLock = new ReentrantReadWriteLock();
+
+    private volatile SubtypeQuery prevSubtypeQuery;
+
     private final ObjectType SERIALIZABLE;
 
     private final ObjectType CLONEABLE;
@@ -110,14 +118,29 @@ public class Subtypes2 {
         }
     }
 
+    /**
+     * Answer of the last isSubtype query.
+     */
+    private static class SubtypeQuery {
+        final ClassDescriptor subDesc, superDesc;
+
+        final boolean result;
+
+        SubtypeQuery(ClassDescriptor subDesc, ClassDescriptor superDesc, boolean result) {
+            this.subDesc = subDesc;
+            this.superDesc = superDesc;
+            this.result = result;
+        }
+    }
+
     /**
      * Constructor.
      */
     public Subtypes2() {
         this.graph = new InheritanceGraph();
         this.classDescriptorToVertexMap = new HashMap<ClassDescriptor, ClassVertex>();
-        this.supertypeSetMap = new MapCache<ClassDescriptor, SupertypeQueryResults>(500);
-        this.subtypeSetMap = new MapCache<ClassDescriptor, Set<ClassDescriptor>>(500);
+        this.supertypeSetMap = Collections.synchronizedMap(new MapCache<ClassDescriptor, SupertypeQueryResults>(500));
+        this.subtypeSetMap = Collections.synchronizedMap(new MapCache<ClassDescriptor, Set<ClassDescriptor>>(500));
         this.xclassSet = new HashSet<XClass>();
         this.SERIALIZABLE = ObjectTypeFactory.getInstance("java.io.Serializable");
         this.CLONEABLE = ObjectTypeFactory.getInstance("java.lang.Cloneable");
@@ -226,15 +249,26 @@ public class Subtypes2 {
                 return;
             }
         }
-        ClassVertex vertex = addClassAndGetClassVertex(appXClass);
-        vertex.markAsApplicationClass();
+        graphLock.writeLock().lock();
+        try {
+            ClassVertex vertex = addClassAndGetClassVertex(appXClass);
+            vertex.markAsApplicationClass();
+        } finally {
+            graphLock.writeLock().unlock();
+        }
 
     }
 
     public boolean isApplicationClass(ClassDescriptor descriptor) {
         assert descriptor != null;
         try {
-            return resolveClassVertex(descriptor).isApplicationClass();
+            ClassVertex vertex = resolveClassVertex(descriptor);
+            graphLock.readLock().lock();
+            try {
+                return vertex.isApplicationClass();
+            } finally {
+                graphLock.readLock().unlock();
+            }
         } catch (ClassNotFoundException e) {
             AnalysisContext.reportMissingClass(e);
             return false;
@@ -249,7 +283,12 @@ public class Subtypes2 {
      *            XClass to add to the inheritance graph
      */
     public void addClass(XClass xclass) {
-        addClassAndGetClassVertex(xclass);
+        graphLock.writeLock().lock();
+        try {
+            addClassAndGetClassVertex(xclass);
+        } finally {
+            graphLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -289,6 +328,7 @@ public class Subtypes2 {
     }
 
     private void addVertexToGraph(ClassDescriptor classDescriptor, ClassVertex vertex) {
+        assert graphLock.isWriteLockedByCurrentThread();
         assert classDescriptorToVertexMap.get(classDescriptor) == null;
 
         if (DEBUG) {
@@ -397,17 +437,15 @@ public class Subtypes2 {
         // OK, we've exhausted the possibilities now
         return false;
     }
-    ClassDescriptor prevSubDesc, prevSuperDesc;
-    boolean prevResult;
 
     public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor superDesc) throws ClassNotFoundException {
-        if (subDesc == prevSubDesc && prevSuperDesc == superDesc) {
-            return prevResult;
+        SubtypeQuery prev = prevSubtypeQuery;
+        if (prev != null && subDesc == prev.subDesc && prev.superDesc == superDesc) {
+            return prev.result;
         }
-        prevResult = isSubtype0(subDesc, superDesc);
-        prevSubDesc = subDesc;
-        prevSuperDesc = superDesc;
-        return prevResult;
+        boolean result = isSubtype0(subDesc, superDesc);
+        prevSubtypeQuery = new SubtypeQuery(subDesc, superDesc, result);
+        return result;
     }
 
     public boolean isSubtype(ClassDescriptor subDesc, ClassDescriptor... superDesc) throws ClassNotFoundException {
@@ -707,7 +745,9 @@ public class Subtypes2 {
         ObjectType firstCommonSupertype = (ObjectType) checkFirstCommonSuperclassQueryCache(a, b);
         if (firstCommonSupertype == null) {
             firstCommonSupertype = computeFirstCommonSuperclassOfObjectTypes(a, b);
-            firstCommonSuperclassQueryCache.put(a, b, firstCommonSupertype);
+            synchronized (firstCommonSuperclassQueryCache) {
+                firstCommonSuperclassQueryCache.put(a, b, firstCommonSupertype);
+            }
         }
 
         return firstCommonSupertype;
@@ -778,7 +818,9 @@ public class Subtypes2 {
             a = b;
             b = tmp;
         }
-        firstCommonSuperclassQueryCache.put(a, b, answer);
+        synchronized (firstCommonSuperclassQueryCache) {
+            firstCommonSuperclassQueryCache.put(a, b, answer);
+        }
     }
 
     private ReferenceType checkFirstCommonSuperclassQueryCache(ReferenceType a, ReferenceType b) {
@@ -787,7 +829,9 @@ public class Subtypes2 {
             a = b;
             b = tmp;
         }
-        return firstCommonSuperclassQueryCache.get(a, b);
+        synchronized (firstCommonSuperclassQueryCache) {
+            return firstCommonSuperclassQueryCache.get(a, b);
+        }
     }
 
     /**
@@ -801,13 +845,18 @@ public class Subtypes2 {
      */
     private ArrayList<ClassVertex> getAllSuperclassVertices(ClassVertex vertex) throws ClassNotFoundException {
         ArrayList<ClassVertex> result = new ArrayList<ClassVertex>();
-        ClassVertex cur = vertex;
-        while (cur != null) {
-            if (!cur.isResolved()) {
-                ClassDescriptor.throwClassNotFoundException(cur.getClassDescriptor());
+        graphLock.readLock().lock();
+        try {
+            ClassVertex cur = vertex;
+            while (cur != null) {
+                if (!cur.isResolved()) {
+                    ClassDescriptor.throwClassNotFoundException(cur.getClassDescriptor());
+                }
+                result.add(cur);
+                cur = cur.getDirectSuperclass();
             }
-            result.add(cur);
-            cur = cur.getDirectSuperclass();
+        } finally {
+            graphLock.readLock().unlock();
         }
         return result;
     }
@@ -859,10 +908,15 @@ public class Subtypes2 {
         ClassVertex startVertex = resolveClassVertex(classDescriptor);
 
         Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
-        Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(startVertex);
-        while (i.hasNext()) {
-            InheritanceEdge edge = i.next();
-            result.add(edge.getSource().getClassDescriptor());
+        graphLock.readLock().lock();
+        try {
+            Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(startVertex);
+            while (i.hasNext()) {
+                InheritanceEdge edge = i.next();
+                result.add(edge.getSource().getClassDescriptor());
+            }
+        } finally {
+            graphLock.readLock().unlock();
         }
 
         return result;
@@ -891,10 +945,15 @@ public class Subtypes2 {
     /**
      * Get Collection of all XClass objects (resolved classes) seen so far.
      *
-     * @return Collection of all XClass objects
+     * @return Collection of all XClass objects, as of the call
      */
     public Collection<XClass> getXClassCollection() {
-        return Collections.<XClass> unmodifiableCollection(xclassSet);
+        graphLock.readLock().lock();
+        try {
+            return Collections.<XClass> unmodifiableCollection(new ArrayList<XClass>(xclassSet));
+        } finally {
+            graphLock.readLock().unlock();
+        }
     }
 
     /**
@@ -1044,7 +1103,7 @@ public class Subtypes2 {
 
     private void addToWorkList(LinkedList<SupertypeTraversalPath> workList, SupertypeTraversalPath curPath,
             ClassDescriptor supertypeDescriptor) {
-        ClassVertex vertex = classDescriptorToVertexMap.get(supertypeDescriptor);
+        ClassVertex vertex = lookupClassVertex(supertypeDescriptor);
 
         // The vertex should already have been added to the graph
         assert vertex != null;
@@ -1065,12 +1124,20 @@ public class Subtypes2 {
             return false;
         }
 
-        ClassVertex supertypeVertex = classDescriptorToVertexMap.get(supertypeDescriptor);
+        ClassVertex supertypeVertex = lookupClassVertex(supertypeDescriptor);
         if (supertypeVertex == null) {
             try {
                 supertypeVertex = resolveClassVertex(supertypeDescriptor);
             } catch (ClassNotFoundException e) {
-                supertypeVertex = addClassVertexForMissingClass(supertypeDescriptor, isInterfaceEdge);
+                graphLock.writeLock().lock();
+                try {
+                    supertypeVertex = classDescriptorToVertexMap.get(supertypeDescriptor);
+                    if (supertypeVertex == null) {
+                        supertypeVertex = addClassVertexForMissingClass(supertypeDescriptor, isInterfaceEdge);
+                    }
+                } finally {
+                    graphLock.writeLock().unlock();
+                }
             }
         }
         assert supertypeVertex != null;
@@ -1094,23 +1161,28 @@ public class Subtypes2 {
 
         Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
 
-        while (!workList.isEmpty()) {
-            ClassVertex current = workList.removeFirst();
+        graphLock.readLock().lock();
+        try {
+            while (!workList.isEmpty()) {
+                ClassVertex current = workList.removeFirst();
 
-            if (result.contains(current.getClassDescriptor())) {
-                // Already added this class
-                continue;
-            }
+                if (result.contains(current.getClassDescriptor())) {
+                    // Already added this class
+                    continue;
+                }
 
-            // Add class to the result
-            result.add(current.getClassDescriptor());
+                // Add class to the result
+                result.add(current.getClassDescriptor());
 
-            // Add all known subtype vertices to the work list
-            Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
-            while (i.hasNext()) {
-                InheritanceEdge edge = i.next();
-                workList.addLast(edge.getSource());
+                // Add all known subtype vertices to the work list
+                Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.addLast(edge.getSource());
+                }
             }
+        } finally {
+            graphLock.readLock().unlock();
         }
 
         return new HashSet<ClassDescriptor>(result);
@@ -1130,25 +1202,30 @@ public class Subtypes2 {
 
         Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
 
-        while (!workList.isEmpty()) {
-            ClassVertex current = workList.removeFirst();
+        graphLock.readLock().lock();
+        try {
+            while (!workList.isEmpty()) {
+                ClassVertex current = workList.removeFirst();
 
-            if (!result.add(current.getClassDescriptor())) {
-                // Already added this class
-                continue;
-            }
+                if (!result.add(current.getClassDescriptor())) {
+                    // Already added this class
+                    continue;
+                }
 
-            // Add class to the result
-            if (current.isResolved() && !current.isInterface()) {
-                return true;
-            }
+                // Add class to the result
+                if (current.isResolved() && !current.isInterface()) {
+                    return true;
+                }
 
-            // Add all known subtype vertices to the work list
-            Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
-            while (i.hasNext()) {
-                InheritanceEdge edge = i.next();
-                workList.addLast(edge.getSource());
+                // Add all known subtype vertices to the work list
+                Iterator<InheritanceEdge> i = graph.incomingEdgeIterator(current);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.addLast(edge.getSource());
+                }
             }
+        } finally {
+            graphLock.readLock().unlock();
         }
 
         return false;
@@ -1161,23 +1238,28 @@ public class Subtypes2 {
 
         Set<ClassDescriptor> result = new HashSet<ClassDescriptor>();
 
-        while (!workList.isEmpty()) {
-            ClassVertex current = workList.removeFirst();
+        graphLock.readLock().lock();
+        try {
+            while (!workList.isEmpty()) {
+                ClassVertex current = workList.removeFirst();
 
-            if (result.contains(current.getClassDescriptor())) {
-                // Already added this class
-                continue;
-            }
+                if (result.contains(current.getClassDescriptor())) {
+                    // Already added this class
+                    continue;
+                }
 
-            // Add class to the result
-            result.add(current.getClassDescriptor());
+                // Add class to the result
+                result.add(current.getClassDescriptor());
 
-            // Add all known subtype vertices to the work list
-            Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(current);
-            while (i.hasNext()) {
-                InheritanceEdge edge = i.next();
-                workList.addLast(edge.getTarget());
+                // Add all known subtype vertices to the work list
+                Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(current);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.addLast(edge.getTarget());
+                }
             }
+        } finally {
+            graphLock.readLock().unlock();
         }
 
         return result;
@@ -1225,26 +1307,31 @@ public class Subtypes2 {
         // InheritanceGraph by now.
         LinkedList<ClassVertex> workList = new LinkedList<ClassVertex>();
         workList.addLast(typeVertex);
-        while (!workList.isEmpty()) {
-            ClassVertex vertex = workList.removeFirst();
-            supertypeSet.addSupertype(vertex.getClassDescriptor());
-            if (vertex.isResolved()) {
-                if (DEBUG_QUERIES) {
-                    System.out.println("  Adding supertype " + vertex.getClassDescriptor().toDottedClassName());
-                }
-            } else {
-                if (DEBUG_QUERIES) {
-                    System.out.println("  Encountered unresolved class " + vertex.getClassDescriptor().toDottedClassName()
-                            + " in supertype query");
+        graphLock.readLock().lock();
+        try {
+            while (!workList.isEmpty()) {
+                ClassVertex vertex = workList.removeFirst();
+                supertypeSet.addSupertype(vertex.getClassDescriptor());
+                if (vertex.isResolved()) {
+                    if (DEBUG_QUERIES) {
+                        System.out.println("  Adding supertype " + vertex.getClassDescriptor().toDottedClassName());
+                    }
+                } else {
+                    if (DEBUG_QUERIES) {
+                        System.out.println("  Encountered unresolved class " + vertex.getClassDescriptor().toDottedClassName()
+                                + " in supertype query");
+                    }
+                    supertypeSet.setEncounteredMissingClasses(true);
                 }
-                supertypeSet.setEncounteredMissingClasses(true);
-            }
 
-            Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(vertex);
-            while (i.hasNext()) {
-                InheritanceEdge edge = i.next();
-                workList.addLast(edge.getTarget());
+                Iterator<InheritanceEdge> i = graph.outgoingEdgeIterator(vertex);
+                while (i.hasNext()) {
+                    InheritanceEdge edge = i.next();
+                    workList.addLast(edge.getTarget());
+                }
             }
+        } finally {
+            graphLock.readLock().unlock();
         }
 
         return supertypeSet;
@@ -1273,24 +1360,51 @@ public class Subtypes2 {
     }
 
     private ClassVertex optionallyResolveClassVertex(ClassDescriptor classDescriptor) {
-        ClassVertex typeVertex = classDescriptorToVertexMap.get(classDescriptor);
-        if (typeVertex == null) {
-            // We have never tried to resolve this ClassVertex before.
-            // Try to find the XClass for this class.
-            XClass xclass = AnalysisContext.currentXFactory().getXClass(classDescriptor);
-            if (xclass == null) {
-                // Class we're trying to resolve doesn't exist.
-                // XXX: unfortunately, we don't know if the missing class is a
-                // class or interface
-                typeVertex = addClassVertexForMissingClass(classDescriptor, false);
-            } else {
-                // Add the class and all its superclasses/superinterfaces to the
-                // inheritance graph.
-                // This will result in a resolved ClassVertex.
-                typeVertex = addClassAndGetClassVertex(xclass);
+        ClassVertex typeVertex = lookupClassVertex(classDescriptor);
+        if (typeVertex != null) {
+            return typeVertex;
+        }
+        graphLock.writeLock().lock();
+        try {
+            typeVertex = classDescriptorToVertexMap.get(classDescriptor);
+            if (typeVertex == null) {
+                // We have never tried to resolve this ClassVertex before.
+                // Try to find the XClass for this class.
+                XClass xclass = AnalysisContext.currentXFactory().getXClass(classDescriptor);
+                if (xclass == null) {
+                    // Class we're trying to resolve doesn't exist.
+                    // XXX: unfortunately, we don't know if the missing class is a
+                    // class or interface
+                    typeVertex = addClassVertexForMissingClass(classDescriptor, false);
+                } else {
+                    // Add the class and all its superclasses/superinterfaces to the
+                    // inheritance graph.
+                    // This will result in a resolved ClassVertex.
+                    typeVertex = addClassAndGetClassVertex(xclass);
+                }
             }
+            return typeVertex;
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Look up the ClassVertex of a class already in the InheritanceGraph. Once
+     * a ClassVertex is in the graph, so are its supertypes, so traversals of
+     * its supertypes only need the read lock.
+     *
+     * @param classDescriptor
+     *            a ClassDescriptor
+     * @return the ClassVertex, or null if the class hasn't been seen yet
+     */
+    private @CheckForNull ClassVertex lookupClassVertex(ClassDescriptor classDescriptor) {
+        graphLock.readLock().lock();
+        try {
+            return classDescriptorToVertexMap.get(classDescriptor);
+        } finally {
+            graphLock.readLock().unlock();
         }
-        return typeVertex;
     }
 
     /**
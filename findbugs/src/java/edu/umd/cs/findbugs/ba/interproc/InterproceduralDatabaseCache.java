@@ -0,0 +1,361 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.Version;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.npe.IsNullValueAnalysisFeatures;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.ICodeBase;
+import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Keeps the interprocedural database entries computed for the referenced
+ * (non-application) classes in a directory, so that later analyses with the
+ * same auxiliary classpath and settings can load them instead of computing
+ * them again.
+ * <p>
+ * The entries are stored in a subdirectory named after a hash of the contents
+ * of all auxiliary codebases and of the settings the entries depend on, so any
+ * change to a library, to the FindBugs release, to the plugins or to the
+ * analysis options starts a new cache. The subdirectory also lists the classes
+ * whose entries were recorded: classes first referenced by a later analysis
+ * are analyzed and added.
+ * <p>
+ * The databases are stored in the binary format of
+ * {@link MappedPropertyTable}; caches in the text format are still read.
+ * <p>
+ * The cache has deliberate limits:
+ * <ul>
+ * <li>Only the unconditional parameter dereference and return value nullness
+ * databases are cached; the other interprocedural databases are still
+ * computed by each analysis.</li>
+ * <li>The first pass still runs over all referenced classes, since the state
+ * other first-pass detectors build (such as the field and class summaries,
+ * the unread fields data and the called methods of the XFactory) isn't
+ * cached; only the two detectors building the cached databases skip the
+ * classes whose entries were loaded.</li>
+ * <li>The entries are keyed on the whole auxiliary classpath rather than on
+ * the classes each entry depends on, so changing any library invalidates the
+ * entries of all of them.</li>
+ * <li>It is only used when referenced classes are analyzed interprocedurally,
+ * i.e., with -effort:max.</li>
+ * </ul>
+ *
+ * @see AnalysisContext#hasLoadedDatabaseEntries(ClassDescriptor)
+ */
+public class InterproceduralDatabaseCache {
+
+    private static final boolean DEBUG = SystemProperties.getBoolean("findbugs.databaseCache.debug");
+
+    static final String CLASSES_FILENAME = "classes.txt";
+
+    private final File directory;
+
+    private final Set<ClassDescriptor> loadedClasses = new HashSet<ClassDescriptor>();
+
+    /**
+     * @param cacheDir
+     *            directory holding the caches of all auxiliary classpaths
+     * @param classPath
+     *            the classpath of the analysis
+     * @param plugins
+     *            the plugins of the analysis
+     * @param featureSettings
+     *            the analysis feature settings
+     * @param trainingInputDir
+     *            directory of the training databases loaded by the analysis,
+     *            or null if none are
+     * @throws IOException
+     *             if an auxiliary codebase, a plugin or a training database
+     *             can't be read
+     */
+    public InterproceduralDatabaseCache(File cacheDir, IClassPath classPath, Iterable<Plugin> plugins,
+            AnalysisFeatureSetting[] featureSettings, @CheckForNull String trainingInputDir) throws IOException {
+        this.directory = new File(cacheDir, computeKey(classPath, plugins, featureSettings, trainingInputDir));
+    }
+
+    /**
+     * Compute a hash of the FindBugs release, of the contents of the auxiliary
+     * codebases, and of the settings the database entries depend on: the
+     * plugins, the analysis feature settings, the training databases and the
+     * nullness assumed for unknown values.
+     *
+     * @param classPath
+     *            the classpath of the analysis
+     * @param plugins
+     *            the plugins of the analysis
+     * @param featureSettings
+     *            the analysis feature settings
+     * @param trainingInputDir
+     *            directory of the training databases loaded by the analysis,
+     *            or null if none are
+     * @return the hash, as a hexadecimal string
+     * @throws IOException
+     *             if an auxiliary codebase, a plugin or a training database
+     *             can't be read
+     */
+    public static String computeKey(IClassPath classPath, Iterable<Plugin> plugins,
+            AnalysisFeatureSetting[] featureSettings, @CheckForNull String trainingInputDir) throws IOException {
+        MessageDigest digest = Util.getMD5Digest();
+        digest.update(UTF8.getBytes(computeKey(classPath)));
+        Map<String, Plugin> pluginsById = new TreeMap<String, Plugin>();
+        for (Plugin plugin : plugins) {
+            pluginsById.put(plugin.getPluginId(), plugin);
+        }
+        for (Plugin plugin : pluginsById.values()) {
+            digest.update(UTF8.getBytes("|" + plugin.getPluginId() + "," + plugin.getVersion()));
+            // The core plugin is covered by the FindBugs release
+            if (!plugin.isCorePlugin()) {
+                File file = toFile(plugin.getPluginLoader().getURL());
+                if (file != null && file.isFile()) {
+                    digestFile(digest, file);
+                }
+            }
+        }
+        for (AnalysisFeatureSetting setting : featureSettings) {
+            digest.update(UTF8.getBytes("|" + setting));
+        }
+        digest.update(UTF8.getBytes("|assumensp=" + IsNullValueAnalysisFeatures.UNKNOWN_VALUES_ARE_NSP));
+        if (trainingInputDir != null) {
+            digest.update(UTF8.getBytes("|training"));
+            digestFile(digest, new File(trainingInputDir));
+        }
+        return toHex(digest.digest());
+    }
+
+    private static @CheckForNull File toFile(@CheckForNull URL url) {
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute a hash of the FindBugs release and of the contents of the
+     * auxiliary codebases, in classpath order.
+     *
+     * @param classPath
+     *            the classpath of the analysis
+     * @return the hash, as a hexadecimal string
+     * @throws IOException
+     *             if an auxiliary codebase can't be read
+     */
+    public static String computeKey(IClassPath classPath) throws IOException {
+        MessageDigest digest = Util.getMD5Digest();
+        digest.update(UTF8.getBytes(Version.COMPUTED_RELEASE));
+        for (Iterator<? extends ICodeBase> i = classPath.auxCodeBaseIterator(); i.hasNext();) {
+            ICodeBase codeBase = i.next();
+            String pathName = codeBase.getPathName();
+            File file = pathName == null ? null : new File(pathName);
+            if (file != null && file.exists()) {
+                digestFile(digest, file);
+            } else {
+                // Nested archive: identified by its location
+                digest.update(UTF8.getBytes(codeBase.getCodeBaseLocator().toString()));
+            }
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder key = new StringBuilder();
+        for (byte b : hash) {
+            key.append(String.format("%02x", b & 0xff));
+        }
+        return key.toString();
+    }
+
+    private static void digestFile(MessageDigest digest, File file) throws IOException {
+        if (file.isDirectory()) {
+            String[] names = file.list();
+            if (names == null) {
+                return;
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                digest.update(UTF8.getBytes(name));
+                digestFile(digest, new File(file, name));
+            }
+            return;
+        }
+        byte[] buf = new byte[65536];
+        InputStream in = new FileInputStream(file);
+        try {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        } finally {
+            Util.closeSilently(in);
+        }
+    }
+
+    /**
+     * @return the directory holding the entries for the current auxiliary
+     *         classpath
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Load the cached database entries into the databases of the analysis
+     * context, and tell the context which classes need not be analyzed to
+     * compute them.
+     *
+     * @param analysisContext
+     *            the analysis context
+     * @return true if entries were loaded, false if there is no usable cache
+     */
+    public boolean load(AnalysisContext analysisContext) {
+        File classesFile = new File(directory, CLASSES_FILENAME);
+        if (!classesFile.isFile()) {
+            return false;
+        }
+        try {
+            Set<ClassDescriptor> classes = readClasses(classesFile);
+            analysisContext.getUnconditionalDerefParamDatabase().read(
+                    new FileInputStream(new File(directory, AnalysisContext.UNCONDITIONAL_DEREF_DB_FILENAME)));
+            analysisContext.getReturnValueNullnessPropertyDatabase().read(
+                    new FileInputStream(new File(directory, AnalysisContext.NONNULL_RETURN_DB_FILENAME)));
+            loadedClasses.addAll(classes);
+            analysisContext.setClassesWithLoadedDatabaseEntries(classes);
+            if (DEBUG) {
+                System.out.println("Loaded database entries of " + classes.size() + " classes from " + directory);
+            }
+            return true;
+        } catch (IOException e) {
+            AnalysisContext.logError("Error loading cached interprocedural databases from " + directory, e);
+        } catch (PropertyDatabaseFormatException e) {
+            AnalysisContext.logError("Invalid cached interprocedural database in " + directory, e);
+        }
+        return false;
+    }
+
+    private static Set<ClassDescriptor> readClasses(File classesFile) throws IOException {
+        Set<ClassDescriptor> classes = new HashSet<ClassDescriptor>();
+        BufferedReader reader = UTF8.bufferedReader(new FileInputStream(classesFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    classes.add(DescriptorFactory.instance().getClassDescriptor(line));
+                }
+            }
+        } finally {
+            Util.closeSilently(reader);
+        }
+        return classes;
+    }
+
+    /**
+     * Store the database entries of the referenced classes analyzed by the
+     * first pass, together with the entries loaded by
+     * {@link #load(AnalysisContext)}.
+     *
+     * @param analysisContext
+     *            the analysis context
+     * @param analyzedClasses
+     *            the classes analyzed by the first pass
+     * @throws IOException
+     *             if the cache can't be written
+     */
+    public void store(AnalysisContext analysisContext, Collection<ClassDescriptor> analyzedClasses) throws IOException {
+        Set<ClassDescriptor> classes = new HashSet<ClassDescriptor>(loadedClasses);
+        for (ClassDescriptor c : analyzedClasses) {
+            if (!analysisContext.isApplicationClass(c)) {
+                classes.add(c);
+            }
+        }
+        if (classes.equals(loadedClasses)) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+        // Replace the classes file last, so that a partially written cache
+        // is never loaded
+        store(analysisContext.getUnconditionalDerefParamDatabase(), AnalysisContext.UNCONDITIONAL_DEREF_DB_FILENAME, classes);
+        store(analysisContext.getReturnValueNullnessPropertyDatabase(), AnalysisContext.NONNULL_RETURN_DB_FILENAME, classes);
+        File tmp = File.createTempFile(CLASSES_FILENAME, ".tmp", directory);
+        Writer writer = UTF8.bufferedWriter(tmp);
+        try {
+            for (ClassDescriptor c : new TreeSet<ClassDescriptor>(classes)) {
+                writer.write(c.getClassName());
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+        replace(tmp, CLASSES_FILENAME);
+        loadedClasses.addAll(classes);
+        if (DEBUG) {
+            System.out.println("Stored database entries of " + classes.size() + " classes in " + directory);
+        }
+    }
+
+    private void store(PropertyDatabase<?, ?> database, String fileName, Set<ClassDescriptor> classes) throws IOException {
+        File tmp = File.createTempFile(fileName, ".tmp", directory);
+        database.writeBinary(new FileOutputStream(tmp), classes);
+        replace(tmp, fileName);
+    }
+
+    private void replace(File tmp, String fileName) throws IOException {
+        Files.move(tmp.toPath(), new File(directory, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
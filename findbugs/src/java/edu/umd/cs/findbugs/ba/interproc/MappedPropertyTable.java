@@ -0,0 +1,336 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
+
+import org.apache.bcel.Constants;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * The properties of a property database file in the binary format: a sorted
+ * index over the keys, used to find the (still encoded) property of a key
+ * without decoding the other entries. Binary files are memory mapped.
+ * <p>
+ * The file starts with a magic number, a version and the number of entries,
+ * followed by the offsets of the entries, in key order. An entry is the
+ * lookup key (class name, member name, signature and whether the member is
+ * static), the access flags of the text format key, and the property, encoded
+ * as in the text format.
+ * <p>
+ * Lookups only read the buffer, so a table can be used by several threads.
+ *
+ * @see PropertyDatabase
+ */
+public class MappedPropertyTable {
+
+    /** "FBPD" */
+    static final int MAGIC = 0x46425044;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer buffer;
+
+    private final int numEntries;
+
+    MappedPropertyTable(ByteBuffer buffer) throws PropertyDatabaseFormatException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new PropertyDatabaseFormatException("Not a binary property database");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new PropertyDatabaseFormatException("Unsupported binary property database version " + buffer.getInt(4));
+        }
+        this.numEntries = buffer.getInt(8);
+        if (numEntries < 0 || HEADER_SIZE + 4L * numEntries > buffer.limit()) {
+            throw new PropertyDatabaseFormatException("Truncated binary property database");
+        }
+    }
+
+    /**
+     * Map a binary property database file into memory.
+     *
+     * @param file
+     *            the file
+     * @return the properties of the file
+     * @throws IOException
+     * @throws PropertyDatabaseFormatException
+     *             if the file is not in the binary format
+     */
+    public static MappedPropertyTable map(File file) throws IOException, PropertyDatabaseFormatException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MappedPropertyTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a binary property database from a stream, for databases that are
+     * not in a file of their own (such as the resources of a jar file). The
+     * InputStream is guaranteed to be closed, even if an exception is thrown.
+     *
+     * @param in
+     *            the stream
+     * @return the properties read from the stream
+     * @throws IOException
+     * @throws PropertyDatabaseFormatException
+     *             if the stream is not in the binary format
+     */
+    public static MappedPropertyTable read(@WillClose InputStream in) throws IOException, PropertyDatabaseFormatException {
+        return new MappedPropertyTable(ByteBuffer.wrap(IO.readAll(in)).asReadOnlyBuffer());
+    }
+
+    /**
+     * Check whether the first bytes of a property database are those of the
+     * binary format.
+     *
+     * @param header
+     *            the first bytes of the database
+     * @param length
+     *            number of valid bytes in header
+     * @return true if the database is in the binary format
+     */
+    public static boolean isBinaryFormat(byte[] header, int length) {
+        return length >= 4 && ByteBuffer.wrap(header, 0, 4).getInt() == MAGIC;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return numEntries;
+    }
+
+    /**
+     * Find the property of a field or method.
+     *
+     * @param dottedClassName
+     *            class of the field or method
+     * @param name
+     *            name of the field or method
+     * @param signature
+     *            signature of the field or method
+     * @param isStatic
+     *            true if the field or method is static
+     * @return the encoded property, or null if the table has no property for
+     *         the field or method
+     */
+    public @CheckForNull
+    String lookup(String dottedClassName, String name, String signature, boolean isStatic) {
+        byte[] key = lookupKey(dottedClassName, name, signature, isStatic).getBytes(UTF8.charset);
+        int low = 0;
+        int high = numEntries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = entryOffset(mid);
+            int cmp = compareKey(entry, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return getProperty(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the key of an entry, encoded as in the text format.
+     *
+     * @param i
+     *            index of the entry, in key order
+     * @return the encoded key
+     */
+    public String getKey(int i) {
+        int entry = entryOffset(i);
+        int keyLength = buffer.getShort(entry) & 0xffff;
+        String lookupKey = getString(entry + 2, keyLength);
+        int flags = buffer.get(entry + 2 + keyLength) & 0xff;
+        // Replace the static marker with the access flags
+        return lookupKey.substring(0, lookupKey.length() - 1) + flags;
+    }
+
+    /**
+     * Get the property of an entry, encoded as in the text format.
+     *
+     * @param i
+     *            index of the entry, in key order
+     * @return the encoded property
+     */
+    public String getProperty(int i) {
+        int entry = entryOffset(i);
+        int propertyStart = entry + 2 + (buffer.getShort(entry) & 0xffff) + 1;
+        return getString(propertyStart + 2, buffer.getShort(propertyStart) & 0xffff);
+    }
+
+    private int entryOffset(int i) {
+        return buffer.getInt(HEADER_SIZE + 4 * i);
+    }
+
+    private String getString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, UTF8.charset);
+    }
+
+    private int compareKey(int entry, byte[] key) {
+        int keyLength = buffer.getShort(entry) & 0xffff;
+        int n = Math.min(keyLength, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(entry + 2 + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return keyLength - key.length;
+    }
+
+    private static String lookupKey(String dottedClassName, String name, String signature, boolean isStatic) {
+        return dottedClassName + "," + name + "," + signature + "," + (isStatic ? "1" : "0");
+    }
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private static class EncodedEntry {
+        final int flags;
+
+        final byte[] property;
+
+        EncodedEntry(int flags, byte[] property) {
+            this.flags = flags;
+            this.property = property;
+        }
+    }
+
+    /**
+     * Write properties in the binary format. If several entries have the same
+     * key, the last one is kept, as when the text format is read. The
+     * OutputStream is guaranteed to be closed, even if an exception is thrown.
+     *
+     * @param entries
+     *            the entries, as pairs of a key and a property encoded as in
+     *            the text format
+     * @param out
+     *            the stream to write to
+     * @throws IOException
+     * @throws PropertyDatabaseFormatException
+     *             if a key is not a valid field or method key
+     */
+    public static void write(List<String[]> entries, @WillClose OutputStream out) throws IOException,
+            PropertyDatabaseFormatException {
+        try {
+            TreeMap<byte[], EncodedEntry> sorted = new TreeMap<byte[], EncodedEntry>(UNSIGNED_BYTES);
+            for (String[] entry : entries) {
+                String[] tuple = entry[0].split(",");
+                if (tuple.length != 4) {
+                    throw new PropertyDatabaseFormatException("Invalid key: " + entry[0]);
+                }
+                int flags;
+                try {
+                    flags = Integer.parseInt(tuple[3]);
+                } catch (NumberFormatException e) {
+                    throw new PropertyDatabaseFormatException("Invalid access flags: " + entry[0]);
+                }
+                if (flags < 0 || flags > 0xff) {
+                    throw new PropertyDatabaseFormatException("Invalid access flags: " + entry[0]);
+                }
+                boolean isStatic = (flags & Constants.ACC_STATIC) != 0;
+                byte[] key = lookupKey(tuple[0], tuple[1], tuple[2], isStatic).getBytes(UTF8.charset);
+                byte[] property = entry[1].getBytes(UTF8.charset);
+                if (key.length > 0xffff || property.length > 0xffff) {
+                    throw new PropertyDatabaseFormatException("Entry too long: " + entry[0]);
+                }
+                sorted.put(key, new EncodedEntry(flags, property));
+            }
+
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(sorted.size());
+            int offset = HEADER_SIZE + 4 * sorted.size();
+            for (Map.Entry<byte[], EncodedEntry> e : sorted.entrySet()) {
+                data.writeInt(offset);
+                offset += 2 + e.getKey().length + 1 + 2 + e.getValue().property.length;
+            }
+            for (Map.Entry<byte[], EncodedEntry> e : sorted.entrySet()) {
+                data.writeShort(e.getKey().length);
+                data.write(e.getKey());
+                data.writeByte(e.getValue().flags);
+                data.writeShort(e.getValue().property.length);
+                data.write(e.getValue().property);
+            }
+            data.flush();
+        } finally {
+            IO.close(out);
+        }
+    }
+
+    /**
+     * Get all entries, as pairs of a key and a property encoded as in the text
+     * format, in key order.
+     *
+     * @return the entries
+     */
+    public List<String[]> getEntries() {
+        if (numEntries == 0) {
+            return Collections.emptyList();
+        }
+        List<String[]> result = new ArrayList<String[]>(numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            result.add(new String[] { getKey(i), getProperty(i) });
+        }
+        return result;
+    }
+}
@@ -19,31 +19,44 @@
 
 package edu.umd.cs.findbugs.ba.interproc;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.WillClose;
 
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.FieldOrMethodDescriptor;
 import edu.umd.cs.findbugs.util.Util;
 
 /**
  * Property database for interprocedural analysis.
+ * <p>
+ * Databases are stored in a line-oriented text format, or in the binary
+ * format of {@link MappedPropertyTable}. The properties read from a binary
+ * database are only decoded when they are looked up, or when all entries of
+ * the database are needed; decoded properties are kept, so each is decoded
+ * once.
  *
  * @param <KeyType>
  *            key type: either MethodDescriptor or FieldDescriptor
@@ -55,6 +68,20 @@ import edu.umd.cs.findbugs.util.Util;
 public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor, ValueType> {
     private final Map<KeyType, ValueType> propertyMap;
 
+    /**
+     * Properties read from a binary database and not decoded yet. Properties
+     * in propertyMap take precedence.
+     */
+    private volatile MappedPropertyTable table;
+
+    /**
+     * Properties of the table which were looked up, decoded; MISSING for keys
+     * the table has no property for.
+     */
+    private final ConcurrentHashMap<KeyType, Object> decodedProperties = new ConcurrentHashMap<KeyType, Object>();
+
+    private static final Object MISSING = new Object();
+
     /**
      * Constructor. Creates an empty property database.
      */
@@ -83,14 +110,52 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      */
     public @CheckForNull
     ValueType getProperty(KeyType key) {
-        return propertyMap.get(key);
+        ValueType property = propertyMap.get(key);
+        MappedPropertyTable t = table;
+        if (property == null && t != null) {
+            Object decoded = decodedProperties.get(key);
+            if (decoded == null) {
+                decoded = lookupProperty(t, key);
+                decodedProperties.putIfAbsent(key, decoded);
+            }
+            if (decoded != MISSING) {
+                @SuppressWarnings("unchecked")
+                ValueType decodedProperty = (ValueType) decoded;
+                property = decodedProperty;
+            }
+        }
+        return property;
+    }
+
+    /**
+     * Find and decode the property of a key in a binary database.
+     *
+     * @return the property, or MISSING if the table has no valid property for
+     *         the key
+     */
+    private Object lookupProperty(MappedPropertyTable t, KeyType key) {
+        String encoded = t.lookup(key.getClassDescriptor().getDottedClassName(), key.getName(), key.getSignature(),
+                key.isStatic());
+        if (encoded != null) {
+            try {
+                ValueType property = decodeProperty(encoded);
+                if (property != null) {
+                    return property;
+                }
+            } catch (PropertyDatabaseFormatException e) {
+                AnalysisContext.logError("Invalid property for " + key + " in property database", e);
+            }
+        }
+        return MISSING;
     }
 
     public Set<KeyType> getKeys() {
+        decodeTable();
         return propertyMap.keySet();
     }
 
     public Collection<Map.Entry<KeyType, ValueType>> entrySet() {
+        decodeTable();
         return propertyMap.entrySet();
     }
 
@@ -100,7 +165,8 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      * @return true if the database is empty, false it it has at least one entry
      */
     public boolean isEmpty() {
-        return propertyMap.isEmpty();
+        MappedPropertyTable t = table;
+        return propertyMap.isEmpty() && (t == null || t.size() == 0);
     }
 
     /**
@@ -112,11 +178,67 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      *         this key
      */
     public ValueType removeProperty(KeyType key) {
+        decodeTable();
         return propertyMap.remove(key);
     }
 
     /**
-     * Read property database from given file.
+     * Decode the entries of the binary database that was read, if any, into
+     * the property map.
+     */
+    private synchronized void decodeTable() {
+        MappedPropertyTable t = table;
+        if (t == null) {
+            return;
+        }
+        for (int i = 0; i < t.size(); i++) {
+            try {
+                KeyType key = parseKey(t.getKey(i));
+                if (key != null && !propertyMap.containsKey(key)) {
+                    Object decoded = decodedProperties.get(key);
+                    @SuppressWarnings("unchecked")
+                    ValueType property = decoded != null && decoded != MISSING ? (ValueType) decoded
+                            : decodeProperty(t.getProperty(i));
+                    propertyMap.put(key, property);
+                }
+            } catch (PropertyDatabaseFormatException e) {
+                AnalysisContext.logError("Invalid entry " + t.getKey(i) + " in property database", e);
+            }
+        }
+        table = null;
+        decodedProperties.clear();
+    }
+
+    /**
+     * Add the properties of a binary database. If this database already has
+     * properties, the new ones are decoded at once, replacing the existing
+     * properties for the same keys; otherwise they are decoded when looked
+     * up.
+     *
+     * @param newTable
+     *            the properties of the binary database
+     */
+    private void addTable(MappedPropertyTable newTable) {
+        if (table == null && propertyMap.isEmpty()) {
+            decodedProperties.clear();
+            table = newTable;
+            return;
+        }
+        decodeTable();
+        table = newTable;
+        Map<KeyType, ValueType> existing = new HashMap<KeyType, ValueType>(propertyMap);
+        propertyMap.clear();
+        decodeTable();
+        for (Map.Entry<KeyType, ValueType> e : existing.entrySet()) {
+            if (!propertyMap.containsKey(e.getKey())) {
+                propertyMap.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Read property database from given file, in the text or binary format.
+     * Binary files are memory mapped.
      *
      * @param fileName
      *            name of the database file
@@ -124,12 +246,22 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      * @throws PropertyDatabaseFormatException
      */
     public void readFromFile(String fileName) throws IOException, PropertyDatabaseFormatException {
-        read(new FileInputStream(fileName));
+        byte[] header = new byte[4];
+        int n;
+        try (InputStream in = new FileInputStream(fileName)) {
+            n = in.read(header);
+        }
+        if (MappedPropertyTable.isBinaryFormat(header, n)) {
+            addTable(MappedPropertyTable.map(new File(fileName)));
+        } else {
+            read(new FileInputStream(fileName));
+        }
     }
 
     /**
-     * Read property database from an input stream. The InputStream is
-     * guaranteed to be closed, even if an exception is thrown.
+     * Read property database from an input stream, in the text or binary
+     * format. The InputStream is guaranteed to be closed, even if an exception
+     * is thrown.
      *
      * @param in
      *            the InputStream
@@ -137,6 +269,25 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
      * @throws PropertyDatabaseFormatException
      */
     public void read(@WillClose InputStream in) throws IOException, PropertyDatabaseFormatException {
+        in = new BufferedInputStream(in);
+        byte[] header = new byte[4];
+        in.mark(header.length);
+        int n = 0;
+        try {
+            int count;
+            while (n < header.length && (count = in.read(header, n, header.length - n)) > 0) {
+                n += count;
+            }
+            in.reset();
+        } catch (IOException e) {
+            Util.closeSilently(in);
+            throw e;
+        }
+        if (MappedPropertyTable.isBinaryFormat(header, n)) {
+            addTable(MappedPropertyTable.read(in));
+            return;
+        }
+
         BufferedReader reader = null;
 
         try {
@@ -194,13 +345,30 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
 
     /**
      * Write property database to an OutputStream. The OutputStream is
-     * guaranteed to be closed, even if an exception is thrown.
+     * guaranteed to be closed, even if an exception is thrown. Only the
+     * properties of application classes are written.
      *
      * @param out
      *            the OutputStream
      * @throws IOException
      */
     public void write(@WillClose OutputStream out) throws IOException {
+        write(out, null);
+    }
+
+    /**
+     * Write the properties of the given classes to an OutputStream. The
+     * OutputStream is guaranteed to be closed, even if an exception is thrown.
+     *
+     * @param out
+     *            the OutputStream
+     * @param classes
+     *            the classes whose properties are written, or null to write
+     *            the properties of the application classes
+     * @throws IOException
+     */
+    public void write(@WillClose OutputStream out, @CheckForNull Set<ClassDescriptor> classes) throws IOException {
+        decodeTable();
         BufferedWriter writer = null;
         boolean missingClassWarningsSuppressed = AnalysisContext.currentAnalysisContext().setMissingClassWarningsSuppressed(true);
 
@@ -210,7 +378,8 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
             TreeSet<KeyType> sortedMethodSet = new TreeSet<KeyType>();
             sortedMethodSet.addAll(propertyMap.keySet());
             for (KeyType key : sortedMethodSet) {
-                if (AnalysisContext.currentAnalysisContext().isApplicationClass(key.getClassDescriptor())) {
+                if (classes == null ? AnalysisContext.currentAnalysisContext().isApplicationClass(key.getClassDescriptor())
+                        : classes.contains(key.getClassDescriptor())) {
 
                     ValueType property = propertyMap.get(key);
 
@@ -233,6 +402,41 @@ public abstract class PropertyDatabase<KeyType extends FieldOrMethodDescriptor,
         }
     }
 
+    /**
+     * Write the properties of the given classes to an OutputStream, in the
+     * binary format. The OutputStream is guaranteed to be closed, even if an
+     * exception is thrown.
+     *
+     * @param out
+     *            the OutputStream
+     * @param classes
+     *            the classes whose properties are written, or null to write
+     *            the properties of the application classes
+     * @throws IOException
+     */
+    public void writeBinary(@WillClose OutputStream out, @CheckForNull Set<ClassDescriptor> classes) throws IOException {
+        decodeTable();
+        boolean missingClassWarningsSuppressed = AnalysisContext.currentAnalysisContext().setMissingClassWarningsSuppressed(true);
+        try {
+            List<String[]> entries = new ArrayList<String[]>();
+            for (Map.Entry<KeyType, ValueType> e : propertyMap.entrySet()) {
+                KeyType key = e.getKey();
+                if (classes == null ? AnalysisContext.currentAnalysisContext().isApplicationClass(key.getClassDescriptor())
+                        : classes.contains(key.getClassDescriptor())) {
+                    StringWriter keyWriter = new StringWriter();
+                    writeKey(keyWriter, key);
+                    entries.add(new String[] { keyWriter.toString(), encodeProperty(e.getValue()) });
+                }
+            }
+            MappedPropertyTable.write(entries, out);
+        } catch (PropertyDatabaseFormatException e) {
+            throw new IOException("Can't write property database", e);
+        } finally {
+            AnalysisContext.currentAnalysisContext().setMissingClassWarningsSuppressed(missingClassWarningsSuppressed);
+            Util.closeSilently(out);
+        }
+    }
+
     /**
      * Parse a key from a String.
      *
@@ -248,7 +248,11 @@ public class TypeQualifierValue<A extends Annotation> {
         Set<TypeQualifierValue<?>> allKnownTypeQualifiers = new HashSet<TypeQualifierValue<?>>();
     }
 
-    private static ThreadLocal<Data> instance = new ThreadLocal<Data>() {
+    /**
+     * Inheritable, so that worker threads of a multithreaded analysis intern
+     * into the same table as the thread which started them.
+     */
+    private static InheritableThreadLocal<Data> instance = new InheritableThreadLocal<Data>() {
         @Override
         protected Data initialValue() {
             return new Data();
@@ -296,14 +300,24 @@ public class TypeQualifierValue<A extends Annotation> {
     @SuppressWarnings("rawtypes")
     public static @Nonnull
     TypeQualifierValue<?> getValue(ClassDescriptor desc, @CheckForNull  Object value) {
-        DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue<?>> map = instance.get().typeQualifierMap;
-        TypeQualifierValue<?> result = map.get(desc, value);
-        if (result != null) {
-            return result;
+        Data data = instance.get();
+        DualKeyHashMap<ClassDescriptor, Object, TypeQualifierValue<?>> map = data.typeQualifierMap;
+        synchronized (data) {
+            TypeQualifierValue<?> result = map.get(desc, value);
+            if (result != null) {
+                return result;
+            }
+        }
+        // Construct outside the lock: the constructor queries the analysis cache
+        TypeQualifierValue<?> result = new TypeQualifierValue(desc, value);
+        synchronized (data) {
+            TypeQualifierValue<?> existing = map.get(desc, value);
+            if (existing != null) {
+                return existing;
+            }
+            map.put(desc, value, result);
+            data.allKnownTypeQualifiers.add(result);
         }
-        result = new TypeQualifierValue(desc, value);
-        map.put(desc, value, result);
-        instance.get().allKnownTypeQualifiers.add(result);
         return result;
     }
     @SuppressWarnings("unchecked")
@@ -318,7 +332,10 @@ public class TypeQualifierValue<A extends Annotation> {
      * @return Collection of all known TypeQualifierValues
      */
     public static Collection<TypeQualifierValue<?>> getAllKnownTypeQualifiers() {
-        return Collections.unmodifiableSet(instance.get().allKnownTypeQualifiers);
+        Data data = instance.get();
+        synchronized (data) {
+            return Collections.unmodifiableSet(new HashSet<TypeQualifierValue<?>>(data.allKnownTypeQualifiers));
+        }
     }
 
     /**
@@ -334,7 +351,7 @@ public class TypeQualifierValue<A extends Annotation> {
 
         LinkedList<TypeQualifierValue<?>> result = new LinkedList<TypeQualifierValue<?>>();
 
-        for (TypeQualifierValue<?> t : instance.get().allKnownTypeQualifiers) {
+        for (TypeQualifierValue<?> t : getAllKnownTypeQualifiers()) {
             //
             // Any TypeQualifierValue with the same
             // annotation class but a different value is a complementary
@@ -360,7 +377,7 @@ public class TypeQualifierValue<A extends Annotation> {
      */
     public static boolean hasMultipleVariants(TypeQualifierValue<?> tqv) {
         int count = 0;
-        for (TypeQualifierValue<?> t : instance.get().allKnownTypeQualifiers) {
+        for (TypeQualifierValue<?> t : getAllKnownTypeQualifiers()) {
             if (t.typeQualifier.equals(tqv.typeQualifier)) {
                 count++;
             }
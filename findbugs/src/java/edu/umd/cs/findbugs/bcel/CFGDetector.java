@@ -24,6 +24,8 @@ import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.MethodGen;
 
 import edu.umd.cs.findbugs.Detector2;
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.CFG;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
@@ -89,8 +91,16 @@ public abstract class CFGDetector implements Detector2 {
                 continue;
             }
 
-            CFG cfg = analysisCache.getMethodAnalysis(CFG.class, methodDescriptor);
-            visitMethodCFG(methodDescriptor, cfg);
+            boolean budgeted = AnalysisBudget.startMethod(this, methodDescriptor);
+            try {
+                CFG cfg = analysisCache.getMethodAnalysis(CFG.class, methodDescriptor);
+                visitMethodCFG(methodDescriptor, cfg);
+            } catch (AnalysisBudgetExceededException e) {
+                // Already reported: go on with the next method
+                if (!budgeted) {
+                    throw e;
+                }
+            }
         }
     }
 
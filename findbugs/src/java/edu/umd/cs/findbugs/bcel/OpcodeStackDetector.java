@@ -35,9 +35,12 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
 
     private final boolean isUsingCustomUserValue;
 
+    private final boolean isReplacingStackItems;
+
     public OpcodeStackDetector() {
         super();
         isUsingCustomUserValue = getClass().isAnnotationPresent(OpcodeStack.CustomUserValue.class);
+        isReplacingStackItems = getClass().isAnnotationPresent(OpcodeStack.ReplacesStackItems.class);
     }
 
     /**
@@ -99,4 +102,17 @@ abstract public class OpcodeStackDetector extends BytecodeScanningDetector {
     public final boolean isUsingCustomUserValue() {
         return isUsingCustomUserValue;
     }
+
+    /**
+     * @return true if this detector can replay the opcode stack states
+     * computed once for each method and shared with other detectors (when
+     * the ocstack.shareStates property is set), rather than simulate the
+     * opcode stack itself. This is not the case for detectors with custom
+     * jump information or user values, or that replace stack items.
+     * @see OpcodeStack.StackStates
+     * @see edu.umd.cs.findbugs.OpcodeStack.ReplacesStackItems
+     */
+    public final boolean canShareStackStates() {
+        return !isUsingCustomUserValue && !isReplacingStackItems && !(this instanceof WithCustomJumpInfo);
+    }
 }
@@ -19,9 +19,11 @@
 
 package edu.umd.cs.findbugs.classfile;
 
+import java.io.PrintStream;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -37,11 +39,15 @@ import edu.umd.cs.findbugs.classfile.analysis.MethodInfo;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
 import edu.umd.cs.findbugs.util.ClassName;
-import edu.umd.cs.findbugs.util.MapCache;
 
 /**
  * Factory for creating ClassDescriptors, MethodDescriptors, and
  * FieldDescriptors.
+ * <p>
+ * All tables are concurrent, so a factory can be shared by the threads of a
+ * multithreaded analysis. The class names, member names and signatures of the
+ * descriptors are kept in a string pool, so that each distinct string is
+ * stored once however many descriptors refer to it.
  *
  * @author David Hovemeyer
  */
@@ -53,34 +59,55 @@ public class DescriptorFactory {
         }
     };
 
-    private final Map<String, ClassDescriptor> classDescriptorMap;
+    private final ConcurrentMap<String, ClassDescriptor> classDescriptorMap;
 
-    private final Map<String, ClassDescriptor> dottedClassDescriptorMap;
+    private final ConcurrentMap<String, ClassDescriptor> dottedClassDescriptorMap;
 
-    private final Map<MethodDescriptor, MethodDescriptor> methodDescriptorMap;
+    private final ConcurrentMap<MethodDescriptor, MethodDescriptor> methodDescriptorMap;
 
-    private final Map<FieldDescriptor, FieldDescriptor> fieldDescriptorMap;
+    private final ConcurrentMap<FieldDescriptor, FieldDescriptor> fieldDescriptorMap;
 
     private DescriptorFactory() {
-        this.classDescriptorMap = new HashMap<String, ClassDescriptor>();
-        this.dottedClassDescriptorMap = new HashMap<String, ClassDescriptor>();
-        this.methodDescriptorMap = new HashMap<MethodDescriptor, MethodDescriptor>();
-        this.fieldDescriptorMap = new HashMap<FieldDescriptor, FieldDescriptor>();
+        this.classDescriptorMap = new ConcurrentHashMap<String, ClassDescriptor>();
+        this.dottedClassDescriptorMap = new ConcurrentHashMap<String, ClassDescriptor>();
+        this.methodDescriptorMap = new ConcurrentHashMap<MethodDescriptor, MethodDescriptor>();
+        this.fieldDescriptorMap = new ConcurrentHashMap<FieldDescriptor, FieldDescriptor>();
     }
 
-    private final MapCache<String, String> stringCache = new MapCache<String, String>(10000);
+    /**
+     * Maximum number of strings in the string pool. Tools which do not run an
+     * analysis never clear their DescriptorFactory, so the pool is emptied
+     * when it gets this big.
+     */
+    private static final int STRING_POOL_LIMIT = 100000;
 
+    private final ConcurrentMap<String, String> stringPool = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Get the canonical instance of a string from the string pool of the
+     * current thread's DescriptorFactory.
+     *
+     * @param s
+     *            a string
+     * @return an equal string, which is the same object for every call with
+     *         an equal string until the pool is emptied
+     */
     public static String canonicalizeString(@CheckForNull String s) {
         if (s == null) {
             return s;
         }
-        DescriptorFactory df =  instanceThreadLocal.get();
-        String cached = df.stringCache.get(s);
-        if (cached != null) {
-            return cached;
+        ConcurrentMap<String, String> pool = instanceThreadLocal.get().stringPool;
+        String canonical = pool.get(s);
+        if (canonical == null) {
+            if (pool.size() >= STRING_POOL_LIMIT) {
+                pool.clear();
+            }
+            canonical = pool.putIfAbsent(s, s);
+            if (canonical == null) {
+                canonical = s;
+            }
         }
-        df.stringCache.put(s, s);
-        return s;
+        return canonical;
     }
 
     /**
@@ -92,6 +119,18 @@ public class DescriptorFactory {
         return instanceThreadLocal.get();
     }
 
+    /**
+     * Make the given DescriptorFactory the instance used by the current
+     * thread. Worker threads of a multithreaded analysis use this to share the
+     * descriptors of the thread which started them.
+     *
+     * @param factory
+     *            the DescriptorFactory to use in the current thread
+     */
+    public static void setInstance(DescriptorFactory factory) {
+        instanceThreadLocal.set(factory);
+    }
+
     public static void clearInstance() {
         instanceThreadLocal.remove();
     }
@@ -126,7 +165,10 @@ public class DescriptorFactory {
         ClassDescriptor classDescriptor = classDescriptorMap.get(className);
         if (classDescriptor == null) {
             classDescriptor = new ClassDescriptor(className);
-            classDescriptorMap.put(className, classDescriptor);
+            ClassDescriptor existing = classDescriptorMap.putIfAbsent(className, classDescriptor);
+            if (existing != null) {
+                classDescriptor = existing;
+            }
         }
         return classDescriptor;
     }
@@ -143,7 +185,7 @@ public class DescriptorFactory {
         ClassDescriptor classDescriptor = dottedClassDescriptorMap.get(dottedClassName);
         if (classDescriptor == null) {
             classDescriptor = getClassDescriptor(dottedClassName.replace('.', '/'));
-            dottedClassDescriptorMap.put(dottedClassName, classDescriptor);
+            dottedClassDescriptorMap.putIfAbsent(canonicalizeString(dottedClassName), classDescriptor);
         }
         return classDescriptor;
     }
@@ -175,8 +217,10 @@ public class DescriptorFactory {
         MethodDescriptor methodDescriptor = new MethodDescriptor(className, name, signature, isStatic);
         MethodDescriptor existing = methodDescriptorMap.get(methodDescriptor);
         if (existing == null) {
-            methodDescriptorMap.put(methodDescriptor, methodDescriptor);
-            existing = methodDescriptor;
+            existing = methodDescriptorMap.putIfAbsent(methodDescriptor, methodDescriptor);
+            if (existing == null) {
+                existing = methodDescriptor;
+            }
         }
         return existing;
     }
@@ -199,6 +243,58 @@ public class DescriptorFactory {
 
     }
 
+    // Rough sizes, in bytes, of a map entry (including its share of the
+    // table), of a descriptor object, and of a string with no characters
+    private static final int MAP_ENTRY_SIZE = 40;
+
+    private static final int CLASS_DESCRIPTOR_SIZE = 16;
+
+    private static final int MEMBER_DESCRIPTOR_SIZE = 40;
+
+    private static final int EMPTY_STRING_SIZE = 40;
+
+    /**
+     * Print the number of entries in each table of this factory, and an
+     * estimate of the memory used by the table. The strings the descriptors
+     * refer to are counted once, in the string pool.
+     *
+     * @param stream
+     *            stream to print to
+     */
+    public void reportMemoryUsage(PrintStream stream) {
+        long stringBytes = 0;
+        for (String s : stringPool.keySet()) {
+            stringBytes += EMPTY_STRING_SIZE + 2L * s.length();
+        }
+        stream.println("DESCRIPTOR FACTORY MEMORY REPORT");
+        stream.printf("%10s %10s  %s%n", "entries", "KB", "table");
+        printTableUsage(stream, "string pool", stringPool.size(), stringBytes);
+        printTableUsage(stream, "class descriptors", classDescriptorMap.size(), (long) classDescriptorMap.size()
+                * CLASS_DESCRIPTOR_SIZE);
+        printTableUsage(stream, "dotted class names", dottedClassDescriptorMap.size(), 0);
+        printTableUsage(stream, "method descriptors", methodDescriptorMap.size(), (long) methodDescriptorMap.size()
+                * MEMBER_DESCRIPTOR_SIZE);
+        printTableUsage(stream, "field descriptors", fieldDescriptorMap.size(), (long) fieldDescriptorMap.size()
+                * MEMBER_DESCRIPTOR_SIZE);
+    }
+
+    /**
+     * Print a line of a memory report.
+     *
+     * @param stream
+     *            stream to print to
+     * @param table
+     *            name of the table
+     * @param entries
+     *            number of entries in the table
+     * @param objectBytes
+     *            estimated size of the objects only referenced by the table
+     */
+    public static void printTableUsage(PrintStream stream, String table, int entries, long objectBytes) {
+        long bytes = (long) entries * MAP_ENTRY_SIZE + objectBytes;
+        stream.printf("%10d %10d  %s%n", entries, bytes / 1024, table);
+    }
+
     public void canonicalize(MethodDescriptor m) {
         MethodDescriptor existing = methodDescriptorMap.get(m);
         if (m != existing) {
@@ -238,8 +334,10 @@ public class DescriptorFactory {
         FieldDescriptor fieldDescriptor = new FieldDescriptor(className, name, signature, isStatic);
         FieldDescriptor existing = fieldDescriptorMap.get(fieldDescriptor);
         if (existing == null) {
-            fieldDescriptorMap.put(fieldDescriptor, fieldDescriptor);
-            existing = fieldDescriptor;
+            existing = fieldDescriptorMap.putIfAbsent(fieldDescriptor, fieldDescriptor);
+            if (existing == null) {
+                existing = fieldDescriptor;
+            }
         }
         return existing;
     }
@@ -53,6 +53,27 @@ public interface IClassPathBuilder {
      */
     public void scanNestedArchives(boolean scanNestedArchives);
 
+    /**
+     * Set whether or not auxiliary codebases specified by the user should be
+     * scanned. If not, their classes are only found by looking them up;
+     * auxiliary directories are still searched for nested archives. This
+     * should be called before the build() method is called.
+     *
+     * @param scanAuxiliaryCodeBases
+     *            true if auxiliary codebases should be scanned, false
+     *            otherwise
+     */
+    public void scanAuxiliaryCodeBases(boolean scanAuxiliaryCodeBases);
+
+    /**
+     * Set the number of threads used to open and scan codebases. This should
+     * be called before the build() method is called.
+     *
+     * @param numberOfThreads
+     *            the number of threads
+     */
+    public void setNumberOfThreads(int numberOfThreads);
+
     /**
      * Build the classpath.
      *
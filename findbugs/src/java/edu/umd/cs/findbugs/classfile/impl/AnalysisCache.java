@@ -21,10 +21,13 @@ package edu.umd.cs.findbugs.classfile.impl;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.Collection;
+import java.io.PrintStream;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -35,7 +38,7 @@ import org.apache.bcel.generic.ConstantPoolGen;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.asm.FBClassReader;
-import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.ba.Debug;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
@@ -48,13 +51,22 @@ import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 import edu.umd.cs.findbugs.classfile.IErrorLogger;
 import edu.umd.cs.findbugs.classfile.IMethodAnalysisEngine;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
 import edu.umd.cs.findbugs.classfile.UncheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
 import edu.umd.cs.findbugs.log.Profiler;
-import edu.umd.cs.findbugs.util.MapCache;
+import edu.umd.cs.findbugs.util.StripedMapCache;
 
 /**
  * Implementation of IAnalysisCache. This object is responsible for registering
  * class and method analysis engines and caching analysis results.
+ * <p>
+ * The cache may be shared by several analysis threads. Each result and
+ * database is computed once: a thread asking for one that another thread is
+ * computing blocks until it is available. Only a request that would wait for
+ * itself (a recursive request, or threads waiting for each other) computes
+ * the result again, and then the first result stored wins. Failed analyses
+ * are cached too, as {@link AbnormalAnalysisResult}s.
  *
  * @author David Hovemeyer
  */
@@ -72,6 +84,34 @@ public class AnalysisCache implements IAnalysisCache {
      */
     private static final int MAX_CLASS_RESULTS_TO_CACHE = 5000;
 
+    /**
+     * Number of ClassContexts to cache for each thread analyzing classes.
+     */
+    private static final int CLASS_CONTEXTS_PER_THREAD = 10;
+
+    /**
+     * Approximate bytes retained per byte of class file, for the results
+     * evicted according to a memory budget. Other results count twice the
+     * class file size.
+     */
+    private static final Map<Class<?>, Integer> BYTES_PER_CLASS_BYTE = new HashMap<Class<?>, Integer>();
+    static {
+        BYTES_PER_CLASS_BYTE.put(ClassData.class, 1);
+        BYTES_PER_CLASS_BYTE.put(FBClassReader.class, 2);
+        BYTES_PER_CLASS_BYTE.put(JavaClass.class, 4);
+        BYTES_PER_CLASS_BYTE.put(ConstantPoolGen.class, 4);
+        // Also holds the method analyses of the class
+        BYTES_PER_CLASS_BYTE.put(ClassContext.class, 20);
+    }
+
+    /** Weight of a cache entry apart from the data of the class */
+    private static final int ENTRY_OVERHEAD = 100;
+
+    /** Class size assumed when the class file can't be found */
+    private static final int DEFAULT_CLASS_SIZE = 10000;
+
+    private static final boolean REPORT_STATISTICS = SystemProperties.getBoolean("findbugs.analysisCache.report");
+
     //    private static final boolean ASSERTIONS_ENABLED = SystemProperties.ASSERTIONS_ENABLED;
 
     // Fields
@@ -85,9 +125,34 @@ public class AnalysisCache implements IAnalysisCache {
 
     private final Map<Class<?>, IDatabaseFactory<?>> databaseFactoryMap;
 
-    private final Map<Class<?>, Map<ClassDescriptor, Object>> classAnalysisMap;
+    private final ConcurrentMap<Class<?>, StripedMapCache<ClassDescriptor, Object>> classAnalysisMap;
+
+    private final ConcurrentMap<Class<?>, Object> databaseMap;
 
-    private final Map<Class<?>, Object> databaseMap;
+    /**
+     * Results being computed, keyed by {@link AnalysisKey}.
+     */
+    private final ConcurrentMap<AnalysisKey, PendingAnalysis> pendingAnalyses;
+
+    /**
+     * The computation each thread is waiting for, used to detect threads
+     * waiting for each other. Guarded by itself, so that two threads can't
+     * both start waiting for the other.
+     */
+    private final Map<Thread, PendingAnalysis> waitingThreads;
+
+    /**
+     * Memory budget of the evictable class analysis results, or null if they
+     * are bounded by entry count.
+     */
+    private volatile StripedMapCache.Budget memoryBudget;
+
+    private volatile int numberOfThreads = 1;
+
+    /**
+     * Hits, misses and evictions of the purged class analysis caches.
+     */
+    private final Map<Class<?>, long[]> purgedStatistics = new HashMap<Class<?>, long[]>();
 
     private final Map<?, ?> analysisLocals = Collections.synchronizedMap(new HashMap<Object, Object>());
 
@@ -138,6 +203,90 @@ public class AnalysisCache implements IAnalysisCache {
 
     static final AbnormalAnalysisResult NULL_ANALYSIS_RESULT = new AbnormalAnalysisResult();
 
+    /**
+     * An analysis class together with the descriptor of the class or method
+     * being analyzed, or with the database class itself.
+     */
+    static final class AnalysisKey {
+        final Class<?> analysisClass;
+
+        final Object descriptor;
+
+        AnalysisKey(Class<?> analysisClass, Object descriptor) {
+            this.analysisClass = analysisClass;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public int hashCode() {
+            return analysisClass.hashCode() * 31 + descriptor.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AnalysisKey)) {
+                return false;
+            }
+            AnalysisKey other = (AnalysisKey) obj;
+            return analysisClass == other.analysisClass && descriptor.equals(other.descriptor);
+        }
+    }
+
+    /**
+     * A result being computed by the owner thread.
+     */
+    static final class PendingAnalysis {
+        final Thread owner = Thread.currentThread();
+
+        private Object result;
+
+        private boolean done;
+
+        /**
+         * @param result
+         *            the computed result, or null if the computation failed
+         *            (waiting threads then compute the result themselves)
+         */
+        synchronized void complete(Object result) {
+            this.result = result;
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * @return the result, or null if the computation failed
+         */
+        synchronized Object await() throws InterruptedException {
+            while (!done) {
+                wait();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Lookup, computation and storage of one cached result.
+     */
+    private static abstract class ResultComputation {
+        /**
+         * @return the cached result, or null if there is none
+         */
+        abstract Object lookup();
+
+        /**
+         * @return the result to cache: never null, failures are recorded as
+         *         AbnormalAnalysisResults
+         */
+        abstract Object compute();
+
+        /**
+         * Cache the result unless another thread stored one first.
+         *
+         * @return the cached result
+         */
+        abstract Object store(Object result);
+    }
+
     @SuppressWarnings("unchecked")
     static <E> E checkedCast(Class<E> analysisClass, Object o) {
         if (SystemProperties.ASSERTIONS_ENABLED) {
@@ -157,11 +306,13 @@ public class AnalysisCache implements IAnalysisCache {
     AnalysisCache(IClassPath classPath, BugReporter errorLogger) {
         this.classPath = classPath;
         this.bugReporter = errorLogger;
-        this.classAnalysisEngineMap = new HashMap<Class<?>, IClassAnalysisEngine<?>>();
-        this.methodAnalysisEngineMap = new HashMap<Class<?>, IMethodAnalysisEngine<?>>();
-        this.databaseFactoryMap = new HashMap<Class<?>, IDatabaseFactory<?>>();
-        this.classAnalysisMap = new HashMap<Class<?>, Map<ClassDescriptor, Object>>();
-        this.databaseMap = new HashMap<Class<?>, Object>();
+        this.classAnalysisEngineMap = new ConcurrentHashMap<Class<?>, IClassAnalysisEngine<?>>();
+        this.methodAnalysisEngineMap = new ConcurrentHashMap<Class<?>, IMethodAnalysisEngine<?>>();
+        this.databaseFactoryMap = new ConcurrentHashMap<Class<?>, IDatabaseFactory<?>>();
+        this.classAnalysisMap = new ConcurrentHashMap<Class<?>, StripedMapCache<ClassDescriptor, Object>>();
+        this.databaseMap = new ConcurrentHashMap<Class<?>, Object>();
+        this.pendingAnalyses = new ConcurrentHashMap<AnalysisKey, PendingAnalysis>();
+        this.waitingThreads = new HashMap<Thread, PendingAnalysis>();
     }
 
     @Override
@@ -169,54 +320,138 @@ public class AnalysisCache implements IAnalysisCache {
         return classPath;
     }
 
+    /**
+     * Bound the memory used by evictable class analysis results, instead of
+     * bounding their number. Must be called before any result is cached.
+     *
+     * @param maxBytes
+     *            approximate maximum number of bytes retained by the
+     *            evictable results
+     */
+    public void setMemoryBudget(long maxBytes) {
+        memoryBudget = new StripedMapCache.Budget(maxBytes);
+    }
+
+    /**
+     * Set the number of threads analyzing classes, so that the ClassContexts
+     * in use by the threads aren't evicted. Must be called before any result
+     * is cached.
+     *
+     * @param numberOfThreads
+     *            number of threads analyzing classes
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     @Override
     public void purgeAllMethodAnalysis() {
         // System.out.println("ZZZ : purging all method analyses");
 
-        try {
-            Map<ClassDescriptor, ClassContext> map = getAllClassAnalysis(ClassContext.class);
-            Collection<?> allClassContexts = map.values();
-            for (Object c : allClassContexts) {
-                if (c instanceof ClassContext) {
-                    ((ClassContext) c).purgeAllMethodAnalyses();
-                }
+        StripedMapCache<ClassDescriptor, Object> map = findOrCreateDescriptorMap(classAnalysisMap, classAnalysisEngineMap,
+                ClassContext.class);
+        for (Object c : map.values()) {
+            if (c instanceof ClassContext) {
+                ((ClassContext) c).purgeAllMethodAnalyses();
             }
-        } catch (ClassCastException e) {
-            AnalysisContext.logError("Unable to purge method analysis", e);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private <E> Map<ClassDescriptor, E> getAllClassAnalysis(Class<E> analysisClass)  {
-        Map<ClassDescriptor, Object> descriptorMap
-        = findOrCreateDescriptorMap(classAnalysisMap, classAnalysisEngineMap,
-                analysisClass);
-        return (Map<ClassDescriptor, E>) descriptorMap;
-    }
-
     @Override
     public void purgeClassAnalysis(Class<?> analysisClass) {
-        classAnalysisMap.remove(analysisClass);
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = classAnalysisMap.remove(analysisClass);
+        if (descriptorMap != null) {
+            retire(analysisClass, descriptorMap);
+        }
+    }
+
+    /**
+     * Release a class analysis cache that is no longer used, keeping its
+     * statistics.
+     */
+    private void retire(Class<?> analysisClass, StripedMapCache<ClassDescriptor, Object> descriptorMap) {
+        descriptorMap.dispose();
+        synchronized (purgedStatistics) {
+            long[] counts = purgedStatistics.get(analysisClass);
+            if (counts == null) {
+                counts = new long[3];
+                purgedStatistics.put(analysisClass, counts);
+            }
+            counts[0] += descriptorMap.getHits();
+            counts[1] += descriptorMap.getMisses();
+            counts[2] += descriptorMap.getEvictions();
+        }
+    }
+
+    /**
+     * Print the hits, misses and evictions of the class analysis caches, if
+     * the findbugs.analysisCache.report property is set.
+     */
+    public void reportStatistics() {
+        if (!REPORT_STATISTICS) {
+            return;
+        }
+        reportStatistics(System.err);
+    }
+
+    /**
+     * Print the hits, misses and evictions of the class analysis caches.
+     *
+     * @param stream
+     *            stream to print to
+     */
+    public void reportStatistics(PrintStream stream) {
+        Map<String, long[]> counts = new TreeMap<String, long[]>();
+        synchronized (purgedStatistics) {
+            for (Map.Entry<Class<?>, long[]> e : purgedStatistics.entrySet()) {
+                counts.put(e.getKey().getName(), e.getValue().clone());
+            }
+        }
+        for (Map.Entry<Class<?>, StripedMapCache<ClassDescriptor, Object>> e : classAnalysisMap.entrySet()) {
+            long[] c = counts.get(e.getKey().getName());
+            if (c == null) {
+                c = new long[3];
+                counts.put(e.getKey().getName(), c);
+            }
+            c[0] += e.getValue().getHits();
+            c[1] += e.getValue().getMisses();
+            c[2] += e.getValue().getEvictions();
+        }
+        stream.println("ANALYSIS CACHE REPORT");
+        StripedMapCache.Budget budget = memoryBudget;
+        if (budget != null) {
+            stream.printf("Memory budget: %d KB of %d KB used%n", budget.getWeight() / 1024, budget.getMaxWeight() / 1024);
+        }
+        stream.printf("%10s %10s %10s  %s%n", "hits", "misses", "evictions", "analysis");
+        for (Map.Entry<String, long[]> e : counts.entrySet()) {
+            long[] c = e.getValue();
+            stream.printf("%10d %10d %10d  %s%n", c[0], c[1], c[2], e.getKey());
+        }
     }
 
     /**
      * Cleans up all cached data
      */
     public void dispose(){
+        for (StripedMapCache<ClassDescriptor, Object> descriptorMap : classAnalysisMap.values()) {
+            descriptorMap.dispose();
+        }
         classAnalysisMap.clear();
         classAnalysisEngineMap.clear();
         analysisLocals.clear();
         databaseFactoryMap.clear();
         databaseMap.clear();
         methodAnalysisEngineMap.clear();
+        pendingAnalyses.clear();
     }
 
     /**
      * @param analysisClass non null analysis type
-     * @return map with analysis data for given type, can be null
+     * @return copy of the analysis data for given type, can be null
      */
     public @CheckForNull Map<ClassDescriptor, Object> getClassAnalysis(Class<?> analysisClass) {
-        return classAnalysisMap.get(analysisClass);
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
+        return descriptorMap == null ? null : descriptorMap.toMap();
     }
 
     /**
@@ -225,23 +460,19 @@ public class AnalysisCache implements IAnalysisCache {
      * @param map non null, pre-filled map with analysis data for given type
      */
     public <E> void reuseClassAnalysis(Class<E> analysisClass, Map<ClassDescriptor, Object> map) {
-        Map<ClassDescriptor, Object> myMap = classAnalysisMap.get(analysisClass);
-        if (myMap != null) {
-            myMap.putAll(map);
-        } else {
-            myMap = createMap(classAnalysisEngineMap, analysisClass);
-            myMap.putAll(map);
-            classAnalysisMap.put(analysisClass, myMap);
-        }
+        StripedMapCache<ClassDescriptor, Object> myMap = findOrCreateDescriptorMap(classAnalysisMap, classAnalysisEngineMap,
+                analysisClass);
+        myMap.putAll(map);
     }
 
     @Override
     @SuppressWarnings("unchecked")
-    public <E> E getClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor) throws CheckedAnalysisException {
+    public <E> E getClassAnalysis(final Class<E> analysisClass, @Nonnull final ClassDescriptor classDescriptor)
+            throws CheckedAnalysisException {
         requireNonNull(classDescriptor, "classDescriptor is null");
         // Get the descriptor->result map for this analysis class,
         // creating if necessary
-        Map<ClassDescriptor, Object> descriptorMap = findOrCreateDescriptorMap(classAnalysisMap,
+        final StripedMapCache<ClassDescriptor, Object> descriptorMap = findOrCreateDescriptorMap(classAnalysisMap,
                 classAnalysisEngineMap,
                 analysisClass);
 
@@ -249,45 +480,24 @@ public class AnalysisCache implements IAnalysisCache {
         Object analysisResult = descriptorMap.get(classDescriptor);
         if (analysisResult == null) {
             // No cached result - compute (or recompute)
+            analysisResult = computeOnce(new AnalysisKey(analysisClass, classDescriptor), new ResultComputation() {
+                @Override
+                Object lookup() {
+                    return descriptorMap.peek(classDescriptor);
+                }
 
-            IAnalysisEngine<ClassDescriptor, E> engine = (IAnalysisEngine<ClassDescriptor, E>) classAnalysisEngineMap
-                    .get(analysisClass);
-            if (engine == null) {
-                throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
-            }
-            Profiler profiler = getProfiler();
-            // Perform the analysis
-            try {
-                profiler.start(engine.getClass());
-                analysisResult = engine.analyze(this, classDescriptor);
-
-                // If engine returned null, we need to construct
-                // an AbnormalAnalysisResult object to record that fact.
-                // Otherwise we will try to recompute the value in
-                // the future.
-                if (analysisResult == null) {
-                    analysisResult = NULL_ANALYSIS_RESULT;
+                @Override
+                Object compute() {
+                    return analyzeClass(analysisClass, classDescriptor);
                 }
-            } catch (CheckedAnalysisException e) {
-                // Exception - make note
-                // Andrei: e.getStackTrace() cannot be null, but getter clones
-                // the stack...
-                // if (e.getStackTrace() == null)
-                // e.fillInStackTrace();
-                analysisResult = new AbnormalAnalysisResult(e);
-            } catch (RuntimeException e) {
-                // Exception - make note
-                // Andrei: e.getStackTrace() cannot be null, but getter clones
-                // the stack...
-                // if (e.getStackTrace() == null)
-                // e.fillInStackTrace();
-                analysisResult = new AbnormalAnalysisResult(e);
-            } finally {
-                profiler.end(engine.getClass());
-            }
 
-            // Save the result
-            descriptorMap.put(classDescriptor, analysisResult);
+                @Override
+                Object store(Object result) {
+                    return descriptorMap.putIfAbsent(classDescriptor, result);
+                }
+            });
+        } else {
+            getProfiler().cacheHit();
         }
 
         // Abnormal analysis result?
@@ -298,13 +508,131 @@ public class AnalysisCache implements IAnalysisCache {
         return checkedCast(analysisClass, analysisResult);
     }
 
+    /**
+     * Analyze a class.
+     *
+     * @param analysisClass
+     *            class the analysis object should belong to
+     * @param classDescriptor
+     *            the class to analyze
+     * @return the analysis object, or an AbnormalAnalysisResult
+     */
+    @SuppressWarnings("unchecked")
+    private <E> Object analyzeClass(Class<E> analysisClass, ClassDescriptor classDescriptor) {
+        IAnalysisEngine<ClassDescriptor, E> engine = (IAnalysisEngine<ClassDescriptor, E>) classAnalysisEngineMap
+                .get(analysisClass);
+        if (engine == null) {
+            throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
+        }
+        Profiler profiler = getProfiler();
+        // Analysis results are shared: charge them to the detector
+        // requesting them, but don't abort them if it exceeds its budget
+        AnalysisBudget budget = AnalysisBudget.startEngine();
+        // Perform the analysis
+        try {
+            profiler.cacheMiss();
+            profiler.start(engine.getClass());
+            Object analysisResult = engine.analyze(this, classDescriptor);
+
+            // If engine returned null, we need to construct
+            // an AbnormalAnalysisResult object to record that fact.
+            // Otherwise we will try to recompute the value in
+            // the future.
+            if (analysisResult == null) {
+                analysisResult = NULL_ANALYSIS_RESULT;
+            }
+            return analysisResult;
+        } catch (CheckedAnalysisException e) {
+            // Exception - make note
+            // Andrei: e.getStackTrace() cannot be null, but getter clones
+            // the stack...
+            // if (e.getStackTrace() == null)
+            // e.fillInStackTrace();
+            return new AbnormalAnalysisResult(e);
+        } catch (RuntimeException e) {
+            // Exception - make note
+            // Andrei: e.getStackTrace() cannot be null, but getter clones
+            // the stack...
+            // if (e.getStackTrace() == null)
+            // e.fillInStackTrace();
+            return new AbnormalAnalysisResult(e);
+        } finally {
+            profiler.end(engine.getClass());
+            AnalysisBudget.endEngine(budget);
+        }
+    }
+
+    /**
+     * Get a result computed by the current thread or by another one.
+     *
+     * @param key
+     *            identifies the result
+     * @param computation
+     *            finds, computes and stores the result
+     * @return the result
+     */
+    private Object computeOnce(AnalysisKey key, ResultComputation computation) {
+        PendingAnalysis pending = new PendingAnalysis();
+        PendingAnalysis other = pendingAnalyses.putIfAbsent(key, pending);
+        if (other != null) {
+            Object result = awaitResult(other);
+            if (result == null) {
+                result = computation.store(computation.compute());
+            }
+            return result;
+        }
+
+        Object result = null;
+        try {
+            // Another thread may have finished just before we registered
+            result = computation.lookup();
+            if (result == null) {
+                result = computation.store(computation.compute());
+            }
+            return result;
+        } finally {
+            pending.complete(result);
+            pendingAnalyses.remove(key, pending);
+        }
+    }
+
+    /**
+     * Wait for a result computed by another thread.
+     *
+     * @return the result, or null if the current thread should compute it
+     *         itself
+     */
+    private Object awaitResult(PendingAnalysis pending) {
+        Thread current = Thread.currentThread();
+        synchronized (waitingThreads) {
+            // Don't wait for a computation that (indirectly) waits for us,
+            // or for a recursive request of our own
+            for (PendingAnalysis p = pending; p != null; p = waitingThreads.get(p.owner)) {
+                if (p.owner == current) {
+                    return null;
+                }
+            }
+            waitingThreads.put(current, pending);
+        }
+        try {
+            return pending.await();
+        } catch (InterruptedException e) {
+            current.interrupt();
+            return null;
+        } finally {
+            synchronized (waitingThreads) {
+                waitingThreads.remove(current);
+            }
+        }
+    }
+
     @Override
     public <E> E probeClassAnalysis(Class<E> analysisClass, @Nonnull ClassDescriptor classDescriptor) {
-        Map<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = classAnalysisMap.get(analysisClass);
         if (descriptorMap == null) {
             return null;
         }
-        return checkedCast(analysisClass, descriptorMap.get(classDescriptor));
+        return checkedCast(analysisClass, descriptorMap.peek(classDescriptor));
     }
 
     String hex(Object o) {
@@ -312,25 +640,45 @@ public class AnalysisCache implements IAnalysisCache {
     }
 
     @Override
-    public <E> E getMethodAnalysis(Class<E> analysisClass, @Nonnull MethodDescriptor methodDescriptor) throws CheckedAnalysisException {
+    public <E> E getMethodAnalysis(final Class<E> analysisClass, @Nonnull final MethodDescriptor methodDescriptor)
+            throws CheckedAnalysisException {
         requireNonNull(methodDescriptor, "methodDescriptor is null");
-        ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
+        final ClassContext classContext = getClassAnalysis(ClassContext.class, methodDescriptor.getClassDescriptor());
         Object object = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
 
         if (object == null) {
-            try {
-                object = analyzeMethod(classContext, analysisClass, methodDescriptor);
-                if (object == null) {
-                    object = NULL_ANALYSIS_RESULT;
+            object = computeOnce(new AnalysisKey(analysisClass, methodDescriptor), new ResultComputation() {
+                @Override
+                Object lookup() {
+                    return classContext.getMethodAnalysis(analysisClass, methodDescriptor);
                 }
-            } catch (RuntimeException e) {
-                object = new AbnormalAnalysisResult(e);
-            } catch (CheckedAnalysisException e) {
-                object = new AbnormalAnalysisResult(e);
-            }
 
-            classContext.putMethodAnalysis(analysisClass, methodDescriptor, object);
+                @Override
+                Object compute() {
+                    try {
+                        Object result = analyzeMethod(classContext, analysisClass, methodDescriptor);
+                        return result == null ? NULL_ANALYSIS_RESULT : result;
+                    } catch (RuntimeException e) {
+                        return new AbnormalAnalysisResult(e);
+                    } catch (CheckedAnalysisException e) {
+                        return new AbnormalAnalysisResult(e);
+                    }
+                }
 
+                @Override
+                Object store(Object result) {
+                    synchronized (classContext) {
+                        Object existing = classContext.getMethodAnalysis(analysisClass, methodDescriptor);
+                        if (existing != null) {
+                            return existing;
+                        }
+                        classContext.putMethodAnalysis(analysisClass, methodDescriptor, result);
+                        return result;
+                    }
+                }
+            });
+        } else {
+            getProfiler().cacheHit();
         }
         if (Debug.VERIFY_INTEGRITY && object == null) {
             throw new IllegalStateException("AnalysisFactory failed to produce a result object");
@@ -364,11 +712,14 @@ public class AnalysisCache implements IAnalysisCache {
             throw new IllegalArgumentException("No analysis engine registered to produce " + analysisClass.getName());
         }
         Profiler profiler = getProfiler();
+        AnalysisBudget budget = AnalysisBudget.startEngine();
+        profiler.cacheMiss();
         profiler.start(engine.getClass());
         try {
             return engine.analyze(this, methodDescriptor);
         } finally {
             profiler.end(engine.getClass());
+            AnalysisBudget.endEngine(budget);
         }
     }
 
@@ -413,39 +764,90 @@ public class AnalysisCache implements IAnalysisCache {
      *            the analysis map
      * @return the descriptor to analysis object map
      */
-    private static <DescriptorType> Map<DescriptorType, Object> findOrCreateDescriptorMap(
-            final Map<Class<?>, Map<DescriptorType, Object>> analysisClassToDescriptorMapMap,
-            final Map<Class<?>, ? extends IAnalysisEngine<DescriptorType, ?>> engineMap,
+    private StripedMapCache<ClassDescriptor, Object> findOrCreateDescriptorMap(
+            final ConcurrentMap<Class<?>, StripedMapCache<ClassDescriptor, Object>> analysisClassToDescriptorMapMap,
+            final Map<Class<?>, ? extends IAnalysisEngine<ClassDescriptor, ?>> engineMap,
                     final Class<?> analysisClass) {
-        Map<DescriptorType, Object> descriptorMap = analysisClassToDescriptorMapMap.get(analysisClass);
+        StripedMapCache<ClassDescriptor, Object> descriptorMap = analysisClassToDescriptorMapMap.get(analysisClass);
         if (descriptorMap == null) {
             descriptorMap = createMap(engineMap, analysisClass);
-            analysisClassToDescriptorMapMap.put(analysisClass, descriptorMap);
+            StripedMapCache<ClassDescriptor, Object> existing = analysisClassToDescriptorMapMap.putIfAbsent(analysisClass, descriptorMap);
+            if (existing != null) {
+                descriptorMap.dispose();
+                descriptorMap = existing;
+            }
         }
         return descriptorMap;
     }
 
-    private static <DescriptorType> Map<DescriptorType, Object> createMap(
-            final Map<Class<?>, ? extends IAnalysisEngine<DescriptorType, ?>> engineMap,
+    private StripedMapCache<ClassDescriptor, Object> createMap(
+            final Map<Class<?>, ? extends IAnalysisEngine<ClassDescriptor, ?>> engineMap,
                     final Class<?> analysisClass) {
-        Map<DescriptorType, Object> descriptorMap;
-        // Create a MapCache that allows the analysis engine to
-        // decide that analysis results should be retained indefinitely.
-        IAnalysisEngine<DescriptorType, ?> engine = engineMap.get(analysisClass);
+        // Create a bounded cache unless the analysis engine
+        // decides that analysis results should be retained indefinitely.
+        IAnalysisEngine<ClassDescriptor, ?> engine = engineMap.get(analysisClass);
+        int maxCapacity;
         if (analysisClass.equals(JavaClass.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_JAVACLASS_RESULTS_TO_CACHE);
+            maxCapacity = MAX_JAVACLASS_RESULTS_TO_CACHE;
         } else if (analysisClass.equals(FBClassReader.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_FBCLASSREADER_RESULTS_TO_CACHE);
+            maxCapacity = MAX_FBCLASSREADER_RESULTS_TO_CACHE;
         } else if (analysisClass.equals(ConstantPoolGen.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE);
+            maxCapacity = MAX_CONSTANT_POOL_GEN_RESULTS_TO_CACHE;
         } else if (analysisClass.equals(ClassContext.class)) {
-            descriptorMap = new MapCache<DescriptorType, Object>(10);
+            maxCapacity = CLASS_CONTEXTS_PER_THREAD * numberOfThreads;
         } else if (engine instanceof IClassAnalysisEngine && ((IClassAnalysisEngine<?>) engine).canRecompute()) {
-            descriptorMap = new MapCache<DescriptorType, Object>(MAX_CLASS_RESULTS_TO_CACHE);
+            maxCapacity = MAX_CLASS_RESULTS_TO_CACHE;
         } else {
-            descriptorMap = new HashMap<DescriptorType, Object>();
+            return new StripedMapCache<ClassDescriptor, Object>();
+        }
+        StripedMapCache.Budget budget = memoryBudget;
+        if (budget == null) {
+            return new StripedMapCache<ClassDescriptor, Object>(maxCapacity);
+        }
+        Integer bytesPerClassByte = BYTES_PER_CLASS_BYTE.get(analysisClass);
+        return new StripedMapCache<ClassDescriptor, Object>(0, new ClassAnalysisWeigher(bytesPerClassByte == null ? 2
+                : bytesPerClassByte), budget);
+    }
+
+    /**
+     * Estimates the memory retained by a class analysis result from the size
+     * of the class file.
+     */
+    private class ClassAnalysisWeigher implements StripedMapCache.Weigher<ClassDescriptor, Object> {
+        private final int bytesPerClassByte;
+
+        ClassAnalysisWeigher(int bytesPerClassByte) {
+            this.bytesPerClassByte = bytesPerClassByte;
+        }
+
+        @Override
+        public long weigh(ClassDescriptor classDescriptor, Object result) {
+            if (result instanceof AbnormalAnalysisResult) {
+                return ENTRY_OVERHEAD;
+            }
+            return ENTRY_OVERHEAD + (long) bytesPerClassByte * getClassSize(classDescriptor, result);
+        }
+    }
+
+    /**
+     * Get the size of a class file, without computing any analysis.
+     * (AnalysisContext.getClassSize() builds the ClassContext.)
+     */
+    private int getClassSize(ClassDescriptor classDescriptor, Object result) {
+        Object classData = result;
+        if (!(classData instanceof ClassData)) {
+            StripedMapCache<ClassDescriptor, Object> classDataMap = classAnalysisMap.get(ClassData.class);
+            classData = classDataMap == null ? null : classDataMap.peek(classDescriptor);
+        }
+        if (classData instanceof ClassData) {
+            return ((ClassData) classData).getData().length;
+        }
+        try {
+            int size = classPath.lookupResource(classDescriptor.toResourceName()).getNumBytes();
+            return size >= 0 ? size : DEFAULT_CLASS_SIZE;
+        } catch (ResourceNotFoundException e) {
+            return DEFAULT_CLASS_SIZE;
         }
-        return descriptorMap;
     }
 
     @Override
@@ -471,28 +873,43 @@ public class AnalysisCache implements IAnalysisCache {
     public @CheckForNull <E> E getOptionalDatabase(Class<E> databaseClass) {
         return getDatabase(databaseClass, true);
     }
-    public <E> E getDatabase(Class<E> databaseClass, boolean optional) {
+    public <E> E getDatabase(final Class<E> databaseClass, boolean optional) {
         Object database = databaseMap.get(databaseClass);
 
         if (database == null) {
-            try {
-                // Find the database factory
-                IDatabaseFactory<?> databaseFactory = databaseFactoryMap.get(databaseClass);
-                if (databaseFactory == null) {
-                    if (optional) {
-                        return null;
+            // Find the database factory
+            final IDatabaseFactory<?> databaseFactory = databaseFactoryMap.get(databaseClass);
+            if (databaseFactory == null) {
+                if (optional) {
+                    return null;
+                }
+                throw new IllegalArgumentException("No database factory registered for " + databaseClass.getName());
+            }
+
+            database = computeOnce(new AnalysisKey(databaseClass, databaseClass), new ResultComputation() {
+                @Override
+                Object lookup() {
+                    return databaseMap.get(databaseClass);
+                }
+
+                @Override
+                Object compute() {
+                    try {
+                        // Create the database
+                        return databaseFactory.createDatabase();
+                    } catch (CheckedAnalysisException e) {
+                        // Error - record the analysis error
+                        return new AbnormalAnalysisResult(e);
                     }
-                    throw new IllegalArgumentException("No database factory registered for " + databaseClass.getName());
                 }
 
-                // Create the database
-                database = databaseFactory.createDatabase();
-            } catch (CheckedAnalysisException e) {
-                // Error - record the analysis error
-                database = new AbnormalAnalysisResult(e);
-            }
-            // FIXME: should catch and re-throw RuntimeExceptions?
-            databaseMap.put(databaseClass, database);
+                @Override
+                Object store(Object result) {
+                    // FIXME: should catch and re-throw RuntimeExceptions?
+                    Object existing = databaseMap.putIfAbsent(databaseClass, result);
+                    return existing != null ? existing : result;
+                }
+            });
         }
 
         if (database instanceof AbnormalAnalysisResult) {
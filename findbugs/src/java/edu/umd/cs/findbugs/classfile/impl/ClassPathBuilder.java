@@ -25,6 +25,7 @@ import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,6 +35,13 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -117,25 +125,14 @@ public class ClassPathBuilder implements IClassPathBuilder {
     static class DiscoveredCodeBase {
         ICodeBase codeBase;
 
-        LinkedList<ICodeBaseEntry> resourceList;
-
         public DiscoveredCodeBase(ICodeBase codeBase) {
             this.codeBase = codeBase;
-            this.resourceList = new LinkedList<ICodeBaseEntry>();
         }
 
         public ICodeBase getCodeBase() {
             return codeBase;
         }
 
-        public LinkedList<ICodeBaseEntry> getResourceList() {
-            return resourceList;
-        }
-
-        public void addCodeBaseEntry(ICodeBaseEntry entry) {
-            resourceList.add(entry);
-        }
-
         public ICodeBaseIterator iterator() throws InterruptedException {
             if (codeBase instanceof IScannableCodeBase) {
                 return ((IScannableCodeBase) codeBase).iterator();
@@ -170,6 +167,10 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
     private boolean scanNestedArchives;
 
+    private boolean scanAuxiliaryCodeBases = true;
+
+    private int numberOfThreads = 1;
+
     /**
      * Constructor.
      *
@@ -211,6 +212,16 @@ public class ClassPathBuilder implements IClassPathBuilder {
         this.scanNestedArchives = scanNestedArchives;
     }
 
+    @Override
+    public void scanAuxiliaryCodeBases(boolean scanAuxiliaryCodeBases) {
+        this.scanAuxiliaryCodeBases = scanAuxiliaryCodeBases;
+    }
+
+    @Override
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -544,11 +555,42 @@ public class ClassPathBuilder implements IClassPathBuilder {
         }
     }
 
+    /**
+     * Result of opening and scanning one worklist item. Scanning may happen on
+     * another thread, so errors are kept here and logged when the result is
+     * added to the classpath.
+     */
+    private static class ScannedCodeBase {
+        final WorkListItem item;
+
+        DiscoveredCodeBase discoveredCodeBase;
+
+        final LinkedList<WorkListItem> discoveredItems = new LinkedList<WorkListItem>();
+
+        final List<String> errorMessages = new ArrayList<String>();
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        ScannedCodeBase(WorkListItem item) {
+            this.item = item;
+        }
+
+        void logError(String message, Throwable e) {
+            errorMessages.add(message);
+            errors.add(e);
+        }
+    }
+
     /**
      * Process classpath worklist items. We will attempt to find all nested
      * archives and Class-Path entries specified in Jar manifests. This should
      * give us as good an idea as possible of all of the classes available (and
      * which are part of the application).
+     * <p>
+     * The items on the worklist are independent of each other, so they are
+     * opened and scanned in batches, by several threads if so configured. The
+     * results are added to the classpath in worklist order, and the codebases
+     * found while scanning a batch form the next batch.
      *
      * @param workList
      *            the worklist to process
@@ -560,21 +602,65 @@ public class ClassPathBuilder implements IClassPathBuilder {
      */
     private void processWorkList(IClassPath classPath, LinkedList<WorkListItem> workList, IClassPathBuilderProgress progress)
             throws InterruptedException, IOException, ResourceNotFoundException {
-        // Build the classpath, scanning codebases for nested archives
-        // and referenced codebases.
+        ExecutorService executor = null;
+        try {
+            // Build the classpath, scanning codebases for nested archives
+            // and referenced codebases.
+            while (!workList.isEmpty()) {
+                List<WorkListItem> batch = takeBatch(workList);
+                if (batch.size() > 1 && numberOfThreads > 1 && executor == null) {
+                    executor = createExecutor();
+                }
+                List<Future<ScannedCodeBase>> futures = new ArrayList<Future<ScannedCodeBase>>(batch.size());
+                for (final WorkListItem item : batch) {
+                    if (executor == null) {
+                        futures.add(null);
+                        continue;
+                    }
+                    final DescriptorFactory descriptorFactory = DescriptorFactory.instance();
+                    futures.add(executor.submit(new Callable<ScannedCodeBase>() {
+                        @Override
+                        public ScannedCodeBase call() throws InterruptedException {
+                            DescriptorFactory.setInstance(descriptorFactory);
+                            return openAndScan(item);
+                        }
+                    }));
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    WorkListItem item = batch.get(i);
+                    if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+                        progress.startArchive(item.toString());
+                    }
+                    ScannedCodeBase scanned = futures.get(i) == null ? openAndScan(item) : getResult(futures.get(i));
+                    addScannedCodeBase(workList, scanned);
+                    if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+                        progress.finishArchive();
+                    }
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Remove the items from the worklist which need to be opened, skipping
+     * codebases which have been seen before.
+     */
+    private List<WorkListItem> takeBatch(LinkedList<WorkListItem> workList) {
+        List<WorkListItem> batch = new ArrayList<WorkListItem>();
+        Set<String> batchLocators = new HashSet<String>();
         while (!workList.isEmpty()) {
             WorkListItem item = workList.removeFirst();
-            if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                progress.startArchive(item.toString());
-            }
             if (DEBUG) {
                 System.out.println("Working: " + item.getCodeBaseLocator());
             }
 
-            DiscoveredCodeBase discoveredCodeBase;
-
             // See if we have encountered this codebase before
-            discoveredCodeBase = discoveredCodeBaseMap.get(item.getCodeBaseLocator().toString());
+            String locator = item.getCodeBaseLocator().toString();
+            DiscoveredCodeBase discoveredCodeBase = discoveredCodeBaseMap.get(locator);
             if (discoveredCodeBase != null) {
                 // If the codebase is not an app codebase and
                 // the worklist item says that it is an app codebase,
@@ -586,6 +672,12 @@ public class ClassPathBuilder implements IClassPathBuilder {
                 continue;
             }
 
+            // Application codebases precede auxiliary codebases on the
+            // worklist, so the first item for a codebase has the right kind
+            if (!batchLocators.add(locator)) {
+                continue;
+            }
+
             // Detect .java files, which are probably human error
             if (item.getCodeBaseLocator() instanceof FilesystemCodeBaseLocator) {
                 FilesystemCodeBaseLocator l = (FilesystemCodeBaseLocator) item.getCodeBaseLocator();
@@ -596,57 +688,117 @@ public class ClassPathBuilder implements IClassPathBuilder {
                     continue;
                 }
             }
+            batch.add(item);
+        }
+        return batch;
+    }
 
-            // If we are working on an application codebase,
-            // then failing to open/scan it is a fatal error.
-            // We issue warnings about problems with aux codebases,
-            // but continue anyway.
-
-            try {
-                // Open the codebase and add it to the classpath
-                discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
-                discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
-                discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
-
-                // Note that this codebase has been visited
-                discoveredCodeBaseMap.put(item.getCodeBaseLocator().toString(), discoveredCodeBase);
-                discoveredCodeBaseList.addLast(discoveredCodeBase);
-
-                // If it is a scannable codebase, check it for nested archives.
-                // In addition, if it is an application codebase then
-                // make a list of application classes.
-                if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
-                        && ( discoveredCodeBase.codeBase.isApplicationCodeBase()
-                                || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED)
-                        ) {
-                    scanCodebase(classPath, workList, discoveredCodeBase);
-                }
+    private ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+            final AtomicInteger threadCount = new AtomicInteger();
 
-                // Check for a Jar manifest for additional aux classpath
-                // entries.
-                scanJarManifestForClassPathEntries(workList, discoveredCodeBase.getCodeBase());
-            } catch (IOException e) {
-                if (item.isAppCodeBase() || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                    if (e instanceof FileNotFoundException) {
-                        if(item.isAppCodeBase()){
-                            errorLogger.logError("File from project not found: " + item.getCodeBaseLocator(), e);
-                        } else {
-                            errorLogger.logError("File from auxiliary classpath not found: " + item.getCodeBaseLocator(), e);
-                        }
+            @Override
+            public Thread newThread(Runnable r) {
+                // The analysis cache is inherited from the creating thread
+                Thread t = new Thread(r, "FindBugs classpath scanner-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private static ScannedCodeBase getResult(Future<ScannedCodeBase> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw new InterruptedException();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Unexpected exception scanning codebase", cause);
+        }
+    }
+
+    /**
+     * Open the codebase of a worklist item, and scan it for nested archives,
+     * application classes and Jar manifest Class-Path entries.
+     */
+    private ScannedCodeBase openAndScan(WorkListItem item) throws InterruptedException {
+        ScannedCodeBase scanned = new ScannedCodeBase(item);
+
+        // If we are working on an application codebase,
+        // then failing to open/scan it is a fatal error.
+        // We issue warnings about problems with aux codebases,
+        // but continue anyway.
+
+        try {
+            // Open the codebase
+            DiscoveredCodeBase discoveredCodeBase = new DiscoveredCodeBase(item.getCodeBaseLocator().openCodeBase());
+            discoveredCodeBase.getCodeBase().setApplicationCodeBase(item.isAppCodeBase());
+            discoveredCodeBase.getCodeBase().setHowDiscovered(item.getHowDiscovered());
+            scanned.discoveredCodeBase = discoveredCodeBase;
+
+            // If it is a scannable codebase, check it for nested archives.
+            // In addition, if it is an application codebase then
+            // make a list of application classes.
+            // Auxiliary directories are still searched for nested archives
+            // when auxiliary codebases aren't scanned: listing their files
+            // doesn't parse any class.
+            if (discoveredCodeBase.getCodeBase() instanceof IScannableCodeBase
+                    && ( discoveredCodeBase.codeBase.isApplicationCodeBase()
+                            || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED
+                            && (scanAuxiliaryCodeBases
+                                    || scanNestedArchives && discoveredCodeBase.getCodeBase() instanceof DirectoryCodeBase))
+                    ) {
+                scanCodebase(scanned);
+            }
+
+            // Check for a Jar manifest for additional aux classpath
+            // entries.
+            scanJarManifestForClassPathEntries(scanned.discoveredItems, discoveredCodeBase.getCodeBase());
+        } catch (IOException e) {
+            if (item.isAppCodeBase() || item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
+                if (e instanceof FileNotFoundException) {
+                    if(item.isAppCodeBase()){
+                        scanned.logError("File from project not found: " + item.getCodeBaseLocator(), e);
                     } else {
-                        errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+                        scanned.logError("File from auxiliary classpath not found: " + item.getCodeBaseLocator(), e);
                     }
-                }
-            } catch (ResourceNotFoundException e) {
-                if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                    errorLogger.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
+                } else {
+                    scanned.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
                 }
             }
-
+        } catch (ResourceNotFoundException e) {
             if (item.getHowDiscovered() == ICodeBase.Discovered.SPECIFIED) {
-                progress.finishArchive();
+                scanned.logError("Cannot open codebase " + item.getCodeBaseLocator(), e);
             }
         }
+        return scanned;
+    }
+
+    /**
+     * Add an opened codebase to the classpath, log the errors found while
+     * scanning it, and add the codebases it refers to to the worklist.
+     */
+    private void addScannedCodeBase(LinkedList<WorkListItem> workList, ScannedCodeBase scanned) {
+        DiscoveredCodeBase discoveredCodeBase = scanned.discoveredCodeBase;
+        if (discoveredCodeBase != null) {
+            // Note that this codebase has been visited
+            discoveredCodeBaseMap.put(scanned.item.getCodeBaseLocator().toString(), discoveredCodeBase);
+            discoveredCodeBaseList.addLast(discoveredCodeBase);
+        }
+        for (int i = 0; i < scanned.errors.size(); i++) {
+            errorLogger.logError(scanned.errorMessages.get(i), scanned.errors.get(i));
+        }
+        for (WorkListItem item : scanned.discoveredItems) {
+            addToWorkList(workList, item);
+        }
     }
 
     /**
@@ -657,14 +809,12 @@ public class ClassPathBuilder implements IClassPathBuilder {
      * <li>build a list of class resources found in the codebase
      * </ul>
      *
-     * @param workList
-     *            the worklist
-     * @param discoveredCodeBase
+     * @param scanned
      *            the codebase to scan
      * @throws InterruptedException
      */
-    private void scanCodebase(IClassPath classPath, LinkedList<WorkListItem> workList, DiscoveredCodeBase discoveredCodeBase)
-            throws InterruptedException {
+    private void scanCodebase(ScannedCodeBase scanned) throws InterruptedException {
+        DiscoveredCodeBase discoveredCodeBase = scanned.discoveredCodeBase;
         if (DEBUG) {
             System.out.println("Scanning " + discoveredCodeBase.getCodeBase().getCodeBaseLocator());
         }
@@ -680,12 +830,9 @@ public class ClassPathBuilder implements IClassPathBuilder {
 
             if (!NO_PARSE_CLASS_NAMES && codeBase.isApplicationCodeBase()
                     && DescriptorFactory.isClassResource(entry.getResourceName()) && !(entry instanceof SingleFileCodeBaseEntry)) {
-                parseClassName(entry);
+                parseClassName(scanned, entry);
             }
 
-            // Note the resource exists in this codebase
-            discoveredCodeBase.addCodeBaseEntry(entry);
-
             // If resource is a nested archive, add it to the worklist
             if (scanNestedArchives && (codeBase.isApplicationCodeBase() || codeBase instanceof DirectoryCodeBase)
                     && Archive.isLibraryFileName(entry.getResourceName())) {
@@ -694,7 +841,7 @@ public class ClassPathBuilder implements IClassPathBuilder {
                 }
                 ICodeBaseLocator nestedArchiveLocator = classFactory.createNestedArchiveCodeBaseLocator(codeBase,
                         entry.getResourceName());
-                addToWorkList(workList,
+                addToWorkList(scanned.discoveredItems,
                         new WorkListItem(nestedArchiveLocator, codeBase.isApplicationCodeBase(), ICodeBase.Discovered.NESTED));
             }
         }
@@ -704,10 +851,12 @@ public class ClassPathBuilder implements IClassPathBuilder {
      * Attempt to parse data of given resource in order to divine the real name
      * of the class contained in the resource.
      *
+     * @param scanned
+     *            the codebase containing the resource
      * @param entry
      *            the resource
      */
-    private void parseClassName(ICodeBaseEntry entry) {
+    private void parseClassName(ScannedCodeBase scanned, ICodeBaseEntry entry) {
         DataInputStream in = null;
         try {
             InputStream resourceIn = entry.openResource();
@@ -724,9 +873,9 @@ public class ClassPathBuilder implements IClassPathBuilder {
                 entry.overrideResourceName(trueResourceName);
             }
         } catch (IOException e) {
-            errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
+            scanned.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
         } catch (InvalidClassFileFormatException e) {
-            errorLogger.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
+            scanned.logError("Invalid class resource " + entry.getResourceName() + " in " + entry, e);
         } finally {
             IO.close(in);
         }
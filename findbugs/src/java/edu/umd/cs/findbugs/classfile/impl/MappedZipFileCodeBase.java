@@ -0,0 +1,384 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
+
+/**
+ * Implementation of ICodeBase to read from a zip file or jar file mapped into
+ * memory. The central directory is read once into an index of resource names,
+ * so lookups don't touch the file, and the bytes of an entry are read
+ * straight from the mapped file: stored entries by copying them once, deflated
+ * entries by inflating them into a buffer of the right size.
+ * <p>
+ * No view of the mapped file is handed out, so {@link #close()} can unmap it
+ * at once rather than leaving that to the garbage collector.
+ * <p>
+ * Zip files this class doesn't handle (ZIP64 archives, encrypted entries,
+ * files larger than 2GB) are rejected by the constructor with a
+ * ZipException, so that {@link ZipCodeBaseFactory} can fall back to
+ * {@link ZipFileCodeBase}.
+ */
+public class MappedZipFileCodeBase extends AbstractScannableCodeBase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+
+    private static final int END_HEADER_SIZE = 22;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    static final int STORED = 0;
+
+    static final int DEFLATED = 8;
+
+    /**
+     * Location and size of an entry, as given by the central directory.
+     */
+    static class EntryInfo {
+        final String name;
+
+        final int method;
+
+        final int compressedSize;
+
+        final int size;
+
+        final int localHeaderOffset;
+
+        final long time;
+
+        EntryInfo(String name, int method, int compressedSize, int size, int localHeaderOffset, long time) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.time = time;
+        }
+    }
+
+    private final String pathName;
+
+    private final Map<String, EntryInfo> entries;
+
+    private volatile MappedByteBuffer buffer;
+
+    /** Held while the mapped file is read, and to unmap it */
+    private final ReentrantReadWriteLock bufferLock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor.
+     *
+     * @param codeBaseLocator
+     *            the codebase locator for this codebase
+     * @param file
+     *            the File containing the zip file (may be a temp file if the
+     *            codebase was copied from a nested zipfile in another codebase)
+     * @throws IOException
+     *             if the file can't be mapped, or isn't a zip file this
+     *             class can read
+     */
+    public MappedZipFileCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
+        super(codeBaseLocator);
+        this.pathName = file.getPath();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new ZipException("Zip file too large to map: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = readCentralDirectory(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        setLastModifiedTime(file.lastModified());
+    }
+
+    private Map<String, EntryInfo> readCentralDirectory(ByteBuffer buf) throws ZipException {
+        int end = findEndHeader(buf);
+        int count = buf.getShort(end + 10) & 0xffff;
+        long directorySize = buf.getInt(end + 12) & 0xffffffffL;
+        long directoryOffset = buf.getInt(end + 16) & 0xffffffffL;
+        if (count == 0xffff || directoryOffset == 0xffffffffL || directoryOffset + directorySize > end) {
+            throw new ZipException("Unsupported zip file (ZIP64 or corrupt central directory): " + pathName);
+        }
+
+        Map<String, EntryInfo> result = new LinkedHashMap<String, EntryInfo>(count * 4 / 3 + 1);
+        Calendar calendar = Calendar.getInstance();
+        int pos = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > end || buf.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Corrupt central directory in " + pathName);
+            }
+            int flags = buf.getShort(pos + 8) & 0xffff;
+            int method = buf.getShort(pos + 10) & 0xffff;
+            int dosTime = buf.getInt(pos + 12);
+            long compressedSize = buf.getInt(pos + 20) & 0xffffffffL;
+            long size = buf.getInt(pos + 24) & 0xffffffffL;
+            int nameLength = buf.getShort(pos + 28) & 0xffff;
+            int extraLength = buf.getShort(pos + 30) & 0xffff;
+            int commentLength = buf.getShort(pos + 32) & 0xffff;
+            long localHeaderOffset = buf.getInt(pos + 42) & 0xffffffffL;
+            if ((flags & 1) != 0 || compressedSize >= Integer.MAX_VALUE || size >= Integer.MAX_VALUE
+                    || localHeaderOffset >= directoryOffset) {
+                throw new ZipException("Unsupported zip entry (encrypted or ZIP64) in " + pathName);
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuf = buf.duplicate();
+            nameBuf.position(pos + CENTRAL_HEADER_SIZE);
+            nameBuf.get(nameBytes);
+            String name = new String(nameBytes, UTF8);
+            if (!result.containsKey(name)) {
+                result.put(name, new EntryInfo(name, method, (int) compressedSize, (int) size, (int) localHeaderOffset,
+                        dosToJavaTime(calendar, dosTime)));
+            }
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    private int findEndHeader(ByteBuffer buf) throws ZipException {
+        int limit = buf.limit();
+        // The end header is followed by a comment of at most 64K
+        int min = Math.max(0, limit - END_HEADER_SIZE - 0xffff);
+        for (int pos = limit - END_HEADER_SIZE; pos >= min; pos--) {
+            if (buf.getInt(pos) == END_HEADER_SIGNATURE) {
+                return pos;
+            }
+        }
+        throw new ZipException("Not a zip file: " + pathName);
+    }
+
+    private static long dosToJavaTime(Calendar calendar, int dosTime) {
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f,
+                (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Get the uncompressed bytes of an entry.
+     *
+     * @param info
+     *            the entry
+     * @return the contents of the entry
+     * @throws IOException
+     *             if the codebase was closed, or the entry can't be read
+     */
+    byte[] getBytes(EntryInfo info) throws IOException {
+        bufferLock.readLock().lock();
+        try {
+            MappedByteBuffer mapped = buffer;
+            if (mapped == null) {
+                throw new IOException("Zip file closed: " + pathName);
+            }
+            return getBytes(mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN), info);
+        } finally {
+            bufferLock.readLock().unlock();
+        }
+    }
+
+    private byte[] getBytes(ByteBuffer buf, EntryInfo info) throws IOException {
+        int header = info.localHeaderOffset;
+        if (buf.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Corrupt local header for " + info.name + " in " + pathName);
+        }
+        int start = header + LOCAL_HEADER_SIZE + (buf.getShort(header + 26) & 0xffff) + (buf.getShort(header + 28) & 0xffff);
+        if (start + info.compressedSize > buf.limit()) {
+            throw new ZipException("Truncated entry " + info.name + " in " + pathName);
+        }
+        buf.position(start);
+        buf.limit(start + info.compressedSize);
+
+        switch (info.method) {
+        case STORED:
+            byte[] stored = new byte[info.compressedSize];
+            buf.get(stored);
+            return stored;
+        case DEFLATED:
+            byte[] compressed = new byte[info.compressedSize];
+            buf.get(compressed);
+            byte[] data = new byte[info.size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < data.length) {
+                    int inflated = inflater.inflate(data, n, data.length - n);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += inflated;
+                }
+                if (n != data.length) {
+                    throw new ZipException("Truncated entry " + info.name + " in " + pathName);
+                }
+            } catch (DataFormatException e) {
+                ZipException zipException = new ZipException("Invalid compressed data for " + info.name + " in " + pathName);
+                zipException.initCause(e);
+                throw zipException;
+            } finally {
+                inflater.end();
+            }
+            return data;
+        default:
+            throw new ZipException("Unsupported compression method " + info.method + " for " + info.name + " in "
+                    + pathName);
+        }
+    }
+
+    @Override
+    public ICodeBaseEntry lookupResource(String resourceName) {
+        // Translate resource name, in case a resource name
+        // has been overridden and the resource is being accessed
+        // using the overridden name.
+        resourceName = translateResourceName(resourceName);
+
+        EntryInfo info = entries.get(resourceName);
+        if (info == null || buffer == null) {
+            return null;
+        }
+        return new MappedZipFileCodeBaseEntry(this, info);
+    }
+
+    @Override
+    public ICodeBaseIterator iterator() {
+        final Iterator<EntryInfo> i = entries.values().iterator();
+
+        return new ICodeBaseIterator() {
+            MappedZipFileCodeBaseEntry nextEntry;
+
+            @Override
+            public boolean hasNext() {
+                scanForNextEntry();
+                return nextEntry != null;
+            }
+
+            @Override
+            public ICodeBaseEntry next() throws InterruptedException {
+                scanForNextEntry();
+                if (nextEntry == null) {
+                    throw new NoSuchElementException();
+                }
+                ICodeBaseEntry result = nextEntry;
+                nextEntry = null;
+                return result;
+            }
+
+            private void scanForNextEntry() {
+                while (nextEntry == null && i.hasNext()) {
+                    EntryInfo info = i.next();
+                    if (!info.name.endsWith("/")) {
+                        addLastModifiedTime(info.time);
+                        nextEntry = new MappedZipFileCodeBaseEntry(MappedZipFileCodeBase.this, info);
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getPathName() {
+        return pathName;
+    }
+
+    @Override
+    public void close() {
+        MappedByteBuffer mapped;
+        bufferLock.writeLock().lock();
+        try {
+            mapped = buffer;
+            buffer = null;
+        } finally {
+            bufferLock.writeLock().unlock();
+        }
+        if (mapped != null) {
+            unmap(mapped);
+        }
+    }
+
+    /**
+     * Release a mapping at once. There is no public API for this: if the
+     * runtime's internal one can't be used, the mapping is released when it
+     * is garbage collected.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapped);
+            return;
+        } catch (ReflectiveOperationException e) {
+            // Try the Java 7 and 8 way
+        } catch (RuntimeException e) {
+            return;
+        }
+        try {
+            Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapped);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException e) {
+            // Left to the garbage collector
+        } catch (RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pathName;
+    }
+}
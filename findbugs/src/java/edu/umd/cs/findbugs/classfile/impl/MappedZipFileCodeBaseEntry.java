@@ -0,0 +1,100 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+
+/**
+ * Implementation of ICodeBaseEntry for resources in memory-mapped zipfile
+ * codebases.
+ *
+ * @see MappedZipFileCodeBase
+ */
+public class MappedZipFileCodeBaseEntry extends AbstractScannableCodeBaseEntry {
+    private final MappedZipFileCodeBase codeBase;
+
+    private final MappedZipFileCodeBase.EntryInfo info;
+
+    MappedZipFileCodeBaseEntry(MappedZipFileCodeBase codeBase, MappedZipFileCodeBase.EntryInfo info) {
+        this.codeBase = codeBase;
+        this.info = info;
+    }
+
+    @Override
+    public int getNumBytes() {
+        return info.size;
+    }
+
+    /**
+     * Get the contents of the resource, read from the mapped zip file into a
+     * new array.
+     *
+     * @return the contents of the resource
+     * @throws IOException
+     *             if the resource can't be read
+     */
+    public byte[] getBytes() throws IOException {
+        return codeBase.getBytes(info);
+    }
+
+    @Override
+    public InputStream openResource() throws IOException {
+        return new ByteArrayInputStream(getBytes());
+    }
+
+    @Override
+    public AbstractScannableCodeBase getCodeBase() {
+        return codeBase;
+    }
+
+    @Override
+    public String getRealResourceName() {
+        return info.name;
+    }
+
+    @Override
+    public ClassDescriptor getClassDescriptor() {
+        return DescriptorFactory.createClassDescriptorFromResourceName(getResourceName());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        MappedZipFileCodeBaseEntry other = (MappedZipFileCodeBaseEntry) obj;
+        return this.codeBase.equals(other.codeBase) && this.info == other.info;
+    }
+
+    @Override
+    public int hashCode() {
+        return 7919 * codeBase.hashCode() + info.name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getCodeBase() + ":" + getResourceName();
+    }
+}
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.zip.ZipException;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.ICodeBaseLocator;
 import edu.umd.cs.findbugs.log.Profiler;
@@ -32,10 +33,25 @@ import edu.umd.cs.findbugs.log.Profiler;
  */
 public class ZipCodeBaseFactory {
 
+    /**
+     * Whether zip files are mapped into memory (see
+     * {@link MappedZipFileCodeBase}) rather than read through
+     * java.util.zip.ZipFile.
+     */
+    private static final boolean MAP_ZIP_FILES = SystemProperties.getBoolean("findbugs.zip.map", true);
+
     public static AbstractScannableCodeBase makeZipCodeBase(ICodeBaseLocator codeBaseLocator, File file) throws IOException {
         Profiler profiler = Global.getAnalysisCache().getProfiler();
         profiler.start(ZipCodeBaseFactory.class);
         try {
+            if (MAP_ZIP_FILES) {
+                try {
+                    return new MappedZipFileCodeBase(codeBaseLocator, file);
+                } catch (IOException e) {
+                    // Not mappable or not supported: ZipFile reports
+                    // any real problem with the file
+                }
+            }
             return new ZipFileCodeBase(codeBaseLocator, file);
         } catch (ZipException e) {
             // May be too many zip entries
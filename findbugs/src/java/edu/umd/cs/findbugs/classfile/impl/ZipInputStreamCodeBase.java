@@ -98,7 +98,7 @@ public class ZipInputStreamCodeBase extends AbstractScannableCodeBase {
      * edu.umd.cs.findbugs.classfile.ICodeBase#lookupResource(java.lang.String)
      */
     @Override
-    public ICodeBaseEntry lookupResource(String resourceName) {
+    public synchronized ICodeBaseEntry lookupResource(String resourceName) {
 
         // Translate resource name, in case a resource name
         // has been overridden and the resource is being accessed
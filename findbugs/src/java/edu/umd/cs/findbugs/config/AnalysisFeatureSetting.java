@@ -57,4 +57,9 @@ public class AnalysisFeatureSetting {
     public void configure(AnalysisContext analysisContext) {
         analysisContext.setBoolProperty(property, enabled);
     }
+
+    @Override
+    public String toString() {
+        return property + "=" + enabled;
+    }
 }
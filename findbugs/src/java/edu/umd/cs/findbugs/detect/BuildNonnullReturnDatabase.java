@@ -59,6 +59,9 @@ public class BuildNonnullReturnDatabase {
          */isApplicationClass(classContext.getJavaClass())) {
             return;
         }
+        if (AnalysisContext.currentAnalysisContext().hasLoadedDatabaseEntries(classContext.getClassDescriptor())) {
+            return;
+        }
         if (VERBOSE_DEBUG) {
             System.out.println("Visiting class " + classContext.getJavaClass().getClassName());
         }
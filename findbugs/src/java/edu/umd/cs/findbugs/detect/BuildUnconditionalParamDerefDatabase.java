@@ -83,6 +83,9 @@ public abstract class BuildUnconditionalParamDerefDatabase implements Detector {
         if (!fullAnalysis && !AnalysisContext.currentAnalysisContext().isApplicationClass(classContext.getJavaClass())) {
             return;
         }
+        if (AnalysisContext.currentAnalysisContext().hasLoadedDatabaseEntries(classContext.getClassDescriptor())) {
+            return;
+        }
         if (VERBOSE_DEBUG) {
             System.out.println("Visiting class " + classContext.getJavaClass().getClassName());
         }
@@ -19,11 +19,13 @@
 
 package edu.umd.cs.findbugs.detect;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
-import edu.umd.cs.findbugs.NonReportingDetector;
+import edu.umd.cs.findbugs.MergeableDetector;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.XFactory;
 import edu.umd.cs.findbugs.ba.XField;
@@ -33,19 +35,53 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 /**
  * Detector to find private methods that are never called.
  */
-public class CalledMethods extends BytecodeScanningDetector implements NonReportingDetector {
+public class CalledMethods extends BytecodeScanningDetector implements MergeableDetector {
     boolean emptyArrayOnTOS;
 
+    /** Final field whose value is on top of stack, if any */
+    XField finalFieldOnTOS;
+
     HashSet<XField> emptyArray = new HashSet<XField>();
 
     HashSet<XField> nonEmptyArray = new HashSet<XField>();
 
+    /**
+     * Fields assigned the value of final fields, and those final fields. The
+     * copies are resolved once all classes have been seen, so that the result
+     * doesn't depend on the order in which the classes are visited.
+     */
+    HashMap<XField, HashSet<XField>> copiedFrom = new HashMap<XField, HashSet<XField>>();
+
     XFactory xFactory = AnalysisContext.currentXFactory();
 
     public CalledMethods(BugReporter bugReporter) {
 
     }
 
+    @Override
+    public MergeableDetector createPartialDetector() {
+        return new CalledMethods(null);
+    }
+
+    @Override
+    public void mergePartialResults(MergeableDetector partial) {
+        CalledMethods other = (CalledMethods) partial;
+        emptyArray.addAll(other.emptyArray);
+        nonEmptyArray.addAll(other.nonEmptyArray);
+        for (Map.Entry<XField, HashSet<XField>> e : other.copiedFrom.entrySet()) {
+            getCopiedFrom(e.getKey()).addAll(e.getValue());
+        }
+    }
+
+    private HashSet<XField> getCopiedFrom(XField f) {
+        HashSet<XField> sources = copiedFrom.get(f);
+        if (sources == null) {
+            sources = new HashSet<XField>();
+            copiedFrom.put(f, sources);
+        }
+        return sources;
+    }
+
     @Override
     public void sawOpcode(int seen) {
 
@@ -55,6 +91,8 @@ public class CalledMethods extends BytecodeScanningDetector implements NonReport
                 if (f.isFinal() || !f.isProtected() && !f.isPublic()) {
                     if (emptyArrayOnTOS) {
                         emptyArray.add(f);
+                    } else if (finalFieldOnTOS != null) {
+                        getCopiedFrom(f).add(finalFieldOnTOS);
                     } else {
                         nonEmptyArray.add(f);
                     }
@@ -65,10 +103,11 @@ public class CalledMethods extends BytecodeScanningDetector implements NonReport
         emptyArrayOnTOS = (seen == ANEWARRAY || seen == NEWARRAY || seen == MULTIANEWARRAY && getIntConstant() == 1)
                 && getPrevOpcode(1) == ICONST_0;
 
+        finalFieldOnTOS = null;
         if (seen == GETSTATIC || seen == GETFIELD) {
             XField f = getXFieldOperand();
-            if (emptyArray.contains(f) && !nonEmptyArray.contains(f) && f.isFinal()) {
-                emptyArrayOnTOS = true;
+            if (f != null && f.isFinal()) {
+                finalFieldOnTOS = f;
             }
         }
         switch (seen) {
@@ -90,11 +129,31 @@ public class CalledMethods extends BytecodeScanningDetector implements NonReport
 
     @Override
     public void report() {
-        emptyArray.removeAll(nonEmptyArray);
+        // A field is an empty array if it is only assigned new empty arrays,
+        // or final fields that are empty arrays
+        HashSet<XField> empty = new HashSet<XField>();
         for (XField f : emptyArray) {
+            if (!nonEmptyArray.contains(f) && !copiedFrom.containsKey(f)) {
+                empty.add(f);
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<XField, HashSet<XField>> e : copiedFrom.entrySet()) {
+                XField f = e.getKey();
+                if (!empty.contains(f) && !nonEmptyArray.contains(f) && empty.containsAll(e.getValue())) {
+                    empty.add(f);
+                    changed = true;
+                }
+            }
+        }
+        for (XField f : empty) {
             xFactory.addEmptyArrayField(f);
         }
         emptyArray.clear();
+        nonEmptyArray.clear();
+        copiedFrom.clear();
     }
 
 }
@@ -38,6 +38,7 @@ import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.detect.BuildStringPassthruGraph.StringPassthruDatabase;
 
+@OpcodeStack.ReplacesStackItems
 public class CrossSiteScripting extends OpcodeStackDetector {
 
     final BugReporter bugReporter;
@@ -26,7 +26,7 @@ import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
 
 import edu.umd.cs.findbugs.BugReporter;
-import edu.umd.cs.findbugs.NonReportingDetector;
+import edu.umd.cs.findbugs.MergeableDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.ProgramPoint;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
@@ -39,7 +39,7 @@ import edu.umd.cs.findbugs.ba.ch.Subtypes2;
 import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 import edu.umd.cs.findbugs.visitclass.PreorderVisitor;
 
-public class FieldItemSummary extends OpcodeStackDetector implements NonReportingDetector {
+public class FieldItemSummary extends OpcodeStackDetector implements MergeableDetector {
 
     FieldSummary fieldSummary = new FieldSummary();
 
@@ -48,6 +48,20 @@ public class FieldItemSummary extends OpcodeStackDetector implements NonReportin
         context.setFieldSummary(fieldSummary);
     }
 
+    private FieldItemSummary() {
+        // partial detector: the summary is merged, not published
+    }
+
+    @Override
+    public MergeableDetector createPartialDetector() {
+        return new FieldItemSummary();
+    }
+
+    @Override
+    public void mergePartialResults(MergeableDetector partial) {
+        fieldSummary.merge(((FieldItemSummary) partial).fieldSummary);
+    }
+
     Set<XField> touched = new HashSet<XField>();
 
     @Override
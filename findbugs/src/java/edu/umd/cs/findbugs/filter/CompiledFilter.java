@@ -0,0 +1,494 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.CheckForNull;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+
+/**
+ * The enabled matchers of a {@link Filter}, indexed so that a BugInstance is
+ * only matched against the matchers that may match it.
+ * <p>
+ * Each matcher of the filter (usually the And of a Match element) is indexed
+ * by one of its conditions: an exact primary class name, an exact primary
+ * method name, or the codes, patterns and categories of a Bug element, in
+ * hash tables; the literal prefix or suffix of a primary class name regex,
+ * in tries; the other primary class name regexes are combined into one regex, used to
+ * skip all of them at once. The matchers with none of these conditions are
+ * always tried. The candidate matchers of a BugInstance are then matched in
+ * the order of the filter, so the result is the same as the one of the filter.
+ * <p>
+ * The compiled filter is a snapshot: later changes to the filter are not
+ * seen.
+ *
+ * @see Filter#compile()
+ */
+public class CompiledFilter implements Matcher {
+
+    private final Filter filter;
+
+    private final Matcher[] matchers;
+
+    /** Matchers always tried */
+    private final int[] unindexed;
+
+    private final Map<String, int[]> byClass = new HashMap<String, int[]>();
+
+    private final Map<String, int[]> byMethod = new HashMap<String, int[]>();
+
+    private final Map<String, int[]> byAbbrev = new HashMap<String, int[]>();
+
+    private final Map<String, int[]> byType = new HashMap<String, int[]>();
+
+    private final Map<String, int[]> byCategory = new HashMap<String, int[]>();
+
+    private final TrieNode byClassPrefix = new TrieNode();
+
+    /** Trie of the reversed literal suffixes of primary class name regexes */
+    private final TrieNode byClassSuffix = new TrieNode();
+
+    /**
+     * Matchers with a primary class name regex without literal prefix or
+     * suffix
+     */
+    private final int[] byClassRegex;
+
+    /**
+     * Matches if one of the regexes of byClassRegex matches, or null to try
+     * those matchers whenever there are any
+     */
+    private final @CheckForNull
+    Pattern classRegex;
+
+    /**
+     * Node of a trie of class name prefixes or (reversed) suffixes.
+     */
+    private static class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>();
+
+        int[] matchers = EMPTY;
+
+        void add(String key, int m) {
+            TrieNode node = this;
+            for (int i = 0; i < key.length(); i++) {
+                Character c = key.charAt(i);
+                TrieNode child = node.children.get(c);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.matchers = append(node.matchers, m);
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Compile the enabled matchers of a filter.
+     *
+     * @param filter
+     *            the filter
+     */
+    public CompiledFilter(Filter filter) {
+        this.filter = filter;
+        List<Matcher> enabled = new ArrayList<Matcher>();
+        Iterator<Matcher> i = filter.childIterator();
+        while (i.hasNext()) {
+            Matcher child = i.next();
+            if (filter.isEnabled(child)) {
+                enabled.add(child);
+            }
+        }
+        matchers = enabled.toArray(new Matcher[enabled.size()]);
+
+        IntList unindexedList = new IntList();
+        IntList classRegexList = new IntList();
+        List<String> classRegexes = new ArrayList<String>();
+        for (int m = 0; m < matchers.length; m++) {
+            if (!index(m, classRegexList, classRegexes)) {
+                unindexedList.add(m);
+            }
+        }
+        unindexed = unindexedList.toArray();
+        byClassRegex = classRegexList.toArray();
+        classRegex = union(classRegexes);
+    }
+
+    /**
+     * Index a matcher by its most selective condition.
+     *
+     * @return false if the matcher has no condition that can be indexed
+     */
+    private boolean index(int m, IntList classRegexList, List<String> classRegexes) {
+        List<Matcher> conditions;
+        if (matchers[m] instanceof AndMatcher) {
+            conditions = new ArrayList<Matcher>(((AndMatcher) matchers[m]).getChildren());
+        } else {
+            conditions = Arrays.asList(matchers[m]);
+        }
+
+        String prefix = "";
+        String suffix = "";
+        String regex = null;
+        for (Matcher condition : conditions) {
+            if (condition instanceof ClassMatcher) {
+                ClassMatcher classMatcher = (ClassMatcher) condition;
+                if (!isPrimary(classMatcher.getRole())) {
+                    continue;
+                }
+                String spec = classMatcher.getClassName().getSpec();
+                if (spec == null) {
+                    continue;
+                }
+                if (!spec.startsWith("~")) {
+                    add(byClass, spec, m);
+                    return true;
+                }
+                String p = literalPrefix(spec.substring(1));
+                String q = literalSuffix(spec.substring(1));
+                if (p.length() > prefix.length()) {
+                    prefix = p;
+                }
+                if (q.length() > suffix.length()) {
+                    suffix = q;
+                }
+                if (regex == null && canCombine(spec.substring(1))) {
+                    regex = spec.substring(1);
+                }
+            }
+        }
+        for (Matcher condition : conditions) {
+            if (condition instanceof MethodMatcher) {
+                MethodMatcher methodMatcher = (MethodMatcher) condition;
+                String spec = methodMatcher.name.getSpec();
+                if (isPrimary(methodMatcher.role) && spec != null && !spec.startsWith("~")) {
+                    add(byMethod, spec, m);
+                    return true;
+                }
+            }
+        }
+        for (Matcher condition : conditions) {
+            if (condition instanceof BugMatcher) {
+                // Matches if one of its codes, patterns or categories matches
+                BugMatcher bugMatcher = (BugMatcher) condition;
+                add(byAbbrev, bugMatcher.getCodes().getStrings(), m);
+                add(byType, bugMatcher.getPatterns().getStrings(), m);
+                add(byCategory, bugMatcher.getCategories().getStrings(), m);
+                return true;
+            }
+        }
+        if (prefix.length() > 0 && prefix.length() >= suffix.length()) {
+            byClassPrefix.add(prefix, m);
+            return true;
+        }
+        if (suffix.length() > 0) {
+            byClassSuffix.add(new StringBuilder(suffix).reverse().toString(), m);
+            return true;
+        }
+        if (regex != null) {
+            classRegexList.add(m);
+            classRegexes.add(regex);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isPrimary(@CheckForNull String role) {
+        return role == null || "".equals(role);
+    }
+
+    /**
+     * Embedded flags, which may change how the literals following them are
+     * matched
+     */
+    private static final Pattern EMBEDDED_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]+\\)");
+
+    /** A construct of a regex other than a literal character */
+    private static final int OTHER = -1;
+
+    /**
+     * Split a regex into its literal characters and its other constructs, as
+     * far as needed to find the literal prefix and suffix of the regex.
+     *
+     * @param regex
+     *            the regex
+     * @return the literal characters, and OTHER for each other construct; or
+     *         null if the regex has constructs (such as alternatives) that
+     *         may change the meaning of the literals
+     */
+    private static @CheckForNull
+    int[] tokenize(String regex) {
+        if (regex.contains("\\Q") || EMBEDDED_FLAGS.matcher(regex).find()) {
+            return null;
+        }
+        IntList tokens = new IntList();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (Character.isDigit(escaped) || "xucpPNk".indexOf(escaped) >= 0) {
+                    // Escapes longer than two characters
+                    return null;
+                }
+                tokens.add(Character.isLetter(escaped) ? OTHER : escaped);
+                i += 2;
+            } else if (c == '|') {
+                return null;
+            } else {
+                if ("*+?{".indexOf(c) >= 0 && tokens.size > 0) {
+                    // The preceding literal is optional or repeated
+                    tokens.values[tokens.size - 1] = OTHER;
+                    if (tokens.size > 1 && Character.isHighSurrogate((char) tokens.values[tokens.size - 2])) {
+                        tokens.values[tokens.size - 2] = OTHER;
+                    }
+                }
+                tokens.add(".[]{}()*+?^$".indexOf(c) >= 0 ? OTHER : c);
+                i++;
+            }
+        }
+        return tokens.toArray();
+    }
+
+    /**
+     * Get the literal prefix of a regex: a string every string matching the
+     * regex starts with.
+     *
+     * @param regex
+     *            the regex
+     * @return the prefix, possibly empty
+     */
+    static String literalPrefix(String regex) {
+        int[] tokens = tokenize(regex);
+        StringBuilder prefix = new StringBuilder();
+        if (tokens != null) {
+            for (int i = 0; i < tokens.length && tokens[i] != OTHER; i++) {
+                prefix.append((char) tokens[i]);
+            }
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Get the literal suffix of a regex: a string every string matching the
+     * regex ends with.
+     *
+     * @param regex
+     *            the regex
+     * @return the suffix, possibly empty
+     */
+    static String literalSuffix(String regex) {
+        int[] tokens = tokenize(regex);
+        StringBuilder suffix = new StringBuilder();
+        if (tokens != null) {
+            for (int i = tokens.length - 1; i >= 0 && tokens[i] != OTHER; i--) {
+                suffix.append((char) tokens[i]);
+            }
+        }
+        return suffix.reverse().toString();
+    }
+
+    /**
+     * Check whether a regex keeps its meaning as an alternative of a larger
+     * regex: back references and named groups are numbered or named within
+     * the whole regex, and quotations and comments may swallow the end of the
+     * alternative.
+     */
+    private static boolean canCombine(String regex) {
+        return !regex.matches("(?s).*(\\\\[0-9kQ]|\\(\\?<[a-zA-Z]|#).*");
+    }
+
+    private static @CheckForNull
+    Pattern union(List<String> regexes) {
+        if (regexes.isEmpty()) {
+            return null;
+        }
+        StringBuilder union = new StringBuilder();
+        for (String regex : regexes) {
+            if (union.length() > 0) {
+                union.append('|');
+            }
+            union.append("(?:").append(regex).append(')');
+        }
+        try {
+            return Pattern.compile(union.toString());
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    private static void add(Map<String, int[]> index, Set<String> keys, int m) {
+        for (String key : keys) {
+            add(index, key, m);
+        }
+    }
+
+    private static void add(Map<String, int[]> index, String key, int m) {
+        int[] value = index.get(key);
+        index.put(key, value == null ? new int[] { m } : append(value, m));
+    }
+
+    private static int[] append(int[] array, int m) {
+        if (array.length > 0 && array[array.length - 1] == m) {
+            return array;
+        }
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = m;
+        return result;
+    }
+
+    /**
+     * @return the number of matchers that are tried for every BugInstance
+     */
+    public int getNumUnindexed() {
+        return unindexed.length;
+    }
+
+    @Override
+    public boolean match(BugInstance bugInstance) {
+        ClassAnnotation primaryClass = bugInstance.getPrimaryClass();
+        if (primaryClass == null) {
+            // Let the matchers deal with it
+            return matchAll(bugInstance);
+        }
+        IntList candidates = new IntList();
+        String className = primaryClass.getClassName();
+        candidates.addAll(byClass.get(className));
+        TrieNode node = byClassPrefix;
+        for (int i = 0; node != null; i++) {
+            candidates.addAll(node.matchers);
+            node = i < className.length() ? node.children.get(className.charAt(i)) : null;
+        }
+        node = byClassSuffix;
+        for (int i = className.length() - 1; node != null; i--) {
+            candidates.addAll(node.matchers);
+            node = i >= 0 ? node.children.get(className.charAt(i)) : null;
+        }
+        if (byClassRegex.length > 0 && (classRegex == null || classRegex.matcher(className).matches())) {
+            candidates.addAll(byClassRegex);
+        }
+        MethodAnnotation primaryMethod = bugInstance.getPrimaryMethod();
+        if (primaryMethod != null) {
+            candidates.addAll(byMethod.get(primaryMethod.getMethodName()));
+        }
+        if (!byAbbrev.isEmpty()) {
+            candidates.addAll(byAbbrev.get(bugInstance.getAbbrev().trim()));
+        }
+        if (!byType.isEmpty()) {
+            candidates.addAll(byType.get(bugInstance.getType().trim()));
+        }
+        if (!byCategory.isEmpty()) {
+            candidates.addAll(byCategory.get(bugInstance.getBugPattern().getCategory().trim()));
+        }
+
+        // Match the candidates in the order of the filter
+        int[] indexed = candidates.toSortedArray();
+        int i = 0;
+        int j = 0;
+        while (i < indexed.length || j < unindexed.length) {
+            int m;
+            if (j == unindexed.length || (i < indexed.length && indexed[i] < unindexed[j])) {
+                m = indexed[i++];
+                while (i < indexed.length && indexed[i] == m) {
+                    i++;
+                }
+            } else {
+                m = unindexed[j++];
+            }
+            if (matchers[m].match(bugInstance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchAll(BugInstance bugInstance) {
+        for (Matcher m : matchers) {
+            if (m.match(bugInstance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void writeXML(XMLOutput xmlOutput, boolean disabled) throws IOException {
+        filter.writeXML(xmlOutput, disabled);
+    }
+
+    @Override
+    public String toString() {
+        return filter.toString();
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        int[] values = EMPTY;
+
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(8, 2 * size));
+            }
+            values[size++] = value;
+        }
+
+        void addAll(@CheckForNull int[] array) {
+            if (array != null) {
+                for (int value : array) {
+                    add(value);
+                }
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        int[] toSortedArray() {
+            int[] result = toArray();
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
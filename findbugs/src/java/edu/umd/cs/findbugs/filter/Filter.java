@@ -193,6 +193,17 @@ public class Filter extends OrMatcher {
         return false;
     }
 
+    /**
+     * Index the enabled matchers of the filter, for matching many
+     * BugInstances. The result is the same as the one of this filter, as long
+     * as this filter is not modified.
+     *
+     * @return the compiled filter
+     */
+    public CompiledFilter compile() {
+        return new CompiledFilter(this);
+    }
+
     /**
      * Parse and load the given filter file.
      *
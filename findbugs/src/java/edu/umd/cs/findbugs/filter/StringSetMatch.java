@@ -19,6 +19,7 @@
 
 package edu.umd.cs.findbugs.filter;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -62,6 +63,13 @@ public class StringSetMatch {
         }
     }
 
+    /**
+     * @return the values of the set
+     */
+    Set<String> getStrings() {
+        return Collections.unmodifiableSet(strings);
+    }
+
     public boolean isEmpty() {
         return strings.isEmpty();
     }
@@ -0,0 +1,629 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.io.IO;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Detailed profile of one or more analysis runs, collected by the
+ * {@link Profiler} when {@link Profiler#enableDetailedReport()} is called: for
+ * each profiled class (detector or analysis engine), the time and memory used
+ * and the analysis cache hits and misses it triggered, with a histogram of the
+ * time it spent on each analyzed class; and the time spent on each analyzed
+ * class. Times and allocations are those of the profiled class itself, not of
+ * the analyses it requested.
+ * <p>
+ * A report is written in JSON or CSV, chosen by the extension of the file.
+ * JSON reports can be read back and merged, to profile several runs.
+ */
+public class ProfileReport {
+
+    /**
+     * Histogram of nanosecond values with logarithmic buckets (eight per power
+     * of two, so values are within 12.5% of their bucket's lower bound).
+     * Histograms are merged by adding their buckets.
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final long[] counts = new long[NUM_BUCKETS];
+
+        private long count;
+
+        private long max;
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) Math.max(value, 0);
+            }
+            int log = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (log - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int log = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+            int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub) << (log - SUB_BUCKET_BITS);
+        }
+
+        public void add(long value) {
+            counts[bucket(value)]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        public void merge(Histogram other) {
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param fraction
+         *            the percentile, between 0 and 1
+         * @return an upper bound of the percentile, within the precision of
+         *         the buckets
+         */
+        public long getPercentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i + 1 < NUM_BUCKETS ? Math.min(lowerBound(i + 1) - 1, max) : max;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Profile of a detector or analysis engine.
+     */
+    public static class ProfiledClass {
+        final String name;
+
+        long calls;
+
+        long nanos;
+
+        long allocatedBytes;
+
+        long cacheHits;
+
+        long cacheMisses;
+
+        final Histogram perClassNanos = new Histogram();
+
+        @CheckForNull String maxClass;
+
+        ProfiledClass(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * @return histogram of the time spent on each analyzed class
+         */
+        public Histogram getPerClassNanos() {
+            return perClassNanos;
+        }
+
+        /**
+         * @return the analyzed class on which the most time was spent
+         */
+        public @CheckForNull String getMaxClass() {
+            return maxClass;
+        }
+    }
+
+    /**
+     * Time and memory spent analyzing a class, by all detectors and engines.
+     */
+    public static class AnalyzedClass {
+        final String name;
+
+        long nanos;
+
+        long allocatedBytes;
+
+        AnalyzedClass(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    private final Map<String, ProfiledClass> profiledClasses = new HashMap<String, ProfiledClass>();
+
+    private final Map<String, AnalyzedClass> analyzedClasses = new HashMap<String, AnalyzedClass>();
+
+    private int runs = 1;
+
+    private ProfiledClass getProfiledClass(String name) {
+        ProfiledClass result = profiledClasses.get(name);
+        if (result == null) {
+            result = new ProfiledClass(name);
+            profiledClasses.put(name, result);
+        }
+        return result;
+    }
+
+    private AnalyzedClass getAnalyzedClass(String name) {
+        AnalyzedClass result = analyzedClasses.get(name);
+        if (result == null) {
+            result = new AnalyzedClass(name);
+            analyzedClasses.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Record the use of a profiled class.
+     *
+     * @param profiledClass
+     *            the detector or analysis engine
+     * @param analyzedClass
+     *            the class it analyzed, or null if it was used outside of the
+     *            analysis of a class
+     * @param calls
+     *            number of calls
+     * @param nanos
+     *            time spent in the calls
+     * @param allocatedBytes
+     *            memory allocated in the calls
+     * @param cacheHits
+     *            number of analysis cache hits
+     * @param cacheMisses
+     *            number of analysis cache misses
+     */
+    public synchronized void record(String profiledClass, @CheckForNull String analyzedClass, long calls, long nanos,
+            long allocatedBytes, long cacheHits, long cacheMisses) {
+        ProfiledClass p = getProfiledClass(profiledClass);
+        p.calls += calls;
+        p.nanos += nanos;
+        p.allocatedBytes += allocatedBytes;
+        p.cacheHits += cacheHits;
+        p.cacheMisses += cacheMisses;
+        if (analyzedClass != null) {
+            if (nanos > p.perClassNanos.getMax()) {
+                p.maxClass = analyzedClass;
+            }
+            p.perClassNanos.add(nanos);
+            AnalyzedClass a = getAnalyzedClass(analyzedClass);
+            a.nanos += nanos;
+            a.allocatedBytes += allocatedBytes;
+        }
+    }
+
+    /**
+     * Add the profile of other runs to this report.
+     *
+     * @param other
+     *            the report of the other runs
+     */
+    public synchronized void merge(ProfileReport other) {
+        for (ProfiledClass o : other.getProfiledClasses()) {
+            ProfiledClass p = getProfiledClass(o.name);
+            p.calls += o.calls;
+            p.nanos += o.nanos;
+            p.allocatedBytes += o.allocatedBytes;
+            p.cacheHits += o.cacheHits;
+            p.cacheMisses += o.cacheMisses;
+            if (o.perClassNanos.getMax() > p.perClassNanos.getMax()) {
+                p.maxClass = o.maxClass;
+            }
+            p.perClassNanos.merge(o.perClassNanos);
+        }
+        for (AnalyzedClass o : other.getAnalyzedClasses()) {
+            AnalyzedClass a = getAnalyzedClass(o.name);
+            a.nanos += o.nanos;
+            a.allocatedBytes += o.allocatedBytes;
+        }
+        runs += other.runs;
+    }
+
+    /**
+     * @return number of runs profiled by this report
+     */
+    public int getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return the profiled classes, most time consuming first
+     */
+    public synchronized List<ProfiledClass> getProfiledClasses() {
+        List<ProfiledClass> result = new ArrayList<ProfiledClass>(profiledClasses.values());
+        Collections.sort(result, new Comparator<ProfiledClass>() {
+            @Override
+            public int compare(ProfiledClass p1, ProfiledClass p2) {
+                return p1.nanos != p2.nanos ? (p1.nanos > p2.nanos ? -1 : 1) : p1.name.compareTo(p2.name);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the analyzed classes, most time consuming first
+     */
+    public synchronized List<AnalyzedClass> getAnalyzedClasses() {
+        List<AnalyzedClass> result = new ArrayList<AnalyzedClass>(analyzedClasses.values());
+        Collections.sort(result, new Comparator<AnalyzedClass>() {
+            @Override
+            public int compare(AnalyzedClass a1, AnalyzedClass a2) {
+                return a1.nanos != a2.nanos ? (a1.nanos > a2.nanos ? -1 : 1) : a1.name.compareTo(a2.name);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Write the report to a file, as CSV if its name ends with ".csv", as JSON
+     * otherwise.
+     *
+     * @param file
+     *            the file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        Writer out = UTF8.bufferedWriter(file);
+        try {
+            if (file.getName().endsWith(".csv")) {
+                writeCSV(out);
+            } else {
+                writeJSON(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the report as JSON; the report can be read back with
+     * {@link #readJSON(Reader)}.
+     *
+     * @param out
+     *            the writer
+     * @throws IOException
+     */
+    public void writeJSON(Writer out) throws IOException {
+        out.write("{\n  \"runs\": " + runs + ",\n  \"profiles\": [");
+        String separator = "\n";
+        for (ProfiledClass p : getProfiledClasses()) {
+            out.write(separator);
+            separator = ",\n";
+            Histogram h = p.perClassNanos;
+            out.write("    {\"name\": " + quote(p.name) + ", \"calls\": " + p.calls + ", \"nanos\": " + p.nanos
+                    + ", \"allocatedBytes\": " + p.allocatedBytes + ", \"cacheHits\": " + p.cacheHits
+                    + ", \"cacheMisses\": " + p.cacheMisses);
+            out.write(",\n     \"perClassNanos\": {\"count\": " + h.getCount() + ", \"p50\": " + h.getPercentile(0.5)
+                    + ", \"p95\": " + h.getPercentile(0.95) + ", \"max\": " + h.getMax());
+            if (p.maxClass != null) {
+                out.write(", \"maxClass\": " + quote(p.maxClass));
+            }
+            out.write(", \"buckets\": [");
+            String bucketSeparator = "";
+            for (int i = 0; i < Histogram.NUM_BUCKETS; i++) {
+                if (h.counts[i] != 0) {
+                    out.write(bucketSeparator + "[" + i + ", " + h.counts[i] + "]");
+                    bucketSeparator = ", ";
+                }
+            }
+            out.write("]}}");
+        }
+        out.write("\n  ],\n  \"classes\": [");
+        separator = "\n";
+        for (AnalyzedClass a : getAnalyzedClasses()) {
+            out.write(separator);
+            separator = ",\n";
+            out.write("    {\"name\": " + quote(a.name) + ", \"nanos\": " + a.nanos + ", \"allocatedBytes\": "
+                    + a.allocatedBytes + "}");
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    /**
+     * Write the report as CSV: a row for each profiled class, then a row for
+     * each analyzed class, distinguished by the first column.
+     *
+     * @param out
+     *            the writer
+     * @throws IOException
+     */
+    public void writeCSV(Writer out) throws IOException {
+        out.write("kind,name,calls,millis,allocatedBytes,cacheHits,cacheMisses,classes,p50Micros,p95Micros,maxMicros,maxClass\n");
+        for (ProfiledClass p : getProfiledClasses()) {
+            Histogram h = p.perClassNanos;
+            out.write("profile," + p.name + "," + p.calls + "," + p.nanos / 1000000 + "," + p.allocatedBytes + ","
+                    + p.cacheHits + "," + p.cacheMisses + "," + h.getCount() + "," + h.getPercentile(0.5) / 1000 + ","
+                    + h.getPercentile(0.95) / 1000 + "," + h.getMax() / 1000 + "," + (p.maxClass != null ? p.maxClass : "")
+                    + "\n");
+        }
+        for (AnalyzedClass a : getAnalyzedClasses()) {
+            out.write("class," + a.name + ",," + a.nanos / 1000000 + "," + a.allocatedBytes + ",,,,,,,\n");
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder(s.length() + 2);
+        result.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /**
+     * Read a report written by {@link #writeJSON(Writer)}. The Reader is
+     * guaranteed to be closed, even if an exception is thrown.
+     *
+     * @param in
+     *            the reader
+     * @return the report
+     * @throws IOException
+     *             if the report can't be read or is not valid
+     */
+    @SuppressWarnings("unchecked")
+    public static ProfileReport readJSON(@WillClose Reader in) throws IOException {
+        Map<String, Object> json;
+        try {
+            json = (Map<String, Object>) new JSONParser(IO.readAll(in)).parseValue();
+        } catch (ClassCastException e) {
+            throw new IOException("Not a profile report");
+        } finally {
+            Util.closeSilently(in);
+        }
+        ProfileReport report = new ProfileReport();
+        try {
+            report.runs = (int) getLong(json, "runs");
+            for (Object o : (List<Object>) json.get("profiles")) {
+                Map<String, Object> profile = (Map<String, Object>) o;
+                ProfiledClass p = report.getProfiledClass((String) profile.get("name"));
+                p.calls = getLong(profile, "calls");
+                p.nanos = getLong(profile, "nanos");
+                p.allocatedBytes = getLong(profile, "allocatedBytes");
+                p.cacheHits = getLong(profile, "cacheHits");
+                p.cacheMisses = getLong(profile, "cacheMisses");
+                Map<String, Object> histogram = (Map<String, Object>) profile.get("perClassNanos");
+                p.perClassNanos.count = getLong(histogram, "count");
+                p.perClassNanos.max = getLong(histogram, "max");
+                p.maxClass = (String) histogram.get("maxClass");
+                for (Object b : (List<Object>) histogram.get("buckets")) {
+                    List<Object> bucket = (List<Object>) b;
+                    p.perClassNanos.counts[((Long) bucket.get(0)).intValue()] = (Long) bucket.get(1);
+                }
+            }
+            for (Object o : (List<Object>) json.get("classes")) {
+                Map<String, Object> analyzed = (Map<String, Object>) o;
+                AnalyzedClass a = report.getAnalyzedClass((String) analyzed.get("name"));
+                a.nanos = getLong(analyzed, "nanos");
+                a.allocatedBytes = getLong(analyzed, "allocatedBytes");
+            }
+        } catch (RuntimeException e) {
+            IOException ioe = new IOException("Invalid profile report");
+            ioe.initCause(e);
+            throw ioe;
+        }
+        return report;
+    }
+
+    private static long getLong(Map<String, Object> json, String key) throws IOException {
+        Object value = json.get(key);
+        if (!(value instanceof Long)) {
+            throw new IOException("Missing " + key + " in profile report");
+        }
+        return (Long) value;
+    }
+
+    /**
+     * Parser of the JSON subset written by writeJSON: objects, arrays, strings
+     * and integers.
+     */
+    private static class JSONParser {
+        private final String text;
+
+        private int pos;
+
+        JSONParser(String text) {
+            this.text = text;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at offset " + pos + " of profile report");
+        }
+
+        private char next() throws IOException {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= text.length()) {
+                throw error("Unexpected end");
+            }
+            return text.charAt(pos);
+        }
+
+        private void expect(char c) throws IOException {
+            if (next() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        Object parseValue() throws IOException {
+            char c = next();
+            if (c == '{') {
+                pos++;
+                Map<String, Object> result = new LinkedHashMap<String, Object>();
+                if (next() == '}') {
+                    pos++;
+                    return result;
+                }
+                while (true) {
+                    String key = parseString();
+                    expect(':');
+                    result.put(key, parseValue());
+                    if (next() == ',') {
+                        pos++;
+                    } else {
+                        expect('}');
+                        return result;
+                    }
+                }
+            } else if (c == '[') {
+                pos++;
+                List<Object> result = new ArrayList<Object>();
+                if (next() == ']') {
+                    pos++;
+                    return result;
+                }
+                while (true) {
+                    result.add(parseValue());
+                    if (next() == ',') {
+                        pos++;
+                    } else {
+                        expect(']');
+                        return result;
+                    }
+                }
+            } else if (c == '"') {
+                return parseString();
+            } else if (c == '-' || Character.isDigit(c)) {
+                int start = pos++;
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+                try {
+                    return Long.valueOf(text.substring(start, pos));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid number");
+                }
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        private String parseString() throws IOException {
+            expect('"');
+            StringBuilder result = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c == '\\') {
+                    if (pos >= text.length()) {
+                        throw error("Unterminated string");
+                    }
+                    c = text.charAt(pos++);
+                    if (c == 'u') {
+                        if (pos + 4 > text.length()) {
+                            throw error("Invalid escape");
+                        }
+                        try {
+                            c = (char) Integer.parseInt(text.substring(pos, pos + 4), 16);
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid escape");
+                        }
+                        pos += 4;
+                    }
+                }
+                result.append(c);
+            }
+        }
+    }
+}
@@ -24,6 +24,8 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.Comparator;
 import java.util.EmptyStackException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Stack;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -32,9 +34,12 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.CheckForNull;
+
 import edu.umd.cs.findbugs.FindBugs2;
 import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.util.ThreadResourceUsage;
 import edu.umd.cs.findbugs.xml.XMLOutput;
 import edu.umd.cs.findbugs.xml.XMLWriteable;
 
@@ -47,7 +52,6 @@ public class Profiler implements XMLWriteable {
     final static boolean MAX_CONTEXT = SystemProperties.getBoolean("findbugs.profiler.maxcontext");
 
     public Profiler() {
-        startTimes = new Stack<Clock>();
         profile = new ConcurrentHashMap<Class<?>, Profile>();
         if (REPORT) {
             System.err.println("Profiling activated");
@@ -193,37 +197,157 @@ public class Profiler implements XMLWriteable {
 
         long accumulatedTime;
 
-        Clock(Class<?> clazz, long currentNanoTime) {
+        /** only measured for the detailed report */
+        long startBytes;
+
+        long accumulatedBytes;
+
+        int cacheHits;
+
+        int cacheMisses;
+
+        Clock(Class<?> clazz, long currentNanoTime, long currentBytes) {
             this.clazz = clazz;
             startTimeNanos = currentNanoTime;
+            startBytes = currentBytes;
         }
 
-        void accumulateTime(long currentNanoTime) {
+        void accumulateTime(long currentNanoTime, long currentBytes) {
             accumulatedTime += currentNanoTime - startTimeNanos;
+            accumulatedBytes += currentBytes - startBytes;
         }
 
-        void restartClock(long currentNanoTime) {
+        void restartClock(long currentNanoTime, long currentBytes) {
             startTimeNanos = currentNanoTime;
+            startBytes = currentBytes;
         }
 
     }
 
-    final Stack<Clock> startTimes;
+    /**
+     * Timing stack of the current thread. Each analysis thread times its own
+     * nested calls; the accumulated profiles are shared.
+     */
+    final ThreadLocal<Stack<Clock>> startTimes = new ThreadLocal<Stack<Clock>>() {
+        @Override
+        protected Stack<Clock> initialValue() {
+            return new Stack<Clock>();
+        }
+    };
 
     final ConcurrentMap<Class<?>, Profile> profile;
 
-    final Stack<Object> context = new Stack<Object>();
+    final ThreadLocal<Stack<Object>> contextStack = new ThreadLocal<Stack<Object>>() {
+        @Override
+        protected Stack<Object> initialValue() {
+            return new Stack<Object>();
+        }
+    };
+
+    private volatile @CheckForNull ProfileReport detailedReport;
+
+    /**
+     * Calls ended by the current thread in the current context, not yet
+     * recorded in the detailed report: for each class, the number of calls,
+     * time, allocated bytes, cache hits and cache misses.
+     */
+    final ThreadLocal<Map<Class<?>, long[]>> pendingCalls = new ThreadLocal<Map<Class<?>, long[]>>() {
+        @Override
+        protected Map<Class<?>, long[]> initialValue() {
+            return new HashMap<Class<?>, long[]>();
+        }
+    };
 
     public void startContext(Object context) {
-        this.context.push(context);
+        if (detailedReport != null) {
+            flushPendingCalls();
+        }
+        contextStack.get().push(context);
     }
 
     public void endContext(Object context) {
-        Object o = this.context.pop();
+        if (detailedReport != null) {
+            flushPendingCalls();
+        }
+        Object o = contextStack.get().pop();
         assert o == context;
     }
 
+    /**
+     * Collect a detailed report (see {@link ProfileReport}) in addition to the
+     * profiles. This measures the memory allocated by each profiled class,
+     * which costs more than timing it.
+     */
+    public void enableDetailedReport() {
+        if (detailedReport == null) {
+            detailedReport = new ProfileReport();
+        }
+    }
+
+    /**
+     * @return the detailed report, or null if it was not enabled
+     */
+    public @CheckForNull ProfileReport getDetailedReport() {
+        if (detailedReport != null) {
+            flushPendingCalls();
+        }
+        return detailedReport;
+    }
+
+    /**
+     * Count a hit of the analysis cache, for the class being timed.
+     */
+    public void cacheHit() {
+        if (detailedReport != null) {
+            Stack<Clock> stack = startTimes.get();
+            if (!stack.isEmpty()) {
+                stack.peek().cacheHits++;
+            }
+        }
+    }
+
+    /**
+     * Count a miss of the analysis cache, for the class being timed.
+     */
+    public void cacheMiss() {
+        if (detailedReport != null) {
+            Stack<Clock> stack = startTimes.get();
+            if (!stack.isEmpty()) {
+                stack.peek().cacheMisses++;
+            }
+        }
+    }
+
+    private void recordDetails(Clock ending) {
+        long[] pending = pendingCalls.get().get(ending.clazz);
+        if (pending == null) {
+            pending = new long[5];
+            pendingCalls.get().put(ending.clazz, pending);
+        }
+        pending[0]++;
+        pending[1] += ending.accumulatedTime;
+        pending[2] += ending.accumulatedBytes;
+        pending[3] += ending.cacheHits;
+        pending[4] += ending.cacheMisses;
+    }
+
+    private void flushPendingCalls() {
+        ProfileReport report = detailedReport;
+        Map<Class<?>, long[]> pending = pendingCalls.get();
+        if (report == null || pending.isEmpty()) {
+            return;
+        }
+        Object context = getContext();
+        String analyzedClass = "".equals(context) ? null : String.valueOf(context);
+        for (Map.Entry<Class<?>, long[]> e : pending.entrySet()) {
+            long[] p = e.getValue();
+            report.record(e.getKey().getName(), analyzedClass, p[0], p[1], p[2], p[3], p[4]);
+        }
+        pending.clear();
+    }
+
     private Object getContext() {
+        Stack<Object> context = contextStack.get();
         if (context.size() == 0) {
             return "";
         }
@@ -235,12 +359,13 @@ public class Profiler implements XMLWriteable {
     }
     public void start(Class<?> c) {
         long currentNanoTime = System.nanoTime();
+        long currentBytes = detailedReport != null ? ThreadResourceUsage.getAllocatedBytes() : 0;
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         if (!stack.isEmpty()) {
-            stack.peek().accumulateTime(currentNanoTime);
+            stack.peek().accumulateTime(currentNanoTime, currentBytes);
         }
-        stack.push(new Clock(c, currentNanoTime));
+        stack.push(new Clock(c, currentNanoTime, currentBytes));
         // System.err.println("push " + c.getSimpleName());
 
     }
@@ -248,17 +373,21 @@ public class Profiler implements XMLWriteable {
     public void end(Class<?> c) {
         // System.err.println("pop " + c.getSimpleName());
         long currentNanoTime = System.nanoTime();
+        long currentBytes = detailedReport != null ? ThreadResourceUsage.getAllocatedBytes() : 0;
 
-        Stack<Clock> stack = startTimes;
+        Stack<Clock> stack = startTimes.get();
         Clock ending = stack.pop();
         if (ending.clazz != c) {
             throw new AssertionError("Asked to end timing for " + c + " but top of stack is " + ending.clazz
                     + ", remaining stack is " + stack);
         }
-        ending.accumulateTime(currentNanoTime);
+        ending.accumulateTime(currentNanoTime, currentBytes);
         if (!stack.isEmpty()) {
             Clock restarting = stack.peek();
-            restarting.restartClock(currentNanoTime);
+            restarting.restartClock(currentNanoTime, currentBytes);
+        }
+        if (detailedReport != null) {
+            recordDetails(ending);
         }
         long accumulatedTime = ending.accumulatedTime;
         if (accumulatedTime == 0) {
@@ -417,7 +546,11 @@ public class Profiler implements XMLWriteable {
      */
     public void clear() {
         profile.clear();
-        startTimes.clear();
+        startTimes.get().clear();
+        pendingCalls.get().clear();
+        if (detailedReport != null) {
+            detailedReport = new ProfileReport();
+        }
     }
 
     public Profile getProfile(Class<?> c) {
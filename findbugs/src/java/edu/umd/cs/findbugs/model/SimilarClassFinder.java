@@ -19,38 +19,223 @@
 
 package edu.umd.cs.findbugs.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
+ * Group classes into sets of similar classes. Each class, in the order they
+ * are added, goes to the first set with a member the class is
+ * {@link ClassFeatureSet#similarTo similar} to.
+ * <p>
+ * The sets are computed when they are first requested. The members of the
+ * sets are indexed, so that a class is only compared with the members it may
+ * be similar to:
+ * <ul>
+ * <li>classes with few features are only similar to classes of the same
+ * name, so all members are indexed by class name;</li>
+ * <li>classes with enough features are only similar if they share a minimum
+ * fraction of their features. If the features of every class are sorted in
+ * the same order, two such classes have a feature in common among their first
+ * few features (the prefix), so members with enough features are indexed by
+ * the features of their prefix. Features are sorted from the least to the
+ * most frequent, so that common features seldom are in a prefix.</li>
+ * </ul>
+ * The feature sets must not be modified once added.
+ *
  * @author David Hovemeyer
  */
 public class SimilarClassFinder {
-    private final List<SimilarClassSet> similarClassSetList;
+    private final List<ClassFeatureSet> classFeatureSetList;
+
+    private List<SimilarClassSet> similarClassSetList;
+
+    private Map<String, List<Member>> classNameIndex;
+
+    private Map<String, List<Member>> prefixIndex;
+
+    /**
+     * A class added to a set of similar classes.
+     */
+    private static class Member {
+        final ClassFeatureSet classFeatureSet;
+
+        /** Position of the set of the class in similarClassSetList */
+        final int setIndex;
+
+        Member(ClassFeatureSet classFeatureSet, int setIndex) {
+            this.classFeatureSet = classFeatureSet;
+            this.setIndex = setIndex;
+        }
+    }
+
+    /**
+     * Order features by the number of classes with enough features which
+     * have them. Any order may be used, as long as it is the same for all
+     * classes.
+     */
+    private static class FeatureOrder implements Comparator<String> {
+        final Map<String, int[]> frequency = new HashMap<String, int[]>();
+
+        void count(ClassFeatureSet classFeatureSet) {
+            for (Iterator<String> i = classFeatureSet.featureIterator(); i.hasNext();) {
+                String feature = i.next();
+                int[] count = frequency.get(feature);
+                if (count == null) {
+                    count = new int[1];
+                    frequency.put(feature, count);
+                }
+                count[0]++;
+            }
+        }
+
+        @Override
+        public int compare(String a, String b) {
+            int fa = frequency.get(a)[0];
+            int fb = frequency.get(b)[0];
+            if (fa != fb) {
+                return fa < fb ? -1 : 1;
+            }
+            return a.compareTo(b);
+        }
+    }
 
     public SimilarClassFinder() {
-        this.similarClassSetList = new LinkedList<SimilarClassSet>();
+        this.classFeatureSetList = new ArrayList<ClassFeatureSet>();
     }
 
     public void add(ClassFeatureSet classFeatureSet) {
-        for (SimilarClassSet similarClassSet : similarClassSetList) {
-            if (similarClassSet.shouldContain(classFeatureSet)) {
-                similarClassSet.addMember(classFeatureSet);
-                return;
+        classFeatureSetList.add(classFeatureSet);
+        similarClassSetList = null;
+    }
+
+    private List<SimilarClassSet> getSimilarClassSets() {
+        if (similarClassSetList == null) {
+            FeatureOrder featureOrder = new FeatureOrder();
+            for (ClassFeatureSet classFeatureSet : classFeatureSetList) {
+                if (hasEnoughFeatures(classFeatureSet)) {
+                    featureOrder.count(classFeatureSet);
+                }
+            }
+
+            similarClassSetList = new ArrayList<SimilarClassSet>();
+            classNameIndex = new HashMap<String, List<Member>>();
+            prefixIndex = new HashMap<String, List<Member>>();
+            for (ClassFeatureSet classFeatureSet : classFeatureSetList) {
+                group(classFeatureSet, featureOrder);
+            }
+            classNameIndex = null;
+            prefixIndex = null;
+        }
+        return similarClassSetList;
+    }
+
+    private void group(ClassFeatureSet classFeatureSet, FeatureOrder featureOrder) {
+        List<String> prefix = hasEnoughFeatures(classFeatureSet) ? getPrefix(classFeatureSet, featureOrder) : Collections
+                .<String> emptyList();
+
+        int setIndex = findSimilarClassSet(classFeatureSet, prefix);
+        if (setIndex < 0) {
+            setIndex = similarClassSetList.size();
+            similarClassSetList.add(new SimilarClassSet());
+        }
+        similarClassSetList.get(setIndex).addMember(classFeatureSet);
+
+        Member member = new Member(classFeatureSet, setIndex);
+        addToIndex(classNameIndex, classFeatureSet.getClassName(), member);
+        for (String feature : prefix) {
+            addToIndex(prefixIndex, feature, member);
+        }
+    }
+
+    /**
+     * Find the first set with a member similar to the given class.
+     *
+     * @return the position of the set, or -1 if no set has a similar member
+     */
+    private int findSimilarClassSet(ClassFeatureSet classFeatureSet, List<String> prefix) {
+        Set<ClassFeatureSet> checked = Collections.newSetFromMap(new IdentityHashMap<ClassFeatureSet, Boolean>());
+        int result = findSimilarClassSet(classFeatureSet, classNameIndex.get(classFeatureSet.getClassName()), checked,
+                Integer.MAX_VALUE);
+        for (String feature : prefix) {
+            result = findSimilarClassSet(classFeatureSet, prefixIndex.get(feature), checked, result);
+        }
+        return result == Integer.MAX_VALUE ? -1 : result;
+    }
+
+    private static int findSimilarClassSet(ClassFeatureSet classFeatureSet, List<Member> candidates,
+            Set<ClassFeatureSet> checked, int result) {
+        if (candidates == null) {
+            return result;
+        }
+        for (Member member : candidates) {
+            if (member.setIndex < result && checked.add(member.classFeatureSet)
+                    && classFeatureSet.similarTo(member.classFeatureSet)) {
+                result = member.setIndex;
             }
         }
+        return result;
+    }
+
+    private static void addToIndex(Map<String, List<Member>> index, String key, Member member) {
+        List<Member> members = index.get(key);
+        if (members == null) {
+            members = new ArrayList<Member>(1);
+            index.put(key, members);
+        }
+        members.add(member);
+    }
+
+    private static boolean hasEnoughFeatures(ClassFeatureSet classFeatureSet) {
+        return classFeatureSet.getNumFeatures() >= ClassFeatureSet.MIN_FEATURES;
+    }
 
-        SimilarClassSet newSimilarClassSet = new SimilarClassSet();
-        newSimilarClassSet.addMember(classFeatureSet);
-        similarClassSetList.add(newSimilarClassSet);
+    /**
+     * Get the features of a class, at least one of which is a feature of any
+     * similar class with enough features.
+     */
+    private static List<String> getPrefix(ClassFeatureSet classFeatureSet, FeatureOrder featureOrder) {
+        int numFeatures = classFeatureSet.getNumFeatures();
+        String[] features = new String[numFeatures];
+        int n = 0;
+        for (Iterator<String> i = classFeatureSet.featureIterator(); i.hasNext();) {
+            features[n++] = i.next();
+        }
+        Arrays.sort(features, featureOrder);
+        return Arrays.asList(features).subList(0, numFeatures - getMinMatchingFeatures(numFeatures) + 1);
+    }
+
+    /**
+     * Get the minimum number of features a class with the given number of
+     * features must share with a class to be similar to it. The similarity of
+     * two classes is the number of features they share, divided by the number
+     * of features of the larger one, so it is at most that number divided by
+     * the given number.
+     */
+    static int getMinMatchingFeatures(int numFeatures) {
+        int minMatch = (int) Math.ceil(ClassFeatureSet.MIN_MATCH * numFeatures);
+        // Use the same arithmetic as ClassFeatureSet.similarity
+        while (minMatch > 1 && (double) (minMatch - 1) / (double) numFeatures >= ClassFeatureSet.MIN_MATCH) {
+            minMatch--;
+        }
+        while (minMatch < numFeatures && (double) minMatch / (double) numFeatures < ClassFeatureSet.MIN_MATCH) {
+            minMatch++;
+        }
+        return Math.max(minMatch, 1);
     }
 
     public int size() {
-        return similarClassSetList.size();
+        return getSimilarClassSets().size();
     }
 
     public Iterator<SimilarClassSet> similarClassSetIterator() {
-        return similarClassSetList.iterator();
+        return getSimilarClassSets().iterator();
     }
 }
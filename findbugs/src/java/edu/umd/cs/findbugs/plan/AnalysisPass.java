@@ -29,6 +29,7 @@ import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.Detector;
 import edu.umd.cs.findbugs.Detector2;
 import edu.umd.cs.findbugs.DetectorFactory;
+import edu.umd.cs.findbugs.visitclass.DismantleBytecode;
 
 /**
  * An analysis pass in the overall ExecutionPlan. This is a list of Detectors to
@@ -117,6 +118,23 @@ public class AnalysisPass {
         return memberSet.contains(factory);
     }
 
+    /**
+     * Get the number of detectors in the pass that walk the bytecode of the
+     * analyzed methods with a DismantleBytecode visitor. If there are several,
+     * they can share the decoded instructions of each method.
+     *
+     * @return number of bytecode scanning detectors in the pass
+     */
+    public int getNumBytecodeScanningDetectors() {
+        int count = 0;
+        for (DetectorFactory factory : orderedFactoryList) {
+            if (factory.isDetectorClassSubtypeOf(DismantleBytecode.class)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Instantiate all of the Detector2s in this pass and return them in a
      * (correctly-ordered) array.
@@ -0,0 +1,470 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache made of several independently locked stripes, so that
+ * threads using different keys rarely contend.
+ * <p>
+ * A cache can be bounded in two ways. An entry-count bound keeps each stripe
+ * within its share of the capacity using a LRU policy (see {@link MapCache});
+ * the eviction order is therefore only approximately LRU across the whole
+ * cache. A cache can also weigh its entries and join a {@link Budget} shared
+ * with other caches: whenever the total weight exceeds the budget, the
+ * heaviest cache evicts its least recently used entries, comparing the
+ * oldest entry of each stripe.
+ * <p>
+ * The cache counts hits, misses and evictions.
+ *
+ * @see MapCache
+ */
+public class StripedMapCache<K, V> {
+
+    /**
+     * Estimates the memory retained by a cache entry.
+     */
+    public interface Weigher<K, V> {
+        /**
+         * @return the approximate number of bytes retained by the entry
+         */
+        long weigh(K key, V value);
+    }
+
+    /**
+     * A memory budget shared by several caches.
+     */
+    public static class Budget {
+        private final long maxWeight;
+
+        private final AtomicLong weight = new AtomicLong();
+
+        private final List<StripedMapCache<?, ?>> caches = new CopyOnWriteArrayList<StripedMapCache<?, ?>>();
+
+        /**
+         * @param maxWeight
+         *            maximum total weight (in bytes) of the entries in the
+         *            caches using the budget
+         */
+        public Budget(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+
+        public long getWeight() {
+            return weight.get();
+        }
+
+        void add(long delta) {
+            if (weight.addAndGet(delta) > maxWeight && delta > 0) {
+                evict();
+            }
+        }
+
+        private synchronized void evict() {
+            while (weight.get() > maxWeight) {
+                StripedMapCache<?, ?> heaviest = null;
+                for (StripedMapCache<?, ?> cache : caches) {
+                    if (heaviest == null || cache.getWeight() > heaviest.getWeight()) {
+                        heaviest = cache;
+                    }
+                }
+                if (heaviest == null || !heaviest.evictOne()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final int MAX_STRIPES = 16;
+
+    /** Keep at least this many entries per stripe of a bounded cache */
+    private static final int MIN_ENTRIES_PER_STRIPE = 64;
+
+    private static final class Weighted<V> {
+        final V value;
+
+        final long weight;
+
+        /** Time of last use, guarded by the stripe lock */
+        long lastUse;
+
+        Weighted(V value, long weight, long lastUse) {
+            this.value = value;
+            this.weight = weight;
+            this.lastUse = lastUse;
+        }
+    }
+
+    /**
+     * Access-ordered map of a stripe. Guarded by itself.
+     */
+    private final class Stripe extends LinkedHashMap<K, Weighted<V>> {
+        private static final long serialVersionUID = 0L;
+
+        private final int maxEntries;
+
+        /** Weight of the entries evicted by the last put */
+        long evictedWeight;
+
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Weighted<V>> eldest) {
+            if (maxEntries > 0 && size() > maxEntries) {
+                removed(eldest.getValue(), true);
+                evictedWeight += eldest.getValue().weight;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final List<Stripe> stripes;
+
+    private final Weigher<? super K, ? super V> weigher;
+
+    private final Budget budget;
+
+    private final AtomicLong weight = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Logical clock ordering the uses of entries */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Create an unbounded cache.
+     */
+    public StripedMapCache() {
+        this(0);
+    }
+
+    /**
+     * Create a cache bounded by entry count.
+     *
+     * @param maxCapacity
+     *            maximum number of entries in the cache, or 0 if the cache
+     *            is unbounded
+     */
+    public StripedMapCache(int maxCapacity) {
+        this(maxCapacity, null, null);
+    }
+
+    /**
+     * Create a cache whose entries are weighed and evicted according to a
+     * shared memory budget.
+     *
+     * @param maxCapacity
+     *            maximum number of entries in the cache, or 0 if only the
+     *            budget bounds the cache
+     * @param weigher
+     *            estimates the weight of the entries
+     * @param budget
+     *            the memory budget, or null if the cache is not evicted
+     *            because of its weight
+     */
+    public StripedMapCache(int maxCapacity, Weigher<? super K, ? super V> weigher, Budget budget) {
+        this.weigher = weigher;
+        this.budget = budget;
+        int numStripes = MAX_STRIPES;
+        if (maxCapacity > 0) {
+            numStripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, maxCapacity / MIN_ENTRIES_PER_STRIPE)));
+        }
+        stripes = new ArrayList<Stripe>(numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            stripes.add(new Stripe(maxCapacity > 0 ? (maxCapacity + numStripes - 1) / numStripes : 0));
+        }
+        if (budget != null) {
+            budget.caches.add(this);
+        }
+    }
+
+    private Stripe stripe(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes.get(h & (stripes.size() - 1));
+    }
+
+    /**
+     * Account for an entry leaving the cache. Called with the stripe lock
+     * held, so the budget is only updated after the lock is released.
+     */
+    private void removed(Weighted<V> entry, boolean evicted) {
+        weight.addAndGet(-entry.weight);
+        if (evicted) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void changeBudget(long delta) {
+        if (budget != null && delta != 0) {
+            budget.add(delta);
+        }
+    }
+
+    private long weigh(K key, V value) {
+        return weigher == null ? 0 : weigher.weigh(key, value);
+    }
+
+    /**
+     * Get the value for a key, counting a hit or a miss.
+     */
+    public V get(K key) {
+        V value = peek(key);
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Get the value for a key, without counting a hit or a miss.
+     */
+    public V peek(K key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Weighted<V> entry = stripe.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastUse = clock.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        Weighted<V> entry = new Weighted<V>(value, weigh(key, value), clock.incrementAndGet());
+        Stripe stripe = stripe(key);
+        long delta = entry.weight;
+        synchronized (stripe) {
+            stripe.evictedWeight = 0;
+            weight.addAndGet(entry.weight);
+            Weighted<V> old = stripe.put(key, entry);
+            if (old != null) {
+                removed(old, false);
+                delta -= old.weight;
+            }
+            delta -= stripe.evictedWeight;
+        }
+        changeBudget(delta);
+    }
+
+    /**
+     * Store a value unless the key already has one.
+     *
+     * @return the value now associated with the key: either the existing one
+     *         or the given one
+     */
+    public V putIfAbsent(K key, V value) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Weighted<V> existing = stripe.get(key);
+            if (existing != null) {
+                return existing.value;
+            }
+        }
+        // Weigh outside the lock: the weigher may consult other caches
+        Weighted<V> entry = new Weighted<V>(value, weigh(key, value), clock.incrementAndGet());
+        long delta = entry.weight;
+        synchronized (stripe) {
+            Weighted<V> existing = stripe.get(key);
+            if (existing != null) {
+                return existing.value;
+            }
+            stripe.evictedWeight = 0;
+            weight.addAndGet(entry.weight);
+            stripe.put(key, entry);
+            delta -= stripe.evictedWeight;
+        }
+        changeBudget(delta);
+        return value;
+    }
+
+    public V remove(K key) {
+        Stripe stripe = stripe(key);
+        Weighted<V> old;
+        synchronized (stripe) {
+            old = stripe.remove(key);
+            if (old != null) {
+                removed(old, false);
+            }
+        }
+        if (old == null) {
+            return null;
+        }
+        changeBudget(-old.weight);
+        return old.value;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Evict the least recently used entry. Each stripe is in LRU order, so
+     * only the oldest entry of each stripe needs to be compared.
+     *
+     * @return false if the cache is empty
+     */
+    boolean evictOne() {
+        while (true) {
+            Stripe oldestStripe = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    if (!stripe.isEmpty()) {
+                        long lastUse = stripe.values().iterator().next().lastUse;
+                        if (lastUse < oldestUse) {
+                            oldestUse = lastUse;
+                            oldestStripe = stripe;
+                        }
+                    }
+                }
+            }
+            if (oldestStripe == null) {
+                return false;
+            }
+            Weighted<V> eldest = null;
+            synchronized (oldestStripe) {
+                Iterator<Weighted<V>> iterator = oldestStripe.values().iterator();
+                // Unless the stripe was used in the meantime
+                if (iterator.hasNext()) {
+                    Weighted<V> candidate = iterator.next();
+                    if (candidate.lastUse == oldestUse) {
+                        eldest = candidate;
+                        iterator.remove();
+                        removed(eldest, true);
+                    }
+                }
+            }
+            if (eldest != null) {
+                // Called by the budget, which updates its own total
+                budget.weight.addAndGet(-eldest.weight);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the values currently in the cache
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<V>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Weighted<V> entry : stripe.values()) {
+                    result.add(entry.value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the entries currently in the cache
+     */
+    public Map<K, V> toMap() {
+        Map<K, V> result = new HashMap<K, V>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<K, Weighted<V>> e : stripe.entrySet()) {
+                    result.put(e.getKey(), e.getValue().value);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the total weight of the entries in the cache
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public void clear() {
+        long delta = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Weighted<V> entry : stripe.values()) {
+                    removed(entry, false);
+                    delta -= entry.weight;
+                }
+                stripe.clear();
+            }
+        }
+        changeBudget(delta);
+    }
+
+    /**
+     * Clear the cache and stop using its budget.
+     */
+    public void dispose() {
+        clear();
+        if (budget != null) {
+            budget.caches.remove(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * CPU time and allocated memory of the current thread, as measured by the
+ * ThreadMXBean of the VM, if it supports it.
+ */
+public class ThreadResourceUsage {
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+
+    private static final @CheckForNull com.sun.management.ThreadMXBean allocationBean = getAllocationBean();
+
+    private ThreadResourceUsage() {
+    }
+
+    private static @CheckForNull com.sun.management.ThreadMXBean getAllocationBean() {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return bean;
+    }
+
+    public static boolean isCpuTimeSupported() {
+        return cpuTimeSupported;
+    }
+
+    public static boolean isAllocatedBytesSupported() {
+        return allocationBean != null;
+    }
+
+    /**
+     * @return CPU time used by the current thread in nanoseconds, or 0 if not
+     *         supported
+     */
+    public static long getCpuTime() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * @return number of bytes allocated by the current thread, or 0 if not
+     *         supported
+     */
+    public static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean bean = allocationBean;
+        return bean != null ? bean.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+}
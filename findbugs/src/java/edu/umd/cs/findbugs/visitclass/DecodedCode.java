@@ -0,0 +1,140 @@
+/*
+ * FindBugs - Find bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.visitclass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.JavaClass;
+
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.FieldDescriptor;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+/**
+ * The instructions of a method, decoded once by {@link DismantleBytecode} and
+ * replayed to every detector of an analysis pass that walks the method. The
+ * operands resolved lazily by one detector (such as the XMethod of an
+ * invocation) are kept with the instruction, so the other detectors don't
+ * resolve them again.
+ *
+ * @see edu.umd.cs.findbugs.ba.AnalysisFeatures#SHARE_DECODED_BYTECODE
+ */
+public class DecodedCode {
+
+    /**
+     * The state of DismantleBytecode after decoding an instruction.
+     */
+    static class Instruction {
+        int opcode;
+
+        boolean opcodeIsWide;
+
+        int pc, nextPC;
+
+        int branchOffset, branchTarget, branchFallThrough, defaultSwitchOffset;
+
+        int[] switchOffsets, switchLabels;
+
+        int switchLow, switchHigh;
+
+        String classConstantOperand, nameConstantOperand, sigConstantOperand, stringConstantOperand, refConstantOperand;
+
+        ClassDescriptor referencedClass;
+
+        boolean refFieldIsStatic;
+
+        Constant constantRefOperand;
+
+        int intConstant;
+
+        long longConstant;
+
+        float floatConstant;
+
+        double doubleConstant;
+
+        int registerOperand;
+
+        boolean isRegisterLoad, isRegisterStore;
+
+        // Resolved on demand
+
+        String dottedClassConstantOperand;
+
+        XClass referencedXClass;
+
+        MethodDescriptor referencedMethod;
+
+        XMethod referencedXMethod;
+
+        FieldDescriptor referencedField;
+
+        XField referencedXField;
+    }
+
+    final Code code;
+
+    final Instruction[] instructions;
+
+    private DecodedCode(Code code, Instruction[] instructions) {
+        this.code = code;
+        this.instructions = instructions;
+    }
+
+    /**
+     * @return the number of instructions of the code
+     */
+    public int getNumInstructions() {
+        return instructions.length;
+    }
+
+    /**
+     * Decode the instructions of a method.
+     *
+     * @param jclass
+     *            the class of the method
+     * @param code
+     *            the code of the method
+     * @return the decoded instructions; they will only be replayed to visitors
+     *         of the same Code object
+     */
+    public static DecodedCode decode(JavaClass jclass, Code code) {
+        Decoder decoder = new Decoder();
+        decoder.setupVisitorForClass(jclass);
+        decoder.decode(code);
+        return new DecodedCode(code, decoder.instructions.toArray(new Instruction[decoder.instructions.size()]));
+    }
+
+    private static class Decoder extends DismantleBytecode {
+        final List<Instruction> instructions = new ArrayList<Instruction>();
+
+        @Override
+        public boolean beforeOpcode(int seen) {
+            instructions.add(saveInstruction());
+            return false;
+        }
+    }
+}
@@ -44,7 +44,9 @@ import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.LineNumberTable;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.AnalysisFeatures;
 import edu.umd.cs.findbugs.ba.Hierarchy2;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XField;
@@ -84,6 +86,8 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
 
     private int defaultSwitchOffset;
 
+    private int switchLow, switchHigh;
+
     private @SlashedClassName
     String classConstantOperand;
 
@@ -127,6 +131,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
 
     private boolean isRegisterStore;
 
+    /** The instruction being replayed, if the decoded code is shared */
+    private DecodedCode.Instruction currentInstruction;
+
     private static final int INVALID_OFFSET = Integer.MIN_VALUE;
 
     private static final String NOT_AVAILABLE = SlashedClassName.NOT_AVAILABLE;
@@ -219,6 +226,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         if (referencedMethod == null) {
             referencedMethod = DescriptorFactory.instance().getMethodDescriptor(classConstantOperand, nameConstantOperand,
                     sigConstantOperand, opcode == INVOKESTATIC);
+            if (currentInstruction != null) {
+                currentInstruction.referencedMethod = referencedMethod;
+            }
         }
         return referencedMethod;
     }
@@ -233,6 +243,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         if (getReferencedXClass() != null && referencedXMethod == null) {
             referencedXMethod = Hierarchy2.findInvocationLeastUpperBound(getReferencedXClass(), nameConstantOperand,
                     sigConstantOperand, opcode == INVOKESTATIC, opcode == INVOKEINTERFACE);
+            if (currentInstruction != null) {
+                currentInstruction.referencedXMethod = referencedXMethod;
+            }
         }
 
         return referencedXMethod;
@@ -247,6 +260,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         if (referencedField == null) {
             referencedField = DescriptorFactory.instance().getFieldDescriptor(classConstantOperand, nameConstantOperand,
                     sigConstantOperand, opcode == GETSTATIC || opcode == PUTSTATIC);
+            if (currentInstruction != null) {
+                currentInstruction.referencedField = referencedField;
+            }
         }
         return referencedField;
     }
@@ -256,6 +272,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         if (getReferencedXClass() != null && referencedXField == null) {
             referencedXField = getReferencedXClass().findField(nameConstantOperand, sigConstantOperand,
                     opcode == GETSTATIC || opcode == PUTSTATIC);
+            if (currentInstruction != null) {
+                currentInstruction.referencedXField = referencedXField;
+            }
         }
 
         return referencedXField;
@@ -275,6 +294,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
             throw new IllegalStateException("getDottedClassConstantOperand called but value not available");
         }
         dottedClassConstantOperand = ClassName.toDottedClassName(classConstantOperand);
+        if (currentInstruction != null) {
+            currentInstruction.dottedClassConstantOperand = dottedClassConstantOperand;
+        }
         return dottedClassConstantOperand;
     }
 
@@ -537,11 +559,135 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         //            AnalysisContext.currentAnalysisContext().analysisSkippedDueToInvokeDynamic(getXMethod());
         //            return;
         //        }
+        DecodedCode decoded = getSharedDecodedCode(obj);
+        if (decoded != null) {
+            replay(obj, decoded);
+        } else {
+            decode(obj);
+        }
+    }
+
+    /**
+     * Get the instructions of the code decoded for all the detectors of the
+     * analysis pass, if the pass shares them.
+     */
+    private @CheckForNull
+    DecodedCode getSharedDecodedCode(Code obj) {
+        AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+        MethodDescriptor descriptor = getMethodDescriptor();
+        if (analysisContext == null || descriptor == null
+                || !analysisContext.getBoolProperty(AnalysisFeatures.SHARE_DECODED_BYTECODE)) {
+            return null;
+        }
+        try {
+            DecodedCode decoded = Global.getAnalysisCache().getMethodAnalysis(DecodedCode.class, descriptor);
+            // Detectors may visit code of their own making
+            if (decoded != null && decoded.code == obj) {
+                return decoded;
+            }
+        } catch (CheckedAnalysisException e) {
+            AnalysisContext.logError("Error getting decoded bytecode of " + descriptor, e);
+        }
+        return null;
+    }
+
+    private void replay(Code obj, DecodedCode decoded) {
         sizePrevOpcodeBuffer = 0;
         currentPosInPrevOpcodeBuffer = prevOpcode.length - 1;
+        codeBytes = obj.getCode();
+        lineNumberTable = obj.getLineNumberTable();
+        try {
+            for (DecodedCode.Instruction instruction : decoded.instructions) {
+                restoreInstruction(instruction);
+                dispatchOpcode();
+            }
+        } finally {
+            currentInstruction = null;
+        }
+    }
+
+    DecodedCode.Instruction saveInstruction() {
+        DecodedCode.Instruction instruction = new DecodedCode.Instruction();
+        instruction.opcode = opcode;
+        instruction.opcodeIsWide = opcodeIsWide;
+        instruction.pc = PC;
+        instruction.nextPC = nextPC;
+        instruction.branchOffset = branchOffset;
+        instruction.branchTarget = branchTarget;
+        instruction.branchFallThrough = branchFallThrough;
+        instruction.defaultSwitchOffset = defaultSwitchOffset;
+        instruction.switchOffsets = switchOffsets;
+        instruction.switchLabels = switchLabels;
+        instruction.switchLow = switchLow;
+        instruction.switchHigh = switchHigh;
+        instruction.classConstantOperand = classConstantOperand;
+        instruction.nameConstantOperand = nameConstantOperand;
+        instruction.sigConstantOperand = sigConstantOperand;
+        instruction.stringConstantOperand = stringConstantOperand;
+        instruction.refConstantOperand = refConstantOperand;
+        instruction.referencedClass = referencedClass;
+        instruction.refFieldIsStatic = refFieldIsStatic;
+        instruction.constantRefOperand = constantRefOperand;
+        instruction.intConstant = intConstant;
+        instruction.longConstant = longConstant;
+        instruction.floatConstant = floatConstant;
+        instruction.doubleConstant = doubleConstant;
+        instruction.registerOperand = registerOperand;
+        instruction.isRegisterLoad = isRegisterLoad;
+        instruction.isRegisterStore = isRegisterStore;
+        return instruction;
+    }
+
+    private void restoreInstruction(DecodedCode.Instruction instruction) {
+        currentInstruction = instruction;
+        opcode = instruction.opcode;
+        opcodeIsWide = instruction.opcodeIsWide;
+        PC = instruction.pc;
+        nextPC = instruction.nextPC;
+        branchOffset = instruction.branchOffset;
+        branchTarget = instruction.branchTarget;
+        branchFallThrough = instruction.branchFallThrough;
+        defaultSwitchOffset = instruction.defaultSwitchOffset;
+        switchOffsets = instruction.switchOffsets;
+        switchLabels = instruction.switchLabels;
+        switchLow = instruction.switchLow;
+        switchHigh = instruction.switchHigh;
+        classConstantOperand = instruction.classConstantOperand;
+        nameConstantOperand = instruction.nameConstantOperand;
+        sigConstantOperand = instruction.sigConstantOperand;
+        stringConstantOperand = instruction.stringConstantOperand;
+        refConstantOperand = instruction.refConstantOperand;
+        referencedClass = instruction.referencedClass;
+        refFieldIsStatic = instruction.refFieldIsStatic;
+        constantRefOperand = instruction.constantRefOperand;
+        intConstant = instruction.intConstant;
+        longConstant = instruction.longConstant;
+        floatConstant = instruction.floatConstant;
+        doubleConstant = instruction.doubleConstant;
+        registerOperand = instruction.registerOperand;
+        isRegisterLoad = instruction.isRegisterLoad;
+        isRegisterStore = instruction.isRegisterStore;
+        dottedClassConstantOperand = instruction.dottedClassConstantOperand;
+        referencedXClass = instruction.referencedXClass;
+        referencedMethod = instruction.referencedMethod;
+        referencedXMethod = instruction.referencedXMethod;
+        referencedField = instruction.referencedField;
+        referencedXField = instruction.referencedXField;
+
+        sizePrevOpcodeBuffer++;
+        currentPosInPrevOpcodeBuffer++;
+        if (currentPosInPrevOpcodeBuffer >= prevOpcode.length) {
+            currentPosInPrevOpcodeBuffer = 0;
+        }
+        prevOpcode[currentPosInPrevOpcodeBuffer] = opcode;
+    }
 
-        int switchLow = 1000000;
-        int switchHigh = -1000000;
+    void decode(Code obj) {
+        sizePrevOpcodeBuffer = 0;
+        currentPosInPrevOpcodeBuffer = prevOpcode.length - 1;
+
+        switchLow = 1000000;
+        switchHigh = -1000000;
         codeBytes = obj.getCode();
         DataInputStream byteStream = new DataInputStream(new ByteArrayInputStream(codeBytes));
 
@@ -879,68 +1025,7 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
                 }
 
                 nextPC = i;
-                if (beforeOpcode(opcode)) {
-                    sawOpcode(opcode);
-                }
-                afterOpcode(opcode);
-
-                if (opcode == TABLESWITCH) {
-                    sawInt(switchLow);
-                    sawInt(switchHigh);
-                    //                    int prevOffset = i - PC;
-                    for (int o = 0; o <= switchHigh - switchLow; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        //                        prevOffset = switchOffsets[o];
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else if (opcode == LOOKUPSWITCH) {
-                    sawInt(switchOffsets.length);
-                    //                    int prevOffset = i - PC;
-                    for (int o = 0; o < switchOffsets.length; o++) {
-                        sawBranchTo(switchOffsets[o] + PC);
-                        //                        prevOffset = switchOffsets[o];
-                        sawInt(switchLabels[o]);
-                    }
-                    sawBranchTo(defaultSwitchOffset + PC);
-                } else {
-                    for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
-                        int m = MEANING_OF_OPERANDS[opcode][k];
-                        switch (m) {
-                        case M_BR:
-                            sawBranchTo(branchOffset + PC);
-                            break;
-                        case M_CP:
-                            if (constantRefOperand instanceof ConstantInteger) {
-                                sawInt(intConstant);
-                            } else if (constantRefOperand instanceof ConstantLong) {
-                                sawLong(longConstant);
-                            } else if (constantRefOperand instanceof ConstantFloat) {
-                                sawFloat(floatConstant);
-                            } else if (constantRefOperand instanceof ConstantDouble) {
-                                sawDouble(doubleConstant);
-                            } else if (constantRefOperand instanceof ConstantString) {
-                                sawString(stringConstantOperand);
-                            } else if (constantRefOperand instanceof ConstantFieldref) {
-                                sawField();
-                            } else if (constantRefOperand instanceof ConstantMethodref) {
-                                sawMethod();
-                            } else if (constantRefOperand instanceof ConstantInterfaceMethodref) {
-                                sawIMethod();
-                            } else if (constantRefOperand instanceof ConstantClass) {
-                                sawClass();
-                            }
-                            break;
-                        case M_R:
-                            sawRegister(registerOperand);
-                            break;
-                        case M_INT:
-                            sawInt(intConstant);
-                            break;
-                        default:
-                            break;
-                        }
-                    }
-                }
+                dispatchOpcode();
             }
         } catch (IOException e) {
             AnalysisContext.logError("Error while dismantling bytecode", e);
@@ -954,6 +1039,72 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         }
     }
 
+    private void dispatchOpcode() {
+        AnalysisBudget.checkpoint();
+        if (beforeOpcode(opcode)) {
+            sawOpcode(opcode);
+        }
+        afterOpcode(opcode);
+
+        if (opcode == TABLESWITCH) {
+            sawInt(switchLow);
+            sawInt(switchHigh);
+            //                    int prevOffset = i - PC;
+            for (int o = 0; o <= switchHigh - switchLow; o++) {
+                sawBranchTo(switchOffsets[o] + PC);
+                //                        prevOffset = switchOffsets[o];
+            }
+            sawBranchTo(defaultSwitchOffset + PC);
+        } else if (opcode == LOOKUPSWITCH) {
+            sawInt(switchOffsets.length);
+            //                    int prevOffset = i - PC;
+            for (int o = 0; o < switchOffsets.length; o++) {
+                sawBranchTo(switchOffsets[o] + PC);
+                //                        prevOffset = switchOffsets[o];
+                sawInt(switchLabels[o]);
+            }
+            sawBranchTo(defaultSwitchOffset + PC);
+        } else {
+            for (int k = 0; k < TYPE_OF_OPERANDS[opcode].length; k++) {
+                int m = MEANING_OF_OPERANDS[opcode][k];
+                switch (m) {
+                case M_BR:
+                    sawBranchTo(branchOffset + PC);
+                    break;
+                case M_CP:
+                    if (constantRefOperand instanceof ConstantInteger) {
+                        sawInt(intConstant);
+                    } else if (constantRefOperand instanceof ConstantLong) {
+                        sawLong(longConstant);
+                    } else if (constantRefOperand instanceof ConstantFloat) {
+                        sawFloat(floatConstant);
+                    } else if (constantRefOperand instanceof ConstantDouble) {
+                        sawDouble(doubleConstant);
+                    } else if (constantRefOperand instanceof ConstantString) {
+                        sawString(stringConstantOperand);
+                    } else if (constantRefOperand instanceof ConstantFieldref) {
+                        sawField();
+                    } else if (constantRefOperand instanceof ConstantMethodref) {
+                        sawMethod();
+                    } else if (constantRefOperand instanceof ConstantInterfaceMethodref) {
+                        sawIMethod();
+                    } else if (constantRefOperand instanceof ConstantClass) {
+                        sawClass();
+                    }
+                    break;
+                case M_R:
+                    sawRegister(registerOperand);
+                    break;
+                case M_INT:
+                    sawInt(intConstant);
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+    }
+
     public void sawDouble(double seen) {
     }
 
@@ -1166,6 +1317,9 @@ abstract public class DismantleBytecode extends AnnotationVisitor {
         if (referencedXClass == null && referencedClass != null) {
             try {
                 referencedXClass = Global.getAnalysisCache().getClassAnalysis(XClass.class, referencedClass);
+                if (currentInstruction != null) {
+                    currentInstruction.referencedXClass = referencedXClass;
+                }
             } catch (CheckedAnalysisException e) {
                 assert true;
             }
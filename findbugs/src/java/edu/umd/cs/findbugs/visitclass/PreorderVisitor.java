@@ -54,6 +54,8 @@ import org.apache.bcel.classfile.StackMapTable;
 import org.apache.bcel.classfile.StackMapTableEntry;
 
 import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.ba.AnalysisBudget;
+import edu.umd.cs.findbugs.ba.AnalysisBudgetExceededException;
 import edu.umd.cs.findbugs.ba.AnalysisContext;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.ba.XClass;
@@ -301,10 +303,18 @@ public class PreorderVisitor extends BetterVisitor implements Constants2 {
             methodName = methodSig = dottedMethodSig = fullyQualifiedMethodName = null;
             thisMethodInfo = (MethodInfo) thisClassInfo.findMethod(getMethodName(), getMethodSig(), method.isStatic());
             assert thisMethodInfo != null : "Can't get method info for " + getFullyQualifiedMethodName();
-            this.method.accept(this);
-            Attribute[] attributes = method.getAttributes();
-            for (Attribute attribute : attributes) {
-                attribute.accept(this);
+            boolean budgeted = AnalysisBudget.startMethod(this, thisMethodInfo);
+            try {
+                this.method.accept(this);
+                Attribute[] attributes = method.getAttributes();
+                for (Attribute attribute : attributes) {
+                    attribute.accept(this);
+                }
+            } catch (AnalysisBudgetExceededException e) {
+                // Already reported: go on with the next method
+                if (!budgeted) {
+                    throw e;
+                }
             }
         } finally {
             visitingMethod = false;
@@ -0,0 +1,515 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillClose;
+
+import org.dom4j.DocumentException;
+
+import edu.umd.cs.findbugs.AppVersion;
+import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugCollectionStreamReader;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugRanker;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.PackageStats;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * The history of the warnings of a bug collection, stored by column: for
+ * each warning, its bug pattern, rank, priority, package, first and last
+ * version and designation, with the versions and package sizes of the
+ * collection. The history mining tools ({@link MineBugHistory},
+ * {@link Churn}, {@link CountByPackagePrefix}) only need these columns, so
+ * they read them from a history file, written next to the bug collection,
+ * instead of the bug collection itself when the history file is up to date.
+ * <p>
+ * A history file is written by {@link Update} with -historyColumns, or by
+ * running this class on a bug collection.
+ */
+public class BugHistoryColumns {
+
+    /** Suffix added to the name of the bug collection file */
+    public static final String EXTENSION = ".fbh";
+
+    /** "FBHC" */
+    static final int MAGIC = 0x46424843;
+
+    static final int VERSION = 1;
+
+    /** Flag of a warning introduced by a change of an existing class */
+    static final int INTRODUCED_BY_CHANGE = 1;
+
+    /** Flag of a warning removed by a change of a persisting class */
+    static final int REMOVED_BY_CHANGE = 2;
+
+    long sequenceNumber;
+
+    int numErrors;
+
+    /** The versions of the collection, the current one last */
+    final List<AppVersion> appVersions = new ArrayList<AppVersion>();
+
+    String[] types;
+
+    /** Category abbreviation of the bug pattern of each type */
+    String[] typeCategories;
+
+    String[] packages;
+
+    /**
+     * Code size of each package, or -1 if the collection has no statistics
+     * for the package
+     */
+    int[] packageSizes;
+
+    String[] designations;
+
+    int numBugs;
+
+    int[] type;
+
+    int[] rank;
+
+    int[] priority;
+
+    int[] packageName;
+
+    long[] firstVersion;
+
+    long[] lastVersion;
+
+    int[] flags;
+
+    int[] designation;
+
+    private BugHistoryColumns() {
+    }
+
+    public int getNumBugs() {
+        return numBugs;
+    }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public AppVersion getCurrentAppVersion() {
+        return appVersions.get(appVersions.size() - 1);
+    }
+
+    boolean isDead(int bug) {
+        return lastVersion[bug] != -1;
+    }
+
+    /**
+     * Collects the columns of the warnings of a bug collection, as they are
+     * read.
+     */
+    static class Builder {
+        private final Map<String, Integer> typeIndex = new HashMap<String, Integer>();
+
+        private final List<String> typeCategories = new ArrayList<String>();
+
+        private final Map<String, Integer> packageIndex = new HashMap<String, Integer>();
+
+        private final Map<String, Integer> designationIndex = new HashMap<String, Integer>();
+
+        /** Rank of each type, by priority, for warnings of unknown detectors */
+        private final Map<String, int[]> ranks = new HashMap<String, int[]>();
+
+        private final BugHistoryColumns columns = new BugHistoryColumns();
+
+        Builder() {
+            columns.type = new int[16];
+            columns.rank = new int[16];
+            columns.priority = new int[16];
+            columns.packageName = new int[16];
+            columns.firstVersion = new long[16];
+            columns.lastVersion = new long[16];
+            columns.flags = new int[16];
+            columns.designation = new int[16];
+        }
+
+        void add(BugInstance bug) {
+            BugHistoryColumns c = columns;
+            int n = c.numBugs;
+            if (n == c.type.length) {
+                int length = 2 * n;
+                c.type = Arrays.copyOf(c.type, length);
+                c.rank = Arrays.copyOf(c.rank, length);
+                c.priority = Arrays.copyOf(c.priority, length);
+                c.packageName = Arrays.copyOf(c.packageName, length);
+                c.firstVersion = Arrays.copyOf(c.firstVersion, length);
+                c.lastVersion = Arrays.copyOf(c.lastVersion, length);
+                c.flags = Arrays.copyOf(c.flags, length);
+                c.designation = Arrays.copyOf(c.designation, length);
+            }
+            c.type[n] = index(typeIndex, bug.getType());
+            if (c.type[n] == typeCategories.size()) {
+                typeCategories.add(bug.getCategoryAbbrev());
+            }
+            c.rank[n] = getRank(bug);
+            c.priority[n] = bug.getPriority();
+            ClassAnnotation primaryClass = bug.getPrimaryClass();
+            c.packageName[n] = index(packageIndex, primaryClass != null ? primaryClass.getPackageName() : "");
+            c.firstVersion[n] = bug.getFirstVersion();
+            c.lastVersion[n] = bug.getLastVersion();
+            c.flags[n] = (bug.isIntroducedByChangeOfExistingClass() ? INTRODUCED_BY_CHANGE : 0)
+                    | (bug.isRemovedByChangeOfPersistingClass() ? REMOVED_BY_CHANGE : 0);
+            c.designation[n] = index(designationIndex, bug.getUserDesignationKey());
+            c.numBugs = n + 1;
+        }
+
+        private int getRank(BugInstance bug) {
+            int[] byPriority = ranks.get(bug.getType());
+            if (byPriority == null) {
+                byPriority = new int[6];
+                ranks.put(bug.getType(), byPriority);
+            }
+            int p = bug.getPriority();
+            if (p < 0 || p >= byPriority.length || bug.getDetectorFactory() != null) {
+                return BugRanker.findRank(bug);
+            }
+            if (byPriority[p] == 0) {
+                byPriority[p] = BugRanker.findRank(bug);
+            }
+            return byPriority[p];
+        }
+
+        private static int index(Map<String, Integer> index, String value) {
+            Integer result = index.get(value);
+            if (result == null) {
+                result = index.size();
+                index.put(value, result);
+            }
+            return result;
+        }
+
+        /**
+         * Add the versions and statistics of the bug collection the warnings
+         * were read from.
+         */
+        BugHistoryColumns build(BugCollection bugCollection) {
+            BugHistoryColumns c = columns;
+            c.sequenceNumber = bugCollection.getSequenceNumber();
+            if (bugCollection instanceof SortedBugCollection) {
+                c.numErrors = ((SortedBugCollection) bugCollection).getErrors().size();
+            }
+            for (Iterator<AppVersion> i = bugCollection.appVersionIterator(); i.hasNext();) {
+                c.appVersions.add(i.next());
+            }
+            c.appVersions.add(bugCollection.getCurrentAppVersion());
+
+            for (PackageStats ps : bugCollection.getProjectStats().getPackageStats()) {
+                index(packageIndex, ps.getPackageName());
+            }
+            c.types = toArray(typeIndex);
+            c.typeCategories = typeCategories.toArray(new String[typeCategories.size()]);
+            c.packages = toArray(packageIndex);
+            c.designations = toArray(designationIndex);
+            c.packageSizes = new int[c.packages.length];
+            Arrays.fill(c.packageSizes, -1);
+            for (PackageStats ps : bugCollection.getProjectStats().getPackageStats()) {
+                c.packageSizes[packageIndex.get(ps.getPackageName())] = ps.size();
+            }
+            return c;
+        }
+
+        private static String[] toArray(Map<String, Integer> index) {
+            String[] result = new String[index.size()];
+            for (Map.Entry<String, Integer> e : index.entrySet()) {
+                result[e.getValue()] = e.getKey();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Get the history of the warnings of a bug collection.
+     *
+     * @param bugCollection
+     *            the bug collection
+     * @return the history
+     */
+    public static BugHistoryColumns fromBugCollection(BugCollection bugCollection) {
+        Builder builder = new Builder();
+        for (BugInstance bug : bugCollection) {
+            builder.add(bug);
+        }
+        return builder.build(bugCollection);
+    }
+
+    /**
+     * Read a bug collection file, and get the history of its warnings.
+     *
+     * @param file
+     *            the bug collection file
+     * @return the history
+     * @throws IOException
+     * @throws DocumentException
+     */
+    public static BugHistoryColumns fromBugCollection(File file) throws IOException, DocumentException {
+        // The history of the collection is needed
+        BugCollectionStreamReader reader = BugCollectionStreamReader.open(file,
+                EnumSet.of(BugCollectionStreamReader.Skip.ANNOTATIONS, BugCollectionStreamReader.Skip.CLASS_FEATURES));
+        try {
+            Builder builder = new Builder();
+            while (reader.hasNext()) {
+                builder.add(reader.next());
+            }
+            reader.readToEnd();
+            return builder.build(reader.getBugCollection());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get the history file of a bug collection file.
+     *
+     * @param bugCollectionFile
+     *            the bug collection file
+     * @return the history file
+     */
+    public static File getHistoryFile(File bugCollectionFile) {
+        return new File(bugCollectionFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Write the history of a bug collection next to the bug collection file.
+     * The history is only used as long as the bug collection file is not
+     * modified, so it must be written after the bug collection.
+     *
+     * @param bugCollectionFile
+     *            the bug collection file
+     * @throws IOException
+     */
+    public void writeHistoryFile(File bugCollectionFile) throws IOException {
+        write(new FileOutputStream(getHistoryFile(bugCollectionFile)), bugCollectionFile.length(),
+                bugCollectionFile.lastModified());
+    }
+
+    /**
+     * Read the history file of a bug collection file.
+     *
+     * @param bugCollectionFile
+     *            the bug collection file
+     * @return the history, or null if there is no history file, or if the
+     *         bug collection file was modified since the history file was
+     *         written
+     * @throws IOException
+     *             if the history file can't be read
+     */
+    public static @CheckForNull
+    BugHistoryColumns readHistoryFile(File bugCollectionFile) throws IOException {
+        File historyFile = getHistoryFile(bugCollectionFile);
+        if (!historyFile.isFile() || !bugCollectionFile.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(IO.readAll(new FileInputStream(historyFile)));
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a bug history file: " + historyFile);
+            }
+            if (buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported bug history file version: " + historyFile);
+            }
+            if (buffer.getLong() != bugCollectionFile.length() || buffer.getLong() != bugCollectionFile.lastModified()) {
+                return null;
+            }
+            return read(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated bug history file: " + historyFile, e);
+        }
+    }
+
+    private void write(@WillClose OutputStream out, long sourceLength, long sourceLastModified) throws IOException {
+        try {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(sourceLength);
+            data.writeLong(sourceLastModified);
+
+            data.writeLong(sequenceNumber);
+            data.writeInt(numErrors);
+            data.writeInt(appVersions.size());
+            for (AppVersion appVersion : appVersions) {
+                data.writeLong(appVersion.getSequenceNumber());
+                data.writeLong(appVersion.getTimestamp());
+                writeString(data, appVersion.getReleaseName());
+                data.writeInt(appVersion.getNumClasses());
+                data.writeInt(appVersion.getCodeSize());
+            }
+            writeStrings(data, types);
+            writeStrings(data, typeCategories);
+            writeStrings(data, packages);
+            for (int size : packageSizes) {
+                data.writeInt(size);
+            }
+            writeStrings(data, designations);
+
+            data.writeInt(numBugs);
+            writeColumn(data, type);
+            writeColumn(data, rank);
+            writeColumn(data, priority);
+            writeColumn(data, packageName);
+            writeColumn(data, firstVersion);
+            writeColumn(data, lastVersion);
+            writeColumn(data, flags);
+            writeColumn(data, designation);
+            data.flush();
+        } finally {
+            IO.close(out);
+        }
+    }
+
+    private static BugHistoryColumns read(ByteBuffer buffer) {
+        BugHistoryColumns c = new BugHistoryColumns();
+        c.sequenceNumber = buffer.getLong();
+        c.numErrors = buffer.getInt();
+        int numAppVersions = buffer.getInt();
+        for (int i = 0; i < numAppVersions; i++) {
+            AppVersion appVersion = new AppVersion(buffer.getLong());
+            appVersion.setTimestamp(buffer.getLong());
+            appVersion.setReleaseName(readString(buffer));
+            appVersion.setNumClasses(buffer.getInt());
+            appVersion.setCodeSize(buffer.getInt());
+            c.appVersions.add(appVersion);
+        }
+        c.types = readStrings(buffer);
+        c.typeCategories = readStrings(buffer);
+        c.packages = readStrings(buffer);
+        c.packageSizes = new int[c.packages.length];
+        buffer.asIntBuffer().get(c.packageSizes);
+        buffer.position(buffer.position() + 4 * c.packageSizes.length);
+        c.designations = readStrings(buffer);
+
+        int n = c.numBugs = buffer.getInt();
+        c.type = readIntColumn(buffer, n);
+        c.rank = readIntColumn(buffer, n);
+        c.priority = readIntColumn(buffer, n);
+        c.packageName = readIntColumn(buffer, n);
+        c.firstVersion = readLongColumn(buffer, n);
+        c.lastVersion = readLongColumn(buffer, n);
+        c.flags = readIntColumn(buffer, n);
+        c.designation = readIntColumn(buffer, n);
+        return c;
+    }
+
+    private static void writeString(DataOutputStream data, @CheckForNull String s) throws IOException {
+        if (s == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF8.charset);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static @CheckForNull
+    String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8.charset);
+        buffer.position(buffer.position() + length);
+        return result;
+    }
+
+    private static void writeStrings(DataOutputStream data, String[] strings) throws IOException {
+        data.writeInt(strings.length);
+        for (String s : strings) {
+            writeString(data, s);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] result = new String[buffer.getInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readString(buffer);
+        }
+        return result;
+    }
+
+    private void writeColumn(DataOutputStream data, int[] column) throws IOException {
+        for (int i = 0; i < numBugs; i++) {
+            data.writeInt(column[i]);
+        }
+    }
+
+    private void writeColumn(DataOutputStream data, long[] column) throws IOException {
+        for (int i = 0; i < numBugs; i++) {
+            data.writeLong(column[i]);
+        }
+    }
+
+    private static int[] readIntColumn(ByteBuffer buffer, int n) {
+        int[] result = new int[n];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + 4 * n);
+        return result;
+    }
+
+    private static long[] readLongColumn(ByteBuffer buffer, int n) {
+        long[] result = new long[n];
+        buffer.asLongBuffer().get(result);
+        buffer.position(buffer.position() + 8 * n);
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        FindBugs.setNoAnalysis();
+        DetectorFactoryCollection.instance(); // load plugins
+        if (args.length == 0) {
+            System.err.println("Usage: " + BugHistoryColumns.class.getName() + " <bug collection> ...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            File file = new File(arg);
+            fromBugCollection(file).writeHistoryFile(file);
+        }
+    }
+}
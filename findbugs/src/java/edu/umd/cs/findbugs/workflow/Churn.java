@@ -19,10 +19,10 @@
 
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -39,6 +39,8 @@ import edu.umd.cs.findbugs.config.CommandLine;
 public class Churn {
     BugCollection bugCollection;
 
+    BugHistoryColumns history;
+
     int fixRate = -1;
 
     public Churn() {
@@ -50,19 +52,28 @@ public class Churn {
 
     public void setBugCollection(BugCollection bugCollection) {
         this.bugCollection = bugCollection;
+        this.history = null;
+    }
+
+    public void setHistory(BugHistoryColumns history) {
+        this.history = history;
     }
 
     String getKey(BugInstance b) {
         if (false) {
             return b.getType();
         }
-        String result = b.getCategoryAbbrev();
+        return getKey(b.getCategoryAbbrev());
+
+        // return b.getPriorityAbbreviation() + "-" + b.getType();
+    }
+
+    String getKey(String categoryAbbrev) {
+        String result = categoryAbbrev;
         if ("C".equals(result) || "N".equals(result)) {
             return result;
         }
         return "O";
-
-        // return b.getPriorityAbbreviation() + "-" + b.getType();
     }
 
     static class Data {
@@ -80,13 +91,12 @@ public class Churn {
 
         Map<Long, Integer> lastCount = new HashMap<Long, Integer>();
 
-        void update(BugInstance bug) {
-            if (bug.isDead()) {
+        void update(long lastVersion) {
+            if (lastVersion != -1) {
                 fixed++;
             } else {
                 persist++;
             }
-            final long lastVersion = bug.getLastVersion();
             if (lastVersion != -1) {
                 Integer v = lastCount.get(lastVersion);
                 if (v == null) {
@@ -107,24 +117,30 @@ public class Churn {
     int[] diedAfter;
 
     public Churn execute() {
+        if (history == null) {
+            history = BugHistoryColumns.fromBugCollection(bugCollection);
+        }
+        long sequenceNumber = history.getSequenceNumber();
 
         data.put("all", all);
-        aliveAt = new int[(int) bugCollection.getSequenceNumber() + 1];
-        diedAfter = new int[(int) bugCollection.getSequenceNumber() + 1];
+        aliveAt = new int[(int) sequenceNumber + 1];
+        diedAfter = new int[(int) sequenceNumber + 1];
 
-        for (Iterator<BugInstance> j = bugCollection.iterator(); j.hasNext();) {
-            BugInstance bugInstance = j.next();
+        String[] keys = new String[history.types.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getKey(history.typeCategories[i]);
+        }
 
-            String key = getKey(bugInstance);
+        for (int j = 0; j < history.numBugs; j++) {
+            String key = keys[history.type[j]];
             Data d = data.get(key);
             if (d == null) {
                 data.put(key, d = new Data());
             }
-            d.update(bugInstance);
-            all.update(bugInstance);
-
-            long first = bugInstance.getFirstVersion();
-            long last = bugInstance.getLastVersion();
+            long first = history.firstVersion[j];
+            long last = history.lastVersion[j];
+            d.update(last);
+            all.update(last);
 
             if (last != -1) {
                 System.out.printf("%3d #fixed %s%n", last, key);
@@ -139,7 +155,7 @@ public class Churn {
                     aliveAt[t]++;
                 }
             } else if (first != 0) {
-                int lifespan = (int) (bugCollection.getSequenceNumber() - first + 1);
+                int lifespan = (int) (sequenceNumber - first + 1);
                 for (int t = 1; t < lifespan; t++) {
                     aliveAt[t]++;
                 }
@@ -227,13 +243,21 @@ public class Churn {
         int argCount = commandLine
                 .parse(args, 0, 2, "Usage: " + Churn.class.getName() + " [options] [<xml results> [<history]] ");
 
+        BugHistoryColumns history = null;
         SortedBugCollection bugCollection = new SortedBugCollection();
         if (argCount < args.length) {
-            bugCollection.readXML(args[argCount++]);
+            File file = new File(args[argCount++]);
+            history = BugHistoryColumns.readHistoryFile(file);
+            if (history == null) {
+                bugCollection.readXML(file);
+            }
         } else {
             bugCollection.readXML(System.in);
         }
         churn.setBugCollection(bugCollection);
+        if (history != null) {
+            churn.setHistory(history);
+        }
         churn.execute();
         PrintStream out = System.out;
         try {
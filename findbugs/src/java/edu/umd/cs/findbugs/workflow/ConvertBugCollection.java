@@ -0,0 +1,43 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.SortedBugCollection;
+
+/**
+ * Convert a BugCollection between XML and the binary format. The format of
+ * each file is given by its name: files ending in
+ * {@link SortedBugCollection#BINARY_EXTENSION} are in the binary format, other
+ * files are XML (compressed if they end in ".gz").
+ */
+public class ConvertBugCollection {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: " + ConvertBugCollection.class.getName()
+                    + " <input bug collection> <output bug collection>");
+            System.exit(1);
+        }
+        FindBugs.setNoAnalysis();
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        bugCollection.readXML(args[0]);
+        bugCollection.writeXML(args[1]);
+    }
+}
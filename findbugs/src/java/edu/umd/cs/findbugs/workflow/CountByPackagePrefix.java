@@ -17,17 +17,18 @@
  */
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.TreeMap;
 
 import org.dom4j.DocumentException;
 
-import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugCollectionStreamReader;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.PackageStats;
-import edu.umd.cs.findbugs.SortedBugCollection;
 import edu.umd.cs.findbugs.util.ClassName;
 
 /**
@@ -53,34 +54,47 @@ public class CountByPackagePrefix {
         }
 
         int prefixLength = Integer.parseInt(args[0]);
-        BugCollection origCollection = new SortedBugCollection();
-        if (args.length == 1) {
-            origCollection.readXML(System.in);
-        } else {
-            origCollection.readXML(args[1]);
-        }
         Map<String, Integer> map = new TreeMap<String, Integer>();
         Map<String, Integer> ncss = new TreeMap<String, Integer>();
 
-        for (BugInstance b : origCollection.getCollection()) {
-            String prefix = ClassName.extractPackagePrefix(b.getPrimaryClass().getPackageName(), prefixLength);
-            Integer v = map.get(prefix);
-            if (v == null) {
-                map.put(prefix, 1);
-            } else {
-                map.put(prefix, v + 1);
+        BugHistoryColumns history = args.length == 2 ? BugHistoryColumns.readHistoryFile(new File(args[1])) : null;
+        if (history != null) {
+            String[] prefixes = new String[history.packages.length];
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = ClassName.extractPackagePrefix(history.packages[i], prefixLength);
+                if (history.packageSizes[i] >= 0) {
+                    add(ncss, prefixes[i], history.packageSizes[i]);
+                }
             }
-        }
-        for (PackageStats ps : origCollection.getProjectStats().getPackageStats()) {
-            String prefix = ClassName.extractPackagePrefix(ps.getPackageName(), prefixLength);
-
-            Integer v = ncss.get(prefix);
-            if (v == null) {
-                ncss.put(prefix, ps.size());
+            int[] count = new int[prefixes.length];
+            for (int j = 0; j < history.numBugs; j++) {
+                count[history.packageName[j]]++;
+            }
+            for (int i = 0; i < prefixes.length; i++) {
+                if (count[i] > 0) {
+                    add(map, prefixes[i], count[i]);
+                }
+            }
+        } else {
+            EnumSet<BugCollectionStreamReader.Skip> skipped = EnumSet.allOf(BugCollectionStreamReader.Skip.class);
+            BugCollectionStreamReader origCollection;
+            if (args.length == 1) {
+                origCollection = new BugCollectionStreamReader(System.in, null, skipped);
             } else {
-                ncss.put(prefix, v + ps.size());
+                origCollection = BugCollectionStreamReader.open(new File(args[1]), skipped);
+            }
+            try {
+                while (origCollection.hasNext()) {
+                    BugInstance b = origCollection.next();
+                    add(map, ClassName.extractPackagePrefix(b.getPrimaryClass().getPackageName(), prefixLength), 1);
+                }
+                origCollection.readToEnd();
+            } finally {
+                origCollection.close();
+            }
+            for (PackageStats ps : origCollection.getBugCollection().getProjectStats().getPackageStats()) {
+                add(ncss, ClassName.extractPackagePrefix(ps.getPackageName(), prefixLength), ps.size());
             }
-
         }
         for (Map.Entry<String, Integer> e : map.entrySet()) {
             String prefix = e.getKey();
@@ -102,4 +116,13 @@ public class CountByPackagePrefix {
         }
 
     }
+
+    private static void add(Map<String, Integer> map, String prefix, int n) {
+        Integer v = map.get(prefix);
+        if (v == null) {
+            map.put(prefix, n);
+        } else {
+            map.put(prefix, v + n);
+        }
+    }
 }
@@ -17,12 +17,15 @@
  */
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
+import java.util.EnumSet;
+
 import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugCollectionStreamReader;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.PackageStats;
 import edu.umd.cs.findbugs.PackageStats.ClassStats;
 import edu.umd.cs.findbugs.ProjectStats;
-import edu.umd.cs.findbugs.SortedBugCollection;
 
 /**
  * Java main application to compute defect density for a bug collection (stored
@@ -55,13 +58,22 @@ public class DefectDensity {
             System.exit(1);
         }
         FindBugs.setNoAnalysis();
-        BugCollection origCollection = new SortedBugCollection();
+        // Only the statistics are needed; their bug counts are updated as the
+        // bugs are read
+        EnumSet<BugCollectionStreamReader.Skip> skipped = EnumSet.allOf(BugCollectionStreamReader.Skip.class);
+        BugCollectionStreamReader reader;
         int argCount = 0;
         if (argCount == args.length) {
-            origCollection.readXML(System.in);
+            reader = new BugCollectionStreamReader(System.in, null, skipped);
         } else {
-            origCollection.readXML(args[argCount]);
+            reader = BugCollectionStreamReader.open(new File(args[argCount]), skipped);
+        }
+        try {
+            reader.readToEnd();
+        } finally {
+            reader.close();
         }
+        BugCollection origCollection = reader.getBugCollection();
         ProjectStats stats = origCollection.getProjectStats();
         printRow("kind", "name", "density/KNCSS", "bugs", "NCSS");
         double projectDensity = density(stats.getTotalBugs(), stats.getCodeSize());
@@ -30,6 +30,7 @@ import edu.umd.cs.findbugs.BugCollection;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.PackageStats;
 import edu.umd.cs.findbugs.PackageStats.ClassStats;
+import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
 import edu.umd.cs.findbugs.charsets.UTF8;
@@ -53,8 +54,12 @@ public class FileBugHash {
     MessageDigest digest = Util.getMD5Digest();
 
     FileBugHash(BugCollection bugs) {
+        this(bugs.getProjectStats(), bugs.getCollection());
+    }
+
+    FileBugHash(ProjectStats stats, Iterable<BugInstance> bugs) {
 
-        for (PackageStats pStat : bugs.getProjectStats().getPackageStats()) {
+        for (PackageStats pStat : stats.getPackageStats()) {
             for (ClassStats cStat : pStat.getSortedClassStats()) {
                 String path = cStat.getName();
                 if (path.indexOf('.') == -1) {
@@ -70,7 +75,7 @@ public class FileBugHash {
                 sizes.put(path, size + cStat.size());
             }
         }
-        for (BugInstance bug : bugs.getCollection()) {
+        for (BugInstance bug : bugs) {
             SourceLineAnnotation source = bug.getPrimarySourceLineAnnotation();
 
             String packagePath = source.getPackageName().replace('.', '/');
@@ -153,4 +158,8 @@ public class FileBugHash {
     public static FileBugHash compute(BugCollection origCollection) {
         return new FileBugHash(origCollection);
     }
+
+    public static FileBugHash compute(ProjectStats stats, Iterable<BugInstance> bugs) {
+        return new FileBugHash(stats, bugs);
+    }
 }
@@ -19,15 +19,20 @@
 package edu.umd.cs.findbugs.workflow;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -36,16 +41,21 @@ import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
+
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.AppVersion;
 import edu.umd.cs.findbugs.BugCategory;
 import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugCollectionStreamReader;
+import edu.umd.cs.findbugs.BugCollectionUnion;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugPattern;
 import edu.umd.cs.findbugs.BugRanker;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.ExcludingHashesBugReporter;
+import edu.umd.cs.findbugs.ExternalBugSorter;
 import edu.umd.cs.findbugs.FieldAnnotation;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.I18N;
@@ -196,6 +206,14 @@ public class Filter {
 
         public boolean withMessages = false;
 
+        public boolean stream = false;
+
+        public boolean streamSpecified = false;
+
+        final List<File> inputFiles = new ArrayList<File>();
+
+        int numberOfThreads = 1;
+
         private final List<Matcher> includeFilter = new LinkedList<Matcher>();
 
         private final List<Matcher> excludeFilter = new LinkedList<Matcher>();
@@ -223,6 +241,9 @@ public class Filter {
 
             addOption("-annotation", "text", "allow only warnings containing this text in a user annotation");
             addSwitchWithOptionalExtraPart("-withMessages", "truth", "generated XML should contain textual messages");
+            addSwitch("-stream", "don't keep the bug collection in memory (reads the input file twice)");
+            addOption("-input", "results", "filter the union of these results, which are read as with -stream (repeatable)");
+            addOption("-threads", "count", "number of threads used to read the -input results (default=1)");
             addOption("-maxDuration", "# versions", "only issues present in at most this many versions");
             addOption("-after", "when", "allow only warnings that first occurred after this version");
             addOption("-before", "when", "allow only warnings that first occurred before this version");
@@ -652,16 +673,20 @@ public class Filter {
                 }
             } else if ("-include".equals(option)) {
                 try {
-                    includeFilter.add(new edu.umd.cs.findbugs.filter.Filter(argument));
+                    includeFilter.add(new edu.umd.cs.findbugs.filter.Filter(argument).compile());
                 } catch (FilterException e) {
                     throw new IllegalArgumentException("Error processing include file: " + argument, e);
                 }
             } else if ("-exclude".equals(option)) {
                 try {
-                    excludeFilter.add(new edu.umd.cs.findbugs.filter.Filter(argument));
+                    excludeFilter.add(new edu.umd.cs.findbugs.filter.Filter(argument).compile());
                 } catch (FilterException e) {
                     throw new IllegalArgumentException("Error processing include file: " + argument, e);
                 }
+            } else if ("-input".equals(option)) {
+                inputFiles.add(new File(argument));
+            } else if ("-threads".equals(option)) {
+                numberOfThreads = Math.max(1, Integer.parseInt(argument));
             } else if ("-maxAge".equals(option)) {
                 maxAge = Integer.parseInt(argument);
                 maxAgeSpecified = true;
@@ -696,10 +721,21 @@ public class Filter {
          * @param origCollection
          */
         public void getReady(SortedBugCollection origCollection) {
+            getReady(origCollection.iterator());
+        }
+
+        /**
+         * Do any prep work needed to perform bug filtering
+         *
+         * @param bugs
+         *            the bugs of the original collection
+         */
+        public void getReady(Iterator<BugInstance> bugs) {
             if (maybeMutatedAsString != null) {
                 HashSet<String> addedIssues = new HashSet<String>();
                 HashSet<String> removedIssues = new HashSet<String>();
-                for (BugInstance b : origCollection) {
+                while (bugs.hasNext()) {
+                    BugInstance b = bugs.next();
                     if (b.getFirstVersion() == maybeMutated) {
                         addedIssues.add(getBugLocation(b));
                     } else if (b.getLastVersion() == maybeMutated - 1) {
@@ -763,18 +799,67 @@ public class Filter {
 
         int argCount = commandLine.parse(args, 0, 2, "Usage: " + Filter.class.getName()
                 + " [options] [<orig results> [<new results]] ");
-        SortedBugCollection origCollection = new SortedBugCollection();
-
-        if (argCount == args.length) {
-            origCollection.readXML(System.in);
+        boolean stream = commandLine.streamSpecified && commandLine.stream;
+        SortedBugCollection origCollection;
+        File origFile = null;
+        BugCollectionUnion union = null;
+
+        if (!commandLine.inputFiles.isEmpty()) {
+            if (args.length - argCount > 1) {
+                throw new IllegalArgumentException("With -input, the only argument is the output file");
+            }
+            if (commandLine.hashChangedSpecified || commandLine.maxAgeSpecified || commandLine.notAProblemSpecified
+                    || commandLine.shouldFixSpecified) {
+                throw new IllegalArgumentException(
+                        "-input can't be used with -hashChanged, -maxAge, -notAProblem or -shouldFix");
+            }
+            // The inputs are read in parallel, and their bugs kept in sorted
+            // runs on disk until they are filtered
+            union = new BugCollectionUnion(commandLine.inputFiles,
+                    EnumSet.of(BugCollectionStreamReader.Skip.CLASS_FEATURES), commandLine.numberOfThreads);
+            union.read();
+            for (File file : union.getUnreadFiles()) {
+                System.err.println("Trouble reading/parsing " + file);
+            }
+            origCollection = union.getBugCollection();
+            if (origCollection == null) {
+                union.close();
+                throw new IllegalArgumentException("No input file successfully read");
+            }
+        } else if (stream) {
+            if (argCount == args.length) {
+                throw new IllegalArgumentException("-stream requires an input file");
+            }
+            if (commandLine.hashChangedSpecified || commandLine.maxAgeSpecified || commandLine.notAProblemSpecified
+                    || commandLine.shouldFixSpecified) {
+                throw new IllegalArgumentException(
+                        "-stream can't be used with -hashChanged, -maxAge, -notAProblem or -shouldFix");
+            }
+            origFile = new File(args[argCount++]);
+            // First pass: read the metadata, and the bugs needed to get ready
+            EnumSet<BugCollectionStreamReader.Skip> skipped = EnumSet.of(BugCollectionStreamReader.Skip.CLASS_FEATURES);
+            if (commandLine.maybeMutatedAsString == null) {
+                skipped.add(BugCollectionStreamReader.Skip.ANNOTATIONS);
+            }
+            BugCollectionStreamReader reader = BugCollectionStreamReader.open(origFile, skipped);
+            try {
+                commandLine.getReady(reader);
+                reader.readToEnd();
+            } finally {
+                reader.close();
+            }
+            origCollection = reader.getBugCollection();
         } else {
-            origCollection.readXML(args[argCount++]);
+            origCollection = new SortedBugCollection();
+            if (argCount == args.length) {
+                origCollection.readXML(System.in);
+            } else {
+                origCollection.readXML(args[argCount++]);
+            }
         }
         boolean verbose = argCount < args.length;
         SortedBugCollection resultCollection = origCollection.createEmptyCollectionWithMetadata();
         Project project = resultCollection.getProject();
-        int passed = 0;
-        int dropped = 0;
         resultCollection.setWithMessages(commandLine.withMessages);
         if (commandLine.hashChangedSpecified) {
             origCollection.computeBugHashes();
@@ -833,9 +918,128 @@ public class Filter {
             }
         }
 
-        commandLine.getReady(origCollection);
+        boolean purgeHistory = commandLine.purgeHistorySpecified && commandLine.purgeHistory;
+        Iterator<BugInstance> bugs;
+        ExternalBugSorter sorter = null;
+        Iterable<BugInstance> sortedInput = null;
+        BugCollectionStreamReader reader = null;
+        if (union != null) {
+            commandLine.getReady(union.getBugs().iterator());
+            bugs = union.getBugs().iterator();
+            if (trimToVersion >= 0 || purgeHistory) {
+                // The order of the bugs depends on their versions
+                sorter = new ExternalBugSorter(SortedBugCollection.MultiversionBugInstanceComparator.instance,
+                        ExternalBugSorter.DEFAULT_RUN_SIZE);
+            } else {
+                // The union is already sorted: the accepted bugs are written
+                // in the order they are read again
+                sortedInput = union.getBugs();
+            }
+        } else if (stream) {
+            // Second pass: filter the bugs, which are kept in sorted runs on
+            // disk until they are written
+            reader = BugCollectionStreamReader.open(origFile,
+                    EnumSet.of(BugCollectionStreamReader.Skip.CLASS_FEATURES, BugCollectionStreamReader.Skip.HISTORY));
+            bugs = reader;
+            sorter = new ExternalBugSorter(SortedBugCollection.MultiversionBugInstanceComparator.instance,
+                    ExternalBugSorter.DEFAULT_RUN_SIZE);
+        } else {
+            commandLine.getReady(origCollection);
+            bugs = origCollection.getCollection().iterator();
+        }
+
+        try {
+            filterAndWrite(commandLine, args, argCount, origCollection, resultCollection, bugs, sorter, sortedInput,
+                    trimToVersion, purgeHistory, verbose);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            if (sorter != null) {
+                sorter.close();
+            }
+            if (union != null) {
+                union.close();
+            }
+        }
+    }
 
-        for (BugInstance bug : origCollection.getCollection()) {
+    /**
+     * Select bugs by their position. The filter isn't applied again, since it
+     * keeps state across bugs (such as -sloppyUnique).
+     *
+     * @param bugs
+     *            the bugs, in the order they were filtered
+     * @param accepted
+     *            the positions of the bugs accepted by the filter
+     * @return the accepted bugs, selected each time they are iterated
+     */
+    private static Iterable<BugInstance> accepted(final Iterable<BugInstance> bugs, final BitSet accepted) {
+        return new Iterable<BugInstance>() {
+            @Override
+            public Iterator<BugInstance> iterator() {
+                final Iterator<BugInstance> i = bugs.iterator();
+                return new Iterator<BugInstance>() {
+                    int index;
+
+                    @CheckForNull BugInstance next = advance();
+
+                    private @CheckForNull BugInstance advance() {
+                        while (i.hasNext()) {
+                            BugInstance bug = i.next();
+                            if (accepted.get(index++)) {
+                                return bug;
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public BugInstance next() {
+                        BugInstance result = next;
+                        if (result == null) {
+                            throw new NoSuchElementException();
+                        }
+                        next = advance();
+                        return result;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Filter the bugs, and write the result.
+     *
+     * @param bugs
+     *            the bugs to filter
+     * @param sorter
+     *            if not null, the sorter the accepted bugs are added to, and
+     *            written from
+     * @param sortedInput
+     *            if not null, the sorted bugs that bugs iterates over; the
+     *            accepted bugs are then written by iterating them again
+     */
+    private static void filterAndWrite(FilterCommandLine commandLine, String[] args, int argCount,
+            SortedBugCollection origCollection, SortedBugCollection resultCollection, Iterator<BugInstance> bugs,
+            @CheckForNull ExternalBugSorter sorter, @CheckForNull Iterable<BugInstance> sortedInput,
+            long trimToVersion, boolean purgeHistory, boolean verbose) throws IOException {
+        ProjectStats projectStats = resultCollection.getProjectStats();
+        int passed = 0;
+        int dropped = 0;
+        BitSet accepted = new BitSet();
+        for (int index = 0; bugs.hasNext(); index++) {
+            BugInstance bug = bugs.next();
             if (commandLine.accept(origCollection, bug)) {
                 if (trimToVersion >= 0) {
                     if (bug.getFirstVersion() > trimToVersion) {
@@ -846,14 +1050,29 @@ public class Filter {
                         bug.setRemovedByChangeOfPersistingClass(false);
                     }
                 }
-                resultCollection.add(bug, false);
+                if (sorter != null || sortedInput != null) {
+                    // As in SortedBugCollection.add()
+                    if (purgeHistory) {
+                        bug.clearHistory();
+                    }
+                    if (!bug.isDead()) {
+                        projectStats.addBug(bug);
+                    }
+                    if (sorter != null) {
+                        sorter.add(bug);
+                    } else {
+                        accepted.set(index);
+                    }
+                } else {
+                    resultCollection.add(bug, false);
+                }
                 passed++;
             } else {
                 dropped++;
             }
         }
 
-        if (commandLine.purgeHistorySpecified && commandLine.purgeHistory) {
+        if (purgeHistory) {
             resultCollection.clearAppVersions();
             for (BugInstance bug : resultCollection.getCollection()) {
                 bug.clearHistory();
@@ -879,7 +1098,19 @@ public class Filter {
 
         }
         projectStats.recomputeFromComponents();
-        if (argCount == args.length) {
+        if (sorter != null || sortedInput != null) {
+            Iterable<BugInstance> sortedBugs = sorter != null ? sorter.getSortedBugs() : accepted(sortedInput, accepted);
+            if (resultCollection.getWithMessages()) {
+                sortedBugs = SortedBugCollection.computeBugHashes(sortedBugs);
+                projectStats.computeFileStats(sortedBugs);
+            }
+            if (argCount == args.length) {
+                assert !verbose;
+                resultCollection.writeXML(UTF8.writer(System.out), sortedBugs);
+            } else {
+                resultCollection.writeXML(args[argCount++], sortedBugs);
+            }
+        } else if (argCount == args.length) {
             assert !verbose;
             resultCollection.writeXML(System.out);
         } else {
@@ -17,15 +17,18 @@
  */
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
+import java.util.EnumSet;
 
 import javax.annotation.CheckForNull;
 
 import org.dom4j.DocumentException;
 
 import edu.umd.cs.findbugs.AppVersion;
+import edu.umd.cs.findbugs.BugCollectionStreamReader;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.Priorities;
@@ -91,14 +94,19 @@ public class ListBugDatabaseInfo {
 
     private static void listVersion(PrintWriter out, @CheckForNull String fileName, boolean formatDates) throws IOException,
     DocumentException {
-        SortedBugCollection origCollection;
-        origCollection = new SortedBugCollection();
-
+        EnumSet<BugCollectionStreamReader.Skip> skipped = EnumSet.allOf(BugCollectionStreamReader.Skip.class);
+        BugCollectionStreamReader reader;
         if (fileName == null) {
-            origCollection.readXML(System.in);
+            reader = new BugCollectionStreamReader(System.in, null, skipped);
         } else {
-            origCollection.readXML(fileName);
+            reader = BugCollectionStreamReader.open(new File(fileName), skipped);
+        }
+        try {
+            reader.readToEnd();
+        } finally {
+            reader.close();
         }
+        SortedBugCollection origCollection = reader.getBugCollection();
         AppVersion appVersion = origCollection.getCurrentAppVersion();
         ProjectStats stats = origCollection.getProjectStats();
         out.print(appVersion.getReleaseName());
@@ -19,17 +19,16 @@
 
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 
 import edu.umd.cs.findbugs.AppVersion;
-import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
 import edu.umd.cs.findbugs.SortedBugCollection;
@@ -98,6 +97,8 @@ public class MineBugHistory {
 
     SortedBugCollection bugCollection;
 
+    BugHistoryColumns history;
+
     Version[] versionList;
 
     Map<Long, AppVersion> sequenceToAppVersionMap = new HashMap<Long, AppVersion>();
@@ -119,6 +120,11 @@ public class MineBugHistory {
 
     public void setBugCollection(SortedBugCollection bugCollection) {
         this.bugCollection = bugCollection;
+        this.history = null;
+    }
+
+    public void setHistory(BugHistoryColumns history) {
+        this.history = history;
     }
 
     public void setFormatDates(boolean value) {
@@ -144,46 +150,89 @@ public class MineBugHistory {
     }
 
     public MineBugHistory execute() {
-        long sequenceNumber = bugCollection.getSequenceNumber();
+        if (history == null) {
+            history = BugHistoryColumns.fromBugCollection(bugCollection);
+        }
+        long sequenceNumber = history.getSequenceNumber();
         int maxSequence = (int) sequenceNumber;
         versionList = new Version[maxSequence + 1];
         for (int i = 0; i <= maxSequence; ++i) {
             versionList[i] = new Version(i);
         }
 
-        for (Iterator<AppVersion> i = bugCollection.appVersionIterator(); i.hasNext();) {
-            AppVersion appVersion = i.next();
+        // The last version is the current one
+        for (AppVersion appVersion : history.appVersions.subList(0, history.appVersions.size() - 1)) {
             long versionSequenceNumber = appVersion.getSequenceNumber();
             sequenceToAppVersionMap.put(versionSequenceNumber, appVersion);
         }
 
-        AppVersion currentAppVersion = bugCollection.getCurrentAppVersion();
+        AppVersion currentAppVersion = history.getCurrentAppVersion();
         sequenceToAppVersionMap.put(sequenceNumber, currentAppVersion);
 
-        for (Iterator<BugInstance> j = bugCollection.iterator(); j.hasNext();) {
-            BugInstance bugInstance = j.next();
-
-            for (int i = 0; i <= maxSequence; ++i) {
-                if (bugInstance.getFirstVersion() > i) {
-                    continue;
-                }
-                boolean activePrevious = bugInstance.getFirstVersion() < i
-                        && (!bugInstance.isDead() || bugInstance.getLastVersion() >= i - 1);
-                boolean activeCurrent = !bugInstance.isDead() || bugInstance.getLastVersion() >= i;
-
-                int key = getKey(activePrevious, activeCurrent);
-                if (key == REMOVED && !bugInstance.isRemovedByChangeOfPersistingClass()) {
-                    key = REMOVEDCODE;
-                } else if (key == ADDED && !bugInstance.isIntroducedByChangeOfExistingClass()) {
-                    key = NEWCODE;
+        // Each warning is added, then retained in a range of versions, then
+        // removed, and then dead: count the changes of state of the warnings
+        // in each version, and add them up.
+        int[][] delta = new int[TUPLE_SIZE][maxSequence + 2];
+        long[] firstVersion = history.firstVersion;
+        long[] lastVersion = history.lastVersion;
+        int[] flags = history.flags;
+        for (int j = 0; j < history.numBugs; j++) {
+            long first = firstVersion[j];
+            if (first > maxSequence) {
+                continue;
+            }
+            boolean isDead = lastVersion[j] != -1;
+            long last = isDead ? lastVersion[j] : Long.MAX_VALUE;
+
+            // In the first version, the warning is active unless it was
+            // removed before
+            if (last >= first) {
+                boolean introducedByChange = (flags[j] & BugHistoryColumns.INTRODUCED_BY_CHANGE) != 0;
+                addRange(delta, introducedByChange ? ADDED : NEWCODE, first, first, maxSequence);
+            } else {
+                addRange(delta, DEAD, first, first, maxSequence);
+            }
+            addRange(delta, RETAINED, first + 1, last, maxSequence);
+            if (isDead) {
+                if (last + 1 > first) {
+                    boolean removedByChange = (flags[j] & BugHistoryColumns.REMOVED_BY_CHANGE) != 0;
+                    addRange(delta, removedByChange ? REMOVED : REMOVEDCODE, last + 1, last + 1, maxSequence);
                 }
-                versionList[i].increment(key);
+                addRange(delta, DEAD, Math.max(first + 1, last + 2), maxSequence, maxSequence);
+            }
+        }
+        for (int key = 0; key < TUPLE_SIZE; key++) {
+            int count = 0;
+            for (int i = 0; i <= maxSequence; ++i) {
+                count += delta[key][i];
+                versionList[i].tuple[key] = count;
             }
         }
+        for (int i = 0; i <= maxSequence; ++i) {
+            int[] tuple = versionList[i].tuple;
+            tuple[ACTIVE_NOW] = tuple[ADDED] + tuple[RETAINED] + tuple[NEWCODE];
+        }
 
         return this;
     }
 
+    /**
+     * Count a state of a warning in a range of versions.
+     */
+    private static void addRange(int[][] delta, int key, long from, long to, int maxSequence) {
+        if (to > maxSequence) {
+            to = maxSequence;
+        }
+        if (from < 0) {
+            from = 0;
+        }
+        if (from > to) {
+            return;
+        }
+        delta[key][(int) from]++;
+        delta[key][(int) to + 1]--;
+    }
+
     public void dump(PrintStream out) {
         if (xml) {
             dumpXml(out);
@@ -222,7 +271,7 @@ public class MineBugHistory {
                 b.append("                                                     ".substring(0, paddingNeeded));
             }
         }
-        int errors = bugCollection.getErrors().size();
+        int errors = history.numErrors;
         if (errors > 0) {
             b.append("     ").append(errors).append(" errors");
         }
@@ -403,26 +452,6 @@ public class MineBugHistory {
         out.print("</history>");
     }
 
-    /**
-     * Get key used to classify the presence and/or abscence of a BugInstance in
-     * successive versions in the history.
-     *
-     * @param activePrevious
-     *            true if the bug was active in the previous version, false if
-     *            not
-     * @param activeCurrent
-     *            true if the bug is active in the current version, false if not
-     * @return the key: one of ADDED, RETAINED, REMOVED, and DEAD
-     */
-    private int getKey(boolean activePrevious, boolean activeCurrent) {
-        if (activePrevious) {
-            return activeCurrent ? RETAINED : REMOVED;
-        } else {
-            // !activePrevious
-            return activeCurrent ? ADDED : DEAD;
-        }
-    }
-
     class MineBugHistoryCommandLine extends CommandLine {
 
         MineBugHistoryCommandLine() {
@@ -463,13 +492,21 @@ public class MineBugHistory {
         int argCount = commandLine.parse(args, 0, 2, "Usage: " + MineBugHistory.class.getName()
                 + " [options] [<xml results> [<history]] ");
 
+        BugHistoryColumns history = null;
         SortedBugCollection bugCollection = new SortedBugCollection();
         if (argCount < args.length) {
-            bugCollection.readXML(args[argCount++]);
+            File file = new File(args[argCount++]);
+            history = BugHistoryColumns.readHistoryFile(file);
+            if (history == null) {
+                bugCollection.readXML(file);
+            }
         } else {
             bugCollection.readXML(System.in);
         }
         mineBugHistory.setBugCollection(bugCollection);
+        if (history != null) {
+            mineBugHistory.setHistory(history);
+        }
 
         mineBugHistory.execute();
         PrintStream out = System.out;
@@ -0,0 +1,93 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.config.CommandLine;
+import edu.umd.cs.findbugs.log.ProfileReport;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Merge the JSON profile reports of several analysis runs (see the
+ * -profileReport option of the text UI).
+ */
+public class UnionProfileReports {
+
+    static class UnionProfileReportsCommandLine extends CommandLine {
+        public String outputFile;
+
+        UnionProfileReportsCommandLine() {
+            addOption("-output", "outputFile", "File in which to store the merged report (.json or .csv)");
+        }
+
+        @Override
+        protected void handleOption(String option, String optionExtraPart) throws IOException {
+            throw new IllegalArgumentException("Unknown option : " + option);
+        }
+
+        @Override
+        protected void handleOptionWithArgument(String option, String argument) throws IOException {
+            if ("-output".equals(option)) {
+                outputFile = argument;
+            } else {
+                throw new IllegalArgumentException("Unknown option : " + option);
+            }
+        }
+    }
+
+    public static void main(String[] argv) throws IOException {
+        UnionProfileReportsCommandLine commandLine = new UnionProfileReportsCommandLine();
+
+        int argCount = commandLine.parse(argv, 1, Integer.MAX_VALUE, "Usage: " + UnionProfileReports.class.getName()
+                + " [options] <report1.json> ... <reportn.json>");
+
+        ProfileReport result = null;
+        for (int i = argCount; i < argv.length; i++) {
+            try {
+                ProfileReport report = ProfileReport.readJSON(Util.getFileReader(argv[i]));
+                if (result == null) {
+                    result = report;
+                } else {
+                    result.merge(report);
+                }
+            } catch (IOException e) {
+                System.err.println("Trouble reading/parsing " + argv[i] + ": " + e.getMessage());
+            }
+        }
+
+        if (result == null) {
+            System.err.println("No files successfully read");
+            System.exit(1);
+            return;
+        }
+        if (commandLine.outputFile == null) {
+            Writer out = new OutputStreamWriter(System.out, UTF8.charset);
+            result.writeJSON(out);
+            out.flush();
+        } else {
+            result.write(new File(commandLine.outputFile));
+        }
+    }
+}
@@ -19,18 +19,21 @@
 
 package edu.umd.cs.findbugs.workflow;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 
-import org.dom4j.DocumentException;
-
-import edu.umd.cs.findbugs.AnalysisError;
+import edu.umd.cs.findbugs.BugCollectionStreamReader;
+import edu.umd.cs.findbugs.BugCollectionUnion;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
-import edu.umd.cs.findbugs.Project;
 import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.charsets.UTF8;
 import edu.umd.cs.findbugs.config.CommandLine;
 
 /**
@@ -43,9 +46,12 @@ public class UnionResults {
 
         boolean withMessages;
 
+        int numberOfThreads = 1;
+
         UnionResultsCommandLine() {
             addSwitch("-withMessages", "Generated XML should contain msgs for external processing");
             addOption("-output", "outputFile", "File in which to store combined results");
+            addOption("-threads", "count", "number of threads used to read the results (default=1)");
         }
 
         /*
@@ -75,6 +81,8 @@ public class UnionResults {
         protected void handleOptionWithArgument(String option, String argument) throws IOException {
             if ("-output".equals(option)) {
                 outputFile = argument;
+            } else if ("-threads".equals(option)) {
+                numberOfThreads = Math.max(1, Integer.parseInt(argument));
             } else {
                 throw new IllegalArgumentException("Unknown option : " + option);
             }
@@ -99,19 +107,7 @@ public class UnionResults {
                 into.add(bugInstance);
             }
         }
-        ProjectStats stats = into.getProjectStats();
-        ProjectStats stats2 = from.getProjectStats();
-        stats.addStats(stats2);
-
-        Project project = into.getProject();
-        Project project2 = from.getProject();
-        project.add(project2);
-
-        for(AnalysisError error : from.getErrors()) {
-            into.addError(error);
-        }
-
-        return;
+        BugCollectionUnion.mergeMetadata(into, from);
     }
 
     public static void main(String[] argv) throws IOException {
@@ -122,39 +118,47 @@ public class UnionResults {
         int argCount = commandLine.parse(argv, 2, Integer.MAX_VALUE, "Usage: " + UnionResults.class.getName()
                 + " [options] [<results1> <results2> ... <resultsn>] ");
 
-        SortedBugCollection results = null;
-        HashSet<String> hashes = new HashSet<String>();
-
+        List<File> files = new ArrayList<File>();
         for (int i = argCount; i < argv.length; i++) {
-            try {
-                SortedBugCollection more = new SortedBugCollection();
-
-                more.readXML(argv[i]);
-                if (results == null) {
-                    results = more.createEmptyCollectionWithMetadata();
+            files.add(new File(argv[i]));
+        }
+        BugCollectionUnion union = new BugCollectionUnion(files, EnumSet.noneOf(BugCollectionStreamReader.Skip.class),
+                commandLine.numberOfThreads);
+        try {
+            union.read();
+            for (File file : union.getUnreadFiles()) {
+                System.err.println("Trouble reading/parsing " + file);
+            }
+            SortedBugCollection results = union.getBugCollection();
+            if (results == null) {
+                System.err.println("No files successfully read");
+                System.exit(1);
+                return;
+            }
+            results.setWithMessages(commandLine.withMessages);
+
+            // The statistics are written before the bugs if
+            // findbugs.report.summaryFirst is set, so count the bugs first
+            Iterable<BugInstance> sortedBugs = union.getBugs();
+            ProjectStats stats = results.getProjectStats();
+            for (BugInstance bugInstance : sortedBugs) {
+                if (!bugInstance.isDead()) {
+                    stats.addBug(bugInstance);
                 }
-
-                merge(hashes, results, more);
-
-            } catch (IOException e) {
-                System.err.println("Trouble reading/parsing " + argv[i]);
-            } catch (DocumentException e) {
-                System.err.println("Trouble reading/parsing " + argv[i]);
             }
-        }
+            if (commandLine.withMessages) {
+                sortedBugs = SortedBugCollection.computeBugHashes(sortedBugs);
+                stats.computeFileStats(sortedBugs);
+            }
 
-        if (results == null) {
-            System.err.println("No files successfully read");
-            System.exit(1);
-            return;
-        }
-        results.setWithMessages(commandLine.withMessages);
-        if (commandLine.outputFile == null) {
-            results.writeXML(System.out);
-        } else {
-            results.writeXML(commandLine.outputFile);
+            if (commandLine.outputFile == null) {
+                results.writeXML(UTF8.writer(System.out), sortedBugs);
+            } else {
+                results.writeXML(commandLine.outputFile, sortedBugs);
+            }
+        } finally {
+            union.close();
         }
     }
 
 }
-
@@ -19,15 +19,25 @@ package edu.umd.cs.findbugs.workflow;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
 
 import org.dom4j.DocumentException;
 
@@ -39,6 +49,7 @@ import edu.umd.cs.findbugs.BugRanker;
 import edu.umd.cs.findbugs.ClassAnnotation;
 import edu.umd.cs.findbugs.DetectorFactoryCollection;
 import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.KeyedBugComparator;
 import edu.umd.cs.findbugs.PackageStats;
 import edu.umd.cs.findbugs.PackageStats.ClassStats;
 import edu.umd.cs.findbugs.SloppyBugComparator;
@@ -83,6 +94,10 @@ public class Update {
 
     int maxRank = BugRanker.VISIBLE_RANK_MAX;
 
+    int numberOfThreads = 1;
+
+    private ExecutorService executor;
+
     class UpdateCommandLine extends CommandLine {
         boolean overrideRevisionNames = false;
 
@@ -90,6 +105,8 @@ public class Update {
 
         boolean withMessages = false;
 
+        boolean historyColumns = false;
+
         UpdateCommandLine() {
             addSwitch("-overrideRevisionNames", "override revision names for each version with names computed filenames");
             addSwitch("-noPackageMoves",
@@ -105,7 +122,9 @@ public class Update {
             addSwitch("-quiet", "don't generate any outout to standard out unless there is an error");
             addSwitch("-useAnalysisTimes", "use analysis timestamp rather than code timestamp in history");
             addSwitch("-withMessages", "Add bug description");
+            addSwitch("-historyColumns", "also write the history of the warnings by column, for the history mining tools");
             addOption("-onlyMostRecent", "number", "only use the last # input files");
+            addOption("-threads", "count", "number of threads used to match warnings (default=1)");
         }
 
         @Override
@@ -142,6 +161,8 @@ public class Update {
                 useAnalysisTimes = true;
             } else if ("-withMessages".equals(option)) {
                 withMessages = true;
+            } else if ("-historyColumns".equals(option)) {
+                historyColumns = true;
             } else {
                 throw new IllegalArgumentException("no option " + option);
             }
@@ -156,6 +177,8 @@ public class Update {
                 maxRank = Integer.parseInt(argument);
             } else if ("-onlyMostRecent".equals(option)) {
                 mostRecent = Integer.parseInt(argument);
+            } else if ("-threads".equals(option)) {
+                numberOfThreads = Math.max(1, Integer.parseInt(argument));
             } else {
                 throw new IllegalArgumentException("Can't handle option " + option);
             }
@@ -351,10 +374,20 @@ public class Update {
     private void discardUnwantedBugs(BugCollection newCollection) {
         BugRanker.trimToMaxRank(newCollection, maxRank);
         if (sloppyMatch) {
-            TreeSet<BugInstance> sloppyUnique = new TreeSet<BugInstance>(new SloppyBugComparator());
-            for(Iterator<BugInstance> i = newCollection.iterator(); i.hasNext(); ) {
-                if (!sloppyUnique.add(i.next())) {
+            SloppyBugComparator sloppyBugComparator = new SloppyBugComparator();
+            HashMap<Object, List<BugInstance>> sloppyUnique = new HashMap<Object, List<BugInstance>>();
+            for (Iterator<BugInstance> i = newCollection.iterator(); i.hasNext();) {
+                BugInstance bug = i.next();
+                Object key = sloppyBugComparator.getMatchingKey(bug);
+                List<BugInstance> sameKey = sloppyUnique.get(key);
+                if (sameKey == null) {
+                    sameKey = new ArrayList<BugInstance>(1);
+                    sloppyUnique.put(key, sameKey);
+                }
+                if (contains(sloppyBugComparator, sameKey, bug)) {
                     i.remove();
+                } else {
+                    sameKey.add(bug);
                 }
             }
         }
@@ -372,11 +405,6 @@ public class Update {
      */
 
     private void matchBugs(BugCollection origCollection, BugCollection newCollection) {
-        matchBugs(SortedBugCollection.BugInstanceComparator.instance, origCollection, newCollection);
-
-        mapFromNewToOldBug.clear();
-        matchedOldBugs.clear();
-
         matchBugs(versionInsensitiveBugComparator, origCollection, newCollection);
         matchBugs(versionInsensitiveBugComparator, origCollection, newCollection, MatchOldBugs.IF_CLASS_NOT_SEEN_UNTIL_NOW);
         if (doMatchFixedBugs) {
@@ -551,12 +579,19 @@ public class Update {
             }
         }
          */
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
         origCollection.setWithMessages(commandLine.withMessages);
         if (commandLine.outputFilename != null) {
             if (verbose) {
                 System.out.println("Writing " + commandLine.outputFilename);
             }
             origCollection.writeXML(commandLine.outputFilename);
+            if (commandLine.historyColumns) {
+                BugHistoryColumns.fromBugCollection(origCollection).writeHistoryFile(new File(commandLine.outputFilename));
+            }
         } else {
             origCollection.writeXML(System.out);
         }
@@ -595,68 +630,245 @@ public class Update {
         }
     }
 
-    private void matchBugs(Comparator<BugInstance> bugInstanceComparator, BugCollection origCollection,
+    private void matchBugs(KeyedBugComparator bugInstanceComparator, BugCollection origCollection,
             BugCollection newCollection) {
         matchBugs(bugInstanceComparator, origCollection, newCollection, MatchOldBugs.IF_LIVE);
 
     }
 
-    private void matchBugs(Comparator<BugInstance> bugInstanceComparator, BugCollection origCollection,
-            BugCollection newCollection, MatchOldBugs matchOld) {
+    /**
+     * Match the warnings of the new collection which have not been matched
+     * yet with the unmatched warnings of the original collection which compare
+     * as equal. Warnings are joined by their matching key, and only compared
+     * with the warnings of the same key. As the warnings of one key are
+     * matched independently of the others, the keys are split into
+     * partitions, which are matched in parallel if several threads are used.
+     */
+    private void matchBugs(final KeyedBugComparator bugInstanceComparator, BugCollection origCollection,
+            BugCollection newCollection, final MatchOldBugs matchOld) {
 
-        TreeMap<BugInstance, LinkedList<BugInstance>> set = new TreeMap<BugInstance, LinkedList<BugInstance>>(
-                bugInstanceComparator);
-        //        int oldBugs = 0;
-        //        int newBugs = 0;
-        //        int matchedBugs = 0;
+        final List<BugInstance> oldBugs = new ArrayList<BugInstance>();
         for (BugInstance bug : origCollection.getCollection()) {
-            if (!matchedOldBugs.containsKey(bug)) {
-                if (matchOld.match(bug)) {
-                    //                    oldBugs++;
-                    LinkedList<BugInstance> q = set.get(bug);
-                    if (q == null) {
-                        q = new LinkedList<BugInstance>();
-                        set.put(bug, q);
-                    }
-                    q.add(bug);
-                }
-
+            if (!matchedOldBugs.containsKey(bug) && matchOld.match(bug)) {
+                oldBugs.add(bug);
             }
         }
-        long newVersion = origCollection.getCurrentAppVersion().getSequenceNumber() + 1;
+        final List<BugInstance> newBugs = new ArrayList<BugInstance>();
         for (BugInstance bug : newCollection.getCollection()) {
             if (!mapFromNewToOldBug.containsKey(bug)) {
-                //                newBugs++;
-                LinkedList<BugInstance> q = set.get(bug);
-                if (q == null) {
-                    continue;
+                newBugs.add(bug);
+            }
+        }
+        if (oldBugs.isEmpty() || newBugs.isEmpty()) {
+            return;
+        }
+        final long newVersion = origCollection.getCurrentAppVersion().getSequenceNumber() + 1;
+
+        final Object[] oldKeys = new Object[oldBugs.size()];
+        final Object[] newKeys = new Object[newBugs.size()];
+        final int numPartitions = numberOfThreads;
+        List<Callable<Void>> keyTasks = new ArrayList<Callable<Void>>();
+        for (int p = 0; p < numPartitions; p++) {
+            keyTasks.add(new KeyTask(bugInstanceComparator, oldBugs, oldKeys, p, numPartitions));
+            keyTasks.add(new KeyTask(bugInstanceComparator, newBugs, newKeys, p, numPartitions));
+        }
+        invokeAll(keyTasks);
+
+        List<Callable<List<BugInstance>>> matchTasks = new ArrayList<Callable<List<BugInstance>>>();
+        for (int p = 0; p < numPartitions; p++) {
+            final int partition = p;
+            matchTasks.add(new Callable<List<BugInstance>>() {
+                @Override
+                public List<BugInstance> call() {
+                    return matchPartition(bugInstanceComparator, oldBugs, oldKeys, newBugs, newKeys, newVersion, partition,
+                            numPartitions);
+                }
+            });
+        }
+        for (List<BugInstance> matches : invokeAll(matchTasks)) {
+            for (Iterator<BugInstance> i = matches.iterator(); i.hasNext();) {
+                BugInstance bug = i.next();
+                BugInstance matchedBug = i.next();
+                if (matchedBug.isDead()) {
+                    resurrected.add(bug.getInstanceKey());
                 }
-                for (Iterator<BugInstance> i = q.iterator(); i.hasNext();) {
-                    BugInstance matchedBug = i.next();
+                mapFromNewToOldBug.put(bug, matchedBug);
+                matchedOldBugs.put(matchedBug, null);
+            }
+        }
+    }
 
-                    if (matchedBug.isDead()) {
-                        if (noResurrections || matchedBug.isRemovedByChangeOfPersistingClass()
-                                && newVersion - matchedBug.getLastVersion() > maxResurrection) {
-                            continue;
-                        }
-                        resurrected.add(bug.getInstanceKey());
-                        // System.out.println("in version " +
-                        // newCollection.getReleaseName());
-                        // System.out.println("  resurrected " +
-                        // bug.getMessageWithoutPrefix());
-                    }
+    private static int partition(Object key, int numPartitions) {
+        return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
 
-                    //                    matchedBugs++;
-                    mapFromNewToOldBug.put(bug, matchedBug);
-                    matchedOldBugs.put(matchedBug, null);
-                    i.remove();
-                    if (q.isEmpty()) {
-                        set.remove(bug);
+    /**
+     * Compute the matching keys of the warnings of one partition of a list.
+     * The warnings are assigned to the tasks by position, as the keys are
+     * not known yet.
+     */
+    private static class KeyTask implements Callable<Void> {
+        private final KeyedBugComparator comparator;
+
+        private final List<BugInstance> bugs;
+
+        private final Object[] keys;
+
+        private final int start, step;
+
+        KeyTask(KeyedBugComparator comparator, List<BugInstance> bugs, Object[] keys, int start, int step) {
+            this.comparator = comparator;
+            this.bugs = bugs;
+            this.keys = keys;
+            this.start = start;
+            this.step = step;
+        }
+
+        @Override
+        public Void call() {
+            for (int i = start; i < keys.length; i += step) {
+                keys[i] = comparator.getMatchingKey(bugs.get(i));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The unmatched old warnings which compare as equal to the first of them.
+     */
+    private static class Candidates {
+        final BugInstance representative;
+
+        final LinkedList<BugInstance> queue = new LinkedList<BugInstance>();
+
+        Candidates(BugInstance representative) {
+            this.representative = representative;
+        }
+    }
+
+    /**
+     * Match the new warnings of a partition of the keys, in order, with the
+     * first old warning of the same equivalence class that can be matched.
+     *
+     * @return the matched warnings, as pairs of a new and an old warning
+     */
+    private List<BugInstance> matchPartition(KeyedBugComparator comparator, List<BugInstance> oldBugs, Object[] oldKeys,
+            List<BugInstance> newBugs, Object[] newKeys, long newVersion, int partition, int numPartitions) {
+        HashMap<Object, List<Candidates>> index = new HashMap<Object, List<Candidates>>();
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object key = oldKeys[i];
+            if (partition(key, numPartitions) != partition) {
+                continue;
+            }
+            BugInstance bug = oldBugs.get(i);
+            List<Candidates> equivalenceClasses = index.get(key);
+            if (equivalenceClasses == null) {
+                equivalenceClasses = new ArrayList<Candidates>(1);
+                index.put(key, equivalenceClasses);
+            }
+            Candidates candidates = findCandidates(comparator, equivalenceClasses, bug);
+            if (candidates == null) {
+                candidates = new Candidates(bug);
+                equivalenceClasses.add(candidates);
+            }
+            candidates.queue.add(bug);
+        }
+
+        List<BugInstance> matches = new ArrayList<BugInstance>();
+        for (int i = 0; i < newKeys.length; i++) {
+            Object key = newKeys[i];
+            if (partition(key, numPartitions) != partition) {
+                continue;
+            }
+            List<Candidates> equivalenceClasses = index.get(key);
+            if (equivalenceClasses == null) {
+                continue;
+            }
+            BugInstance bug = newBugs.get(i);
+            Candidates candidates = findCandidates(comparator, equivalenceClasses, bug);
+            if (candidates == null) {
+                continue;
+            }
+            for (Iterator<BugInstance> j = candidates.queue.iterator(); j.hasNext();) {
+                BugInstance matchedBug = j.next();
+
+                if (matchedBug.isDead()) {
+                    if (noResurrections || matchedBug.isRemovedByChangeOfPersistingClass()
+                            && newVersion - matchedBug.getLastVersion() > maxResurrection) {
+                        continue;
                     }
-                    break;
                 }
+
+                matches.add(bug);
+                matches.add(matchedBug);
+                j.remove();
+                break;
+            }
+        }
+        return matches;
+    }
+
+    private static boolean contains(Comparator<BugInstance> comparator, List<BugInstance> bugs, BugInstance bug) {
+        for (BugInstance b : bugs) {
+            if (comparator.compare(bug, b) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static @CheckForNull
+    Candidates findCandidates(KeyedBugComparator comparator, List<Candidates> equivalenceClasses, BugInstance bug) {
+        for (Candidates candidates : equivalenceClasses) {
+            if (comparator.compare(bug, candidates.representative) == 0) {
+                return candidates;
+            }
+        }
+        return null;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (numberOfThreads <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return results;
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+                final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "FindBugs update-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while matching warnings", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
             }
+            throw new IllegalStateException(cause);
         }
+        return results;
     }
 
 }
@@ -0,0 +1,256 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.WillClose;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * Read an XML document written by {@link BinaryXMLOutput}, by replaying its
+ * events to a SAX ContentHandler. Binary files are memory mapped.
+ */
+public class BinaryXMLInput {
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int FOOTER_SIZE = 8;
+
+    private final ByteBuffer buffer;
+
+    private final int endOfEvents;
+
+    private final int[] stringOffsets;
+
+    private final int[] stringLengths;
+
+    private final String[] strings;
+
+    private final int[] indexedOffsets;
+
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    private int position = HEADER_SIZE;
+
+    private String[] elementStack = new String[16];
+
+    private int depth;
+
+    BinaryXMLInput(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE + FOOTER_SIZE || !isBinaryFormat(buffer)) {
+            throw new IOException("Not a binary XML document");
+        }
+        if (buffer.getInt(4) != BinaryXMLOutput.VERSION) {
+            throw new IOException("Unsupported binary XML version " + buffer.getInt(4));
+        }
+        if (buffer.getInt(limit - 4) != BinaryXMLOutput.MAGIC) {
+            throw new IOException("Truncated binary XML document");
+        }
+        endOfEvents = buffer.getInt(limit - FOOTER_SIZE);
+        if (endOfEvents < HEADER_SIZE || endOfEvents > limit - FOOTER_SIZE) {
+            throw new IOException("Corrupt binary XML document");
+        }
+        position = endOfEvents;
+        int numStrings = readNumber();
+        stringOffsets = new int[numStrings];
+        stringLengths = new int[numStrings];
+        strings = new String[numStrings];
+        for (int i = 0; i < numStrings; i++) {
+            stringLengths[i] = readNumber();
+            stringOffsets[i] = position;
+            position += stringLengths[i];
+        }
+        int numIndexed = readNumber();
+        indexedOffsets = new int[numIndexed];
+        for (int i = 0; i < numIndexed; i++) {
+            indexedOffsets[i] = buffer.getInt(position);
+            position += 4;
+        }
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Map a binary XML file into memory.
+     *
+     * @param file
+     *            the file
+     * @return the document
+     * @throws IOException
+     *             if the file can't be read or is not a binary XML document
+     */
+    public static BinaryXMLInput map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new BinaryXMLInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a binary XML document from a stream. The InputStream is guaranteed
+     * to be closed, even if an exception is thrown.
+     *
+     * @param in
+     *            the stream
+     * @return the document
+     * @throws IOException
+     *             if the stream can't be read or is not a binary XML document
+     */
+    public static BinaryXMLInput read(@WillClose InputStream in) throws IOException {
+        return new BinaryXMLInput(ByteBuffer.wrap(IO.readAll(in)).asReadOnlyBuffer());
+    }
+
+    private static boolean isBinaryFormat(ByteBuffer buffer) {
+        return buffer.getInt(0) == BinaryXMLOutput.MAGIC;
+    }
+
+    /**
+     * @return the number of indexed elements
+     */
+    public int getNumIndexedElements() {
+        return indexedOffsets.length;
+    }
+
+    /**
+     * Replay the next event of the document.
+     *
+     * @param handler
+     *            the handler receiving the event
+     * @return false if the end of the document was reached
+     */
+    public boolean replayNext(ContentHandler handler) throws SAXException, IOException {
+        if (position >= endOfEvents) {
+            return false;
+        }
+        int event = buffer.get(position++);
+        switch (event) {
+        case BinaryXMLOutput.START_TAG:
+            String name = readString();
+            int numAttributes = readNumber();
+            attributes.clear();
+            for (int i = 0; i < numAttributes; i++) {
+                String attributeName = readString();
+                attributes.addAttribute("", attributeName, attributeName, "CDATA", readString());
+            }
+            if (depth == elementStack.length) {
+                String[] newStack = new String[2 * depth];
+                System.arraycopy(elementStack, 0, newStack, 0, depth);
+                elementStack = newStack;
+            }
+            elementStack[depth++] = name;
+            handler.startElement("", name, name, attributes);
+            break;
+        case BinaryXMLOutput.END_TAG:
+            if (depth == 0) {
+                throw new IOException("Unbalanced end tag at offset " + (position - 1));
+            }
+            String endName = elementStack[--depth];
+            handler.endElement("", endName, endName);
+            break;
+        case BinaryXMLOutput.TEXT:
+            char[] text = readString().toCharArray();
+            handler.characters(text, 0, text.length);
+            break;
+        default:
+            throw new IOException("Corrupt binary XML document: unknown event " + event + " at offset " + (position - 1));
+        }
+        return true;
+    }
+
+    /**
+     * Replay the rest of the document.
+     *
+     * @param handler
+     *            the handler receiving the events
+     */
+    public void replay(ContentHandler handler) throws SAXException, IOException {
+        handler.startDocument();
+        while (replayNext(handler)) {
+            // continue
+        }
+        handler.endDocument();
+    }
+
+    /**
+     * Replay an indexed element, without the rest of the document. The
+     * handler doesn't receive the events of the root element. The position
+     * of {@link #replayNext(ContentHandler)} is not changed.
+     *
+     * @param i
+     *            the index of the element, in document order
+     * @param handler
+     *            the handler receiving the events
+     */
+    public void replayIndexedElement(int i, ContentHandler handler) throws SAXException, IOException {
+        int savedPosition = position;
+        int savedDepth = depth;
+        String[] savedStack = elementStack.clone();
+        try {
+            position = indexedOffsets[i];
+            depth = 0;
+            do {
+                replayNext(handler);
+            } while (depth > 0);
+        } finally {
+            position = savedPosition;
+            depth = savedDepth;
+            elementStack = savedStack;
+        }
+    }
+
+    private String readString() throws IOException {
+        int i = readNumber();
+        if (i >= strings.length) {
+            throw new IOException("Corrupt binary XML document: string " + i + " out of range");
+        }
+        String result = strings[i];
+        if (result == null) {
+            byte[] bytes = new byte[stringLengths[i]];
+            ByteBuffer b = buffer.duplicate();
+            b.position(stringOffsets[i]);
+            b.get(bytes);
+            result = strings[i] = new String(bytes, UTF8.charset);
+        }
+        return result;
+    }
+
+    private int readNumber() {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = buffer.get(position++);
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+}
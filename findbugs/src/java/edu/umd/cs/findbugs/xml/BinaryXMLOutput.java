@@ -0,0 +1,266 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.WillCloseWhenClosed;
+
+import edu.umd.cs.findbugs.annotations.DischargesObligation;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.util.Strings;
+
+/**
+ * Write an XML document in a compact binary form, read by
+ * {@link BinaryXMLInput}. Reading it back doesn't involve any XML parsing or
+ * character decoding, and each distinct string is decoded only once.
+ * <p>
+ * The file starts with a magic number and a version, followed by the events
+ * of the document: a start tag is the byte 1, the name, the number of
+ * attributes and their names and values; an end tag is the byte 2; text is
+ * the byte 3 and the text. Names, values and text are indices in a table of
+ * the distinct strings of the document. Numbers are written as unsigned
+ * variable length integers, 7 bits per byte.
+ * <p>
+ * The events are followed by the string table (the number of strings, then
+ * the length and the UTF-8 bytes of each string) and by an index of the
+ * offsets of the children of the root element with a given name, so that they
+ * can be read without reading the rest of the document. The file ends with
+ * the offset of the string table and the magic number.
+ * <p>
+ * Strings are stored as an XML parser would read them from the XML written
+ * by {@link OutputStreamXMLOutput}, so a SAX handler gets the same
+ * events from either. Documents must be smaller than 2GB.
+ */
+public class BinaryXMLOutput implements XMLOutput {
+
+    /** "FBXB" */
+    static final int MAGIC = 0x46425842;
+
+    static final int VERSION = 1;
+
+    static final int START_TAG = 1;
+
+    static final int END_TAG = 2;
+
+    static final int TEXT = 3;
+
+    private final OutputStream out;
+
+    private final @CheckForNull String indexedElementName;
+
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+    private final List<String> strings = new ArrayList<String>();
+
+    private final List<Long> indexedOffsets = new ArrayList<Long>();
+
+    private long offset;
+
+    private int nestingLevel;
+
+    private @CheckForNull String startedTag;
+
+    private final List<String> startedAttributes = new ArrayList<String>();
+
+    private boolean headerWritten;
+
+    /**
+     * Constructor.
+     *
+     * @param os
+     *            OutputStream to write the document to
+     * @param indexedElementName
+     *            name of the children of the root element whose offsets are
+     *            written to the index, or null
+     */
+    public BinaryXMLOutput(@WillCloseWhenClosed OutputStream os, @CheckForNull String indexedElementName) {
+        this.out = new BufferedOutputStream(os);
+        this.indexedElementName = indexedElementName;
+    }
+
+    @Override
+    public void beginDocument() throws IOException {
+        writeHeader();
+    }
+
+    @Override
+    public void openTag(String tagName) throws IOException {
+        startTag(tagName);
+        stopTag(false);
+    }
+
+    @Override
+    public void openTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        emitTag(tagName, attributeList, false);
+    }
+
+    @Override
+    public void openCloseTag(String tagName) throws IOException {
+        startTag(tagName);
+        stopTag(true);
+    }
+
+    @Override
+    public void openCloseTag(String tagName, XMLAttributeList attributeList) throws IOException {
+        emitTag(tagName, attributeList, true);
+    }
+
+    private void emitTag(String tagName, XMLAttributeList attributeList, boolean close) throws IOException {
+        startTag(tagName);
+        for (Iterator<XMLAttributeList.NameValuePair> i = attributeList.iterator(); i.hasNext();) {
+            XMLAttributeList.NameValuePair pair = i.next();
+            addAttribute(pair.getName(), pair.getValue());
+        }
+        stopTag(close);
+    }
+
+    @Override
+    public void startTag(String tagName) throws IOException {
+        writeHeader();
+        startedTag = tagName;
+        startedAttributes.clear();
+    }
+
+    @Override
+    public void addAttribute(String name, String value) throws IOException {
+        startedAttributes.add(name);
+        startedAttributes.add(Strings.escapeInvalidXMLCharacters(value));
+    }
+
+    @Override
+    public void stopTag(boolean close) throws IOException {
+        String tagName = startedTag;
+        if (tagName == null) {
+            throw new IllegalStateException("No tag started");
+        }
+        startedTag = null;
+        if (nestingLevel == 1 && tagName.equals(indexedElementName)) {
+            indexedOffsets.add(offset);
+        }
+        writeByte(START_TAG);
+        writeString(tagName);
+        writeNumber(startedAttributes.size() / 2);
+        for (String s : startedAttributes) {
+            writeString(s);
+        }
+        if (close) {
+            writeByte(END_TAG);
+        } else {
+            nestingLevel++;
+        }
+    }
+
+    @Override
+    public void closeTag(String tagName) throws IOException {
+        --nestingLevel;
+        writeByte(END_TAG);
+    }
+
+    @Override
+    public void writeText(String text) throws IOException {
+        writeByte(TEXT);
+        writeString(Strings.escapeInvalidXMLCharacters(text));
+    }
+
+    @Override
+    public void writeCDATA(String cdata) throws IOException {
+        writeByte(TEXT);
+        writeString(cdata);
+    }
+
+    @Override
+    @DischargesObligation
+    public void finish() throws IOException {
+        try {
+            writeHeader();
+            long stringTableOffset = offset;
+            writeNumber(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(UTF8.charset);
+                writeNumber(bytes.length);
+                write(bytes);
+            }
+            writeNumber(indexedOffsets.size());
+            for (long indexedOffset : indexedOffsets) {
+                writeInt((int) indexedOffset);
+            }
+            writeInt((int) stringTableOffset);
+            writeInt(MAGIC);
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Binary XML document too big at " + offset + " bytes");
+            }
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (!headerWritten) {
+            headerWritten = true;
+            writeInt(MAGIC);
+            writeInt(VERSION);
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            stringIndex.put(s, index);
+            strings.add(s);
+        }
+        writeNumber(index);
+    }
+
+    private void writeNumber(int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        writeByte(n);
+    }
+
+    private void writeInt(int n) throws IOException {
+        writeByte(n >>> 24);
+        writeByte(n >>> 16);
+        writeByte(n >>> 8);
+        writeByte(n);
+    }
+
+    private void writeByte(int b) throws IOException {
+        out.write(b);
+        offset++;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        offset += bytes.length;
+    }
+}
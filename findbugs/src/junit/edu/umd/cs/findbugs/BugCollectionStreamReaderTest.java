@@ -0,0 +1,114 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class BugCollectionStreamReaderTest extends TestCase {
+
+    private byte[] xml;
+
+    @Override
+    protected void setUp() throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        bugCollection.setReleaseName("1.0");
+        for (int i = 1; i <= 3; i++) {
+            BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY).addClass("a.B" + i);
+            bug.addMethod("a.B" + i, "m", "()V", false);
+            bug.addSourceLine(new SourceLineAnnotation("a.B" + i, "B" + i + ".java", i, i, -1, -1));
+            bug.setProperty("p", Integer.toString(i));
+            bugCollection.add(bug, false);
+        }
+        bugCollection.addAppVersion(new AppVersion(0).setReleaseName("0.9"));
+        bugCollection.setSequenceNumber(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bugCollection.writeXML(out);
+        xml = out.toByteArray();
+    }
+
+    private List<BugInstance> read(BugCollectionStreamReader reader) throws Exception {
+        List<BugInstance> bugs = new ArrayList<BugInstance>();
+        try {
+            while (reader.hasNext()) {
+                bugs.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+        return bugs;
+    }
+
+    private static int numAppVersions(BugCollectionStreamReader reader) {
+        int count = 0;
+        for (Iterator<AppVersion> i = reader.getBugCollection().appVersionIterator(); i.hasNext(); i.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    public void testSameAsReadXML() throws Exception {
+        SortedBugCollection expected = new SortedBugCollection();
+        expected.readXML(new ByteArrayInputStream(xml));
+
+        BugCollectionStreamReader reader = new BugCollectionStreamReader(new ByteArrayInputStream(xml), null,
+                EnumSet.noneOf(BugCollectionStreamReader.Skip.class));
+        assertEquals("1.0", reader.getBugCollection().getReleaseName());
+        List<BugInstance> bugs = read(reader);
+        assertEquals(new ArrayList<BugInstance>(expected.getCollection()), bugs);
+        assertEquals(0, reader.getBugCollection().getCollection().size());
+        assertEquals(expected.getProjectStats().getTotalBugs(), reader.getBugCollection().getProjectStats().getTotalBugs());
+        assertEquals(1, numAppVersions(reader));
+    }
+
+    public void testSkipped() throws Exception {
+        BugCollectionStreamReader reader = new BugCollectionStreamReader(new ByteArrayInputStream(xml), null,
+                EnumSet.allOf(BugCollectionStreamReader.Skip.class));
+        List<BugInstance> bugs = read(reader);
+        assertEquals(3, bugs.size());
+        for (int i = 0; i < bugs.size(); i++) {
+            BugInstance bug = bugs.get(i);
+            assertEquals(1, bug.getAnnotations().size());
+            assertEquals("a.B" + (i + 1), bug.getPrimaryClass().getClassName());
+            assertEquals(Integer.toString(i + 1), bug.getProperty("p"));
+        }
+        assertEquals(3, reader.getBugCollection().getProjectStats().getTotalBugs());
+        assertEquals(0, numAppVersions(reader));
+    }
+
+    public void testReadToEnd() throws Exception {
+        BugCollectionStreamReader reader = new BugCollectionStreamReader(new ByteArrayInputStream(xml), null,
+                EnumSet.of(BugCollectionStreamReader.Skip.ANNOTATIONS));
+        try {
+            assertTrue(reader.hasNext());
+            reader.readToEnd();
+            assertFalse(reader.hasNext());
+            assertEquals(1, numAppVersions(reader));
+        } finally {
+            reader.close();
+        }
+    }
+}
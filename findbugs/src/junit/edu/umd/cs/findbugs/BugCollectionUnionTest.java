@@ -0,0 +1,106 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class BugCollectionUnionTest extends TestCase {
+
+    private final List<File> files = new ArrayList<File>();
+
+    private static BugInstance bug(String className, int line, String shard) {
+        BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY).addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, className + ".java", line, line, -1, -1));
+        bug.setProperty("shard", shard);
+        return bug;
+    }
+
+    private File shard(String error, BugInstance... bugs) throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        for (BugInstance bug : bugs) {
+            bugCollection.add(bug);
+        }
+        bugCollection.addError(error);
+        File file = File.createTempFile("shard", ".xml");
+        files.add(file);
+        bugCollection.writeXML(file);
+        return file;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private List<String> union(int numberOfThreads, File... shards) throws Exception {
+        BugCollectionUnion union = new BugCollectionUnion(Arrays.asList(shards),
+                EnumSet.noneOf(BugCollectionStreamReader.Skip.class), numberOfThreads);
+        try {
+            union.read();
+            List<String> result = new ArrayList<String>();
+            for (BugInstance bug : union.getBugs()) {
+                result.add(bug.getPrimaryClass().getClassName() + ":" + bug.getPrimarySourceLineAnnotation().getStartLine()
+                        + ":" + bug.getProperty("shard"));
+            }
+            assertEquals(2, union.getBugCollection().getErrors().size());
+            assertEquals(0, union.getBugCollection().getProjectStats().getTotalBugs());
+            return result;
+        } finally {
+            union.close();
+        }
+    }
+
+    public void testFirstShardWins() throws Exception {
+        // Same instance hashes, different lines
+        File first = shard("first", bug("a.B", 1, "1"), bug("b.C", 5, "1"));
+        File second = shard("second", bug("c.D", 3, "2"), bug("a.B", 2, "2"), bug("b.C", 5, "2"));
+        List<String> expected = Arrays.asList("a.B:1:1", "b.C:5:1", "c.D:3:2");
+        assertEquals(expected, union(1, first, second));
+        assertEquals(expected, union(2, first, second));
+    }
+
+    public void testUnreadShard() throws Exception {
+        File first = shard("first", bug("a.B", 1, "1"));
+        File missing = new File(first.getPath() + ".missing");
+        File second = shard("second", bug("a.B", 2, "2"));
+        BugCollectionUnion union = new BugCollectionUnion(Arrays.asList(missing, first, second),
+                EnumSet.noneOf(BugCollectionStreamReader.Skip.class), 2);
+        try {
+            union.read();
+            assertEquals(Arrays.asList(missing), union.getUnreadFiles());
+            int count = 0;
+            for (BugInstance bug : union.getBugs()) {
+                assertEquals("1", bug.getProperty("shard"));
+                count++;
+            }
+            assertEquals(1, count);
+        } finally {
+            union.close();
+        }
+    }
+}
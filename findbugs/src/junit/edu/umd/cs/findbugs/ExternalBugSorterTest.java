@@ -0,0 +1,116 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ExternalBugSorterTest extends TestCase {
+
+    private static BugInstance bug(String className, int line) {
+        BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY).addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, className + ".java", line, line, -1, -1));
+        return bug;
+    }
+
+    private static List<String> sort(int runSize, BugInstance... bugs) throws Exception {
+        ExternalBugSorter sorter = new ExternalBugSorter(SortedBugCollection.MultiversionBugInstanceComparator.instance,
+                runSize);
+        try {
+            for (BugInstance bug : bugs) {
+                sorter.add(bug);
+            }
+            List<String> result = new ArrayList<String>();
+            for (BugInstance bug : sorter.getSortedBugs()) {
+                result.add(bug.getPrimaryClass().getClassName() + ":" + bug.getPrimarySourceLineAnnotation().getStartLine()
+                        + ":" + bug.getPriority());
+            }
+            // A second iteration reads the same bugs
+            int count = 0;
+            for (BugInstance bug : sorter.getSortedBugs()) {
+                assertNotNull(bug);
+                count++;
+            }
+            assertEquals(result.size(), count);
+            return result;
+        } finally {
+            sorter.close();
+        }
+    }
+
+    private static BugInstance[] bugs() {
+        BugInstance duplicate = bug("a.B", 2);
+        duplicate.setPriority(Priorities.HIGH_PRIORITY);
+        return new BugInstance[] { bug("c.D", 1), bug("a.B", 2), bug("b.C", 5), bug("a.B", 1), bug("c.D", 7), duplicate,
+                bug("a.A", 3) };
+    }
+
+    public void testInMemory() throws Exception {
+        List<String> sorted = sort(100, bugs());
+        assertEquals(sorted, sort(ExternalBugSorter.DEFAULT_RUN_SIZE, bugs()));
+        assertEquals("[a.A:3:2, a.B:2:1, a.B:1:2, a.B:2:2, b.C:5:2, c.D:1:2, c.D:7:2]", sorted.toString());
+    }
+
+    public void testSpilledRunsAreMerged() throws Exception {
+        assertEquals(sort(100, bugs()), sort(2, bugs()));
+        assertEquals(sort(100, bugs()), sort(1, bugs()));
+    }
+
+    public void testFirstDuplicateKept() throws Exception {
+        BugInstance first = bug("a.B", 2);
+        first.setProperty("first", "true");
+        ExternalBugSorter sorter = new ExternalBugSorter(SortedBugCollection.MultiversionBugInstanceComparator.instance, 1);
+        try {
+            sorter.add(bug("a.B", 1));
+            sorter.add(first);
+            sorter.add(bug("a.B", 2));
+            assertEquals(3, sorter.getNumRuns());
+            int count = 0;
+            for (BugInstance bug : sorter.getSortedBugs()) {
+                if (bug.getPrimarySourceLineAnnotation().getStartLine() == 2) {
+                    assertEquals("true", bug.getProperty("first"));
+                }
+                count++;
+            }
+            assertEquals(2, count);
+        } finally {
+            sorter.close();
+        }
+    }
+
+    public void testMerge() throws Exception {
+        BugInstance first = bug("a.B", 2);
+        first.setProperty("first", "true");
+        List<BugInstance> a = Arrays.asList(bug("a.A", 3), first, bug("c.D", 1));
+        List<BugInstance> b = Arrays.asList(bug("a.B", 1), bug("a.B", 2), bug("b.C", 5));
+        List<String> result = new ArrayList<String>();
+        for (BugInstance bug : ExternalBugSorter.merge(SortedBugCollection.MultiversionBugInstanceComparator.instance,
+                Arrays.asList(a, b, new ArrayList<BugInstance>()))) {
+            result.add(bug.getPrimaryClass().getClassName() + ":" + bug.getPrimarySourceLineAnnotation().getStartLine());
+            if (bug.getPrimarySourceLineAnnotation().getStartLine() == 2) {
+                assertEquals("true", bug.getProperty("first"));
+            }
+        }
+        assertEquals("[a.A:3, a.B:1, a.B:2, b.C:5, c.D:1]", result.toString());
+    }
+}
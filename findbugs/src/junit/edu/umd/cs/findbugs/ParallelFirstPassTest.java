@@ -0,0 +1,91 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.interproc.PropertyDatabase;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.IClassObserver;
+import edu.umd.cs.findbugs.config.UserPreferences;
+
+/**
+ * Check that analyzing the first pass with several threads computes the same
+ * interprocedural databases as a single-threaded analysis.
+ */
+public class ParallelFirstPassTest extends TestCase {
+
+    private static final String CORPUS = "lib/jdepend-2.9.jar";
+
+    private PropertyDatabase<?, ?> returnValueDatabase;
+
+    private PropertyDatabase<?, ?> derefParamDatabase;
+
+    private void analyze(int numberOfThreads) throws Exception {
+        FindBugs2 engine = new FindBugs2();
+        Project project = new Project();
+        project.addFile(CORPUS);
+        engine.setProject(project);
+        engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+        BugCollectionBugReporter bugReporter = new BugCollectionBugReporter(project);
+        bugReporter.setPriorityThreshold(Priorities.LOW_PRIORITY);
+        engine.setBugReporter(bugReporter);
+        engine.setUserPreferences(UserPreferences.createDefaultUserPreferences());
+        engine.setAnalysisFeatureSettings(FindBugs.MAX_EFFORT);
+        engine.setNumberOfThreads(numberOfThreads);
+        returnValueDatabase = null;
+        derefParamDatabase = null;
+        engine.addClassObserver(new IClassObserver() {
+            @Override
+            public void observeClass(ClassDescriptor classDescriptor) {
+                // The databases can only be reached while the analysis runs
+                AnalysisContext analysisContext = AnalysisContext.currentAnalysisContext();
+                returnValueDatabase = analysisContext.getReturnValueNullnessPropertyDatabase();
+                derefParamDatabase = analysisContext.getUnconditionalDerefParamDatabase();
+            }
+        });
+        engine.execute();
+        assertNotNull(returnValueDatabase);
+        assertNotNull(derefParamDatabase);
+    }
+
+    private static Map<String, String> entries(PropertyDatabase<?, ?> database) {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<?, ?> entry : database.entrySet()) {
+            result.put(entry.getKey().toString(), String.valueOf(entry.getValue()));
+        }
+        return result;
+    }
+
+    public void testSameDatabases() throws Exception {
+        analyze(1);
+        Map<String, String> returnValues = entries(returnValueDatabase);
+        Map<String, String> derefParams = entries(derefParamDatabase);
+        assertFalse(returnValues.isEmpty());
+        assertFalse(derefParams.isEmpty());
+
+        analyze(3);
+        assertEquals(returnValues, entries(returnValueDatabase));
+        assertEquals(derefParams, entries(derefParamDatabase));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.io.IO;
+
+/**
+ * Check that sharing bytecode scanning work between detectors reports the
+ * same warnings as letting each detector scan each method on its own. The
+ * sharing is chosen by system properties read once per JVM, so each setting is
+ * analyzed by a JVM of its own.
+ */
+public class SharedScanningTest extends TestCase {
+
+    private static final String CORPUS = "lib/jdepend-2.9.jar";
+
+    /** XML output of the analysis without sharing */
+    private static String unshared;
+
+    private static String analyze(String... systemProperties) throws Exception {
+        File output = File.createTempFile("findbugs", ".xml");
+        try {
+            List<String> command = new ArrayList<String>();
+            command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            for (String property : systemProperties) {
+                command.add("-D" + property);
+            }
+            command.add(FindBugs2.class.getName());
+            command.addAll(Arrays.asList("-low", "-xml", "-output", output.getPath(), CORPUS));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String log = new String(IO.readAll(process.getInputStream()), "UTF-8");
+            assertEquals(log, 0, process.waitFor());
+            return StreamingXMLBugReporterTest.normalize(new String(Files.readAllBytes(output.toPath()), "UTF-8"));
+        } finally {
+            output.delete();
+        }
+    }
+
+    private static void checkSameWarnings(String... systemProperties) throws Exception {
+        if (unshared == null) {
+            unshared = analyze();
+            assertTrue(unshared.contains("<BugInstance "));
+        }
+        assertEquals(unshared, analyze(systemProperties));
+    }
+
+    public void testSharedStackStates() throws Exception {
+        checkSameWarnings("ocstack.shareStates=true");
+    }
+
+    public void testSharedDecodedBytecode() throws Exception {
+        checkSameWarnings("findbugs.shareDecodedBytecode=true");
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.config.UserPreferences;
+
+/**
+ * Check that streaming the XML output (-streamXML) writes the same document
+ * as XMLBugReporter.
+ */
+public class StreamingXMLBugReporterTest extends TestCase {
+
+    private static final String CORPUS = "lib/jdepend-2.9.jar";
+
+    /** Small enough for the warnings to be spilled to several runs */
+    private static final int RUN_SIZE = 7;
+
+    private String analyze(XMLBugReporter bugReporter, boolean withMessages) throws Exception {
+        FindBugs2 engine = new FindBugs2();
+        Project project = bugReporter.getProject();
+        project.addFile(CORPUS);
+        engine.setProject(project);
+        engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bugReporter.setOutputStream(UTF8.printStream(out));
+        bugReporter.setAddMessages(withMessages);
+        bugReporter.setPriorityThreshold(Priorities.LOW_PRIORITY);
+        engine.setBugReporter(bugReporter);
+        engine.setUserPreferences(UserPreferences.createDefaultUserPreferences());
+        engine.execute();
+        return normalize(new String(out.toByteArray(), "UTF-8"));
+    }
+
+    /**
+     * Remove the parts of the document which depend on when and how fast the
+     * analysis ran.
+     */
+    static String normalize(String xml) {
+        return xml.replaceAll("(?s)<FindBugsProfile>.*</FindBugsProfile>", "")
+                .replaceAll(" (timestamp|analysisTimestamp|clock_seconds|cpu_seconds|gc_seconds|peak_mbytes|alloc_mbytes)=\"[^\"]*\"", "");
+    }
+
+    private void checkSameXML(boolean withMessages) throws Exception {
+        String expected = analyze(new XMLBugReporter(new Project()), withMessages);
+        String streamed = analyze(new StreamingXMLBugReporter(new Project(), RUN_SIZE), withMessages);
+        assertTrue(expected.split("<BugInstance ").length > RUN_SIZE + 1);
+        assertEquals(expected, streamed);
+    }
+
+    public void testSameXML() throws Exception {
+        checkSameXML(false);
+    }
+
+    public void testSameXMLWithMessages() throws Exception {
+        checkSameXML(true);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import junit.framework.TestCase;
+
+public class AnalysisBudgetTest extends TestCase {
+
+    private final Object detector = new Object();
+
+    private AnalysisBudget previous;
+
+    @Override
+    protected void setUp() throws Exception {
+        // Any CPU time used exceeds the budget
+        previous = AnalysisBudget.enter(new AnalysisBudget(detector, "TestDetector", 1, 0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AnalysisBudget.exit(previous);
+    }
+
+    private static void spin() {
+        for (int i = 0; i < 100000; i++) {
+            AnalysisBudget.checkpoint();
+        }
+    }
+
+    public void testExceeded() {
+        assertTrue(AnalysisBudget.startMethod(detector, null));
+        long end = System.currentTimeMillis() + 10000;
+        try {
+            while (System.currentTimeMillis() < end) {
+                spin();
+            }
+            fail("budget not enforced");
+        } catch (AnalysisBudgetExceededException e) {
+            assertEquals("TestDetector", e.getDetectorName());
+            assertNull(e.getMethod());
+        }
+    }
+
+    public void testOtherDetector() {
+        assertFalse(AnalysisBudget.startMethod(new Object(), null));
+    }
+
+    public void testEngineChargedButNotAborted() {
+        assertTrue(AnalysisBudget.startMethod(detector, null));
+        AnalysisBudget budget = AnalysisBudget.startEngine();
+        try {
+            spin();
+        } finally {
+            AnalysisBudget.endEngine(budget);
+        }
+        try {
+            AnalysisBudget.checkpoint();
+            fail("engine time not charged");
+        } catch (AnalysisBudgetExceededException e) {
+            assertEquals("TestDetector", e.getDetectorName());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Bytecode Analysis Framework
+ * Copyright (C) 2003-2007 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.MethodGen;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IClassObserver;
+import edu.umd.cs.findbugs.config.UserPreferences;
+
+/**
+ * Check that solving dataflow analyses with a worklist computes the same
+ * facts as sweeping over all blocks until nothing changes, for a forward and
+ * a backward analysis of every method of a real program.
+ */
+public class DataflowTest extends TestCase {
+
+    private static final String CORPUS = "lib/jdepend-2.9.jar";
+
+    private final Set<ClassDescriptor> comparedClasses = new HashSet<ClassDescriptor>();
+
+    private final List<String> differences = new ArrayList<String>();
+
+    private int methodsWithLoops;
+
+    private int methodsWithExceptionEdges;
+
+    private static <Fact, AnalysisType extends DataflowAnalysis<Fact>> Map<Integer, String> solve(CFG cfg,
+            AnalysisType analysis, boolean useWorklist) throws DataflowAnalysisException {
+        Dataflow<Fact, AnalysisType> dataflow = new Dataflow<Fact, AnalysisType>(cfg, analysis);
+        dataflow.setUseWorklist(useWorklist);
+        dataflow.execute();
+        Map<Integer, String> facts = new TreeMap<Integer, String>();
+        for (Iterator<BasicBlock> i = cfg.blockIterator(); i.hasNext();) {
+            BasicBlock block = i.next();
+            facts.put(block.getLabel(), analysis.factToString(analysis.getStartFact(block)) + " -> "
+                    + analysis.factToString(analysis.getResultFact(block)));
+        }
+        return facts;
+    }
+
+    private void compareSolvers(ClassContext classContext, Method method) throws Exception {
+        CFG cfg = classContext.getCFG(method);
+        DepthFirstSearch dfs = classContext.getDepthFirstSearch(method);
+        ReverseDepthFirstSearch rdfs = classContext.getReverseDepthFirstSearch(method);
+        MethodGen methodGen = classContext.getMethodGen(method);
+        if (methodGen == null) {
+            return;
+        }
+        if (dfs.containsCycle()) {
+            methodsWithLoops++;
+        }
+        for (Iterator<Edge> i = cfg.edgeIterator(); i.hasNext();) {
+            if (i.next().isExceptionEdge()) {
+                methodsWithExceptionEdges++;
+                break;
+            }
+        }
+
+        String methodName = classContext.getJavaClass().getClassName() + "." + method.getName() + method.getSignature();
+        Map<Integer, String> sweep = solve(cfg, new DominatorsAnalysis(cfg, dfs, false), false);
+        Map<Integer, String> worklist = solve(cfg, new DominatorsAnalysis(cfg, dfs, false), true);
+        if (!sweep.equals(worklist)) {
+            differences.add("dominators of " + methodName + ": " + sweep + " != " + worklist);
+        }
+        sweep = solve(cfg, new LiveLocalStoreAnalysis(methodGen, rdfs, dfs), false);
+        worklist = solve(cfg, new LiveLocalStoreAnalysis(methodGen, rdfs, dfs), true);
+        if (!sweep.equals(worklist)) {
+            differences.add("live stores of " + methodName + ": " + sweep + " != " + worklist);
+        }
+    }
+
+    public void testWorklistComputesSameFacts() throws Exception {
+        FindBugs2 engine = new FindBugs2();
+        Project project = new Project();
+        project.addFile(CORPUS);
+        engine.setProject(project);
+        engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+        BugCollectionBugReporter bugReporter = new BugCollectionBugReporter(project);
+        bugReporter.setPriorityThreshold(Priorities.NORMAL_PRIORITY);
+        engine.setBugReporter(bugReporter);
+        engine.setUserPreferences(UserPreferences.createDefaultUserPreferences());
+        engine.setAnalysisFeatureSettings(FindBugs.DEFAULT_EFFORT);
+        engine.addClassObserver(new IClassObserver() {
+            @Override
+            public void observeClass(ClassDescriptor classDescriptor) {
+                // Control flow graphs can only be built while the analysis runs
+                if (!comparedClasses.add(classDescriptor)) {
+                    return;
+                }
+                try {
+                    ClassContext classContext = Global.getAnalysisCache().getClassAnalysis(ClassContext.class,
+                            classDescriptor);
+                    for (Method method : classContext.getJavaClass().getMethods()) {
+                        if (method.getCode() != null) {
+                            compareSolvers(classContext, method);
+                        }
+                    }
+                } catch (Exception e) {
+                    differences.add(classDescriptor + ": " + e);
+                }
+            }
+        });
+        engine.execute();
+
+        assertFalse(comparedClasses.isEmpty());
+        assertTrue(methodsWithLoops > 0);
+        assertTrue(methodsWithExceptionEdges > 0);
+        assertEquals(new ArrayList<String>(), differences);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Bytecode Analysis Framework
+ * Copyright (C) 2003,2004 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FrameTest extends TestCase {
+
+    static class StringFrame extends Frame<String> {
+        StringFrame(int numLocals) {
+            super(numLocals);
+        }
+    }
+
+    private StringFrame frame;
+
+    @Override
+    protected void setUp() throws Exception {
+        frame = new StringFrame(2);
+        frame.setValue(0, "a");
+        frame.setValue(1, "b");
+        frame.pushValue("c");
+    }
+
+    public void testCopyIsIndependent() throws Exception {
+        StringFrame copy = new StringFrame(2);
+        copy.copyFrom(frame);
+        assertTrue(copy.sameAs(frame));
+
+        copy.setValue(0, "x");
+        copy.pushValue("d");
+        assertEquals("a", frame.getValue(0));
+        assertEquals(3, frame.getNumSlots());
+        assertEquals("x", copy.getValue(0));
+        assertEquals(4, copy.getNumSlots());
+
+        frame.setValue(1, "y");
+        assertEquals("b", copy.getValue(1));
+        assertFalse(copy.sameAs(frame));
+    }
+
+    public void testPopFromSharedFrame() throws Exception {
+        StringFrame copy = new StringFrame(2);
+        copy.copyFrom(frame);
+
+        assertEquals("c", copy.popValue());
+        copy.pushValue("d");
+        assertEquals("c", frame.getTopValue());
+        assertEquals("d", copy.getTopValue());
+
+        frame.clearStack();
+        assertEquals(0, frame.getStackDepth());
+        assertEquals("d", copy.getTopValue());
+    }
+
+    public void testCopiesOfCopiesAreIndependent() throws Exception {
+        StringFrame copy = new StringFrame(2);
+        copy.copyFrom(frame);
+        StringFrame copyOfCopy = new StringFrame(2);
+        copyOfCopy.copyFrom(copy);
+
+        frame.setValue(0, "x");
+        copy.setValue(0, "y");
+        assertEquals("x", frame.getValue(0));
+        assertEquals("y", copy.getValue(0));
+        assertEquals("a", copyOfCopy.getValue(0));
+
+        copyOfCopy.setValue(1, "z");
+        assertEquals("b", frame.getValue(1));
+        assertEquals("b", copy.getValue(1));
+    }
+
+    public void testStackGrowth() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            frame.pushValue(Integer.toString(i));
+        }
+        assertEquals(21, frame.getStackDepth());
+        assertEquals("19", frame.getTopValue());
+        assertEquals("c", frame.getStackValue(20));
+        assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(frame.allSlots()).subList(0, 3));
+    }
+
+    public void testSlotOutOfRange() {
+        try {
+            frame.getValue(3);
+            fail("expected an exception");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+import edu.umd.cs.findbugs.config.AnalysisFeatureSetting;
+
+public class InterproceduralDatabaseCacheTest extends TestCase {
+
+    IClassPath classPath;
+
+    Collection<Plugin> plugins;
+
+    @Override
+    protected void setUp() throws Exception {
+        classPath = ClassFactory.instance().createClassPath();
+        plugins = DetectorFactoryCollection.instance().plugins();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        classPath.close();
+    }
+
+    private String key(Collection<Plugin> p, AnalysisFeatureSetting[] settings, String trainingInputDir)
+            throws IOException {
+        return InterproceduralDatabaseCache.computeKey(classPath, p, settings, trainingInputDir);
+    }
+
+    public void testSameSettingsSameKey() throws IOException {
+        assertEquals(key(plugins, FindBugs.MAX_EFFORT, null), key(plugins, FindBugs.MAX_EFFORT, null));
+    }
+
+    public void testKeyDependsOnPlugins() throws IOException {
+        assertFalse(plugins.isEmpty());
+        assertFalse(key(plugins, FindBugs.MAX_EFFORT, null).equals(
+                key(Collections.<Plugin> emptyList(), FindBugs.MAX_EFFORT, null)));
+    }
+
+    public void testKeyDependsOnFeatureSettings() throws IOException {
+        assertFalse(key(plugins, FindBugs.MAX_EFFORT, null).equals(key(plugins, FindBugs.DEFAULT_EFFORT, null)));
+    }
+
+    public void testKeyDependsOnTrainingDatabases() throws IOException {
+        File dir = File.createTempFile("training", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        File db = new File(dir, AnalysisContext.NONNULL_RETURN_DB_FILENAME);
+        try {
+            String empty = key(plugins, FindBugs.MAX_EFFORT, dir.getPath());
+            assertFalse(empty.equals(key(plugins, FindBugs.MAX_EFFORT, null)));
+            FileOutputStream out = new FileOutputStream(db);
+            try {
+                out.write("java.lang.Object,toString,()Ljava/lang/String;,1|true\n".getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            assertFalse(empty.equals(key(plugins, FindBugs.MAX_EFFORT, dir.getPath())));
+        } finally {
+            db.delete();
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MappedPropertyTableTest extends TestCase {
+
+    MappedPropertyTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        List<String[]> entries = new ArrayList<String[]>();
+        entries.add(new String[] { "java.lang.String,valueOf,(Ljava/lang/Object;)Ljava/lang/String;,9", "true" });
+        entries.add(new String[] { "java.lang.Object,toString,()Ljava/lang/String;,1", "true" });
+        entries.add(new String[] { "java.lang.Object,equals,(Ljava/lang/Object;)Z,1", "1" });
+        entries.add(new String[] { "java.lang.Object,equals,(Ljava/lang/Object;)Z,1", "2" });
+        entries.add(new String[] { "java.util.\u00c4,f,I,8", "false" });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappedPropertyTable.write(entries, out);
+        byte[] bytes = out.toByteArray();
+        assertTrue(MappedPropertyTable.isBinaryFormat(bytes, bytes.length));
+        table = MappedPropertyTable.read(new ByteArrayInputStream(bytes));
+    }
+
+    public void testLookup() {
+        assertEquals(4, table.size());
+        assertEquals("true", table.lookup("java.lang.String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;", true));
+        assertEquals("true", table.lookup("java.lang.Object", "toString", "()Ljava/lang/String;", false));
+        assertEquals("false", table.lookup("java.util.\u00c4", "f", "I", true));
+        assertNull(table.lookup("java.lang.String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;", false));
+        assertNull(table.lookup("java.lang.Object", "hashCode", "()I", false));
+    }
+
+    public void testLastDuplicateWins() {
+        assertEquals("2", table.lookup("java.lang.Object", "equals", "(Ljava/lang/Object;)Z", false));
+    }
+
+    public void testEntries() {
+        List<String[]> entries = table.getEntries();
+        assertEquals(4, entries.size());
+        assertEquals("java.lang.Object,equals,(Ljava/lang/Object;)Z,1", entries.get(0)[0]);
+        assertEquals("java.lang.String,valueOf,(Ljava/lang/Object;)Ljava/lang/String;,9", entries.get(2)[0]);
+        assertEquals("java.util.\u00c4,f,I,8", entries.get(3)[0]);
+    }
+
+    public void testNotBinary() {
+        byte[] text = "java.lang.Object,toString".getBytes();
+        assertFalse(MappedPropertyTable.isBinaryFormat(text, text.length));
+        assertFalse(MappedPropertyTable.isBinaryFormat(new byte[0], 0));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.ba.interproc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+public class PropertyDatabaseTest extends TestCase {
+
+    static class CountingDatabase extends MethodPropertyDatabase<StringBuilder> {
+        int decoded;
+
+        @Override
+        protected StringBuilder decodeProperty(String propStr) {
+            decoded++;
+            return new StringBuilder(propStr);
+        }
+
+        @Override
+        protected String encodeProperty(StringBuilder property) {
+            return property.toString();
+        }
+    }
+
+    CountingDatabase database;
+
+    MethodDescriptor toString = DescriptorFactory.instance().getMethodDescriptor("java/lang/Object", "toString",
+            "()Ljava/lang/String;", false);
+
+    MethodDescriptor hashCode = DescriptorFactory.instance().getMethodDescriptor("java/lang/Object", "hashCode", "()I",
+            false);
+
+    @Override
+    protected void setUp() throws Exception {
+        List<String[]> entries = new ArrayList<String[]>();
+        entries.add(new String[] { "java.lang.Object,toString,()Ljava/lang/String;,1", "a" });
+        entries.add(new String[] { "java.lang.Object,equals,(Ljava/lang/Object;)Z,1", "b" });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappedPropertyTable.write(entries, out);
+        database = new CountingDatabase();
+        database.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    public void testLookupDecodesOnce() {
+        StringBuilder property = database.getProperty(toString);
+        assertEquals("a", property.toString());
+        assertSame(property, database.getProperty(toString));
+        assertNull(database.getProperty(hashCode));
+        assertNull(database.getProperty(hashCode));
+        assertEquals(1, database.decoded);
+    }
+
+    public void testDecodeTableKeepsLookedUpProperties() {
+        StringBuilder property = database.getProperty(toString);
+        assertEquals(2, database.getKeys().size());
+        assertEquals(2, database.decoded);
+        assertSame(property, database.getProperty(toString));
+    }
+}
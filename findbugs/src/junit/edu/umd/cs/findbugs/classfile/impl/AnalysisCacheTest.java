@@ -0,0 +1,132 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassAnalysisEngine;
+import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
+
+public class AnalysisCacheTest extends TestCase {
+
+    /** Longer than the time a thread used to wait for another one */
+    private static final long COMPUTATION_MILLIS = 2500;
+
+    private AnalysisCache analysisCache;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        analysisCache = new AnalysisCache(new ClassPathImpl(), new PrintingBugReporter());
+    }
+
+    private Object slowComputation() {
+        computations.incrementAndGet();
+        started.countDown();
+        try {
+            Thread.sleep(COMPUTATION_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new Object();
+    }
+
+    /**
+     * Get a result in another thread, and again in this thread while the
+     * other thread computes it.
+     */
+    private void checkComputedOnce(final Request request) throws Exception {
+        final Object[] other = new Object[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    other[0] = request.call();
+                } catch (CheckedAnalysisException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        thread.start();
+        started.await();
+        Object result = request.call();
+        thread.join();
+        assertSame(other[0], result);
+        assertEquals(1, computations.get());
+    }
+
+    private interface Request {
+        Object call() throws CheckedAnalysisException;
+    }
+
+    public void testClassAnalysisComputedOnce() throws Exception {
+        analysisCache.registerClassAnalysisEngine(Object.class, new IClassAnalysisEngine<Object>() {
+            @Override
+            public Object analyze(IAnalysisCache cache, ClassDescriptor descriptor) {
+                return slowComputation();
+            }
+
+            @Override
+            public void registerWith(IAnalysisCache cache) {
+            }
+
+            @Override
+            public boolean canRecompute() {
+                return true;
+            }
+        });
+        final ClassDescriptor classDescriptor = DescriptorFactory.createClassDescriptor("p/A");
+        checkComputedOnce(new Request() {
+            @Override
+            public Object call() throws CheckedAnalysisException {
+                return analysisCache.getClassAnalysis(Object.class, classDescriptor);
+            }
+        });
+    }
+
+    public void testDatabaseCreatedOnce() throws Exception {
+        analysisCache.registerDatabaseFactory(Object.class, new IDatabaseFactory<Object>() {
+            @Override
+            public Object createDatabase() {
+                return slowComputation();
+            }
+
+            @Override
+            public void registerWith(IAnalysisCache cache) {
+            }
+        });
+        checkComputedOnce(new Request() {
+            @Override
+            public Object call() {
+                return analysisCache.getDatabase(Object.class);
+            }
+        });
+    }
+}
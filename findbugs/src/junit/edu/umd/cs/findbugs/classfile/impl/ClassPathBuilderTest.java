@@ -0,0 +1,109 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.NoOpFindBugsProgress;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
+import edu.umd.cs.findbugs.classfile.ICodeBase;
+import edu.umd.cs.findbugs.classfile.IErrorLogger;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+
+public class ClassPathBuilderTest extends TestCase {
+
+    private File auxDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        auxDir = Files.createTempDirectory("aux").toFile();
+        Files.copy(new File("lib/jdepend-2.9.jar").toPath(), new File(auxDir, "jdepend.jar").toPath());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(auxDir, "jdepend.jar").delete();
+        auxDir.delete();
+    }
+
+    public void testNestedArchiveInAuxDirectory() throws Exception {
+        assertTrue(hasNestedArchive(true));
+    }
+
+    public void testNestedArchiveInLazyAuxDirectory() throws Exception {
+        assertTrue(hasNestedArchive(false));
+    }
+
+    private boolean hasNestedArchive(boolean scanAuxiliaryCodeBases) throws Exception {
+        IClassFactory classFactory = ClassFactory.instance();
+        IClassPath classPath = classFactory.createClassPath();
+        // Opening archives reports to the profiler of the analysis cache
+        Global.setAnalysisCacheForCurrentThread(new AnalysisCache(classPath, new PrintingBugReporter()));
+        try {
+            IClassPathBuilder builder = classFactory.createClassPathBuilder(new NoOpErrorLogger());
+            builder.addCodeBase(classFactory.createFilesystemCodeBaseLocator(auxDir.getPath()), false);
+            builder.scanNestedArchives(true);
+            builder.scanAuxiliaryCodeBases(scanAuxiliaryCodeBases);
+            builder.build(classPath, new NoOpFindBugsProgress());
+
+            for (Iterator<? extends ICodeBase> i = classPath.auxCodeBaseIterator(); i.hasNext();) {
+                ICodeBase codeBase = i.next();
+                if (codeBase.getHowDiscovered() == ICodeBase.Discovered.NESTED
+                        && codeBase.lookupResource("jdepend/framework/JDepend.class") != null) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            Global.removeAnalysisCacheForCurrentThread();
+            classPath.close();
+        }
+    }
+
+    private static class NoOpErrorLogger implements IErrorLogger {
+        @Override
+        public void reportMissingClass(ClassNotFoundException ex) {
+        }
+
+        @Override
+        public void reportMissingClass(ClassDescriptor classDescriptor) {
+        }
+
+        @Override
+        public void logError(String message) {
+        }
+
+        @Override
+        public void logError(String message, Throwable e) {
+        }
+
+        @Override
+        public void reportSkippedAnalysis(MethodDescriptor method) {
+        }
+    }
+}
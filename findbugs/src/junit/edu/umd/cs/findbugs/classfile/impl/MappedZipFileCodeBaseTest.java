@@ -0,0 +1,144 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.classfile.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ICodeBaseIterator;
+import edu.umd.cs.findbugs.io.IO;
+
+public class MappedZipFileCodeBaseTest extends TestCase {
+
+    private File zipFile;
+
+    private final byte[] stored = "stored contents".getBytes();
+
+    private final byte[] deflated = new byte[10000];
+
+    @Override
+    protected void setUp() throws Exception {
+        for (int i = 0; i < deflated.length; i++) {
+            deflated[i] = (byte) (i % 31);
+        }
+        zipFile = File.createTempFile("mapped", ".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.closeEntry();
+
+            ZipEntry entry = new ZipEntry("dir/Stored.class");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(stored);
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("Deflated.class"));
+            out.write(deflated);
+            out.closeEntry();
+            out.setComment("comment");
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        zipFile.delete();
+    }
+
+    public void testLookupResource() throws IOException {
+        MappedZipFileCodeBase codeBase = new MappedZipFileCodeBase(null, zipFile);
+        try {
+            MappedZipFileCodeBaseEntry entry = (MappedZipFileCodeBaseEntry) codeBase.lookupResource("dir/Stored.class");
+            assertEquals(stored.length, entry.getNumBytes());
+            assertTrue(Arrays.equals(stored, entry.getBytes()));
+            assertTrue(Arrays.equals(stored, IO.readAll(entry.openResource())));
+
+            entry = (MappedZipFileCodeBaseEntry) codeBase.lookupResource("Deflated.class");
+            assertEquals(deflated.length, entry.getNumBytes());
+            assertTrue(Arrays.equals(deflated, entry.getBytes()));
+
+            assertNull(codeBase.lookupResource("Missing.class"));
+        } finally {
+            codeBase.close();
+        }
+        assertNull(codeBase.lookupResource("Deflated.class"));
+    }
+
+    public void testEntryUnreadableAfterClose() throws IOException {
+        MappedZipFileCodeBase codeBase = new MappedZipFileCodeBase(null, zipFile);
+        MappedZipFileCodeBaseEntry entry = (MappedZipFileCodeBaseEntry) codeBase.lookupResource("dir/Stored.class");
+        InputStream in = entry.openResource();
+        codeBase.close();
+        codeBase.close();
+        assertTrue(Arrays.equals(stored, IO.readAll(in)));
+        try {
+            entry.getBytes();
+            fail("expected an exception");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testIteratorSkipsDirectories() throws Exception {
+        MappedZipFileCodeBase codeBase = new MappedZipFileCodeBase(null, zipFile);
+        try {
+            List<String> names = new ArrayList<String>();
+            for (ICodeBaseIterator i = codeBase.iterator(); i.hasNext();) {
+                ICodeBaseEntry entry = i.next();
+                names.add(entry.getResourceName());
+            }
+            assertEquals(Arrays.asList("dir/Stored.class", "Deflated.class"), names);
+            assertTrue(codeBase.getLastModifiedTime() > 0);
+        } finally {
+            codeBase.close();
+        }
+    }
+
+    public void testNotAZipFile() throws IOException {
+        File file = File.createTempFile("notazip", ".jar");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("not a zip file".getBytes());
+            out.close();
+            new MappedZipFileCodeBase(null, file);
+            fail("expected an exception");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.detect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.IClassObserver;
+import edu.umd.cs.findbugs.config.UserPreferences;
+
+/**
+ * Check that the empty array fields found by {@link CalledMethods} do not
+ * depend on the number of threads, or on the order in which classes are
+ * analyzed, when a field is initialized from an empty array field of another
+ * class.
+ */
+public class CalledMethodsTest extends TestCase {
+
+    private static final int NUMBER_OF_CLASSES = 8;
+
+    private static final String OBJECT_ARRAY = "[Ljava/lang/Object;";
+
+    private File classDir;
+
+    private volatile Set<String> emptyArrayFields;
+
+    @Override
+    protected void setUp() throws Exception {
+        classDir = File.createTempFile("calledMethods", "");
+        assertTrue(classDir.delete());
+        File sourceDir = new File(classDir, "emptyarrays");
+        assertTrue(sourceDir.mkdirs());
+
+        // Each class copies the empty array of the next one, so that the
+        // copies run both against and along the analysis order
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("-source");
+        arguments.add("1.7");
+        arguments.add("-target");
+        arguments.add("1.7");
+        arguments.add("-nowarn");
+        arguments.add("-d");
+        arguments.add(classDir.getPath());
+        for (int i = 0; i < NUMBER_OF_CLASSES; i++) {
+            File source = new File(sourceDir, className(i) + ".java");
+            try (PrintWriter out = new PrintWriter(source, "UTF-8")) {
+                out.println("package emptyarrays;");
+                out.println("public class " + className(i) + " {");
+                out.println("    public static final Object[] EMPTY = new Object[0];");
+                out.println("    public static final Object[] COPY = "
+                        + className((i + 1) % NUMBER_OF_CLASSES) + ".EMPTY;");
+                out.println("    public static final Object[] NON_EMPTY = new Object[1];");
+                out.println("}");
+            }
+            arguments.add(source.getPath());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests need a JDK", compiler);
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(classDir);
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    private static String className(int i) {
+        return "C" + i;
+    }
+
+    private Set<String> emptyArrayFields(int numberOfThreads) throws Exception {
+        FindBugs2 engine = new FindBugs2();
+        Project project = new Project();
+        project.addFile(classDir.getPath());
+        engine.setProject(project);
+        engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+        BugCollectionBugReporter bugReporter = new BugCollectionBugReporter(project);
+        bugReporter.setPriorityThreshold(Priorities.LOW_PRIORITY);
+        engine.setBugReporter(bugReporter);
+        engine.setUserPreferences(UserPreferences.createDefaultUserPreferences());
+        engine.setAnalysisFeatureSettings(FindBugs.DEFAULT_EFFORT);
+        engine.setNumberOfThreads(numberOfThreads);
+        emptyArrayFields = null;
+        engine.addClassObserver(new IClassObserver() {
+            @Override
+            public void observeClass(ClassDescriptor classDescriptor) {
+                // Fields can only be looked up while the analysis runs
+                Set<String> result = new TreeSet<String>();
+                XFactory xFactory = AnalysisContext.currentXFactory();
+                for (int i = 0; i < NUMBER_OF_CLASSES; i++) {
+                    String className = "emptyarrays/" + className(i);
+                    for (String fieldName : new String[] { "EMPTY", "COPY", "NON_EMPTY" }) {
+                        if (xFactory.isEmptyArrayField(XFactory.createXFieldUsingSlashedClassName(className, fieldName,
+                                OBJECT_ARRAY, true))) {
+                            result.add(className + "." + fieldName);
+                        }
+                    }
+                }
+                emptyArrayFields = result;
+            }
+        });
+        engine.execute();
+        assertNotNull(emptyArrayFields);
+        return emptyArrayFields;
+    }
+
+    public void testSameEmptyArrayFields() throws Exception {
+        Set<String> expected = new TreeSet<String>();
+        for (int i = 0; i < NUMBER_OF_CLASSES; i++) {
+            expected.add("emptyarrays/" + className(i) + ".EMPTY");
+            expected.add("emptyarrays/" + className(i) + ".COPY");
+        }
+        assertEquals(expected, emptyArrayFields(1));
+        assertEquals(expected, emptyArrayFields(3));
+    }
+}
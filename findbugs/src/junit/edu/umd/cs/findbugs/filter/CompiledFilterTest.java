@@ -0,0 +1,131 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.filters.StringInputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.MethodAnnotation;
+
+public class CompiledFilterTest {
+
+    private static final String FILTER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<FindBugsFilter>\n"
+            + "<Match><Class name=\"p.Exact\"/><Method name=\"m\"/></Match>\n"
+            + "<Match><Class name=\"~q\\.sub\\..*\"/><Bug pattern=\"NP_NULL_ON_SOME_PATH\"/></Match>\n"
+            + "<Match><Class name=\"~.*Test\"/></Match>\n"
+            + "<Match><Class name=\"~(a|b)\\.X\"/></Match>\n"
+            + "<Match><Method name=\"onlyMethod\"/></Match>\n"
+            + "<Match><Bug code=\"Dm\" category=\"I18N\"/></Match>\n"
+            + "<Match><Class name=\"r.Role\" role=\"CLASS_REFTYPE\"/></Match>\n"
+            + "<Match><Not><Class name=\"~[pqr]\\..*\"/></Not></Match>\n"
+            + "<Match disabled=\"true\"><Class name=\"p.Disabled\"/></Match>\n"
+            + "</FindBugsFilter>\n";
+
+    private Filter filter;
+
+    private CompiledFilter compiled;
+
+    private final List<BugInstance> bugs = new ArrayList<BugInstance>();
+
+    @Before
+    public void setUp() throws Exception {
+        DetectorFactoryCollection.instance();
+        filter = new Filter(new StringInputStream(FILTER));
+        compiled = filter.compile();
+
+        String[] types = { "NP_NULL_ON_SOME_PATH", "DM_EXIT", "DM_DEFAULT_ENCODING", "UUF_UNUSED_FIELD" };
+        String[] classes = { "p.Exact", "p.Other", "q.sub.A", "q.subA", "q.FooTest", "a.X", "b.X", "c.X", "r.Role",
+                "p.Disabled", "z.Outside" };
+        String[] methods = { null, "m", "onlyMethod" };
+        for (String type : types) {
+            for (String className : classes) {
+                for (String method : methods) {
+                    BugInstance bug = new BugInstance(type, 2);
+                    if (method == null) {
+                        bug.addClass(className);
+                    } else {
+                        bug.addClassAndMethod(new MethodAnnotation(className, method, "()V", false));
+                    }
+                    bugs.add(bug);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameAsFilter() {
+        int matched = 0;
+        for (BugInstance bug : bugs) {
+            boolean expected = filter.match(bug);
+            assertEquals(bug.toString(), expected, compiled.match(bug));
+            if (expected) {
+                matched++;
+            }
+        }
+        assertTrue(matched > 0);
+        assertTrue(matched < bugs.size());
+    }
+
+    @Test
+    public void indexed() {
+        // Only the Not and the Class with a role are tried for every bug
+        assertEquals(2, compiled.getNumUnindexed());
+    }
+
+    @Test
+    public void disabled() {
+        BugInstance bug = new BugInstance("UUF_UNUSED_FIELD", 2).addClass("p.Disabled");
+        assertFalse(filter.match(bug));
+        assertFalse(compiled.match(bug));
+    }
+
+    @Test
+    public void literalPrefix() {
+        assertEquals("com.foo.", CompiledFilter.literalPrefix("com\\.foo\\..*"));
+        assertEquals("com.fo", CompiledFilter.literalPrefix("com\\.foo?"));
+        assertEquals("", CompiledFilter.literalPrefix(".*Test"));
+        assertEquals("", CompiledFilter.literalPrefix("com\\.a|org\\.b"));
+        assertEquals("", CompiledFilter.literalPrefix("(?i)com"));
+        assertEquals("a", CompiledFilter.literalPrefix("a\\d+"));
+        assertEquals("a$b", CompiledFilter.literalPrefix("a\\$b"));
+        assertEquals("", CompiledFilter.literalPrefix("\\Qa.b\\E"));
+    }
+
+    @Test
+    public void literalSuffix() {
+        assertEquals("Test", CompiledFilter.literalSuffix(".*Test"));
+        assertEquals("$1", CompiledFilter.literalSuffix(".*\\$1"));
+        assertEquals("", CompiledFilter.literalSuffix(".*Tests?"));
+        assertEquals("", CompiledFilter.literalSuffix(".*\\d"));
+        assertEquals("", CompiledFilter.literalSuffix("(?i).*test"));
+        assertEquals("", CompiledFilter.literalSuffix(".*\\x41"));
+        assertEquals("b", CompiledFilter.literalSuffix("[ab]{2}b"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.log;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class ProfileReportTest extends TestCase {
+
+    public void testHistogramPercentiles() {
+        ProfileReport.Histogram h = new ProfileReport.Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.add(i * 1000L);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000000L, h.getMax());
+        long p50 = h.getPercentile(0.5);
+        assertTrue(p50 >= 500000 && p50 < 500000 * 1.125);
+        long p95 = h.getPercentile(0.95);
+        assertTrue(p95 >= 950000 && p95 < 950000 * 1.125);
+        assertEquals(1000000L, h.getPercentile(1.0));
+    }
+
+    public void testSmallValues() {
+        ProfileReport.Histogram h = new ProfileReport.Histogram();
+        h.add(0);
+        h.add(3);
+        assertEquals(0, h.getPercentile(0.5));
+        assertEquals(3, h.getPercentile(1.0));
+        assertEquals(0, new ProfileReport.Histogram().getPercentile(0.5));
+    }
+
+    public void testMergeJSON() throws Exception {
+        ProfileReport report = new ProfileReport();
+        report.record("Detector\"1", "a.A", 2, 3000, 100, 4, 1);
+        report.record("Detector\"1", "a.B", 1, 9000, 50, 0, 2);
+        report.record("Engine", null, 1, 500, 0, 0, 0);
+
+        StringWriter json = new StringWriter();
+        report.writeJSON(json);
+        ProfileReport merged = ProfileReport.readJSON(new StringReader(json.toString()));
+        merged.merge(report);
+
+        assertEquals(2, merged.getRuns());
+        ProfileReport.ProfiledClass p = merged.getProfiledClasses().get(0);
+        assertEquals("Detector\"1", p.getName());
+        assertEquals(6, p.getCalls());
+        assertEquals(24000, p.getNanos());
+        assertEquals(300, p.getAllocatedBytes());
+        assertEquals(8, p.getCacheHits());
+        assertEquals(6, p.getCacheMisses());
+        assertEquals(4, p.getPerClassNanos().getCount());
+        assertEquals(9000, p.getPerClassNanos().getMax());
+        assertEquals("a.B", p.getMaxClass());
+        assertEquals(2, merged.getAnalyzedClasses().size());
+        assertEquals("a.B", merged.getAnalyzedClasses().get(0).getName());
+        assertEquals(18000, merged.getAnalyzedClasses().get(0).getNanos());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SimilarClassFinderTest extends TestCase {
+
+    private static ClassFeatureSet classFeatureSet(String className, boolean isInterface, String... features) {
+        ClassFeatureSet result = new ClassFeatureSet();
+        result.setClassName(className);
+        result.setInterface(isInterface);
+        for (String feature : features) {
+            result.addFeature(feature);
+        }
+        return result;
+    }
+
+    private static List<String> describe(Iterator<SimilarClassSet> i) {
+        List<String> result = new ArrayList<String>();
+        while (i.hasNext()) {
+            SimilarClassSet similarClassSet = i.next();
+            result.add(similarClassSet.getRepresentativeClassName() + ":" + similarClassSet.size());
+        }
+        return result;
+    }
+
+    public void testSimilarClasses() {
+        SimilarClassFinder finder = new SimilarClassFinder();
+        finder.add(classFeatureSet("p.A", false, "a", "b", "c", "d", "e"));
+        finder.add(classFeatureSet("q.A", false, "a", "b", "c", "d", "f"));
+        finder.add(classFeatureSet("p.B", false, "a", "b", "x", "y", "z"));
+        finder.add(classFeatureSet("p.C", false, "c"));
+        finder.add(classFeatureSet("p.C", false, "c", "u", "v", "w", "x", "y"));
+        finder.add(classFeatureSet("p.D", true, "a", "b", "c", "d", "e"));
+        assertEquals("[p.A:2, p.B:1, p.C:2, p.D:1]", describe(finder.similarClassSetIterator()).toString());
+    }
+
+    public void testMinMatchingFeatures() {
+        for (int n = 1; n < 1000; n++) {
+            int minMatch = SimilarClassFinder.getMinMatchingFeatures(n);
+            assertTrue((double) minMatch / (double) n >= ClassFeatureSet.MIN_MATCH);
+            assertTrue(minMatch == 1 || (double) (minMatch - 1) / (double) n < ClassFeatureSet.MIN_MATCH);
+        }
+    }
+
+    public void testSameSetsAsLinearSearch() {
+        Random random = new Random(42);
+        SimilarClassFinder finder = new SimilarClassFinder();
+        List<SimilarClassSet> expected = new ArrayList<SimilarClassSet>();
+        for (int i = 0; i < 3000; i++) {
+            int numFeatures = 1 + random.nextInt(12);
+            String[] features = new String[numFeatures];
+            for (int j = 0; j < numFeatures; j++) {
+                features[j] = "Method:m" + random.nextInt(25);
+            }
+            ClassFeatureSet classFeatureSet = classFeatureSet("C" + random.nextInt(40), random.nextInt(10) == 0, features);
+            finder.add(classFeatureSet);
+
+            SimilarClassSet similarClassSet = null;
+            for (SimilarClassSet s : expected) {
+                if (s.shouldContain(classFeatureSet)) {
+                    similarClassSet = s;
+                    break;
+                }
+            }
+            if (similarClassSet == null) {
+                similarClassSet = new SimilarClassSet();
+                expected.add(similarClassSet);
+            }
+            similarClassSet.addMember(classFeatureSet);
+        }
+        assertTrue(expected.size() > 10);
+        assertEquals(describe(expected.iterator()), describe(finder.similarClassSetIterator()));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.util;
+
+import junit.framework.TestCase;
+
+public class StripedMapCacheTest extends TestCase {
+
+    static final StripedMapCache.Weigher<String, String> LENGTH = new StripedMapCache.Weigher<String, String>() {
+        @Override
+        public long weigh(String key, String value) {
+            return value.length();
+        }
+    };
+
+    public void testCountBound() {
+        StripedMapCache<Integer, String> cache = new StripedMapCache<Integer, String>(10);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v" + i);
+        }
+        assertEquals(10, cache.size());
+        assertEquals(90, cache.getEvictions());
+        assertEquals("v99", cache.get(99));
+        assertNull(cache.get(0));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testPutIfAbsent() {
+        StripedMapCache<String, String> cache = new StripedMapCache<String, String>();
+        assertEquals("a", cache.putIfAbsent("k", "a"));
+        assertEquals("a", cache.putIfAbsent("k", "b"));
+        assertEquals("a", cache.peek("k"));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    public void testBudgetEvictsHeaviestCache() {
+        StripedMapCache.Budget budget = new StripedMapCache.Budget(100);
+        StripedMapCache<String, String> light = new StripedMapCache<String, String>(0, LENGTH, budget);
+        StripedMapCache<String, String> heavy = new StripedMapCache<String, String>(0, LENGTH, budget);
+        light.put("l", "0123456789");
+        for (int i = 0; i < 20; i++) {
+            heavy.put("h" + i, "0123456789");
+        }
+        assertTrue(budget.getWeight() <= 100);
+        assertEquals(budget.getWeight(), light.getWeight() + heavy.getWeight());
+        assertEquals("0123456789", light.peek("l"));
+        assertEquals(11, heavy.getEvictions());
+    }
+
+    public void testRemoveAndDisposeReleaseBudget() {
+        StripedMapCache.Budget budget = new StripedMapCache.Budget(1000);
+        StripedMapCache<String, String> cache = new StripedMapCache<String, String>(0, LENGTH, budget);
+        cache.put("a", "xxxx");
+        cache.put("b", "yy");
+        assertEquals(6, budget.getWeight());
+        cache.put("a", "x");
+        assertEquals(3, budget.getWeight());
+        cache.remove("b");
+        assertEquals(1, budget.getWeight());
+        cache.dispose();
+        assertEquals(0, budget.getWeight());
+        assertEquals(0, cache.size());
+    }
+}
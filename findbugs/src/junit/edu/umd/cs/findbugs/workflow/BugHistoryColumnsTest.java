@@ -0,0 +1,98 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SortedBugCollection;
+
+public class BugHistoryColumnsTest extends TestCase {
+
+    File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DetectorFactoryCollection.instance();
+        file = File.createTempFile("history", ".xml");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BugHistoryColumns.getHistoryFile(file).delete();
+        file.delete();
+        super.tearDown();
+    }
+
+    private static BugInstance bug(String type, String className, long firstVersion, long lastVersion) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY);
+        bug.addClass(className);
+        bug.setFirstVersion(firstVersion);
+        bug.setLastVersion(lastVersion);
+        return bug;
+    }
+
+    public void testRoundTrip() throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        bugCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.A", 0, -1));
+        bugCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.B", 0, 1));
+        bugCollection.add(bug("DLS_DEAD_LOCAL_STORE", "q.C", 1, -1));
+        bugCollection.writeXML(file.getPath());
+        BugHistoryColumns.fromBugCollection(bugCollection).writeHistoryFile(file);
+
+        BugHistoryColumns history = BugHistoryColumns.readHistoryFile(file);
+        assertNotNull(history);
+        assertEquals(3, history.getNumBugs());
+        int dead = 0;
+        for (int i = 0; i < history.getNumBugs(); i++) {
+            String type = history.types[history.type[i]];
+            String packageName = history.packages[history.packageName[i]];
+            if (history.isDead(i)) {
+                dead++;
+                assertEquals("p", packageName);
+                assertEquals(1, history.lastVersion[i]);
+            } else if ("q".equals(packageName)) {
+                assertEquals("DLS_DEAD_LOCAL_STORE", type);
+                assertEquals(1, history.firstVersion[i]);
+            }
+            assertEquals(Priorities.NORMAL_PRIORITY, history.priority[i]);
+        }
+        assertEquals(1, dead);
+        assertEquals(history.types.length, history.typeCategories.length);
+    }
+
+    public void testModifiedBugCollection() throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        bugCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.A", 0, -1));
+        bugCollection.writeXML(file.getPath());
+        BugHistoryColumns.fromBugCollection(bugCollection).writeHistoryFile(file);
+        assertNotNull(BugHistoryColumns.readHistoryFile(file));
+
+        SortedBugCollection modified = new SortedBugCollection();
+        modified.add(bug("NP_NULL_ON_SOME_PATH", "p.A", 0, -1));
+        modified.add(bug("NP_NULL_ON_SOME_PATH", "p.B", 0, -1));
+        modified.writeXML(file.getPath());
+        assertNull(BugHistoryColumns.readHistoryFile(file));
+    }
+}
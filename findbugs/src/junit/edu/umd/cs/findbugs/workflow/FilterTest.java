@@ -0,0 +1,116 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+
+/**
+ * Check that filtering -input results, which are read several times, gives
+ * the same results as filtering a bug collection in memory.
+ */
+public class FilterTest extends TestCase {
+
+    private final List<File> files = new ArrayList<File>();
+
+    private static BugInstance bug(String type, String className, int line) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY).addClass(className);
+        bug.addSourceLine(new SourceLineAnnotation(className, className + ".java", line, line, -1, -1));
+        return bug;
+    }
+
+    private File tempFile() throws Exception {
+        File file = File.createTempFile("filter", ".xml");
+        files.add(file);
+        return file;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        // The bugs of a.B are the same for the sloppy comparator, but not
+        // for the instance hash
+        bugCollection.add(bug("NP_ALWAYS_NULL", "a.B", 1));
+        bugCollection.add(bug("NP_NULL_ON_SOME_PATH", "a.B", 2));
+        bugCollection.add(bug("NP_NULL_ON_SOME_PATH", "b.C", 5));
+        bugCollection.writeXML(tempFile());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private static List<String> read(File file) throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        bugCollection.readXML(file);
+        List<String> result = new ArrayList<String>();
+        for (BugInstance bug : bugCollection) {
+            result.add(bug.getPrimaryClass().getClassName() + ":" + bug.getPrimarySourceLineAnnotation().getStartLine());
+        }
+        assertEquals(result.size(), bugCollection.getProjectStats().getTotalBugs());
+        return result;
+    }
+
+    private List<String> filter(String... options) throws Exception {
+        File output = tempFile();
+        List<String> args = new ArrayList<String>(Arrays.asList(options));
+        args.add(files.get(0).getPath());
+        args.add(output.getPath());
+        Filter.main(args.toArray(new String[args.size()]));
+        return read(output);
+    }
+
+    private List<String> filterInput(String... options) throws Exception {
+        File output = tempFile();
+        List<String> args = new ArrayList<String>(Arrays.asList(options));
+        args.add("-input");
+        args.add(files.get(0).getPath());
+        args.add(output.getPath());
+        Filter.main(args.toArray(new String[args.size()]));
+        return read(output);
+    }
+
+    public void testInputSloppyUnique() throws Exception {
+        List<String> expected = Arrays.asList("a.B:1", "b.C:5");
+        assertEquals(expected, filter("-sloppyUnique"));
+        assertEquals(expected, filterInput("-sloppyUnique"));
+    }
+
+    public void testInputWithMessages() throws Exception {
+        List<String> expected = Arrays.asList("a.B:1", "b.C:5");
+        assertEquals(expected, filter("-withMessages", "-sloppyUnique"));
+        assertEquals(expected, filterInput("-withMessages", "-sloppyUnique"));
+        expected = Arrays.asList("a.B:1", "a.B:2", "b.C:5");
+        assertEquals(expected, filter("-withMessages"));
+        assertEquals(expected, filterInput("-withMessages"));
+    }
+}
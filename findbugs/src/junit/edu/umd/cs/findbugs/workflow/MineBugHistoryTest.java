@@ -0,0 +1,158 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.AppVersion;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SortedBugCollection;
+
+/**
+ * Check the counts of MineBugHistory against a count of each warning in each
+ * version.
+ */
+public class MineBugHistoryTest extends TestCase {
+
+    private static final int CURRENT_SEQUENCE = 4;
+
+    File file;
+
+    SortedBugCollection bugCollection;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DetectorFactoryCollection.instance();
+        file = File.createTempFile("history", ".xml");
+
+        bugCollection = new SortedBugCollection();
+        for (int i = 0; i < CURRENT_SEQUENCE; i++) {
+            bugCollection.addAppVersion(new AppVersion(i, 1000000000000L + i * 86400000L, "v" + i));
+        }
+        bugCollection.setSequenceNumber(CURRENT_SEQUENCE);
+        bugCollection.setReleaseName("v" + CURRENT_SEQUENCE);
+
+        // Warnings added in each version, and either still active or removed
+        // in any later version; fewer of them are introduced or removed by a
+        // change of their class than not, so that swapped counts show
+        int n = 0;
+        for (long first = 0; first <= CURRENT_SEQUENCE; first++) {
+            for (long last = first; last <= CURRENT_SEQUENCE; last++) {
+                for (int flags = 0; flags < 3; flags++) {
+                    BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY);
+                    bug.addClass("p.C" + n++);
+                    bug.setFirstVersion(first);
+                    bug.setLastVersion(last == CURRENT_SEQUENCE ? -1 : last);
+                    bug.setIntroducedByChangeOfExistingClass((flags & 1) != 0);
+                    bug.setRemovedByChangeOfPersistingClass((flags & 2) != 0);
+                    bugCollection.add(bug, false);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BugHistoryColumns.getHistoryFile(file).delete();
+        file.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Count each warning in each version, as MineBugHistory used to.
+     */
+    private int[][] countEachVersion() {
+        int[][] counts = new int[CURRENT_SEQUENCE + 1][MineBugHistory.TUPLE_SIZE];
+        for (BugInstance bugInstance : bugCollection) {
+            for (int i = 0; i <= CURRENT_SEQUENCE; ++i) {
+                if (bugInstance.getFirstVersion() > i) {
+                    continue;
+                }
+                boolean activePrevious = bugInstance.getFirstVersion() < i
+                        && (!bugInstance.isDead() || bugInstance.getLastVersion() >= i - 1);
+                boolean activeCurrent = !bugInstance.isDead() || bugInstance.getLastVersion() >= i;
+
+                int key = getKey(activePrevious, activeCurrent);
+                if (key == MineBugHistory.REMOVED && !bugInstance.isRemovedByChangeOfPersistingClass()) {
+                    key = MineBugHistory.REMOVEDCODE;
+                } else if (key == MineBugHistory.ADDED && !bugInstance.isIntroducedByChangeOfExistingClass()) {
+                    key = MineBugHistory.NEWCODE;
+                }
+                counts[i][key]++;
+                if (key == MineBugHistory.ADDED || key == MineBugHistory.RETAINED || key == MineBugHistory.NEWCODE) {
+                    counts[i][MineBugHistory.ACTIVE_NOW]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static int getKey(boolean activePrevious, boolean activeCurrent) {
+        if (activePrevious) {
+            return activeCurrent ? MineBugHistory.RETAINED : MineBugHistory.REMOVED;
+        } else {
+            return activeCurrent ? MineBugHistory.ADDED : MineBugHistory.DEAD;
+        }
+    }
+
+    private static void checkCounts(int[][] expected, MineBugHistory mineBugHistory) {
+        assertEquals(expected.length, mineBugHistory.versionList.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("version " + i, Arrays.toString(expected[i]),
+                    Arrays.toString(mineBugHistory.versionList[i].tuple));
+        }
+    }
+
+    private static String dump(MineBugHistory mineBugHistory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mineBugHistory.dump(new PrintStream(out));
+        return out.toString();
+    }
+
+    public void testCounts() {
+        MineBugHistory mineBugHistory = new MineBugHistory(bugCollection);
+        mineBugHistory.execute();
+        checkCounts(countEachVersion(), mineBugHistory);
+    }
+
+    public void testCountsFromHistoryFile() throws Exception {
+        bugCollection.writeXML(file.getPath());
+        BugHistoryColumns.fromBugCollection(bugCollection).writeHistoryFile(file);
+        BugHistoryColumns history = BugHistoryColumns.readHistoryFile(file);
+        assertNotNull(history);
+
+        MineBugHistory fromHistory = new MineBugHistory();
+        fromHistory.setBugCollection(new SortedBugCollection());
+        fromHistory.setHistory(history);
+        fromHistory.execute();
+        checkCounts(countEachVersion(), fromHistory);
+
+        MineBugHistory fromBugCollection = new MineBugHistory(bugCollection);
+        fromBugCollection.execute();
+        assertEquals(dump(fromBugCollection), dump(fromHistory));
+    }
+}
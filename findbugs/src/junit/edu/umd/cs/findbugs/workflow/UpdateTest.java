@@ -0,0 +1,109 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.workflow;
+
+import junit.framework.TestCase;
+import edu.umd.cs.findbugs.BugCollection;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.LocalVariableAnnotation;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+
+public class UpdateTest extends TestCase {
+
+    SortedBugCollection origCollection;
+
+    SortedBugCollection newCollection;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DetectorFactoryCollection.instance();
+
+        origCollection = new SortedBugCollection();
+        origCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.A", "m", 10));
+        origCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.A", "m", 20));
+        origCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.B", "n", 30));
+        origCollection.add(bug("DLS_DEAD_LOCAL_STORE", "q.Moved", "o", 40));
+
+        newCollection = new SortedBugCollection();
+        newCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.A", "m", 15));
+        newCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.A", "m", 25));
+        newCollection.add(bug("DLS_DEAD_LOCAL_STORE", "r.Moved", "o", 40));
+        newCollection.add(bug("NP_NULL_ON_SOME_PATH", "p.C", "n", 30));
+    }
+
+    private static BugInstance bug(String type, String className, String methodName, int line) {
+        BugInstance bug = new BugInstance(type, Priorities.NORMAL_PRIORITY);
+        bug.addClassAndMethod(new MethodAnnotation(className, methodName, "()V", false));
+        bug.addSourceLine(new SourceLineAnnotation(className, "Source.java", line, line, -1, -1));
+        return bug;
+    }
+
+    private BugCollection merge(int numberOfThreads) {
+        Update update = new Update();
+        update.numberOfThreads = numberOfThreads;
+        return update.mergeCollections(origCollection, newCollection, true, false);
+    }
+
+    private void checkMerged(BugCollection result) {
+        assertEquals(5, result.getCollection().size());
+        int dead = 0;
+        for (BugInstance bug : result) {
+            String className = bug.getPrimaryClass().getClassName();
+            if (bug.isDead()) {
+                dead++;
+                assertEquals("p.B", className);
+            } else if ("p.C".equals(className)) {
+                assertEquals(1, bug.getFirstVersion());
+            } else {
+                assertEquals(0, bug.getFirstVersion());
+            }
+        }
+        assertEquals(1, dead);
+    }
+
+    public void testMergeCollections() {
+        checkMerged(merge(1));
+    }
+
+    public void testMergeCollectionsInParallel() {
+        checkMerged(merge(3));
+    }
+
+    public void testMergeUnnamedLocalVariable() {
+        // An unnamed local variable matches a missing one
+        origCollection = new SortedBugCollection();
+        BugInstance withLocal = bug("DLS_DEAD_LOCAL_STORE", "p.D", "p", 50);
+        withLocal.add(new LocalVariableAnnotation("?", 1, 5));
+        origCollection.add(withLocal);
+        newCollection = new SortedBugCollection();
+        newCollection.add(bug("DLS_DEAD_LOCAL_STORE", "p.D", "p", 55));
+
+        BugCollection result = merge(1);
+        assertEquals(1, result.getCollection().size());
+        BugInstance bug = result.getCollection().iterator().next();
+        assertFalse(bug.isDead());
+        assertEquals(0, bug.getFirstVersion());
+    }
+}
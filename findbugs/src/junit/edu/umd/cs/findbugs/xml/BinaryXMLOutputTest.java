@@ -0,0 +1,144 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+
+public class BinaryXMLOutputTest extends TestCase {
+
+    static class RecordingHandler extends DefaultHandler {
+        final List<String> events = new ArrayList<String>();
+
+        final StringBuilder text = new StringBuilder();
+
+        private void flushText() {
+            if (text.toString().trim().length() > 0) {
+                events.add(text.toString());
+            }
+            text.setLength(0);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            flushText();
+            StringBuilder event = new StringBuilder("<" + qName);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                event.append(' ').append(attributes.getQName(i)).append("=[").append(attributes.getValue(i)).append(']');
+            }
+            events.add(event.toString());
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            flushText();
+            events.add("</" + qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+    }
+
+    private static void writeDocument(XMLOutput out) throws Exception {
+        out.beginDocument();
+        out.openTag("Root", new XMLAttributeList().addAttribute("a", "x & <y> \"z\"").addAttribute("b", "\u0001"));
+        out.openCloseTag("Item", new XMLAttributeList().addAttribute("n", "1"));
+        out.openTag("Other");
+        out.writeText("text & <more>\u0002");
+        out.closeTag("Other");
+        out.startTag("Item");
+        out.addAttribute("n", "2");
+        out.stopTag(false);
+        out.openCloseTag("Child");
+        out.closeTag("Item");
+        out.closeTag("Root");
+        out.finish();
+    }
+
+    private static BinaryXMLInput binaryDocument() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeDocument(new BinaryXMLOutput(bytes, "Item"));
+        return BinaryXMLInput.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    public void testSameEventsAsXML() throws Exception {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        writeDocument(new OutputStreamXMLOutput(xml));
+        RecordingHandler expected = new RecordingHandler();
+        SAXParserFactory.newInstance().newSAXParser().parse(new ByteArrayInputStream(xml.toByteArray()), expected);
+
+        RecordingHandler actual = new RecordingHandler();
+        binaryDocument().replay(actual);
+        assertEquals(expected.events, actual.events);
+    }
+
+    public void testIndexedElements() throws Exception {
+        BinaryXMLInput input = binaryDocument();
+        assertEquals(2, input.getNumIndexedElements());
+        RecordingHandler second = new RecordingHandler();
+        input.replayIndexedElement(1, second);
+        assertEquals("[<Item n=[2], <Child, </Child, </Item]", second.events.toString());
+
+        // The document is still read from its start
+        RecordingHandler all = new RecordingHandler();
+        input.replay(all);
+        assertEquals(11, all.events.size());
+    }
+
+    public void testBugCollection() throws Exception {
+        SortedBugCollection bugCollection = new SortedBugCollection();
+        bugCollection.setReleaseName("1.0");
+        for (int i = 1; i <= 3; i++) {
+            BugInstance bug = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY).addClass("a.B" + i);
+            bug.addSourceLine(new SourceLineAnnotation("a.B" + i, "B" + i + ".java", i, i, -1, -1));
+            bug.setProperty("p", "\u00e9" + i);
+            bugCollection.add(bug, false);
+        }
+        File file = File.createTempFile("bugs", SortedBugCollection.BINARY_EXTENSION);
+        try {
+            bugCollection.writeXML(file);
+            SortedBugCollection read = new SortedBugCollection();
+            read.readXML(file);
+            assertEquals("1.0", read.getReleaseName());
+            assertEquals(new ArrayList<BugInstance>(bugCollection.getCollection()),
+                    new ArrayList<BugInstance>(read.getCollection()));
+            assertEquals("\u00e92", new ArrayList<BugInstance>(read.getCollection()).get(1).getProperty("p"));
+        } finally {
+            file.delete();
+        }
+    }
+}
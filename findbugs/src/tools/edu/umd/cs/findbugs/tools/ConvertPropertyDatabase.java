@@ -0,0 +1,105 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.umd.cs.findbugs.ba.interproc.MappedPropertyTable;
+import edu.umd.cs.findbugs.ba.interproc.PropertyDatabaseFormatException;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.util.Util;
+
+/**
+ * Convert a property database between the text format and the binary format
+ * of {@link MappedPropertyTable}. The format of the input is detected; the
+ * entries are copied without being decoded, so any property database can be
+ * converted.
+ */
+public class ConvertPropertyDatabase {
+
+    /**
+     * @param args
+     *            -binary or -text, then the input and the output database
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 || !("-binary".equals(args[0]) || "-text".equals(args[0]))) {
+            System.err.println("Usage: " + ConvertPropertyDatabase.class.getName() + " [-binary|-text] <input db> <output db>");
+            System.exit(1);
+        }
+        List<String[]> entries = readEntries(new File(args[1]));
+        File output = new File(args[2]);
+        if ("-binary".equals(args[0])) {
+            MappedPropertyTable.write(entries, new FileOutputStream(output));
+        } else {
+            Writer out = UTF8.bufferedWriter(output);
+            try {
+                for (String[] entry : entries) {
+                    out.write(entry[0]);
+                    out.write("|");
+                    out.write(entry[1]);
+                    out.write("\n");
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static List<String[]> readEntries(File input) throws IOException, PropertyDatabaseFormatException {
+        byte[] header = new byte[4];
+        int n;
+        try (InputStream in = new FileInputStream(input)) {
+            n = in.read(header);
+        }
+        if (MappedPropertyTable.isBinaryFormat(header, n)) {
+            return MappedPropertyTable.map(input).getEntries();
+        }
+
+        List<String[]> entries = new ArrayList<String[]>();
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(Util.getReader(new FileInputStream(input)));
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                int bar = line.indexOf('|');
+                if (bar < 0) {
+                    throw new PropertyDatabaseFormatException("Invalid property database: missing separator");
+                }
+                entries.add(new String[] { line.substring(0, bar), line.substring(bar + 1) });
+            }
+        } finally {
+            Util.closeSilently(in);
+        }
+        return entries;
+    }
+}
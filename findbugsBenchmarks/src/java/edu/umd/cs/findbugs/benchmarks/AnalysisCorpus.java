@@ -0,0 +1,171 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.NoOpFindBugsProgress;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.ba.npe.IsNullValueDataflow;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.impl.AnalysisCache;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+
+/**
+ * The classes and methods analyzed by the benchmarks, with an analysis cache
+ * and context set up the way FindBugs2 sets them up.
+ * <p>
+ * The analyses the benchmarked ones depend on (MethodGen, DepthFirstSearch,
+ * and so on) are computed and cached once while setting up, so a benchmark
+ * measures only the analysis it runs. The method analyses are cached in the
+ * ClassContext of their class, of which the analysis cache normally keeps
+ * only a few; here the cache is given an unbounded memory budget, so that
+ * the ClassContexts of the whole corpus stay cached.
+ */
+@State(Scope.Thread)
+public class AnalysisCorpus {
+
+    /**
+     * Directory or jar file containing the corpus classes.
+     */
+    @Param({ "../findbugsTestCases/build/classes" })
+    public String corpus;
+
+    /**
+     * Comma-separated list of packages in the corpus whose classes are
+     * analyzed.
+     */
+    @Param({ "npe,bugIdeas" })
+    public String packages;
+
+    IAnalysisCache analysisCache;
+
+    final List<ClassData> classes = new ArrayList<ClassData>();
+
+    final List<MethodDescriptor> methods = new ArrayList<MethodDescriptor>();
+
+    /** The ClassContexts holding the precomputed method analyses */
+    final List<ClassContext> classContexts = new ArrayList<ClassContext>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File corpusFile = new File(corpus);
+        if (!corpusFile.exists()) {
+            throw new IllegalStateException("Corpus " + corpusFile.getAbsolutePath()
+                    + " not found; build it with \"ant -f findbugsTestCases/build.xml classes\"");
+        }
+
+        // Same order of steps as in FindBugs2.execute()
+        PrintingBugReporter bugReporter = new PrintingBugReporter();
+        IClassFactory classFactory = ClassFactory.instance();
+        IClassPath classPath = classFactory.createClassPath();
+
+        analysisCache = classFactory.createAnalysisCache(classPath, bugReporter);
+        // Don't evict the ClassContexts of the corpus
+        ((AnalysisCache) analysisCache).setMemoryBudget(Long.MAX_VALUE);
+        FindBugs2.registerBuiltInAnalysisEngines(analysisCache);
+        analysisCache.eagerlyPutDatabase(DetectorFactoryCollection.class, DetectorFactoryCollection.instance());
+        Global.setAnalysisCacheForCurrentThread(analysisCache);
+
+        List<ClassDescriptor> appClassList = new ArrayList<ClassDescriptor>();
+        FindBugs2.createAnalysisContext(new Project(), appClassList, null);
+
+        IClassPathBuilder builder = classFactory.createClassPathBuilder(bugReporter);
+        builder.addCodeBase(classFactory.createFilesystemCodeBaseLocator(corpusFile.getPath()), true);
+        builder.build(classPath, new NoOpFindBugsProgress());
+        for (ClassDescriptor classDescriptor : builder.getAppClassList()) {
+            if (isInCorpus(classDescriptor)) {
+                appClassList.add(classDescriptor);
+            }
+        }
+        FindBugs2.setAppClassList(appClassList);
+
+        for (ClassDescriptor classDescriptor : appClassList) {
+            classes.add(analysisCache.getClassAnalysis(ClassData.class, classDescriptor));
+            classContexts.add(analysisCache.getClassAnalysis(ClassContext.class, classDescriptor));
+            XClass xclass = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
+            for (XMethod xmethod : xclass.getXMethods()) {
+                if (xmethod.isAbstract() || xmethod.isNative()) {
+                    continue;
+                }
+                MethodDescriptor method = xmethod.getMethodDescriptor();
+                try {
+                    // Computes and caches everything the benchmarked
+                    // analyses need
+                    analysisCache.getMethodAnalysis(IsNullValueDataflow.class, method);
+                    analysisCache.getMethodAnalysis(OpcodeStack.JumpInfo.class, method);
+                } catch (CheckedAnalysisException e) {
+                    continue;
+                }
+                methods.add(method);
+            }
+        }
+        if (methods.isEmpty()) {
+            throw new IllegalStateException("No methods to analyze in packages " + packages + " of " + corpus);
+        }
+        for (ClassContext classContext : classContexts) {
+            if (analysisCache.getClassAnalysis(ClassContext.class, classContext.getClassDescriptor()) != classContext) {
+                throw new IllegalStateException("ClassContext of " + classContext.getClassDescriptor()
+                        + " evicted from the analysis cache");
+            }
+        }
+    }
+
+    private boolean isInCorpus(ClassDescriptor classDescriptor) {
+        String className = classDescriptor.getDottedClassName();
+        String packageName = className.substring(0, Math.max(0, className.lastIndexOf('.')));
+        for (String p : packages.split(",")) {
+            if (packageName.equals(p.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FindBugs2.clearAnalysisContext();
+        Global.removeAnalysisCacheForCurrentThread();
+    }
+}
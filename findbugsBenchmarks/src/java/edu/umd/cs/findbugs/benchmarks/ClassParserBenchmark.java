@@ -0,0 +1,74 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.classfile.InvalidClassFileFormatException;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.analysis.ClassInfo;
+import edu.umd.cs.findbugs.classfile.analysis.ClassNameAndSuperclassInfo;
+import edu.umd.cs.findbugs.classfile.engine.ClassParserUsingASM;
+
+/**
+ * Benchmarks of parsing the classes of the corpus with ClassParserUsingASM,
+ * both fully (as for application classes) and just the class header (as when
+ * scanning the classpath).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClassParserBenchmark {
+
+    @Benchmark
+    public void parseClassInfo(AnalysisCorpus corpus, Blackhole blackhole) throws InvalidClassFileFormatException {
+        for (ClassData classData : corpus.classes) {
+            ClassInfo.Builder builder = new ClassInfo.Builder();
+            newParser(classData).parse(builder);
+            blackhole.consume(builder.build());
+        }
+    }
+
+    @Benchmark
+    public void parseClassHeader(AnalysisCorpus corpus, Blackhole blackhole) throws InvalidClassFileFormatException {
+        for (ClassData classData : corpus.classes) {
+            ClassNameAndSuperclassInfo.Builder builder = new ClassNameAndSuperclassInfo.Builder();
+            newParser(classData).parse(builder);
+            blackhole.consume(builder.build());
+        }
+    }
+
+    private static ClassParserUsingASM newParser(ClassData classData) {
+        return new ClassParserUsingASM(new ClassReader(classData.getData()), classData.getClassDescriptor(),
+                classData.getCodeBaseEntry());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bcel.generic.MethodGen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.CFGBuilder;
+import edu.umd.cs.findbugs.ba.CFGBuilderFactory;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.classfile.engine.bcel.AnalysisFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.IsNullValueDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.TypeDataflowFactory;
+import edu.umd.cs.findbugs.classfile.engine.bcel.ValueNumberDataflowFactory;
+
+/**
+ * Benchmarks of the per-method analyses, each run over every method of the
+ * corpus. The analyses are computed by calling their analysis engines
+ * directly, bypassing the analysis cache, while the analyses they depend on
+ * come from the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DataflowBenchmark {
+
+    private final ValueNumberDataflowFactory valueNumberDataflowFactory = new ValueNumberDataflowFactory();
+
+    private final IsNullValueDataflowFactory isNullValueDataflowFactory = new IsNullValueDataflowFactory();
+
+    private final TypeDataflowFactory typeDataflowFactory = new TypeDataflowFactory();
+
+    private final OpcodeStack.JumpInfoFactory jumpInfoFactory = new OpcodeStack.JumpInfoFactory();
+
+    @Benchmark
+    public void buildCFG(AnalysisCorpus corpus, Blackhole blackhole) throws CheckedAnalysisException {
+        for (MethodDescriptor method : corpus.methods) {
+            MethodGen methodGen = corpus.analysisCache.getMethodAnalysis(MethodGen.class, method);
+            CFGBuilder cfgBuilder = CFGBuilderFactory.create(method, methodGen);
+            cfgBuilder.build();
+            blackhole.consume(cfgBuilder.getCFG());
+        }
+    }
+
+    @Benchmark
+    public void valueNumberAnalysis(AnalysisCorpus corpus, Blackhole blackhole) throws CheckedAnalysisException {
+        analyzeAll(valueNumberDataflowFactory, corpus, blackhole);
+    }
+
+    @Benchmark
+    public void isNullValueAnalysis(AnalysisCorpus corpus, Blackhole blackhole) throws CheckedAnalysisException {
+        analyzeAll(isNullValueDataflowFactory, corpus, blackhole);
+    }
+
+    @Benchmark
+    public void typeAnalysis(AnalysisCorpus corpus, Blackhole blackhole) throws CheckedAnalysisException {
+        analyzeAll(typeDataflowFactory, corpus, blackhole);
+    }
+
+    @Benchmark
+    public void opcodeStackJumpInfo(AnalysisCorpus corpus, Blackhole blackhole) throws CheckedAnalysisException {
+        analyzeAll(jumpInfoFactory, corpus, blackhole);
+    }
+
+    private static void analyzeAll(AnalysisFactory<?> factory, AnalysisCorpus corpus, Blackhole blackhole)
+            throws CheckedAnalysisException {
+        for (MethodDescriptor method : corpus.methods) {
+            blackhole.consume(factory.analyze(corpus.analysisCache, method));
+        }
+    }
+}
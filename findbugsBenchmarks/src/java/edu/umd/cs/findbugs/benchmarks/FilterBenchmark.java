@@ -0,0 +1,160 @@
+/*
+ * FindBugs - Find Bugs in Java programs
+ * Copyright (C) 2003-2008 University of Maryland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package edu.umd.cs.findbugs.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.charsets.UTF8;
+import edu.umd.cs.findbugs.filter.CompiledFilter;
+import edu.umd.cs.findbugs.filter.Filter;
+
+/**
+ * Benchmarks of matching warnings against a large exclude filter, with the
+ * Filter itself and with the CompiledFilter of the filter.
+ * <p>
+ * The filter and the warnings are generated, with a fixed seed. Most rules
+ * are of the usual kinds: a class and a method, a package regex and a bug
+ * pattern, a bug pattern and a priority; a few use class name suffixes,
+ * method names alone, and source file regexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final String[] TYPES = { "NP_NULL_ON_SOME_PATH", "DM_EXIT", "DM_DEFAULT_ENCODING", "UUF_UNUSED_FIELD",
+            "SE_BAD_FIELD", "EI_EXPOSE_REP", "URF_UNREAD_FIELD" };
+
+    /**
+     * Number of rules (Match elements) of the filter.
+     */
+    @Param({ "3000" })
+    public int rules;
+
+    /**
+     * Number of warnings matched against the filter.
+     */
+    @Param({ "10000" })
+    public int warnings;
+
+    private Filter filter;
+
+    private CompiledFilter compiledFilter;
+
+    private final List<BugInstance> bugs = new ArrayList<BugInstance>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DetectorFactoryCollection.instance();
+        Random random = new Random(42);
+
+        StringBuilder xml = new StringBuilder("<FindBugsFilter>\n");
+        for (int i = 0; i < rules; i++) {
+            int kind = random.nextInt(100);
+            int p = random.nextInt(200);
+            int c = random.nextInt(50);
+            xml.append("<Match>");
+            if (kind < 50) {
+                xml.append("<Class name=\"pkg" + p + ".C" + c + "\"/><Method name=\"m" + random.nextInt(10) + "\"/>");
+            } else if (kind < 75) {
+                xml.append("<Class name=\"~pkg" + p + "\\.sub" + random.nextInt(5) + "\\..*\"/><Bug pattern=\""
+                        + TYPES[random.nextInt(TYPES.length)] + "\"/>");
+            } else if (kind < 85) {
+                xml.append("<Bug pattern=\"" + TYPES[random.nextInt(TYPES.length)] + "\"/><Priority value=\"3\"/>");
+            } else if (kind < 92) {
+                xml.append("<Class name=\"~.*C" + c + "Test\"/>");
+            } else if (kind < 97) {
+                xml.append("<Method name=\"helper" + random.nextInt(500) + "\"/>");
+            } else if (kind < 99) {
+                xml.append("<Package name=\"~pkg" + p + "\\.gen\"/>");
+            } else {
+                xml.append("<Source name=\"~.*Gen" + c + "\\.java\"/>");
+            }
+            xml.append("</Match>\n");
+        }
+        xml.append("</FindBugsFilter>\n");
+        filter = new Filter(new ByteArrayInputStream(xml.toString().getBytes(UTF8.charset)));
+        compiledFilter = filter.compile();
+
+        for (int i = 0; i < warnings; i++) {
+            String packageName = "pkg" + random.nextInt(250);
+            int subpackage = random.nextInt(4);
+            if (subpackage == 0) {
+                packageName += ".gen";
+            } else if (subpackage == 1) {
+                packageName += ".sub" + random.nextInt(6);
+            }
+            String className = packageName + ".C" + random.nextInt(60) + (random.nextInt(10) == 0 ? "Test" : "");
+            BugInstance bug = new BugInstance(TYPES[random.nextInt(TYPES.length)], 1 + random.nextInt(3));
+            if (random.nextBoolean()) {
+                String methodName = random.nextBoolean() ? "m" + random.nextInt(12) : "helper" + random.nextInt(600);
+                bug.addClassAndMethod(new MethodAnnotation(className, methodName, "()V", false));
+            } else {
+                bug.addClass(className);
+            }
+            bugs.add(bug);
+        }
+    }
+
+    @Benchmark
+    public int filter() {
+        int matched = 0;
+        for (BugInstance bug : bugs) {
+            if (filter.match(bug)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int compiledFilter() {
+        int matched = 0;
+        for (BugInstance bug : bugs) {
+            if (compiledFilter.match(bug)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}